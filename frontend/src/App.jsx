@@ -861,11 +861,14 @@ function App() {
     const [showTimeline, setShowTimeline] = useState(false);
 
     const [labelMode, setLabelMode] = useState(0);
+    // Statikai kiemelés: "from-to" -> szín (csak Analyze(color=on) esetén)
+    const [trussColors, setTrussColors] = useState({});
     const [pickedColor, setPickedColor] = useState("#ffffff");
     const [isCopied, setIsCopied] = useState(false);
     const [searchTerm, setSearchTerm] = useState("");
 
     const stompClientRef = useRef(null);
+    const commandSeqRef = useRef(0);
     const inputRef = useRef(null);
     const helpSearchRef = useRef(null);
 
@@ -880,12 +883,35 @@ function App() {
         { name: "addcollection", syntax: "AddCollection(name, [ids])", desc: "Creates group.", cmd: "AddCollection(fal, [p0, p1])" },
         { name: "addtocollection", syntax: "AddToCollection(name, [ids])", desc: "Adds to group.", cmd: "AddToCollection(fal, [p2])" },
         { name: "removefromcollection", syntax: "RemoveFromCollection(name, [ids])", desc: "Removes from group.", cmd: "RemoveFromCollection(fal, [p0])" },
+        { name: "unioncollections", syntax: "UnionCollections(result, a, b, ...)", desc: "Group = a ∪ b.", cmd: "UnionCollections(minden, fal, teto)" },
+        { name: "intersectcollections", syntax: "IntersectCollections(result, a, b, ...)", desc: "Group = a ∩ b.", cmd: "IntersectCollections(kozos, fal, teto)" },
+        { name: "subtractcollections", syntax: "SubtractCollections(result, a, b, ...)", desc: "Group = a − b.", cmd: "SubtractCollections(csakfal, fal, teto)" },
 
         { name: "addclip", syntax: "AddClip(target, type, start, end, axis, val)", desc: "Anim: Move p0 on Y by 5.", cmd: "AddClip(p0, Move, 0, 5, y, 5, \"Name\")" },
-        { name: "updateclip", syntax: "UpdateClip(id, name, start, end)", desc: "Updates a clip.", cmd: "" },
+        { name: "rotateclip", syntax: "AddClip(target, Rotate, start, end, axis, deg, pivot=pID, ease=easeInOut)", desc: "Anim: Rotate/Scale around a pivot.", cmd: "AddClip(p0, Rotate, 0, 5, y, 90, pivot=[0,0,0], ease=easeInOut)" },
+        { name: "updateclip", syntax: "UpdateClip(id, name, start, end, easing?)", desc: "Updates a clip.", cmd: "" },
         { name: "deleteclip", syntax: "DeleteClip(name)", desc: "Removes clip by name.", cmd: "DeleteClip(Move1)" },
         { name: "deleteclipbyid", syntax: "DeleteClipById(id)", desc: "Removes clip by ID.", cmd: "" },
 
+        { name: "grid", syntax: "Grid(nx, ny, nz, spacing, name=coll)", desc: "Generates a connected point grid.", cmd: "Grid(5, 1, 5, 2, color=#ffffff)" },
+        { name: "lattice", syntax: "Lattice(nx, ny, nz, spacing, name=coll)", desc: "Grid with diagonal bracing (truss).", cmd: "Lattice(4, 4, 4, 1, name=racs)" },
+        { name: "circle", syntax: "Circle(n, radius, center=[x,y,z], axis=y)", desc: "Closed ring of points.", cmd: "Circle(12, 5)" },
+        { name: "array", syntax: "Array(collection, count, [dx,dy,dz])", desc: "Repeats a collection with an offset.", cmd: "Array(fal, 3, [0,0,4])" },
+
+        { name: "support", syntax: "Support(target, xyz)", desc: "Truss: fixes points in the given directions.", cmd: "Support([p0...p3], xyz)" },
+        { name: "removesupport", syntax: "RemoveSupport(target)", desc: "Truss: removes supports.", cmd: "RemoveSupport(p0)" },
+        { name: "load", syntax: "Load(target, fx, fy, fz)", desc: "Truss: adds a nodal load in N.", cmd: "Load(p10, 0, -1000, 0)" },
+        { name: "removeload", syntax: "RemoveLoad(target)", desc: "Truss: removes loads.", cmd: "RemoveLoad(p10)" },
+        { name: "cutlist", syntax: "CutList(kerf=0.003, improve=500, stock=6)", desc: "Packs rods into stock bars (full plan: /api/cutlist).", cmd: "CutList(improve=500)" },
+        { name: "analyze", syntax: "Analyze(auto=on, color=on, selfweight=on, section=0.02)", desc: "Truss: member forces and displacements.", cmd: "Analyze(color=on)" },
+
+        { name: "collisions", syntax: "Collisions(on|off, points=on, rodScale=0.02)", desc: "Live collision events during playback.", cmd: "Collisions(on)" },
+        { name: "checkcollisions", syntax: "CheckCollisions(from, to, step)", desc: "Bakes the timeline and lists collisions.", cmd: "CheckCollisions(0, 10, 0.05)" },
+        { name: "script", syntax: "Script { let n = 10; for i in 0..n { AddPoint({i}, {i*0.5}, 0) } }", desc: "Runs a server-side script as one batch (one undo step, one update). Undo, Redo, Clear, SaveProject and LoadProject are not allowed inside.", cmd: "Script { for i in 0..9 { AddPoint({i}, {i*0.2}, 0) } }" },
+        { name: "ifunchanged", syntax: "IfUnchanged(<version>[, merge]) { ...commands... }", desc: "Runs the commands only if no one else edited the touched points/collections since that world version; merge keeps their edits and applies the rest.", cmd: "IfUnchanged(0, merge) { Move(0, 1, 1, 1) }" },
+        { name: "macro", syntax: "Macro Name(a, b) { ... }", desc: "Defines a reusable macro for your session; call it as Name(1, 2). Built-in command names cannot be used.", cmd: "Macro Stairs(n, h) { for i in 0..n-1 { AddPoint({i*0.3}, {i*h}, 0) } }" },
+        { name: "macros", syntax: "Macros / DeleteMacro(name)", desc: "Lists or deletes your macros.", cmd: "Macros" },
+
         { name: "play", syntax: "Play", desc: "Starts timeline.", cmd: "Play" },
         { name: "pause", syntax: "Pause", desc: "Pauses timeline.", cmd: "Pause" },
         { name: "seek", syntax: "Seek(seconds)", desc: "Jumps to time.", cmd: "Seek(2.5)" },
@@ -955,6 +981,31 @@ function App() {
                         }));
                     } catch (e) { console.error("WS Error:", e); }
                 });
+                client.subscribe('/topic/truss-results', (message) => {
+                    try {
+                        const result = JSON.parse(message.body);
+                        const colors = {};
+                        if (result.highlight) {
+                            result.memberResults.forEach(m => { if (m.color) colors[`${m.fromId}-${m.toId}`] = m.color; });
+                        }
+                        setTrussColors(colors);
+                    } catch (e) { console.error("Truss WS Error:", e); }
+                });
+                // Parancs válaszok (correlation id szerint), a hibás parancsot jelezzük
+                client.subscribe('/user/queue/command-replies', (message) => {
+                    try {
+                        const reply = JSON.parse(message.body);
+                        if (!reply.ok) console.warn(`Command ${reply.id} failed:`, reply.command, '->', reply.result);
+                    } catch (e) { console.error("Reply WS Error:", e); }
+                });
+                // Háttér mentés / betöltés állapota (a SaveProject / LoadProject azonnal visszatér)
+                client.subscribe('/topic/project-jobs', (message) => {
+                    try {
+                        const job = JSON.parse(message.body);
+                        if (job.state === 'FAILED') console.warn(`Project job ${job.id} failed:`, job.message);
+                        else if (job.state === 'DONE') console.info(`Project job ${job.id} done in ${job.durationMs} ms:`, job.message);
+                    } catch (e) { console.error("Project job WS Error:", e); }
+                });
             },
         });
         client.activate();
@@ -1006,7 +1057,8 @@ function App() {
         } else if (cmdLower === 'hideindexes') setLabelMode(-1);
         else if (cmdLower === 'clearhistory') setHistory([]);
         else if (stompClientRef.current) {
-            stompClientRef.current.publish({ destination: '/app/send-command', body: txt });
+            const id = `c${++commandSeqRef.current}`;
+            stompClientRef.current.publish({ destination: '/app/command', body: JSON.stringify({ id, command: txt }) });
         }
         setCommand("");
         setSuggestion("");
@@ -1917,7 +1969,7 @@ function App() {
                 {world.connections.map((c, i) => {
                     const p1 = world.points.find(p => p.id === c.fromId);
                     const p2 = world.points.find(p => p.id === c.toId);
-                    return p1 && p2 ? <Connection key={i} start={[p1.x, p1.y, p1.z]} end={[p2.x, p2.y, p2.z]} color={c.color} thickness={c.thickness} /> : null;
+                    return p1 && p2 ? <Connection key={i} start={[p1.x, p1.y, p1.z]} end={[p2.x, p2.y, p2.z]} color={trussColors[`${c.fromId}-${c.toId}`] || c.color} thickness={c.thickness} /> : null;
                 })}
                 {world.points.map(p => (
                     <Point
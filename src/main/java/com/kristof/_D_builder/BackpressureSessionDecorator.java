@@ -0,0 +1,205 @@
+package com.kristof._D_builder;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Egy kliens kimenő sora. A küldő (broker) szál csak besorol és visszatér; a tényleges küldést
+// mindig legfeljebb egy szál végzi, így egy lassú kliens legfeljebb egy szálat foglal le.
+// A "teljes állapot" jellegű frame-ek (pl. /topic/world-updates) előfizetésenként összevonódnak:
+// ha a kliens le van maradva, a még el nem küldött régi frame helyére az új kerül, nem mögé.
+// Bájt- vagy időlimit túllépésekor (előbb a régi összevonható frame-ek eldobása után) a kapcsolat bezárul.
+final class BackpressureSessionDecorator extends WebSocketSessionDecorator {
+
+    private record Frame(WebSocketMessage<?> message, String coalesceKey, int bytes, long enqueuedAt) {}
+
+    private final OutboundSessionRegistry registry;
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    // Metrikák (a sor zárja alatt írva, olvasás a registry-ből)
+    private long queuedBytes;
+    private volatile long sendStartedAt;   // 0, ha épp nincs folyamatban küldés
+    private volatile long sentFrames, sentBytes, coalescedFrames, droppedFrames;
+    private volatile long lastLagMillis, maxLagMillis;
+    private volatile String closeReason;
+
+    BackpressureSessionDecorator(WebSocketSession delegate, OutboundSessionRegistry registry) {
+        super(delegate);
+        this.registry = registry;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closeReason != null) return;
+        String key = coalesceKey(message);
+        int bytes = message.getPayloadLength();
+        long now = System.currentTimeMillis();
+
+        synchronized (queue) {
+            boolean replaced = false;
+            if (key != null) {
+                // A még várakozó régebbi frame helyére kerül (a sorrend a többi üzenethez képest megmarad)
+                for (Iterator<Frame> it = queue.iterator(); it.hasNext(); ) {
+                    Frame f = it.next();
+                    if (key.equals(f.coalesceKey())) {
+                        it.remove();
+                        queuedBytes -= f.bytes();
+                        coalescedFrames++;
+                        replaced = true;
+                        break;
+                    }
+                }
+            }
+            queue.addLast(new Frame(message, key, bytes, now));
+            queuedBytes += bytes;
+            if (!replaced) enforceByteLimit();
+        }
+
+        // Elakadt küldés: ha az aktuális küldés régebb óta tart, mint a limit, a kliens használhatatlan
+        long started = sendStartedAt;
+        if (started != 0 && now - started > registry.sendTimeLimitMillis()) {
+            closeUnreliable("send time limit exceeded (" + (now - started) + " ms)");
+            return;
+        }
+        flush();
+    }
+
+    // A limit felett először a legrégebbi összevonható (felülírható) frame-ek esnek ki
+    private void enforceByteLimit() {
+        long limit = registry.bufferSizeLimit();
+        if (queuedBytes <= limit) return;
+        for (Iterator<Frame> it = queue.iterator(); it.hasNext() && queuedBytes > limit; ) {
+            Frame f = it.next();
+            if (f.coalesceKey() == null || f == queue.peekLast()) continue;
+            it.remove();
+            queuedBytes -= f.bytes();
+            droppedFrames++;
+        }
+        if (queuedBytes > limit) {
+            closeReason = "buffer size limit exceeded (" + queuedBytes + " bytes)";
+        }
+    }
+
+    // A küldés a registry saját (virtuális) szálán megy, így a broker szála sosem blokkol egy lassú kliensen,
+    // és a Spring belső ConcurrentWebSocketSessionDecorator-a sem gyűjt sort mögöttünk (ott nem lenne összevonás)
+    private void flush() {
+        if (closeReason != null) {
+            closeUnreliable(closeReason);
+            return;
+        }
+        if (flushing.compareAndSet(false, true)) {
+            registry.sender().execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        // Egyszerre egy szál küld; a többi csak besorol. A flag elengedése után újraellenőrzünk,
+        // hogy egy párhuzamos besorolás ne maradjon küldetlenül a sorban.
+        do {
+            try {
+                Frame next;
+                while (closeReason == null && (next = poll()) != null) {
+                    TraceEvents.WebSocketSend event = new TraceEvents.WebSocketSend();
+                    event.begin();
+                    sendStartedAt = System.currentTimeMillis();
+                    getDelegate().sendMessage(next.message());
+                    long done = System.currentTimeMillis();
+                    sendStartedAt = 0;
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.sessionId = getId();
+                        event.bytes = next.bytes();
+                        event.queuedTime = done - next.enqueuedAt();
+                        event.commit();
+                    }
+                    lastLagMillis = done - next.enqueuedAt();
+                    if (lastLagMillis > maxLagMillis) maxLagMillis = lastLagMillis;
+                    sentFrames++;
+                    sentBytes += next.bytes();
+                }
+            } catch (Exception e) {
+                closeUnreliable("send failed: " + e.getMessage());
+            } finally {
+                sendStartedAt = 0;
+                flushing.set(false);
+            }
+        } while (closeReason == null && !isQueueEmpty() && flushing.compareAndSet(false, true));
+    }
+
+    private boolean isQueueEmpty() {
+        synchronized (queue) {
+            return queue.isEmpty();
+        }
+    }
+
+    private Frame poll() {
+        synchronized (queue) {
+            Frame f = queue.pollFirst();
+            if (f != null) queuedBytes -= f.bytes();
+            return f;
+        }
+    }
+
+    private void closeUnreliable(String reason) {
+        closeReason = reason;
+        synchronized (queue) {
+            queue.clear();
+            queuedBytes = 0;
+        }
+        try {
+            if (isOpen()) getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE.withReason(reason));
+        } catch (Exception e) {
+            System.err.println("Session bezárás hiba (" + getId() + "): " + e.getMessage());
+        }
+    }
+
+    // STOMP MESSAGE frame: "destination" + "subscription" fejléc alapján; csak a beállított célokra
+    private String coalesceKey(WebSocketMessage<?> message) {
+        if (!(message instanceof TextMessage text)) return null;
+        String payload = text.getPayload();
+        if (!payload.startsWith("MESSAGE")) return null;
+        int headerEnd = payload.indexOf("\n\n");
+        if (headerEnd < 0) return null;
+        String destination = header(payload, "destination:", headerEnd);
+        if (destination == null || !registry.isCoalescable(destination)) return null;
+        String subscription = header(payload, "subscription:", headerEnd);
+        return destination + "|" + subscription;
+    }
+
+    private static String header(String payload, String name, int headerEnd) {
+        int i = payload.indexOf("\n" + name);
+        if (i < 0 || i > headerEnd) return null;
+        int start = i + 1 + name.length();
+        int end = payload.indexOf('\n', start);
+        return payload.substring(start, end < 0 ? headerEnd : end);
+    }
+
+    // ==========================
+    // METRIKÁK
+    // ==========================
+
+    OutboundSessionRegistry.SessionStats stats() {
+        int frames;
+        long bytes, oldest;
+        synchronized (queue) {
+            frames = queue.size();
+            bytes = queuedBytes;
+            Frame head = queue.peekFirst();
+            oldest = head != null ? head.enqueuedAt() : 0;
+        }
+        long now = System.currentTimeMillis();
+        long started = sendStartedAt;
+        // Aktuális lemaradás: a legrégebbi várakozó frame kora (vagy a folyamatban lévő küldésé)
+        long lag = Math.max(oldest != 0 ? now - oldest : 0, started != 0 ? now - started : 0);
+        return new OutboundSessionRegistry.SessionStats(getId(), isOpen(), frames, bytes, sentFrames, sentBytes,
+                coalescedFrames, droppedFrames, lag, lastLagMillis, maxLagMillis, closeReason);
+    }
+}
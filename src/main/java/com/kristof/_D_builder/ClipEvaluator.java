@@ -0,0 +1,153 @@
+package com.kristof._D_builder;
+
+// Egy TimelineClip "lefordított" formája.
+// A típus (MOVE / ROTATE / SCALE), az időgörbe és a konstansok egyszer, hozzáadáskor/módosításkor
+// dőlnek el, így a gameLoop tick-enként már nem hasonlít stringeket és nem foglal memóriát.
+public abstract class ClipEvaluator {
+
+    final String clipId;
+    final int targetId;
+    final double startTime;
+    final double endTime;
+    final double invDuration;
+    final Easing easing;
+
+    ClipEvaluator(WorldStateService.TimelineClip clip, Easing easing) {
+        this.clipId = clip.id;
+        this.targetId = clip.targetId;
+        this.startTime = clip.startTime;
+        this.endTime = clip.endTime;
+        this.invDuration = 1.0 / (clip.endTime - clip.startTime);
+        this.easing = easing;
+    }
+
+    // Ahová a kiértékelő a pozíciót írja: élesben a tick írás puffere (TimelineWrites),
+    // "sütéskor" (pl. ütközésvizsgálat) egy helyi koordináta tömb
+    @FunctionalInterface
+    interface Target {
+        boolean updatePoint(int id, double x, double y, double z);
+    }
+
+    // Ha az idő a klip ablakán belül van, kiszámolja és beállítja a pont pozícióját
+    final boolean evaluate(double time, Target world) {
+        if (time < startTime || time > endTime) return false;
+        double k = easing.apply((time - startTime) * invDuration);
+        return apply(k, world);
+    }
+
+    abstract boolean apply(double k, Target world);
+
+    // Visszaad null-t, ha a klip nem értékelhető ki (nulla hossz, ismeretlen típus)
+    static ClipEvaluator compile(WorldStateService.TimelineClip clip, Point3D current) {
+        if (clip == null || clip.type == null) return null;
+        if (!(clip.endTime - clip.startTime > 0)) return null;
+
+        Easing easing = Easing.parse(clip.easing);
+        String type = clip.type.trim().toUpperCase();
+
+        // Régi (mentett) klipeknél nincs alappozíció -> a pont aktuális helyzetét vesszük
+        double bx = clip.bx, by = clip.by, bz = clip.bz;
+        if (!clip.hasBase) {
+            if (current == null) {
+                if (!type.startsWith("MOVE")) return null;
+            } else {
+                bx = current.x(); by = current.y(); bz = current.z();
+            }
+        }
+
+        if (type.startsWith("MOVE")) return new Move(clip, easing);
+        if (type.startsWith("ROTATE")) return new Rotate(clip, easing, bx, by, bz);
+        if (type.startsWith("SCALE")) return new Scale(clip, easing, bx, by, bz);
+        return null;
+    }
+
+    // ==========================
+    // MOVE: lineáris út (s -> e)
+    // ==========================
+    static final class Move extends ClipEvaluator {
+        private final double sx, sy, sz, dx, dy, dz;
+
+        Move(WorldStateService.TimelineClip c, Easing easing) {
+            super(c, easing);
+            sx = c.sx; sy = c.sy; sz = c.sz;
+            dx = c.ex - c.sx; dy = c.ey - c.sy; dz = c.ez - c.sz;
+        }
+
+        @Override
+        boolean apply(double k, Target world) {
+            return world.updatePoint(targetId, sx + dx * k, sy + dy * k, sz + dz * k);
+        }
+    }
+
+    // ==========================
+    // ROTATE: forgatás pivot körül, X -> Y -> Z sorrendben (fokban megadva)
+    // ==========================
+    static final class Rotate extends ClipEvaluator {
+        private final double px, py, pz;
+        private final double rx, ry, rz; // alappozíció a pivothoz képest
+        private final double ax0, ay0, az0, dax, day, daz; // radiánban
+        private final boolean useX, useY, useZ;
+
+        Rotate(WorldStateService.TimelineClip c, Easing easing, double bx, double by, double bz) {
+            super(c, easing);
+            px = c.px; py = c.py; pz = c.pz;
+            rx = bx - px; ry = by - py; rz = bz - pz;
+            ax0 = Math.toRadians(c.sx); dax = Math.toRadians(c.ex - c.sx);
+            ay0 = Math.toRadians(c.sy); day = Math.toRadians(c.ey - c.sy);
+            az0 = Math.toRadians(c.sz); daz = Math.toRadians(c.ez - c.sz);
+            // A végig nulla tengelyekre nem számolunk trigonometriát
+            useX = c.sx != 0 || c.ex != 0;
+            useY = c.sy != 0 || c.ey != 0;
+            useZ = c.sz != 0 || c.ez != 0;
+        }
+
+        @Override
+        boolean apply(double k, Target world) {
+            double x = rx, y = ry, z = rz;
+            if (useX) {
+                double a = ax0 + dax * k, cos = Math.cos(a), sin = Math.sin(a);
+                double ny = y * cos - z * sin;
+                z = y * sin + z * cos;
+                y = ny;
+            }
+            if (useY) {
+                double a = ay0 + day * k, cos = Math.cos(a), sin = Math.sin(a);
+                double nx = x * cos + z * sin;
+                z = -x * sin + z * cos;
+                x = nx;
+            }
+            if (useZ) {
+                double a = az0 + daz * k, cos = Math.cos(a), sin = Math.sin(a);
+                double nx = x * cos - y * sin;
+                y = x * sin + y * cos;
+                x = nx;
+            }
+            return world.updatePoint(targetId, x + px, y + py, z + pz);
+        }
+    }
+
+    // ==========================
+    // SCALE: tengelyenkénti nagyítás pivothoz képest (s -> e szorzók)
+    // ==========================
+    static final class Scale extends ClipEvaluator {
+        private final double px, py, pz;
+        private final double rx, ry, rz;
+        private final double sx, sy, sz, dx, dy, dz;
+
+        Scale(WorldStateService.TimelineClip c, Easing easing, double bx, double by, double bz) {
+            super(c, easing);
+            px = c.px; py = c.py; pz = c.pz;
+            rx = bx - px; ry = by - py; rz = bz - pz;
+            sx = c.sx; sy = c.sy; sz = c.sz;
+            dx = c.ex - c.sx; dy = c.ey - c.sy; dz = c.ez - c.sz;
+        }
+
+        @Override
+        boolean apply(double k, Target world) {
+            return world.updatePoint(targetId,
+                    px + rx * (sx + dx * k),
+                    py + ry * (sy + dy * k),
+                    pz + rz * (sz + dz * k));
+        }
+    }
+}
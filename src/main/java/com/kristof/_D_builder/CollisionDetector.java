@@ -0,0 +1,320 @@
+package com.kristof._D_builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Ütközésvizsgálat rudak (vastag szakaszok = kapszulák) és pontok (gömbök) között.
+// Széles fázis: AABB BVH (medián vágás a leghosszabb tengelyen). Változatlan topológiánál a fa megmarad,
+// képkockánként csak a dobozai frissülnek (refit, O(n)), és csak időnként épül újra.
+// Szűk fázis: pontos szakasz-szakasz / pont-szakasz / pont-pont távolság.
+// Nem szálbiztos: egyszerre egy szál használja (a CollisionService worker szála).
+final class CollisionDetector {
+
+    // Egy érintkezés; pontnál a "to" mező -1
+    public record Contact(String type, int aFrom, int aTo, int bFrom, int bTo, double distance, double x, double y, double z) {
+        String key() {
+            return type + ":" + aFrom + "-" + aTo + "/" + bFrom + "-" + bTo;
+        }
+    }
+
+    // Objektumok: [0, segCount) rudak, [segCount, segCount + pointCount) pontok
+    private int segCount, pointCount;
+    private int[] segA = new int[0], segB = new int[0]; // pont indexek
+    private int[] segFromId = new int[0], segToId = new int[0];
+    private double[] segRadius = new double[0];
+    private int[] pointIds = new int[0];
+    private double pointRadius;
+    private long topologySignature = Long.MIN_VALUE;
+
+    private double[] min = new double[0], max = new double[0]; // objektumonként 3-3 érték
+
+    // BVH (lapos tömbökben): a csomópontok pre-orderben, így a szülő indexe mindig kisebb a gyerekénél
+    private static final int LEAF_SIZE = 4;
+    private static final int REBUILD_INTERVAL = 60; // ennyi refit után újraépítés (a fa minősége romlik mozgáskor)
+    private int[] items = new int[0];                // objektum indexek; csomópontonként folytonos [start, start+count) tartomány
+    private int[] nodeLeft = new int[0], nodeRight = new int[0], nodeStart = new int[0], nodeCount = new int[0];
+    private double[] nodeMin = new double[0], nodeMax = new double[0];
+    private int nodes = 0;
+    private int refits = REBUILD_INTERVAL;
+    private int[] stack = new int[64];
+
+    // Topológia beállítása; ha változatlan (azonos aláírás), a fa megmarad és csak frissül (refit)
+    void setTopology(int[] pointIds, int[] segA, int[] segB, int[] segFromId, int[] segToId, double[] segRadius,
+                     double pointRadius, long signature) {
+        this.pointRadius = pointRadius;
+        this.segRadius = segRadius;
+        if (signature == topologySignature) return;
+        this.topologySignature = signature;
+        this.pointIds = pointIds;
+        this.segA = segA;
+        this.segB = segB;
+        this.segFromId = segFromId;
+        this.segToId = segToId;
+        this.segCount = segA.length;
+        this.pointCount = pointIds.length;
+        int objects = segCount + pointCount;
+        min = new double[3 * objects];
+        max = new double[3 * objects];
+        items = new int[objects];
+        int capacity = Math.max(1, 2 * objects);
+        nodeLeft = new int[capacity]; nodeRight = new int[capacity];
+        nodeStart = new int[capacity]; nodeCount = new int[capacity];
+        nodeMin = new double[3 * capacity]; nodeMax = new double[3 * capacity];
+        refits = REBUILD_INTERVAL; // első futáskor teljes építés
+    }
+
+    // pos: pont indexenként x,y,z
+    List<Contact> detect(double[] pos) {
+        int objects = segCount + pointCount;
+        List<Contact> contacts = new ArrayList<>();
+        if (objects < 2) return contacts;
+
+        // 1. AABB-k (a sugárral kibővítve)
+        for (int s = 0; s < segCount; s++) {
+            int a = 3 * segA[s], b = 3 * segB[s], o = 3 * s;
+            double r = segRadius[s];
+            for (int k = 0; k < 3; k++) {
+                double u = pos[a + k], v = pos[b + k];
+                min[o + k] = Math.min(u, v) - r;
+                max[o + k] = Math.max(u, v) + r;
+            }
+        }
+        for (int p = 0; p < pointCount; p++) {
+            int o = 3 * (segCount + p);
+            for (int k = 0; k < 3; k++) {
+                min[o + k] = pos[3 * p + k] - pointRadius;
+                max[o + k] = pos[3 * p + k] + pointRadius;
+            }
+        }
+
+        // 2. Fa: időnként teljes építés, közben csak a dobozok frissülnek alulról felfelé
+        if (refits >= REBUILD_INTERVAL) {
+            for (int i = 0; i < objects; i++) items[i] = i;
+            nodes = 0;
+            build(0, objects);
+            refits = 0;
+        } else {
+            refit();
+            refits++;
+        }
+
+        // 3. A fa önmagával: csomópont-párok bejárása (minden objektum-pár legfeljebb egyszer)
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int b = stack[--top], a = stack[--top];
+            if (a != b && !nodesOverlap(a, b)) continue;
+            boolean leafA = nodeLeft[a] < 0, leafB = nodeLeft[b] < 0;
+            if (leafA && leafB) {
+                testLeaves(a, b, pos, contacts);
+                continue;
+            }
+            if (top + 6 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+            if (a == b) {
+                // Belső csomópont önmagával: a két gyerek önmagával és egymással
+                int l = nodeLeft[a], r = nodeRight[a];
+                stack[top++] = l; stack[top++] = l;
+                stack[top++] = r; stack[top++] = r;
+                stack[top++] = l; stack[top++] = r;
+            } else if (leafB || (!leafA && nodeCount[a] >= nodeCount[b])) {
+                stack[top++] = nodeLeft[a]; stack[top++] = b;
+                stack[top++] = nodeRight[a]; stack[top++] = b;
+            } else {
+                stack[top++] = a; stack[top++] = nodeLeft[b];
+                stack[top++] = a; stack[top++] = nodeRight[b];
+            }
+        }
+        return contacts;
+    }
+
+    private void testLeaves(int a, int b, double[] pos, List<Contact> contacts) {
+        int sa = nodeStart[a], ea = sa + nodeCount[a];
+        int sb = nodeStart[b], eb = sb + nodeCount[b];
+        for (int x = sa; x < ea; x++) {
+            // azonos levélnél csak a "felső háromszög"
+            for (int y = (a == b ? x + 1 : sb); y < eb; y++) {
+                int i = items[x], j = items[y];
+                if (!overlaps(i, j)) continue;
+                Contact c = narrow(Math.min(i, j), Math.max(i, j), pos);
+                if (c != null) contacts.add(c);
+            }
+        }
+    }
+
+    private boolean nodesOverlap(int a, int b) {
+        int x = 3 * a, y = 3 * b;
+        return nodeMin[y] <= nodeMax[x] && nodeMin[x] <= nodeMax[y]
+                && nodeMin[y + 1] <= nodeMax[x + 1] && nodeMin[x + 1] <= nodeMax[y + 1]
+                && nodeMin[y + 2] <= nodeMax[x + 2] && nodeMin[x + 2] <= nodeMax[y + 2];
+    }
+
+    private boolean overlaps(int i, int j) {
+        int a = 3 * i, b = 3 * j;
+        return min[b] <= max[a] && min[a] <= max[b]
+                && min[b + 1] <= max[a + 1] && min[a + 1] <= max[b + 1]
+                && min[b + 2] <= max[a + 2] && min[a + 2] <= max[b + 2];
+    }
+
+    // Felülről lefelé, a leghosszabb tengely mentén a középpontok mediánjánál vágva
+    private int build(int from, int to) {
+        int node = nodes++;
+        int no = 3 * node;
+        double[] cmin = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] cmax = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int k = 0; k < 3; k++) { nodeMin[no + k] = Double.MAX_VALUE; nodeMax[no + k] = -Double.MAX_VALUE; }
+        for (int i = from; i < to; i++) {
+            int o = 3 * items[i];
+            for (int k = 0; k < 3; k++) {
+                nodeMin[no + k] = Math.min(nodeMin[no + k], min[o + k]);
+                nodeMax[no + k] = Math.max(nodeMax[no + k], max[o + k]);
+                double c = min[o + k] + max[o + k];
+                cmin[k] = Math.min(cmin[k], c);
+                cmax[k] = Math.max(cmax[k], c);
+            }
+        }
+        if (to - from <= LEAF_SIZE) {
+            nodeLeft[node] = nodeRight[node] = -1;
+            nodeStart[node] = from;
+            nodeCount[node] = to - from;
+            return node;
+        }
+        int axis = 0;
+        for (int k = 1; k < 3; k++) if (cmax[k] - cmin[k] > cmax[axis] - cmin[axis]) axis = k;
+        nodeStart[node] = from;
+        nodeCount[node] = to - from;
+        int mid = (from + to) >>> 1;
+        select(from, to - 1, mid, axis);
+        nodeLeft[node] = build(from, mid);
+        nodeRight[node] = build(mid, to);
+        return node;
+    }
+
+    // Quickselect: az items[from..to] tartományt úgy rendezi, hogy a k-adik elem a helyén legyen (középpont szerint)
+    private void select(int from, int to, int k, int axis) {
+        while (to > from) {
+            double pivot = center(items[(from + to) >>> 1], axis);
+            int i = from, j = to;
+            while (i <= j) {
+                while (center(items[i], axis) < pivot) i++;
+                while (center(items[j], axis) > pivot) j--;
+                if (i <= j) { int t = items[i]; items[i] = items[j]; items[j] = t; i++; j--; }
+            }
+            if (k <= j) to = j;
+            else if (k >= i) from = i;
+            else return;
+        }
+    }
+
+    private double center(int object, int axis) {
+        return min[3 * object + axis] + max[3 * object + axis];
+    }
+
+    // A csomópontok pre-orderben vannak -> fordított sorrendben bejárva a gyerekek mindig előbb frissülnek
+    private void refit() {
+        for (int node = nodes - 1; node >= 0; node--) {
+            int no = 3 * node;
+            if (nodeLeft[node] < 0) {
+                for (int k = 0; k < 3; k++) { nodeMin[no + k] = Double.MAX_VALUE; nodeMax[no + k] = -Double.MAX_VALUE; }
+                for (int i = nodeStart[node], e = i + nodeCount[node]; i < e; i++) {
+                    int o = 3 * items[i];
+                    for (int k = 0; k < 3; k++) {
+                        nodeMin[no + k] = Math.min(nodeMin[no + k], min[o + k]);
+                        nodeMax[no + k] = Math.max(nodeMax[no + k], max[o + k]);
+                    }
+                }
+            } else {
+                int l = 3 * nodeLeft[node], r = 3 * nodeRight[node];
+                for (int k = 0; k < 3; k++) {
+                    nodeMin[no + k] = Math.min(nodeMin[l + k], nodeMin[r + k]);
+                    nodeMax[no + k] = Math.max(nodeMax[l + k], nodeMax[r + k]);
+                }
+            }
+        }
+    }
+
+    // ==========================
+    // SZŰK FÁZIS
+    // ==========================
+
+    private Contact narrow(int a, int b, double[] pos) {
+        if (b < segCount) return segmentSegment(a, b, pos);
+        if (a < segCount) return pointSegment(b - segCount, a, pos);
+        return pointPoint(a - segCount, b - segCount, pos);
+    }
+
+    private Contact segmentSegment(int s, int t, double[] pos) {
+        // A közös végpontú (szomszédos) rudak mindig "érintkeznek" -> kihagyjuk
+        if (segA[s] == segA[t] || segA[s] == segB[t] || segB[s] == segA[t] || segB[s] == segB[t]) return null;
+        double[] c = closestSegmentSegment(pos, 3 * segA[s], 3 * segB[s], 3 * segA[t], 3 * segB[t]);
+        double limit = segRadius[s] + segRadius[t];
+        if (c[0] >= limit * limit) return null;
+        return new Contact("SEGMENT_SEGMENT", segFromId[s], segToId[s], segFromId[t], segToId[t],
+                Math.sqrt(c[0]), c[1], c[2], c[3]);
+    }
+
+    private Contact pointSegment(int p, int s, double[] pos) {
+        if (segA[s] == p || segB[s] == p) return null;
+        int a = 3 * segA[s], b = 3 * segB[s], q = 3 * p;
+        double dx = pos[b] - pos[a], dy = pos[b + 1] - pos[a + 1], dz = pos[b + 2] - pos[a + 2];
+        double len2 = dx * dx + dy * dy + dz * dz;
+        double t = len2 > 0 ? ((pos[q] - pos[a]) * dx + (pos[q + 1] - pos[a + 1]) * dy + (pos[q + 2] - pos[a + 2]) * dz) / len2 : 0;
+        t = Math.max(0, Math.min(1, t));
+        double cx = pos[a] + t * dx, cy = pos[a + 1] + t * dy, cz = pos[a + 2] + t * dz;
+        double ex = pos[q] - cx, ey = pos[q + 1] - cy, ez = pos[q + 2] - cz;
+        double d2 = ex * ex + ey * ey + ez * ez;
+        double limit = pointRadius + segRadius[s];
+        if (d2 >= limit * limit) return null;
+        return new Contact("POINT_SEGMENT", pointIds[p], -1, segFromId[s], segToId[s], Math.sqrt(d2), cx, cy, cz);
+    }
+
+    private Contact pointPoint(int p, int q, double[] pos) {
+        double dx = pos[3 * q] - pos[3 * p], dy = pos[3 * q + 1] - pos[3 * p + 1], dz = pos[3 * q + 2] - pos[3 * p + 2];
+        double d2 = dx * dx + dy * dy + dz * dz;
+        double limit = 2 * pointRadius;
+        if (d2 >= limit * limit) return null;
+        return new Contact("POINT_POINT", pointIds[p], -1, pointIds[q], -1, Math.sqrt(d2),
+                pos[3 * p] + dx / 2, pos[3 * p + 1] + dy / 2, pos[3 * p + 2] + dz / 2);
+    }
+
+    // Két szakasz legközelebbi pontjai (Ericson, Real-Time Collision Detection 5.1.9).
+    // Vissza: {távolság négyzet, a két legközelebbi pont felezőpontja x, y, z}
+    static double[] closestSegmentSegment(double[] pos, int p1, int q1, int p2, int q2) {
+        double d1x = pos[q1] - pos[p1], d1y = pos[q1 + 1] - pos[p1 + 1], d1z = pos[q1 + 2] - pos[p1 + 2];
+        double d2x = pos[q2] - pos[p2], d2y = pos[q2 + 1] - pos[p2 + 1], d2z = pos[q2 + 2] - pos[p2 + 2];
+        double rx = pos[p1] - pos[p2], ry = pos[p1 + 1] - pos[p2 + 1], rz = pos[p1 + 2] - pos[p2 + 2];
+        double a = d1x * d1x + d1y * d1y + d1z * d1z;
+        double e = d2x * d2x + d2y * d2y + d2z * d2z;
+        double f = d2x * rx + d2y * ry + d2z * rz;
+        double s, t;
+        final double eps = 1e-12;
+        if (a <= eps && e <= eps) {
+            s = t = 0;
+        } else if (a <= eps) {
+            s = 0;
+            t = clamp(f / e);
+        } else {
+            double c = d1x * rx + d1y * ry + d1z * rz;
+            if (e <= eps) {
+                t = 0;
+                s = clamp(-c / a);
+            } else {
+                double b = d1x * d2x + d1y * d2y + d1z * d2z;
+                double denom = a * e - b * b;
+                s = denom > eps ? clamp((b * f - c * e) / denom) : 0;
+                t = (b * s + f) / e;
+                if (t < 0) { t = 0; s = clamp(-c / a); }
+                else if (t > 1) { t = 1; s = clamp((b - c) / a); }
+            }
+        }
+        double c1x = pos[p1] + d1x * s, c1y = pos[p1 + 1] + d1y * s, c1z = pos[p1 + 2] + d1z * s;
+        double c2x = pos[p2] + d2x * t, c2y = pos[p2 + 1] + d2y * t, c2z = pos[p2 + 2] + d2z * t;
+        double dx = c1x - c2x, dy = c1y - c2y, dz = c1z - c2z;
+        return new double[]{dx * dx + dy * dy + dz * dz, (c1x + c2x) / 2, (c1y + c2y) / 2, (c1z + c2z) / 2};
+    }
+
+    private static double clamp(double v) {
+        return v < 0 ? 0 : (v > 1 ? 1 : v);
+    }
+}
@@ -0,0 +1,223 @@
+package com.kristof._D_builder;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Opcionális ütközésfigyelés lejátszás közben, illetve a timeline előre "kisütve".
+// Élő mód: minden új világverziónál (lejátszáskor tick-enként) egy külön worker szálon fut,
+// így a 33 ms-os gameLoop-ot nem lassítja; legfeljebb egy képkockát késik.
+// Csak a változások mennek ki a /topic/collisions csatornára (új / megszűnt érintkezések).
+@Service
+public class CollisionService {
+
+    public static final String COLLISION_TOPIC = "/topic/collisions";
+
+    // Élő képkocka: mi kezdődött és mi szűnt meg ebben a lépésben
+    public record CollisionFrame(long worldVersion, double time, List<CollisionDetector.Contact> started,
+                                 List<CollisionDetector.Contact> ended, int active, long micros) {}
+
+    // Kisütött timeline: érintkezésenként az első időpont
+    public record TimedContact(double time, CollisionDetector.Contact contact) {}
+
+    public record BakeReport(double from, double to, double step, int samples, List<TimedContact> contacts, long millis) {}
+
+    private final WorldStateService worldStateService;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    private volatile boolean enabled = false;
+    private volatile boolean includePoints = true;
+    // Rúd sugár = thickness * rodScale / 2 (ugyanaz a konvenció, mint az exportnál); pont sugár a frontend gömbje
+    private volatile double rodScale = 0.02;
+    private volatile double pointRadius = 0.08;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "collision-check");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile long lastCheckedVersion = -1;
+
+    // Csak a worker szál használja
+    private final CollisionDetector liveDetector = new CollisionDetector();
+    private Map<String, CollisionDetector.Contact> active = new HashMap<>();
+
+    public CollisionService(WorldStateService worldStateService, SimpMessagingTemplate messagingTemplate) {
+        this.worldStateService = worldStateService;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    public void configure(boolean enabled, Boolean includePoints, Double rodScale, Double pointRadius) {
+        if (includePoints != null) this.includePoints = includePoints;
+        if (rodScale != null && rodScale > 0) this.rodScale = rodScale;
+        if (pointRadius != null && pointRadius >= 0) this.pointRadius = pointRadius;
+        this.enabled = enabled;
+        lastCheckedVersion = -1;
+        if (!enabled) worker.execute(() -> active = new HashMap<>());
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    // ==========================
+    // ÉLŐ MÓD
+    // ==========================
+
+    @Scheduled(fixedRate = 33)
+    public void tick() {
+        if (!enabled) return;
+        long version = worldStateService.getVersion();
+        if (version == lastCheckedVersion) return;
+        if (!running.compareAndSet(false, true)) return; // az előző ellenőrzés még fut -> ezt a képkockát kihagyjuk
+        worker.execute(() -> {
+            try {
+                checkLive();
+            } catch (Exception e) {
+                System.err.println("Ütközésvizsgálat hiba: " + e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void checkLive() {
+        long start = System.nanoTime();
+        long version = worldStateService.getVersion();
+        WorldState state = worldStateService.getWorldState();
+        lastCheckedVersion = version;
+
+        Scene scene = Scene.of(state.points(), state.connections(), includePoints, rodScale);
+        liveDetector.setTopology(scene.pointIds, scene.segA, scene.segB, scene.segFromId, scene.segToId,
+                scene.segRadius, includePoints ? pointRadius : 0, scene.signature);
+        List<CollisionDetector.Contact> contacts = liveDetector.detect(scene.pos);
+
+        Map<String, CollisionDetector.Contact> now = new HashMap<>(contacts.size() * 2);
+        for (CollisionDetector.Contact c : contacts) now.put(c.key(), c);
+        List<CollisionDetector.Contact> started = new ArrayList<>();
+        List<CollisionDetector.Contact> ended = new ArrayList<>();
+        for (Map.Entry<String, CollisionDetector.Contact> e : now.entrySet()) {
+            if (!active.containsKey(e.getKey())) started.add(e.getValue());
+        }
+        for (Map.Entry<String, CollisionDetector.Contact> e : active.entrySet()) {
+            if (!now.containsKey(e.getKey())) ended.add(e.getValue());
+        }
+        active = now;
+        if (started.isEmpty() && ended.isEmpty()) return;
+
+        long micros = (System.nanoTime() - start) / 1000;
+        try {
+            messagingTemplate.convertAndSend(COLLISION_TOPIC,
+                    new CollisionFrame(version, state.currentTime(), started, ended, now.size(), micros));
+        } catch (Exception e) {
+            System.err.println("Collision broadcast hiba: " + e.getMessage());
+        }
+    }
+
+    // ==========================
+    // KISÜTÖTT TIMELINE
+    // ==========================
+
+    // A lefordított klipeket egy helyi koordináta tömbön játssza le [from, to] között step lépésközzel
+    // (a világ állapota nem változik). Az eredményt ki is küldi a collision topicra.
+    public BakeReport bakeTimeline(double from, double to, double step) {
+        long start = System.nanoTime();
+        if (!(step > 0)) step = 1.0 / 30;
+        if (to < from) { double t = from; from = to; to = t; }
+        int samples = (int) Math.min(100_000, Math.floor((to - from) / step) + 1);
+
+        WorldState state = worldStateService.getWorldState();
+        Scene scene = Scene.of(state.points(), state.connections(), includePoints, rodScale);
+        ClipEvaluator[] clips = worldStateService.getCompiledClips();
+        CollisionDetector detector = new CollisionDetector();
+        detector.setTopology(scene.pointIds, scene.segA, scene.segB, scene.segFromId, scene.segToId,
+                scene.segRadius, includePoints ? pointRadius : 0, scene.signature);
+
+        double[] pos = scene.pos;
+        Map<Integer, Integer> indexOf = scene.indexOf;
+        ClipEvaluator.Target target = (id, x, y, z) -> {
+            Integer i = indexOf.get(id);
+            if (i == null) return false;
+            pos[3 * i] = x; pos[3 * i + 1] = y; pos[3 * i + 2] = z;
+            return true;
+        };
+
+        Map<String, TimedContact> first = new LinkedHashMap<>();
+        for (int s = 0; s < samples; s++) {
+            double time = from + s * step;
+            for (ClipEvaluator clip : clips) clip.evaluate(time, target);
+            for (CollisionDetector.Contact c : detector.detect(pos)) {
+                first.putIfAbsent(c.key(), new TimedContact(time, c));
+            }
+        }
+
+        BakeReport report = new BakeReport(from, to, step, samples, new ArrayList<>(first.values()),
+                (System.nanoTime() - start) / 1_000_000);
+        try {
+            messagingTemplate.convertAndSend(COLLISION_TOPIC, report);
+        } catch (Exception e) {
+            System.err.println("Collision broadcast hiba: " + e.getMessage());
+        }
+        return report;
+    }
+
+    // ==========================
+    // JELENET (tömbös forma a detektornak)
+    // ==========================
+
+    private static final class Scene {
+        int[] pointIds, segA, segB, segFromId, segToId;
+        double[] segRadius, pos;
+        Map<Integer, Integer> indexOf;
+        long signature;
+
+        static Scene of(List<Point3D> points, List<Connection> connections, boolean includePoints, double rodScale) {
+            Scene s = new Scene();
+            int n = points.size();
+            s.pos = new double[3 * n];
+            s.indexOf = new HashMap<>(n * 2);
+            int[] allIds = new int[n];
+            long sig = 1469598103934665603L;
+            for (int i = 0; i < n; i++) {
+                Point3D p = points.get(i);
+                allIds[i] = p.id();
+                s.indexOf.put(p.id(), i);
+                s.pos[3 * i] = p.x(); s.pos[3 * i + 1] = p.y(); s.pos[3 * i + 2] = p.z();
+                sig = (sig ^ p.id()) * 1099511628211L;
+            }
+            // Pont objektumok csak akkor, ha kérték (a detektor pont indexe = pozíció index)
+            s.pointIds = includePoints ? allIds : new int[0];
+            sig = (sig ^ (includePoints ? 1 : 0)) * 1099511628211L;
+
+            int m = connections.size();
+            int[] a = new int[m], b = new int[m], from = new int[m], to = new int[m];
+            double[] radius = new double[m];
+            int k = 0;
+            for (Connection c : connections) {
+                Integer ia = s.indexOf.get(c.fromId()), ib = s.indexOf.get(c.toId());
+                if (ia == null || ib == null || ia.equals(ib)) continue;
+                a[k] = ia; b[k] = ib; from[k] = c.fromId(); to[k] = c.toId();
+                radius[k] = Math.max(0, c.thickness()) * rodScale / 2;
+                sig = (sig ^ (((long) c.fromId() << 32) | (c.toId() & 0xFFFFFFFFL))) * 1099511628211L;
+                k++;
+            }
+            s.segA = Arrays.copyOf(a, k);
+            s.segB = Arrays.copyOf(b, k);
+            s.segFromId = Arrays.copyOf(from, k);
+            s.segToId = Arrays.copyOf(to, k);
+            s.segRadius = Arrays.copyOf(radius, k);
+            s.signature = (sig ^ k) * 1099511628211L;
+            return s;
+        }
+    }
+}
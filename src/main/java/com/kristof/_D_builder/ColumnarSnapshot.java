@@ -0,0 +1,407 @@
+package com.kristof._D_builder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// A világ bináris, oszlopos (columnar) képe egy helyi fájlban.
+// Minden mező típusonként egy összefüggő tömbként kerül a fájlba (id-k, x, y, z, ...), így írásnál és
+// olvasásnál is tömeges int/double másolás megy a memóriába képzett pufferen, objektumonkénti parse nélkül.
+// A szövegek (szín, anyag, klip típus...) egy közös string táblába kerülnek, a sorok csak indexet tárolnak.
+//
+// Elrendezés (little endian):
+//   fejléc:  MAGIC(8) | FORMAT(4) | worldVersion(8) | savedAt(8) | bodyLength(8) | crc32(8)
+//   törzs:   stringek | pontok | kapcsolatok | lapok | gyűjtemények | klipek | currentTime
+final class ColumnarSnapshot {
+
+    private static final long MAGIC = 0x3144414E53424433L; // "3DBSNAP1"
+    private static final int FORMAT = 1;
+    private static final int HEADER = 8 + 4 + 8 + 8 + 8 + 8;
+
+    record Loaded(long worldVersion, long savedAt, WorldState state, long bytes) {}
+
+    private ColumnarSnapshot() {}
+
+    // ==========================
+    // ÍRÁS
+    // ==========================
+
+    // Az egész fájlt egy lépésben képezzük le és töltjük fel; a hívó ideiglenes fájlba ír és utána nevezi át
+    static long write(Path file, WorldState state, long worldVersion) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer[] mapped = new MappedByteBuffer[1];
+            long body = writeBody(state, size -> {
+                long total = HEADER + size;
+                if (total > Integer.MAX_VALUE) throw new IOException("Snapshot too large (" + total + " bytes).");
+                mapped[0] = ch.map(FileChannel.MapMode.READ_WRITE, 0, total);
+                mapped[0].order(ByteOrder.LITTLE_ENDIAN);
+                mapped[0].position(HEADER);
+                return mapped[0];
+            });
+            MappedByteBuffer buf = mapped[0];
+            CRC32 crc = new CRC32();
+            crc.update(buf.slice(HEADER, (int) body));
+            buf.position(0);
+            buf.putLong(MAGIC).putInt(FORMAT).putLong(worldVersion).putLong(System.currentTimeMillis())
+                    .putLong(body).putLong(crc.getValue());
+            buf.force();
+            return HEADER + body;
+        }
+    }
+
+    // Csak a törzs egy bájt tömbbe (fejléc, időbélyeg nélkül): azonos állapot -> azonos bájtok.
+    // A verziózott projekt mentés darabjai (ProjectChunker) ezt használják.
+    static byte[] encode(WorldState state) {
+        ByteBuffer[] out = new ByteBuffer[1];
+        try {
+            writeBody(state, size -> {
+                if (size > Integer.MAX_VALUE) throw new IOException("Chunk too large (" + size + " bytes).");
+                return out[0] = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            });
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        return out[0].array();
+    }
+
+    private interface BodyTarget {
+        ByteBuffer open(long bodySize) throws IOException;
+    }
+
+    // Az oszlopok összeállítása, majd kiírása a target által adott pufferbe (az aktuális pozíciótól)
+    private static long writeBody(WorldState state, BodyTarget target) throws IOException {
+        Strings strings = new Strings();
+        List<Point3D> points = state.points();
+        List<Connection> connections = state.connections();
+        List<Face> faces = state.faces();
+        Map<String, List<Integer>> collections = state.collections() != null ? state.collections() : Map.of();
+        List<WorldStateService.TimelineClip> clips = state.clips() != null ? state.clips() : List.of();
+
+        int n = points.size(), m = connections.size(), f = faces.size(), k = clips.size();
+        int[] pointIds = new int[n], pointColor = new int[n];
+        double[] px = new double[n], py = new double[n], pz = new double[n];
+        for (int i = 0; i < n; i++) {
+            Point3D p = points.get(i);
+            pointIds[i] = p.id();
+            px[i] = p.x(); py[i] = p.y(); pz[i] = p.z();
+            pointColor[i] = strings.index(p.color());
+        }
+
+        int[] from = new int[m], to = new int[m], connColor = new int[m], material = new int[m];
+        double[] thickness = new double[m], price = new double[m];
+        for (int i = 0; i < m; i++) {
+            Connection c = connections.get(i);
+            from[i] = c.fromId(); to[i] = c.toId();
+            connColor[i] = strings.index(c.color());
+            material[i] = strings.index(c.materialName());
+            thickness[i] = c.thickness(); price[i] = c.pricePerMeter();
+        }
+
+        // Lapok: CSR alakban (offsetek + összefűzött pont id-k)
+        int[] faceOffsets = new int[f + 1], faceColor = new int[f];
+        for (int i = 0; i < f; i++) {
+            faceOffsets[i + 1] = faceOffsets[i] + faces.get(i).pointIds().size();
+            faceColor[i] = strings.index(faces.get(i).color());
+        }
+        int[] facePoints = new int[faceOffsets[f]];
+        for (int i = 0, o = 0; i < f; i++) {
+            for (Integer id : faces.get(i).pointIds()) facePoints[o++] = id;
+        }
+
+        int c = collections.size();
+        int[] collName = new int[c], collOffsets = new int[c + 1];
+        List<List<Integer>> collIds = new ArrayList<>(c);
+        int ci = 0;
+        for (Map.Entry<String, List<Integer>> e : collections.entrySet()) {
+            collName[ci] = strings.index(e.getKey());
+            collOffsets[ci + 1] = collOffsets[ci] + e.getValue().size();
+            collIds.add(e.getValue());
+            ci++;
+        }
+        int[] collMembers = new int[collOffsets[c]];
+        for (int i = 0, o = 0; i < c; i++) {
+            for (Integer id : collIds.get(i)) collMembers[o++] = id;
+        }
+
+        int[] clipId = new int[k], clipName = new int[k], clipType = new int[k], clipEasing = new int[k];
+        int[] clipTarget = new int[k], clipHasBase = new int[k];
+        double[] clipValues = new double[k * CLIP_DOUBLES];
+        for (int i = 0; i < k; i++) {
+            WorldStateService.TimelineClip t = clips.get(i);
+            clipId[i] = strings.index(t.id);
+            clipName[i] = strings.index(t.name);
+            clipType[i] = strings.index(t.type);
+            clipEasing[i] = strings.index(t.easing);
+            clipTarget[i] = t.targetId;
+            clipHasBase[i] = t.hasBase ? 1 : 0;
+            double[] v = { t.startTime, t.endTime, t.sx, t.sy, t.sz, t.ex, t.ey, t.ez,
+                    t.px, t.py, t.pz, t.bx, t.by, t.bz };
+            System.arraycopy(v, 0, clipValues, i * CLIP_DOUBLES, CLIP_DOUBLES);
+        }
+
+        byte[] stringBlock = strings.encode();
+        long body = 4L + stringBlock.length
+                + 4 + 4L * n * 2 + 8L * n * 3
+                + 4 + 4L * m * 4 + 8L * m * 2
+                + 4 + 4L * (f + 1) + 4L * f + 4 + 4L * facePoints.length
+                + 4 + 4L * c + 4L * (c + 1) + 4 + 4L * collMembers.length
+                + 4 + 4L * k * 6 + 8L * clipValues.length
+                + 8;
+        ByteBuffer buf = target.open(body);
+        buf.putInt(stringBlock.length).put(stringBlock);
+        buf.putInt(n);
+        putInts(buf, pointIds); putDoubles(buf, px); putDoubles(buf, py); putDoubles(buf, pz); putInts(buf, pointColor);
+        buf.putInt(m);
+        putInts(buf, from); putInts(buf, to); putInts(buf, connColor); putInts(buf, material);
+        putDoubles(buf, thickness); putDoubles(buf, price);
+        buf.putInt(f);
+        putInts(buf, faceOffsets); putInts(buf, faceColor);
+        buf.putInt(facePoints.length); putInts(buf, facePoints);
+        buf.putInt(c);
+        putInts(buf, collName); putInts(buf, collOffsets);
+        buf.putInt(collMembers.length); putInts(buf, collMembers);
+        buf.putInt(k);
+        putInts(buf, clipId); putInts(buf, clipName); putInts(buf, clipType); putInts(buf, clipEasing);
+        putInts(buf, clipTarget); putInts(buf, clipHasBase); putDoubles(buf, clipValues);
+        buf.putDouble(state.currentTime());
+        return body;
+    }
+
+    private static final int CLIP_DOUBLES = 14;
+
+    private static void putInts(ByteBuffer buf, int[] a) {
+        buf.asIntBuffer().put(a);
+        buf.position(buf.position() + 4 * a.length);
+    }
+
+    private static void putDoubles(ByteBuffer buf, double[] a) {
+        buf.asDoubleBuffer().put(a);
+        buf.position(buf.position() + 8 * a.length);
+    }
+
+    // ==========================
+    // OLVASÁS
+    // ==========================
+
+    static Loaded read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER || size > Integer.MAX_VALUE) throw new IOException("Invalid snapshot size: " + size);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buf.getLong() != MAGIC) throw new IOException("Not a world snapshot file.");
+            int format = buf.getInt();
+            if (format != FORMAT) throw new IOException("Unsupported snapshot format: " + format);
+            long worldVersion = buf.getLong();
+            long savedAt = buf.getLong();
+            long body = buf.getLong();
+            long expectedCrc = buf.getLong();
+            if (HEADER + body != size) throw new IOException("Truncated snapshot (" + size + " of " + (HEADER + body) + " bytes).");
+            CRC32 crc = new CRC32();
+            crc.update(buf.slice(HEADER, (int) body));
+            if (crc.getValue() != expectedCrc) throw new IOException("Snapshot checksum mismatch.");
+
+            return new Loaded(worldVersion, savedAt, decode(buf), size);
+        }
+    }
+
+    // Törzs visszaolvasása (a puffer a törzs elején áll, little endian)
+    static WorldState decode(byte[] body) {
+        return decode(ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    static WorldState decode(ByteBuffer buf) {
+        String[] strings = Strings.decode(buf, buf.getInt());
+        // string tábla sorszám -> szín paletta index (színenként egyszer internálva)
+        int[] colors = new int[strings.length];
+        Arrays.fill(colors, UNRESOLVED);
+
+        int n = buf.getInt();
+        int[] pointIds = ints(buf, n);
+        double[] px = doubles(buf, n), py = doubles(buf, n), pz = doubles(buf, n);
+        int[] pointColor = ints(buf, n);
+        List<Point3D> points = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            points.add(new Point3D(pointIds[i], px[i], py[i], pz[i], color(colors, strings, pointColor[i])));
+        }
+
+        int m = buf.getInt();
+        int[] from = ints(buf, m), to = ints(buf, m), connColor = ints(buf, m), material = ints(buf, m);
+        double[] thickness = doubles(buf, m), price = doubles(buf, m);
+        List<Connection> connections = new ArrayList<>(m);
+        for (int i = 0; i < m; i++) {
+            connections.add(new Connection(from[i], to[i], color(colors, strings, connColor[i]), thickness[i],
+                    Palette.MATERIALS.intern(new Palette.Material(str(strings, material[i]), price[i]))));
+        }
+
+        int f = buf.getInt();
+        int[] faceOffsets = ints(buf, f + 1), faceColor = ints(buf, f);
+        int[] facePoints = ints(buf, buf.getInt());
+        List<Face> faces = new ArrayList<>(f);
+        for (int i = 0; i < f; i++) {
+            faces.add(new Face(slice(facePoints, faceOffsets[i], faceOffsets[i + 1]), color(colors, strings, faceColor[i])));
+        }
+
+        int c = buf.getInt();
+        int[] collName = ints(buf, c), collOffsets = ints(buf, c + 1);
+        int[] collMembers = ints(buf, buf.getInt());
+        Map<String, List<Integer>> collections = new HashMap<>(c * 2);
+        for (int i = 0; i < c; i++) {
+            collections.put(str(strings, collName[i]), slice(collMembers, collOffsets[i], collOffsets[i + 1]));
+        }
+
+        int k = buf.getInt();
+        int[] clipId = ints(buf, k), clipName = ints(buf, k), clipType = ints(buf, k), clipEasing = ints(buf, k);
+        int[] clipTarget = ints(buf, k), clipHasBase = ints(buf, k);
+        double[] v = doubles(buf, k * CLIP_DOUBLES);
+        List<WorldStateService.TimelineClip> clips = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            WorldStateService.TimelineClip t = new WorldStateService.TimelineClip();
+            t.id = str(strings, clipId[i]);
+            t.name = str(strings, clipName[i]);
+            t.type = str(strings, clipType[i]);
+            String easing = str(strings, clipEasing[i]);
+            if (easing != null) t.easing = easing;
+            t.targetId = clipTarget[i];
+            t.hasBase = clipHasBase[i] != 0;
+            int o = i * CLIP_DOUBLES;
+            t.startTime = v[o]; t.endTime = v[o + 1];
+            t.sx = v[o + 2]; t.sy = v[o + 3]; t.sz = v[o + 4];
+            t.ex = v[o + 5]; t.ey = v[o + 6]; t.ez = v[o + 7];
+            t.px = v[o + 8]; t.py = v[o + 9]; t.pz = v[o + 10];
+            t.bx = v[o + 11]; t.by = v[o + 12]; t.bz = v[o + 13];
+            clips.add(t);
+        }
+        double currentTime = buf.getDouble();
+
+        return new WorldState(points, connections, faces, collections, currentTime, false, clips);
+    }
+
+    private static int[] ints(ByteBuffer buf, int count) {
+        int[] a = new int[count];
+        buf.asIntBuffer().get(a);
+        buf.position(buf.position() + 4 * count);
+        return a;
+    }
+
+    private static double[] doubles(ByteBuffer buf, int count) {
+        double[] a = new double[count];
+        buf.asDoubleBuffer().get(a);
+        buf.position(buf.position() + 8 * count);
+        return a;
+    }
+
+    private static List<Integer> slice(int[] a, int from, int to) {
+        List<Integer> list = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) list.add(a[i]);
+        return list;
+    }
+
+    private static String str(String[] strings, int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    private static final int UNRESOLVED = Integer.MIN_VALUE;
+
+    private static int color(int[] colors, String[] strings, int index) {
+        if (index < 0) return Palette.NONE;
+        if (colors[index] == UNRESOLVED) colors[index] = Palette.COLORS.intern(strings[index]);
+        return colors[index];
+    }
+
+    // ==========================
+    // TÖMÖRÍTÉS (verziózott mentés darabjai, Mongo dokumentumok)
+    // ==========================
+
+    static byte[] compress(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 2));
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) out.write(buf, 0, deflater.deflate(buf));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] decompress(byte[] data, int rawSize) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] raw = new byte[rawSize];
+            int n = 0;
+            while (n < rawSize && !inflater.finished()) {
+                int r = inflater.inflate(raw, n, rawSize - n);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += r;
+            }
+            if (n != rawSize) throw new IllegalStateException("Corrupt chunk (" + n + " of " + rawSize + " bytes).");
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt chunk: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // ==========================
+    // STRING TÁBLA
+    // ==========================
+
+    // Ismétlődő szövegek egyszer tárolva; -1 = null
+    private static final class Strings {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int index(String s) {
+            if (s == null) return -1;
+            Integer i = index.get(s);
+            if (i != null) return i;
+            index.put(s, values.size());
+            values.add(s);
+            return values.size() - 1;
+        }
+
+        // count | (len | utf8 bytes)*
+        byte[] encode() {
+            byte[][] encoded = new byte[values.size()][];
+            int size = 4;
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = values.get(i).getBytes(StandardCharsets.UTF_8);
+                size += 4 + encoded[i].length;
+            }
+            ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(encoded.length);
+            for (byte[] b : encoded) out.putInt(b.length).put(b);
+            return out.array();
+        }
+
+        static String[] decode(ByteBuffer buf, int length) {
+            int end = buf.position() + length;
+            String[] result = new String[buf.getInt()];
+            for (int i = 0; i < result.length; i++) {
+                byte[] b = new byte[buf.getInt()];
+                buf.get(b);
+                result[i] = new String(b, StandardCharsets.UTF_8);
+            }
+            buf.position(end);
+            return result;
+        }
+    }
+}
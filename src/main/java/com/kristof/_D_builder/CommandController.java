@@ -2,6 +2,7 @@ package com.kristof._D_builder;
 
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 
 @Controller
@@ -9,25 +10,36 @@ public class CommandController {
 
     private final CommandParserService commandParserService;
     private final WorldStateService worldStateService;
+    private final CommandPipelineService commandPipelineService;
 
     // Bekötjük a segítőinket (Constructor Injection)
-    public CommandController(CommandParserService commandParserService, WorldStateService worldStateService) {
+    public CommandController(CommandParserService commandParserService, WorldStateService worldStateService,
+                             CommandPipelineService commandPipelineService) {
         this.commandParserService = commandParserService;
         this.worldStateService = worldStateService;
+        this.commandPipelineService = commandPipelineService;
     }
 
-    // A frontend ide küldi az üzenetet: /app/send-command
+    // Pipeline: /app/command  {"id": "c42", "command": "AddPoint(0,0,0)"}
+    // A válasz csak a küldőnek megy (/user/queue/command-replies), a világ a szokásos /topic/world-updates-en jön
+    @MessageMapping("/command")
+    public void handlePipelinedCommand(CommandPipelineService.CommandRequest request, SimpMessageHeaderAccessor headers) {
+        commandPipelineService.submit(headers.getSessionId(), headers.getUser(), request);
+    }
+
+    // Régi (egyirányú) út: /app/send-command
     @MessageMapping("/send-command")
 
     // A válasz automatikusan ide megy: /topic/world-updates
     // FONTOS: A visszatérési típus itt változott meg List<Point3D>-ről WorldState-re!
     @SendTo("/topic/world-updates")
-    public WorldState handleCommand(String command) {
+    public WorldState handleCommand(String command) throws Exception {
 
         System.out.println("Parancs érkezett: " + command);
 
         // 1. Feldolgozzuk a parancsot (pl. hozzáadja a pontot vagy összeköti őket)
-        String result = commandParserService.processCommand(command);
+        // Kötegként: a többi íróval sorban fut, és a végén lezárul (a broadcast nélküli Move is)
+        String result = worldStateService.runDeferred(() -> commandParserService.processCommand(command));
         System.out.println("Eredmény: " + result);
 
         // 2. Visszaküldjük a TELJES világ állapotát (pontok + vonalak)
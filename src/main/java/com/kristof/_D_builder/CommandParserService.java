@@ -3,30 +3,72 @@ package com.kristof._D_builder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class CommandParserService {
 
     private final WorldStateService worldStateService;
-    private final ProjectStorageService projectStorageService;
+    private final ProjectJobService projectJobService;
+    private final TrussSolverService trussSolverService;
+    private final CutListService cutListService;
+    private final CollisionService collisionService;
+
+    // Elnevezett makrók felhasználónként (a "Macro Név(...) { ... }" paranccsal); a Script-ek és a parancssor is
+    // hívhatja, de csak a saját makróit látja (más felhasználó nem írhatja felül). Névtelen parancsoké a "" kulcs.
+    private final Map<String, Map<String, CommandScript.Macro>> macrosByUser = new ConcurrentHashMap<>();
 
     @Autowired
     // JAVÍTVA: Most már két szervizt injektálunk!
-    public CommandParserService(WorldStateService worldStateService, ProjectStorageService projectStorageService) {
+    public CommandParserService(WorldStateService worldStateService, ProjectJobService projectJobService,
+                                TrussSolverService trussSolverService, CutListService cutListService,
+                                CollisionService collisionService) {
         this.worldStateService = worldStateService;
-        this.projectStorageService = projectStorageService;
+        this.projectJobService = projectJobService;
+        this.trussSolverService = trussSolverService;
+        this.cutListService = cutListService;
+        this.collisionService = collisionService;
     }
 
     public String processCommand(String command) {
+        TraceEvents.Command event = new TraceEvents.Command();
+        event.begin();
+        String result = null;
+        try {
+            result = dispatch(command);
+            return result;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.commandType = TraceEvents.commandType(command != null ? command.trim() : null);
+                event.length = command != null ? command.length() : 0;
+                event.ok = result != null && !CommandScript.isFailure(result);
+                event.commit();
+            }
+        }
+    }
+
+    private String dispatch(String command) {
         if (command == null || command.trim().isEmpty()) return "";
 
         command = command.trim();
 
+        // --- SCRIPT / MAKRÓ ---
+        if (command.startsWith("Script")) return parseScript(command);
+        if (command.startsWith("IfUnchanged")) return parseIfUnchanged(command);
+        if (command.equals("Macros")) return listMacros();
+        if (command.startsWith("DeleteMacro")) return parseDeleteMacro(command);
+        if (command.startsWith("Macro")) return parseMacroDefinition(command);
+        CommandScript.Macro macro = findMacroCall(command);
+        if (macro != null) return parseMacroCall(macro, command);
+
         // --- CONTROL COMMANDS ---
         if (command.equalsIgnoreCase("Clear")) { worldStateService.clear(); return "World cleared."; }
-        if (command.equalsIgnoreCase("Undo")) { worldStateService.undo(); return "Undo executed."; }
-        if (command.equalsIgnoreCase("Redo")) { worldStateService.redo(); return "Redo executed."; }
+        if (command.equalsIgnoreCase("Undo")) return worldStateService.undo();
+        if (command.equalsIgnoreCase("Redo")) return worldStateService.redo();
         if (command.equalsIgnoreCase("Play")) { worldStateService.play(); return "Timeline playing."; }
         if (command.equalsIgnoreCase("Pause")) { worldStateService.pause(); return "Timeline paused."; }
         if (command.equalsIgnoreCase("Stop") || command.equalsIgnoreCase("Stop()")) { worldStateService.stop(); return "Timeline stopped."; }
@@ -60,6 +102,9 @@ public class CommandParserService {
         if (command.startsWith("AddCollection")) return parseAddCollection(command);
         if (command.startsWith("AddToCollection")) return parseAddToCollection(command);
         if (command.startsWith("RemoveFromCollection")) return parseRemoveFromCollection(command);
+        if (command.startsWith("UnionCollections")) return parseCombineCollections(command, WorldStateService.SetOperation.UNION);
+        if (command.startsWith("IntersectCollections")) return parseCombineCollections(command, WorldStateService.SetOperation.INTERSECTION);
+        if (command.startsWith("SubtractCollections")) return parseCombineCollections(command, WorldStateService.SetOperation.DIFFERENCE);
 
         // --- ANIMATION / CLIP COMMANDS ---
         if (command.startsWith("DeleteClipById")) return parseDeleteClipById(command);
@@ -67,6 +112,24 @@ public class CommandParserService {
         if (command.startsWith("UpdateClip")) return parseUpdateClip(command);
         if (command.startsWith("AddClip")) return parseAddClip(command);
 
+        // --- GENERATOR COMMANDS ---
+        if (command.startsWith("Grid")) return parseGenerator(command, "Grid");
+        if (command.startsWith("Lattice")) return parseGenerator(command, "Lattice");
+        if (command.startsWith("Circle")) return parseGenerator(command, "Circle");
+        if (command.startsWith("Array")) return parseGenerator(command, "Array");
+
+        // --- ANALYSIS COMMANDS ---
+        if (command.equalsIgnoreCase("ClearSupports")) { trussSolverService.clearSupports(); return "Supports cleared."; }
+        if (command.equalsIgnoreCase("ClearLoads")) { trussSolverService.clearLoads(); return "Loads cleared."; }
+        if (command.startsWith("Support")) return parseSupport(command);
+        if (command.startsWith("RemoveSupport")) return parseRemoveSupport(command);
+        if (command.startsWith("Load(")) return parseLoad(command);
+        if (command.startsWith("RemoveLoad")) return parseRemoveLoad(command);
+        if (command.startsWith("Analyze")) return parseAnalyze(command);
+        if (command.startsWith("CutList")) return parseCutList(command);
+        if (command.startsWith("Collisions")) return parseCollisions(command);
+        if (command.startsWith("CheckCollisions")) return parseCheckCollisions(command);
+
         return "Unknown command: " + command;
     }
 
@@ -192,7 +255,7 @@ public class CommandParserService {
             String listPart = content.substring(firstComma + 1).trim();
 
             // Itt hívjuk az új okos függvényt!
-            List<Integer> ids = parseIdList(listPart);
+            IdSet ids = parseIdList(listPart);
 
             worldStateService.createCollection(name, ids);
             return "Collection '" + name + "' created with " + ids.size() + " points.";
@@ -209,12 +272,28 @@ public class CommandParserService {
             String listPart = content.substring(firstComma + 1).trim();
 
             // Itt is hívjuk az új okos függvényt!
-            List<Integer> ids = parseIdList(listPart);
+            IdSet ids = parseIdList(listPart);
 
             int addedCount = worldStateService.addToCollection(name, ids);
             return addedCount + " points added to '" + name + "'.";
         } catch (Exception e) { return "Error AddToCollection: " + e.getMessage(); }
     }
+    // UnionCollections(eredmeny, a, b, ...) / IntersectCollections(...) / SubtractCollections(eredmeny, a, b)
+    // Az eredmény lehet az egyik forrás neve is (felülírja)
+    private String parseCombineCollections(String cmd, WorldStateService.SetOperation op) {
+        try {
+            String[] parts = extractParams(cmd);
+            if (parts.length < 3) return "Error format. Usage: " + cmd.substring(0, cmd.indexOf("(")) + "(result, a, b, ...)";
+            String target = parts[0].trim();
+            List<String> sources = new ArrayList<>();
+            for (int i = 1; i < parts.length; i++) sources.add(parts[i].trim());
+
+            int size = worldStateService.combineCollections(target, op, sources);
+            if (size < 0) return "Collection not found.";
+            return "Collection '" + target + "' now has " + size + " points.";
+        } catch (Exception e) { return "Error combining collections: " + e.getMessage(); }
+    }
+
     private String parseRemoveCollection(String cmd) {
         try {
             // RemoveCollection(name)
@@ -236,8 +315,12 @@ public class CommandParserService {
         } catch (Exception e) { return "Error renaming collection."; }
     }
     // Segédfüggvény: [p1, p3...p6, p8] formátum feldolgozása
-    private List<Integer> parseIdList(String param) {
-        List<Integer> ids = new ArrayList<>();
+    // A tartományok közvetlenül a bitmapbe kerülnek, nem bontjuk ki őket egyenként
+    // Csak a már kiosztott ID-k (0 ... nextId - 1): egy p0...p2147483647 tartomány se foglaljon gigabájtokat
+    // a kötegzár alatt; a nem létező pontokra a parancsok úgysem hatnak
+    private IdSet parseIdList(String param) {
+        IdSet ids = new IdSet();
+        int maxId = worldStateService.getNextId() - 1;
         // 1. Szögletes zárójelek eltávolítása
         String clean = param.trim().replace("[", "").replace("]", "");
 
@@ -258,13 +341,8 @@ public class CommandParserService {
                         int start = Integer.parseInt(parts[0].replace("p", "").trim());
                         int end = Integer.parseInt(parts[1].replace("p", "").trim());
 
-                        // Helyes sorrend biztosítása (ha p7...p3-at írtak volna)
-                        int min = Math.min(start, end);
-                        int max = Math.max(start, end);
-
-                        for (int i = min; i <= max; i++) {
-                            ids.add(i);
-                        }
+                        // Helyes sorrend biztosítása (ha p7...p3-at írtak volna) az addRange-en belül
+                        if (Math.min(start, end) <= maxId) ids.addRange(Math.min(start, maxId), Math.min(end, maxId));
                     } catch (NumberFormatException e) {
                         System.err.println("Invalid range format: " + token);
                     }
@@ -272,7 +350,8 @@ public class CommandParserService {
             } else {
                 // SIMA PONT (pl. p5)
                 try {
-                    ids.add(Integer.parseInt(token.replace("p", "").trim()));
+                    int id = Integer.parseInt(token.replace("p", "").trim());
+                    if (id <= maxId) ids.add(id);
                 } catch (NumberFormatException e) {
                     System.err.println("Invalid ID format: " + token);
                 }
@@ -286,9 +365,9 @@ public class CommandParserService {
             int firstComma = content.indexOf(",");
             String name = content.substring(0, firstComma).trim();
             String listPart = content.substring(firstComma + 1).trim();
-            List<Integer> ids = parseList(listPart);
-            worldStateService.removeFromCollection(name, ids);
-            return "Removed from collection.";
+            IdSet ids = parseIdList(listPart);
+            int removed = worldStateService.removeFromCollection(name, ids);
+            return removed + " points removed from collection.";
         } catch (Exception e) { return "Error RemoveFromCollection: " + e.getMessage(); }
     }
 
@@ -304,10 +383,17 @@ public class CommandParserService {
             // Ez helyesen kezeli a zárójeleket a [p0,p1] esetén is
             List<String> parts = splitParams(content);
 
+            // Opcionális kulcsszavas paraméterek az 5. után: ease=easeInOut, pivot=[x,y,z] vagy pivot=p5
+            Map<String, String> options = extractOptions(parts, 4);
+            Easing easing = Easing.parse(options.getOrDefault("ease", options.get("easing")));
+            String pivotStr = options.get("pivot");
+
             if (parts.size() < 5) return "Error: Not enough parameters.";
 
             String targetStr = parts.get(0).trim();
             String type = parts.get(1).trim();
+            String upperType = type.toUpperCase();
+            boolean isMove = !upperType.startsWith("ROTATE") && !upperType.startsWith("SCALE");
             double startTime = Double.parseDouble(parts.get(2).trim());
             double endTime = Double.parseDouble(parts.get(3).trim());
 
@@ -351,6 +437,15 @@ public class CommandParserService {
                 if (axis.equals("x")) dx = amount;
                 else if (axis.equals("y")) dy = amount;
                 else if (axis.equals("z")) dz = amount;
+
+                // SCALE tengelyes módban a többi tengely változatlan (szorzó = 1)
+                if (upperType.startsWith("SCALE")) {
+                    absX = axis.equals("x") ? amount : 1;
+                    absY = axis.equals("y") ? amount : 1;
+                    absZ = axis.equals("z") ? amount : 1;
+                } else {
+                    absX = dx; absY = dy; absZ = dz;
+                }
             }
 
             // 3. LÉPÉS: Célpontok feloldása (Lista, Collection vagy Single ID)
@@ -366,20 +461,51 @@ public class CommandParserService {
                 }
             }
 
+            // ROTATE / SCALE pivot: megadott pont / koordináta, különben a célpontok középpontja
+            double pivotX = 0, pivotY = 0, pivotZ = 0;
+            if (!isMove) {
+                if (pivotStr != null && pivotStr.startsWith("[")) {
+                    String[] pc = pivotStr.replace("[", "").replace("]", "").split(",");
+                    pivotX = Double.parseDouble(pc[0].trim());
+                    pivotY = Double.parseDouble(pc[1].trim());
+                    pivotZ = Double.parseDouble(pc[2].trim());
+                } else if (pivotStr != null) {
+                    Point3D pivot = worldStateService.getPoint(parseId(pivotStr));
+                    if (pivot == null) return "Error: Pivot not found.";
+                    pivotX = pivot.x(); pivotY = pivot.y(); pivotZ = pivot.z();
+                } else {
+                    int valid = 0;
+                    for (int id : targetIds) {
+                        Point3D p = worldStateService.getPoint(id);
+                        if (p == null) continue;
+                        pivotX += p.x(); pivotY += p.y(); pivotZ += p.z();
+                        valid++;
+                    }
+                    if (valid > 0) { pivotX /= valid; pivotY /= valid; pivotZ /= valid; }
+                }
+            }
+
             // 4. LÉPÉS: Klipek létrehozása
             int count = 0;
             for (int id : targetIds) {
+                Point3D p = worldStateService.getPoint(id);
+                if (p == null) continue;
+                if (!isMove) {
+                    worldStateService.addClip(id, type, startTime, endTime, absX, absY, absZ, namePart,
+                            easing, pivotX, pivotY, pivotZ);
+                    count++;
+                    continue;
+                }
                 double tx, ty, tz;
                 if (isVectorMode) {
                     tx = absX; ty = absY; tz = absZ;
                 } else {
-                    Point3D p = worldStateService.getPoint(id);
-                    if (p == null) continue;
                     tx = p.x() + dx;
                     ty = p.y() + dy;
                     tz = p.z() + dz;
                 }
-                worldStateService.addClip(id, type, startTime, endTime, tx, ty, tz, namePart);
+                worldStateService.addClip(id, type, startTime, endTime, tx, ty, tz, namePart,
+                        easing, p.x(), p.y(), p.z());
                 count++;
             }
             return "Added " + count + " clips.";
@@ -408,16 +534,373 @@ public class CommandParserService {
 
     private String parseUpdateClip(String cmd) {
         try {
+            // UpdateClip(id, name, start, end[, easing])
             String[] parts = extractParams(cmd);
-            worldStateService.updateClip(parts[0], parts[1], Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+            Easing easing = (parts.length > 4) ? Easing.parse(parts[4]) : null;
+            worldStateService.updateClip(parts[0].trim(), parts[1].trim(), Double.parseDouble(parts[2].trim()),
+                    Double.parseDouble(parts[3].trim()), easing);
             return "Clip updated.";
         } catch(Exception e) { return "Error updating."; }
     }
 
+    // ==========================================
+    // 4. GENERATOR COMMANDS
+    // ==========================================
+
+    // Grid(nx, ny, nz, spacing, ...)      Lattice(nx, ny, nz, spacing, ...)
+    // Circle(n, radius, ...)              Array(collection, count, [dx,dy,dz], ...)
+    // Közös opciók: color=#.., edgeColor=#.., thickness=1, name=gyujtemeny
+    // Grid/Lattice: origin=[x,y,z]   Circle: center=[x,y,z], axis=y
+    private String parseGenerator(String cmd, String kind) {
+        try {
+            String content = cmd.substring(cmd.indexOf("(") + 1, cmd.lastIndexOf(")"));
+            List<String> parts = splitParams(content);
+            Map<String, String> options = extractOptions(parts, 0);
+
+            String pointColor = options.getOrDefault("color", "#ffffff");
+            ProceduralGenerator.Style style = new ProceduralGenerator.Style(
+                    pointColor,
+                    options.getOrDefault("edgecolor", pointColor),
+                    Double.parseDouble(options.getOrDefault("thickness", "1.0")));
+            String collection = options.getOrDefault("name", options.get("collection"));
+
+            ProceduralGenerator.Geometry geometry;
+            switch (kind) {
+                case "Grid":
+                case "Lattice": {
+                    if (parts.size() < 4) return "Error format. Usage: " + kind + "(nx, ny, nz, spacing)";
+                    double[] origin = parseVector(options.get("origin"), 0);
+                    geometry = ProceduralGenerator.lattice(
+                            Integer.parseInt(parts.get(0)), Integer.parseInt(parts.get(1)), Integer.parseInt(parts.get(2)),
+                            Double.parseDouble(parts.get(3)), origin[0], origin[1], origin[2],
+                            kind.equals("Lattice"), style);
+                    break;
+                }
+                case "Circle": {
+                    if (parts.size() < 2) return "Error format. Usage: Circle(n, radius)";
+                    double[] center = parseVector(options.get("center"), 0);
+                    geometry = ProceduralGenerator.circle(Integer.parseInt(parts.get(0)), Double.parseDouble(parts.get(1)),
+                            center[0], center[1], center[2], options.get("axis"), style);
+                    break;
+                }
+                default: {
+                    if (parts.size() < 3) return "Error format. Usage: Array(collection, count, [dx,dy,dz])";
+                    List<Integer> ids = worldStateService.getCollectionIds(parts.get(0));
+                    if (ids == null) return "Collection not found.";
+                    double[] offset = parseVector(parts.get(2), 0);
+                    geometry = ProceduralGenerator.array(worldStateService.getPoints(ids),
+                            worldStateService.getConnections(), Integer.parseInt(parts.get(1)),
+                            offset[0], offset[1], offset[2]);
+                    break;
+                }
+            }
+
+            int firstId = worldStateService.addGeneratedGeometry(geometry, collection);
+            String range = geometry.pointCount() > 0
+                    ? " (p" + firstId + "...p" + (firstId + geometry.pointCount() - 1) + ")" : "";
+            return kind + ": " + geometry.pointCount() + " points, " + geometry.edgeCount() + " connections" + range + ".";
+        } catch (Exception e) { return "Error " + kind + ": " + e.getMessage(); }
+    }
+
+    // ==========================================
+    // 5. ANALYSIS COMMANDS (TRUSS)
+    // ==========================================
+
+    // Support(p1 | [p1, p4...p6] | gyujtemeny[, xyz])  -> alapértelmezetten mindhárom irányban rögzít
+    private String parseSupport(String cmd) {
+        try {
+            List<String> parts = splitParams(cmd.substring(cmd.indexOf("(") + 1, cmd.lastIndexOf(")")));
+            IdSet ids = resolveTargets(parts.get(0));
+            if (ids == null) return "Error: Target not found.";
+            String axes = parts.size() > 1 ? parts.get(1) : "xyz";
+            int count = trussSolverService.addSupports(ids, axes);
+            return count + " supports set (" + axes.trim() + ").";
+        } catch (Exception e) { return "Error Support: " + e.getMessage(); }
+    }
+
+    private String parseRemoveSupport(String cmd) {
+        try {
+            IdSet ids = resolveTargets(cmd.substring(cmd.indexOf("(") + 1, cmd.lastIndexOf(")")));
+            if (ids == null) return "Error: Target not found.";
+            return trussSolverService.removeSupports(ids) + " supports removed.";
+        } catch (Exception e) { return "Error RemoveSupport: " + e.getMessage(); }
+    }
+
+    // Load(p1 | [..] | gyujtemeny, fx, fy, fz)  [N], pontonként hozzáadódik a meglévő teherhez
+    private String parseLoad(String cmd) {
+        try {
+            List<String> parts = splitParams(cmd.substring(cmd.indexOf("(") + 1, cmd.lastIndexOf(")")));
+            if (parts.size() < 4) return "Error format. Usage: Load(target, fx, fy, fz)";
+            IdSet ids = resolveTargets(parts.get(0));
+            if (ids == null) return "Error: Target not found.";
+            int count = trussSolverService.addLoads(ids, Double.parseDouble(parts.get(1)),
+                    Double.parseDouble(parts.get(2)), Double.parseDouble(parts.get(3)));
+            return "Load applied to " + count + " points.";
+        } catch (Exception e) { return "Error Load: " + e.getMessage(); }
+    }
+
+    private String parseRemoveLoad(String cmd) {
+        try {
+            IdSet ids = resolveTargets(cmd.substring(cmd.indexOf("(") + 1, cmd.lastIndexOf(")")));
+            if (ids == null) return "Error: Target not found.";
+            return trussSolverService.removeLoads(ids) + " loads removed.";
+        } catch (Exception e) { return "Error RemoveLoad: " + e.getMessage(); }
+    }
+
+    // Analyze  /  Analyze(auto=on, color=on, selfweight=off, section=0.02)
+    // auto: minden geometria változás után újraszámol; color: kiemeli a túlterhelt rudakat
+    private String parseAnalyze(String cmd) {
+        try {
+            Map<String, String> options = new HashMap<>();
+            if (cmd.contains("(")) {
+                List<String> parts = splitParams(cmd.substring(cmd.indexOf("(") + 1, cmd.lastIndexOf(")")));
+                options = extractOptions(parts, 0);
+            }
+            if (options.containsKey("color")) trussSolverService.setHighlight(isOn(options.get("color")));
+            if (options.containsKey("selfweight")) trussSolverService.setSelfWeight(isOn(options.get("selfweight")));
+            if (options.containsKey("section")) trussSolverService.setSectionScale(Double.parseDouble(options.get("section")));
+            if (options.containsKey("auto")) {
+                boolean auto = isOn(options.get("auto"));
+                trussSolverService.setAutoAnalysis(auto);
+                if (!auto) return "Automatic analysis off.";
+            }
+
+            TrussSolverService.TrussResult r = trussSolverService.analyzeNow();
+            if (r.members() == 0 || r.memberResults().isEmpty()) return r.message();
+            return String.format("Analysis: %d members, %d nodes, max displacement %.3g m, max utilization %.2f, %d over-stressed. %s",
+                    r.members(), r.nodes(), r.maxDisplacement(), r.maxUtilization(), r.overstressed(), r.message());
+        } catch (Exception e) { return "Error Analyze: " + e.getMessage(); }
+    }
+
+    // CutList  /  CutList(kerf=0.003, improve=500, stock=6)  -> összefoglaló; a teljes terv: GET /api/cutlist
+    private String parseCutList(String cmd) {
+        try {
+            Map<String, String> options = new HashMap<>();
+            if (cmd.contains("(")) {
+                List<String> parts = splitParams(cmd.substring(cmd.indexOf("(") + 1, cmd.lastIndexOf(")")));
+                options = extractOptions(parts, 0);
+            }
+            CutListService.CutListResult r = cutListService.optimize(new CutListService.Options(
+                    Double.parseDouble(options.getOrDefault("kerf", "0.003")),
+                    Math.min(Long.parseLong(options.getOrDefault("improve", "0")), 10_000),
+                    options.containsKey("stock") ? Double.parseDouble(options.get("stock")) : null));
+            if (r.materials().isEmpty()) return "Cut list: no connections.";
+
+            StringBuilder sb = new StringBuilder("Cut list: " + r.totalBars() + " bars");
+            for (CutListService.MaterialPlan m : r.materials()) {
+                sb.append(String.format(" | %s (%s) %d x %.2f m, waste %.2f m (%.1f%%)",
+                        m.material(), m.thickness(), m.bars(), m.stockLength(), m.waste(), m.wastePercent()));
+            }
+            return sb.append(" | ").append(r.millis()).append(" ms").toString();
+        } catch (Exception e) { return "Error CutList: " + e.getMessage(); }
+    }
+
+    // Collisions(on|off, points=on, rodScale=0.02, radius=0.08)  -> élő ütközésfigyelés (/topic/collisions)
+    private String parseCollisions(String cmd) {
+        try {
+            List<String> parts = cmd.contains("(")
+                    ? splitParams(cmd.substring(cmd.indexOf("(") + 1, cmd.lastIndexOf(")")))
+                    : new ArrayList<>();
+            Map<String, String> options = extractOptions(parts, 0);
+            boolean on = parts.isEmpty() || parts.get(0).isEmpty() ? !collisionService.isEnabled() : isOn(parts.get(0));
+            collisionService.configure(on,
+                    options.containsKey("points") ? isOn(options.get("points")) : null,
+                    options.containsKey("rodscale") ? Double.parseDouble(options.get("rodscale")) : null,
+                    options.containsKey("radius") ? Double.parseDouble(options.get("radius")) : null);
+            return "Collision detection " + (on ? "on." : "off.");
+        } catch (Exception e) { return "Error Collisions: " + e.getMessage(); }
+    }
+
+    // CheckCollisions(from, to[, step])  -> a timeline kisütése, a világ nem változik
+    private String parseCheckCollisions(String cmd) {
+        try {
+            String[] parts = extractParams(cmd);
+            double from = parts.length > 0 && !parts[0].isBlank() ? Double.parseDouble(parts[0].trim()) : 0;
+            double to = parts.length > 1 ? Double.parseDouble(parts[1].trim()) : worldStateService.getMaxTime();
+            double step = parts.length > 2 ? Double.parseDouble(parts[2].trim()) : 1.0 / 30;
+            CollisionService.BakeReport r = collisionService.bakeTimeline(from, to, step);
+            if (r.contacts().isEmpty()) return "No collisions in " + r.samples() + " samples (" + r.millis() + " ms).";
+            CollisionService.TimedContact firstHit = r.contacts().get(0);
+            return String.format("%d collisions in %d samples, first at %.2fs (%s). %d ms.",
+                    r.contacts().size(), r.samples(), firstHit.time(), firstHit.contact().type(), r.millis());
+        } catch (Exception e) { return "Error CheckCollisions: " + e.getMessage(); }
+    }
+
+    // ==========================================
+    // SCRIPT / MAKRÓ
+    // ==========================================
+
+    // Script { let n = 10; for i in 0..n { AddPoint({i}, 0, 0) } }
+    // Egyszer fordul, majd egyetlen kötegként fut: egy undo lépés, egy broadcast; hibánál semmi sem változik
+    private String parseScript(String cmd) {
+        int open = cmd.indexOf('{'), close = cmd.lastIndexOf('}');
+        if (open < 0 || close < open) return "Error format. Usage: Script { ...commands... }";
+        try {
+            long start = System.nanoTime();
+            Map<String, CommandScript.Macro> scope = new HashMap<>(macros());
+            CommandScript script = CommandScript.compile(cmd.substring(open + 1, close), scope);
+            int count = worldStateService.runBatch(() -> script.run(this::processCommand, scope));
+            return String.format("Script executed: %d commands in %d ms.", count, (System.nanoTime() - start) / 1_000_000);
+        } catch (CommandScript.ScriptException e) {
+            return "Error Script: " + e.getMessage();
+        } catch (Exception e) {
+            return "Error Script: " + e;
+        }
+    }
+
+    // IfUnchanged(42) { MovePoint(5, 1, 2, 3) }   IfUnchanged(42, merge) { ... }
+    // Optimista szerkesztés: a kliens által utoljára látott világ verzióhoz képest. Ha a parancsok által írt
+    // pontot / gyűjteményt azóta más módosította: alapból semmi sem változik ("Error stale"), merge módban csak
+    // az ütköző entitások maradnak a másik felhasználó értékén, a többi változás megmarad.
+    private String parseIfUnchanged(String cmd) {
+        int open = cmd.indexOf('{'), close = cmd.lastIndexOf('}');
+        int paren = cmd.indexOf('('), parenClose = cmd.indexOf(')');
+        if (open < 0 || close < open || paren < 0 || parenClose < paren || parenClose > open) {
+            return "Error format. Usage: IfUnchanged(<version>[, merge]) { ...commands... }";
+        }
+        try {
+            String[] args = cmd.substring(paren + 1, parenClose).split(",");
+            long baseVersion = Long.parseLong(args[0].trim());
+            boolean merge = args.length > 1 && args[1].trim().equalsIgnoreCase("merge");
+            Map<String, CommandScript.Macro> scope = new HashMap<>(macros());
+            CommandScript script = CommandScript.compile(cmd.substring(open + 1, close), scope);
+            WorldStateService.ConditionalResult<Integer> result =
+                    worldStateService.runIfUnchanged(baseVersion, merge, () -> script.run(this::processCommand, scope));
+            return describe(result, baseVersion, result.applied() ? "IfUnchanged executed: " + result.value() + " commands." : null);
+        } catch (NumberFormatException e) {
+            return "Error IfUnchanged: invalid version.";
+        } catch (CommandScript.ScriptException e) {
+            return "Error IfUnchanged: " + e.getMessage();
+        } catch (Exception e) {
+            return "Error IfUnchanged: " + e;
+        }
+    }
+
+    // Egyetlen parancs feltételesen (a pipeline kérés baseVersion mezője); ütközésnél nem változik semmi
+    public String processCommandIfUnchanged(String command, long baseVersion) throws Exception {
+        String blocked = CommandScript.nonTransactional(command);
+        if (blocked != null) return "Error IfUnchanged: " + blocked + " cannot run conditionally (it cannot be rolled back).";
+        WorldStateService.ConditionalResult<String> result =
+                worldStateService.runIfUnchanged(baseVersion, false, () -> processCommand(command));
+        return describe(result, baseVersion, result.value());
+    }
+
+    private static String describe(WorldStateService.ConditionalResult<?> result, long baseVersion, String applied) {
+        String changed = String.join(", ", result.conflicts());
+        if (!result.applied()) return "Error stale: " + changed + " changed since version " + baseVersion + ".";
+        if (result.conflicts().isEmpty()) return applied;
+        return applied + " Kept newer edits of " + changed + " (changed since version " + baseVersion + ").";
+    }
+
+    // Macro Stairs(n, h) { for i in 0..n { AddPoint({i}, {i*h}, 0) } }  -> később: Stairs(100, 0.2)
+    private String parseMacroDefinition(String cmd) {
+        try {
+            Map<String, CommandScript.Macro> own = macrosByUser.computeIfAbsent(userKey(), k -> new ConcurrentHashMap<>());
+            CommandScript.Macro macro = CommandScript.compileMacro(cmd.substring("Macro".length()), new HashMap<>(own));
+            own.put(macro.name(), macro);
+            return "Macro '" + macro.name() + "' defined (" + String.join(", ", macro.params()) + ").";
+        } catch (CommandScript.ScriptException e) {
+            return "Error Macro: " + e.getMessage();
+        }
+    }
+
+    private String parseMacroCall(CommandScript.Macro macro, String cmd) {
+        try {
+            long start = System.nanoTime();
+            String args = cmd.substring(cmd.indexOf('(') + 1, cmd.lastIndexOf(')'));
+            List<Double> values = CommandScript.evalArgs(args);
+            Map<String, CommandScript.Macro> scope = new HashMap<>(macros());
+            int count = worldStateService.runBatch(() -> CommandScript.call(macro, values, this::processCommand, scope));
+            return String.format("Macro %s executed: %d commands in %d ms.", macro.name(), count,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (CommandScript.ScriptException e) {
+            return "Error " + macro.name() + ": " + e.getMessage();
+        } catch (Exception e) {
+            return "Error " + macro.name() + ": " + e;
+        }
+    }
+
+    // Csak "Név(...)" alakra, és csak ha van ilyen nevű makró
+    private CommandScript.Macro findMacroCall(String command) {
+        Map<String, CommandScript.Macro> macros = macros();
+        if (macros.isEmpty()) return null;
+        int paren = command.indexOf('(');
+        if (paren <= 0 || !command.endsWith(")")) return null;
+        return macros.get(command.substring(0, paren).trim());
+    }
+
+    private String listMacros() {
+        Map<String, CommandScript.Macro> macros = macros();
+        if (macros.isEmpty()) return "No macros defined.";
+        StringBuilder sb = new StringBuilder("Macros: ");
+        macros.values().stream().sorted(java.util.Comparator.comparing(CommandScript.Macro::name)).forEach(m ->
+                sb.append(m.name()).append('(').append(String.join(", ", m.params())).append(") "));
+        return sb.toString().trim();
+    }
+
+    private String parseDeleteMacro(String cmd) {
+        try {
+            String name = cmd.substring(cmd.indexOf("(") + 1, cmd.lastIndexOf(")")).trim();
+            Map<String, CommandScript.Macro> own = macrosByUser.get(userKey());
+            return own != null && own.remove(name) != null ? "Macro '" + name + "' deleted." : "Macro not found.";
+        } catch (Exception e) { return "Error DeleteMacro: " + e.getMessage(); }
+    }
+
+    // Az aktuális parancs felhasználójának makrói (csak olvasásra; üres, ha még nincs)
+    private Map<String, CommandScript.Macro> macros() {
+        return macrosByUser.getOrDefault(userKey(), Map.of());
+    }
+
+    private String userKey() {
+        String user = worldStateService.currentEditor();
+        return user != null ? user : "";
+    }
+
+    private boolean isOn(String value) {
+        String v = value.trim().toLowerCase();
+        return v.equals("on") || v.equals("true") || v.equals("1") || v.equals("yes");
+    }
+
     // ==========================================
     // HELPER FUNCTIONS
     // ==========================================
 
+    // Célpont feloldása: [p1, p3...p6] lista, gyűjtemény név vagy egyetlen pont (null, ha egyik sem)
+    private IdSet resolveTargets(String target) {
+        String t = target.trim();
+        if (t.startsWith("[")) return parseIdList(t);
+        IdSet collection = worldStateService.getCollection(t);
+        if (collection != null) return collection;
+        try {
+            IdSet single = new IdSet();
+            single.add(parseId(t));
+            return single;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // A "kulcs=érték" alakú paramétereket kiveszi a listából (a fromIndex-től kezdve).
+    // A kulcsok kisbetűsek; az idézőjeles paramétereket (nevek) nem bántja.
+    private Map<String, String> extractOptions(List<String> parts, int fromIndex) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = parts.size() - 1; i >= fromIndex; i--) {
+            String opt = parts.get(i);
+            int eq = opt.indexOf('=');
+            if (eq <= 0 || opt.startsWith("\"") || opt.startsWith("'")) continue;
+            options.put(opt.substring(0, eq).trim().toLowerCase(), opt.substring(eq + 1).trim());
+            parts.remove(i);
+        }
+        return options;
+    }
+
+    // "[x, y, z]" -> {x, y, z}; null esetén mindhárom a megadott alapérték
+    private double[] parseVector(String vec, double fallback) {
+        if (vec == null || vec.isBlank()) return new double[] { fallback, fallback, fallback };
+        String[] c = vec.replace("[", "").replace("]", "").split(",");
+        return new double[] { Double.parseDouble(c[0].trim()), Double.parseDouble(c[1].trim()), Double.parseDouble(c[2].trim()) };
+    }
+
     private String[] extractParams(String cmd) {
         String content = cmd.substring(cmd.indexOf("(") + 1, cmd.lastIndexOf(")"));
         return content.split(",");
@@ -462,8 +945,9 @@ public class CommandParserService {
             // Idézőjelek levétele, ha van
             name = name.replace("\"", "").replace("'", "");
 
-            ProjectData saved = projectStorageService.saveCurrentProject(name);
-            return "Project saved! ID: " + saved.id;
+            // A mentés a háttérben fut (a pillanatkép már elkészült); az eredmény a /topic/project-jobs címre megy
+            ProjectJobService.JobStatus job = projectJobService.submitSave(name);
+            return "Save started (job " + job.id() + ").";
         } catch (Exception e) {
             return "Error saving: " + e.getMessage();
         }
@@ -478,8 +962,9 @@ public class CommandParserService {
             // Itt trükközhetünk: Ha név alapján akarsz betölteni, ahhoz a repositoryban
             // kellene egy findByName, de most ID alapján a legbiztosabb.
 
-            boolean success = projectStorageService.loadProject(id);
-            return success ? "Project loaded." : "Project not found.";
+            // Beolvasás és dekódolás a háttérben; a világ a végén egy lépésben cserélődik
+            ProjectJobService.JobStatus job = projectJobService.submitLoad(id);
+            return "Load started (job " + job.id() + ").";
         } catch (Exception e) {
             return "Error loading: " + e.getMessage();
         }
@@ -0,0 +1,215 @@
+package com.kristof._D_builder;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Kérés / válasz protokoll a parancsokhoz (pipelining).
+// A kliens a /app/command címre küld {"id": "...", "command": "..."} üzenetet, és a saját
+// /user/queue/command-replies sorára kap választ ugyanazzal az id-val: sikerült-e, a parancs szöveges
+// eredménye, és az a világ verzió, amelyben a változás már látszik. Nem kell megvárni a választ a következő
+// parancs előtt: a parancsok egy szálon, érkezési sorrendben futnak.
+// A szerkesztő (saját Undo / Redo, verzió bélyeg) a kapcsolat felhasználója (WebSocketConfig: bejelentkezett
+// név vagy a böngésző HTTP session-je), nem az üzenet mezője, így más nevében nem lehet szerkeszteni.
+// Opcionálisan "baseVersion" (a kliens által utoljára látott világ verzió): ekkor a parancs csak akkor fut le, ha az általa
+// írt entitásokat azóta más nem módosította, különben "Error stale: ..." válasz jön és nem változik semmi.
+// A világ broadcast le van választva a válaszokról: egy adag egymás után sorban álló parancs után egyetlen
+// world update megy ki (runDeferred), nem parancsonként egy teljes állapot.
+// A hosszú elemzések (Analyze, CutList, CheckCollisions) nem módosítják a világot: az előttük álló parancsok
+// lezárása után külön végrehajtón futnak a lezárt állapoton, a kötegzáron kívül, így nem állítják meg a
+// lejátszást és a többi klienst. A válaszuk később (a sorrendtől függetlenül, az id alapján) érkezik.
+@Service
+public class CommandPipelineService {
+
+    public static final String REPLY_QUEUE = "/queue/command-replies";
+
+    public record CommandRequest(String id, String command, Long baseVersion) {}
+
+    public record CommandReply(String id, String command, boolean ok, String result, long worldVersion,
+                               long sequence, double queuedMs, double processMs) {}
+
+    private record Pending(String sessionId, String editor, CommandRequest request, long sequence, long receivedAt) {}
+
+    private final CommandParserService commandParserService;
+    private final WorldStateService worldStateService;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    private final BlockingQueue<Pending> queue;
+    private final int maxCoalesce;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Thread worker;
+    private final ThreadPoolExecutor analyses;
+    private volatile boolean running = true;
+
+    public CommandPipelineService(CommandParserService commandParserService, WorldStateService worldStateService,
+                                  SimpMessagingTemplate messagingTemplate,
+                                  @Value("${commands.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${commands.max-coalesce:256}") int maxCoalesce,
+                                  @Value("${commands.analysis-threads:2}") int analysisThreads) {
+        this.commandParserService = commandParserService;
+        this.worldStateService = worldStateService;
+        this.messagingTemplate = messagingTemplate;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.maxCoalesce = Math.max(1, maxCoalesce);
+        this.worker = new Thread(this::loop, "command-pipeline");
+        this.worker.setDaemon(true);
+        this.worker.start();
+        AtomicInteger analysisThread = new AtomicInteger();
+        int threads = Math.max(1, analysisThreads);
+        this.analyses = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(64), r -> {
+            Thread t = new Thread(r, "command-analysis-" + analysisThread.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        analyses.shutdownNow();
+    }
+
+    // A STOMP inbound szálról hívva: csak besorol. Teli sornál azonnal hibás választ kap a kliens.
+    // Felhasználó nélküli kapcsolatnál a session a szerkesztő.
+    public void submit(String sessionId, Principal user, CommandRequest request) {
+        if (request == null || request.command() == null) {
+            reply(sessionId, new CommandReply(request != null ? request.id() : null, null, false,
+                    "Error: missing command.", worldStateService.getVersion(), -1, 0, 0));
+            return;
+        }
+        String editor = user != null ? user.getName() : sessionId;
+        Pending p = new Pending(sessionId, editor, request, sequence.incrementAndGet(), System.nanoTime());
+        if (!queue.offer(p)) {
+            reply(sessionId, new CommandReply(request.id(), request.command(), false,
+                    "Error: command queue full (" + queue.size() + " pending).", worldStateService.getVersion(),
+                    p.sequence(), 0, 0));
+        }
+    }
+
+    public int pending() { return queue.size(); }
+
+    // ==========================
+    // FELDOLGOZÁS
+    // ==========================
+
+    private void loop() {
+        List<Pending> drained = new ArrayList<>(maxCoalesce);
+        List<CommandReply> replies = new ArrayList<>(maxCoalesce);
+        List<String> targets = new ArrayList<>(maxCoalesce);
+        while (running) {
+            try {
+                drained.add(queue.take());
+                queue.drainTo(drained, maxCoalesce - 1);
+                // Az elemzések mentén szakaszokra bontva: előbb lezárul, ami előttük jött, és azt látják
+                int from = 0;
+                for (int i = 0; i <= drained.size(); i++) {
+                    if (i < drained.size() && !CommandScript.isAnalysis(drained.get(i).request().command())) continue;
+                    if (i > from) runSegment(drained.subList(from, i), replies, targets);
+                    if (i < drained.size()) submitAnalysis(drained.get(i));
+                    from = i + 1;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Command pipeline hiba: " + e.getMessage());
+            } finally {
+                drained.clear();
+                replies.clear();
+                targets.clear();
+            }
+        }
+    }
+
+    // Egy szakasz egy broadcasttal; a válaszok a broadcast utáni verziót kapják
+    private void runSegment(List<Pending> segment, List<CommandReply> replies, List<String> targets) throws Exception {
+        long[] started = new long[segment.size()], done = new long[segment.size()];
+        String[] results = new String[segment.size()];
+        try {
+            worldStateService.runDeferred(() -> {
+                for (int i = 0; i < segment.size(); i++) {
+                    started[i] = System.nanoTime();
+                    results[i] = execute(segment.get(i));
+                    done[i] = System.nanoTime();
+                }
+                return null;
+            });
+            long version = worldStateService.getVersion();
+            for (int i = 0; i < segment.size(); i++) {
+                Pending p = segment.get(i);
+                replies.add(new CommandReply(p.request().id(), p.request().command(),
+                        !CommandScript.isFailure(results[i]), results[i], version, p.sequence(),
+                        (started[i] - p.receivedAt()) / 1e6, (done[i] - started[i]) / 1e6));
+                targets.add(p.sessionId());
+            }
+            for (int i = 0; i < replies.size(); i++) reply(targets.get(i), replies.get(i));
+        } finally {
+            replies.clear();
+            targets.clear();
+        }
+    }
+
+    // Csak olvas: a lezárt (kiküldött) állapoton, kötegzár és szerkesztő nélkül; teli sornál azonnal hiba
+    private void submitAnalysis(Pending p) {
+        CommandRequest request = p.request();
+        try {
+            analyses.execute(() -> {
+                long started = System.nanoTime();
+                long version = worldStateService.getVersion();
+                String result;
+                try {
+                    result = commandParserService.processCommand(request.command());
+                } catch (Exception e) {
+                    result = "Error: " + e.getMessage();
+                }
+                if (result == null) result = "";
+                reply(p.sessionId(), new CommandReply(request.id(), request.command(), !CommandScript.isFailure(result),
+                        result, version, p.sequence(), (started - p.receivedAt()) / 1e6, (System.nanoTime() - started) / 1e6));
+            });
+        } catch (RejectedExecutionException e) {
+            reply(p.sessionId(), new CommandReply(request.id(), request.command(), false,
+                    "Error: too many analyses running (" + analyses.getQueue().size() + " queued).",
+                    worldStateService.getVersion(), p.sequence(), 0, 0));
+        }
+    }
+
+    private String execute(Pending p) {
+        CommandRequest request = p.request();
+        try {
+            String result = worldStateService.runAs(p.editor(), () -> request.baseVersion() != null
+                    ? commandParserService.processCommandIfUnchanged(request.command(), request.baseVersion())
+                    : commandParserService.processCommand(request.command()));
+            return result != null ? result : "";
+        } catch (Exception e) {
+            return "Error: " + e.getMessage();
+        }
+    }
+
+    // A küldő sessionjére: a session id a "user", és a fejlécben is át kell adni (a kapcsolat szerkesztő nevétől függetlenül)
+    private void reply(String sessionId, CommandReply reply) {
+        if (sessionId == null) return;
+        try {
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setSessionId(sessionId);
+            headers.setLeaveMutable(true);
+            messagingTemplate.convertAndSendToUser(sessionId, REPLY_QUEUE, reply, headers.getMessageHeaders());
+        } catch (Exception e) {
+            System.err.println("Command reply hiba (" + sessionId + "): " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,672 @@
+package com.kristof._D_builder;
+
+import java.util.*;
+
+// Szerver oldali makró nyelv a parancsokhoz. Egyszer fordul (utasítás fa + előre darabolt parancs sablonok),
+// utána tetszőleges számszor futtatható. Példa (sortörés helyett ';' is jó):
+//
+//   Script {
+//     let h = 0.25
+//     macro Step(i) { AddPoint({i}, {i*h}, 0); AddPoint({i}, {i*h}, 1) }
+//     for i in 0..99 { Step(i) }
+//     for i in 0..98 step 1 { Connect(p{2*i}, p{2*i+2}) }
+//   }
+//
+// - let x = kifejezés / x = kifejezés     változó (a for ciklus változója is)
+// - for i in a..b [step s] { ... }         zárt tartomány, a step lehet negatív
+// - macro Név(a, b) { ... }                makró; hívás: Név(1, 2+3) (a hívás előtt kell definiálni)
+// - minden más sor parancs sablon: a {kifejezés} részek behelyettesítődnek (egész értéknél tizedespont nélkül)
+// - kifejezés: + - * / % ^, zárójel, pi, sin cos tan asin acos atan atan2 sqrt abs floor ceil round min max pow
+// - a törzs egy kötegként fut (hibánál visszagörgetődik), ezért Undo / Redo / Clear / LoadProject / SaveProject
+//   nem lehet benne; makró neve nem lehet beépített parancs neve (a makró hívás a parancsok előtt dől el)
+final class CommandScript {
+
+    static final int MAX_COMMANDS = 1_000_000;
+    static final long MAX_ITERATIONS = 10_000_000;
+    static final int MAX_DEPTH = 64;
+
+    // A CommandParserService parancsai (kisbetűvel)
+    private static final Set<String> BUILT_INS = Set.of(
+            "script", "ifunchanged", "macro", "macros", "deletemacro",
+            "clear", "undo", "redo", "play", "pause", "stop", "seek", "saveproject", "loadproject",
+            "addpoint", "connect", "addface", "color", "move", "delete",
+            "addcollection", "addtocollection", "removefromcollection", "removecollection", "renamecollection",
+            "unioncollections", "intersectcollections", "subtractcollections",
+            "addclip", "updateclip", "deleteclip", "deleteclipbyid",
+            "grid", "lattice", "circle", "array",
+            "support", "removesupport", "clearsupports", "load", "removeload", "clearloads",
+            "analyze", "cutlist", "collisions", "checkcollisions");
+
+    // Nem vonhatók vissza / nem a köteg része: az undo történetet, a teljes világot vagy a tárolót érintik
+    private static final Set<String> NON_TRANSACTIONAL = Set.of("undo", "redo", "clear", "loadproject", "saveproject");
+    // Hosszú, a világot nem módosító elemzések: a pipeline ezeket a kötegzáron kívül futtatja
+    private static final Set<String> ANALYSES = Set.of("analyze", "cutlist", "checkcollisions");
+
+    static final class ScriptException extends Exception {
+        ScriptException(String message) { super(message); }
+    }
+
+    // A generált parancsok végrehajtója (CommandParserService::processCommand)
+    @FunctionalInterface
+    interface Executor { String execute(String command); }
+
+    record Macro(String name, List<String> params, Block body) {}
+
+    private final Block body;
+
+    private CommandScript(Block body) {
+        this.body = body;
+    }
+
+    // ==========================
+    // FUTTATÁS
+    // ==========================
+
+    static final class Context {
+        final Executor executor;
+        final Map<String, Macro> macros;
+        int commands;
+        long iterations;
+        int depth;
+
+        Context(Executor executor, Map<String, Macro> macros) {
+            this.executor = executor;
+            this.macros = macros;
+        }
+    }
+
+    // Változók: a makró hívás új szintet nyit (a paraméterek ott élnek), a többi a hívó szintjét látja
+    static final class Env {
+        final Env parent;
+        final Map<String, Double> vars = new HashMap<>();
+
+        Env(Env parent) { this.parent = parent; }
+
+        double get(String name) throws ScriptException {
+            for (Env e = this; e != null; e = e.parent) {
+                Double v = e.vars.get(name);
+                if (v != null) return v;
+            }
+            throw new ScriptException("Unknown variable '" + name + "'");
+        }
+
+        void set(String name, double value) {
+            for (Env e = this; e != null; e = e.parent) {
+                if (e.vars.containsKey(name)) { e.vars.put(name, value); return; }
+            }
+            vars.put(name, value);
+        }
+    }
+
+    // Visszaadja a végrehajtott parancsok számát
+    int run(Executor executor, Map<String, Macro> macros) throws ScriptException {
+        Context ctx = new Context(executor, macros);
+        body.exec(new Env(null), ctx);
+        return ctx.commands;
+    }
+
+    static int call(Macro macro, List<Double> args, Executor executor, Map<String, Macro> macros) throws ScriptException {
+        Context ctx = new Context(executor, macros);
+        invoke(macro, args, new Env(null), ctx, 0);
+        return ctx.commands;
+    }
+
+    private static void invoke(Macro macro, List<Double> args, Env caller, Context ctx, int line) throws ScriptException {
+        if (args.size() != macro.params().size()) {
+            throw new ScriptException(at(line) + macro.name() + " expects " + macro.params().size() + " arguments");
+        }
+        if (++ctx.depth > MAX_DEPTH) throw new ScriptException(at(line) + "Macro nesting too deep (" + MAX_DEPTH + ")");
+        Env local = new Env(caller);
+        for (int i = 0; i < args.size(); i++) local.vars.put(macro.params().get(i), args.get(i));
+        macro.body().exec(local, ctx);
+        ctx.depth--;
+    }
+
+    // ==========================
+    // UTASÍTÁSOK
+    // ==========================
+
+    private interface Stmt {
+        void exec(Env env, Context ctx) throws ScriptException;
+    }
+
+    private record Block(List<Stmt> statements) implements Stmt {
+        public void exec(Env env, Context ctx) throws ScriptException {
+            for (Stmt s : statements) s.exec(env, ctx);
+        }
+    }
+
+    private record Assign(String name, Expr value, boolean declare) implements Stmt {
+        public void exec(Env env, Context ctx) throws ScriptException {
+            double v = value.eval(env);
+            if (declare) env.vars.put(name, v);
+            else env.set(name, v);
+        }
+    }
+
+    private record For(String var, Expr from, Expr to, Expr step, Block body, int line) implements Stmt {
+        public void exec(Env env, Context ctx) throws ScriptException {
+            double a = from.eval(env), b = to.eval(env);
+            double s = step != null ? step.eval(env) : (b >= a ? 1 : -1);
+            if (s == 0 || Double.isNaN(s)) throw new ScriptException(at(line) + "for step must not be zero");
+            // Lebegőpontos lépésnél a végpont kerekítési hibája ne hagyja ki az utolsó iterációt
+            double eps = Math.abs(s) * 1e-9;
+            for (double i = a; s > 0 ? i <= b + eps : i >= b - eps; i += s) {
+                if (++ctx.iterations > MAX_ITERATIONS) {
+                    throw new ScriptException(at(line) + "Iteration limit reached (" + MAX_ITERATIONS + ")");
+                }
+                env.vars.put(var, i);
+                body.exec(env, ctx);
+            }
+        }
+    }
+
+    private record Call(String name, List<Expr> args, int line) implements Stmt {
+        public void exec(Env env, Context ctx) throws ScriptException {
+            Macro macro = ctx.macros.get(name);
+            if (macro == null) throw new ScriptException(at(line) + "Unknown macro '" + name + "'");
+            List<Double> values = new ArrayList<>(args.size());
+            for (Expr e : args) values.add(e.eval(env));
+            invoke(macro, values, env, ctx, line);
+        }
+    }
+
+    // Parancs sablon: szöveg darabok és {kifejezés} helyek felváltva
+    private record Command(List<Object> parts, int line) implements Stmt {
+        public void exec(Env env, Context ctx) throws ScriptException {
+            StringBuilder sb = new StringBuilder(32);
+            for (Object part : parts) {
+                if (part instanceof Expr e) appendNumber(sb, e.eval(env));
+                else sb.append((String) part);
+            }
+            if (++ctx.commands > MAX_COMMANDS) throw new ScriptException(at(line) + "Command limit reached (" + MAX_COMMANDS + ")");
+            String command = sb.toString();
+            String result = ctx.executor.execute(command);
+            if (isFailure(result)) throw new ScriptException(at(line) + command + " -> " + result);
+        }
+    }
+
+    static boolean isBuiltIn(String name) {
+        return BUILT_INS.contains(name.toLowerCase(Locale.ROOT));
+    }
+
+    // A parancs neve (a zárójel / szóköz előtti rész), ha kötegben (Script, makró, IfUnchanged) nem futhat; egyébként null
+    static String nonTransactional(String command) {
+        String name = commandName(command);
+        return NON_TRANSACTIONAL.contains(name.toLowerCase(Locale.ROOT)) ? name : null;
+    }
+
+    // Analyze / CutList / CheckCollisions (felső szinten, nem Script-ben)
+    static boolean isAnalysis(String command) {
+        return ANALYSES.contains(commandName(command).toLowerCase(Locale.ROOT));
+    }
+
+    private static String commandName(String command) {
+        String t = command.trim();
+        int end = 0;
+        while (end < t.length() && Character.isLetter(t.charAt(end))) end++;
+        return t.substring(0, end);
+    }
+
+    // A parancsok hibát szöveggel jeleznek ("Error ...", "Unknown command ...", "Invalid ...")
+    static boolean isFailure(String result) {
+        return result != null && (result.startsWith("Error") || result.startsWith("Unknown command") || result.startsWith("Invalid"));
+    }
+
+    private static void appendNumber(StringBuilder sb, double v) {
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) sb.append((long) v);
+        else sb.append(v);
+    }
+
+    private static String at(int line) {
+        return line > 0 ? "line " + line + ": " : "";
+    }
+
+    // ==========================
+    // KIFEJEZÉSEK
+    // ==========================
+
+    private interface Expr {
+        double eval(Env env) throws ScriptException;
+    }
+
+    private record Num(double value) implements Expr {
+        public double eval(Env env) { return value; }
+    }
+
+    private record Var(String name) implements Expr {
+        public double eval(Env env) throws ScriptException { return env.get(name); }
+    }
+
+    private record Neg(Expr inner) implements Expr {
+        public double eval(Env env) throws ScriptException { return -inner.eval(env); }
+    }
+
+    private record Binary(char op, Expr left, Expr right) implements Expr {
+        public double eval(Env env) throws ScriptException {
+            double a = left.eval(env), b = right.eval(env);
+            return switch (op) {
+                case '+' -> a + b;
+                case '-' -> a - b;
+                case '*' -> a * b;
+                case '/' -> a / b;
+                case '%' -> a % b;
+                default -> Math.pow(a, b);
+            };
+        }
+    }
+
+    private record Func(String name, List<Expr> args) implements Expr {
+        public double eval(Env env) throws ScriptException {
+            double[] v = new double[args.size()];
+            for (int i = 0; i < v.length; i++) v[i] = args.get(i).eval(env);
+            return switch (name) {
+                case "sin" -> Math.sin(v[0]);
+                case "cos" -> Math.cos(v[0]);
+                case "tan" -> Math.tan(v[0]);
+                case "asin" -> Math.asin(v[0]);
+                case "acos" -> Math.acos(v[0]);
+                case "atan" -> Math.atan(v[0]);
+                case "atan2" -> Math.atan2(v[0], v[1]);
+                case "sqrt" -> Math.sqrt(v[0]);
+                case "abs" -> Math.abs(v[0]);
+                case "floor" -> Math.floor(v[0]);
+                case "ceil" -> Math.ceil(v[0]);
+                case "round" -> Math.round(v[0]);
+                case "min" -> Math.min(v[0], v[1]);
+                case "max" -> Math.max(v[0], v[1]);
+                default -> Math.pow(v[0], v[1]);
+            };
+        }
+    }
+
+    private static final Map<String, Integer> FUNCTIONS = Map.ofEntries(
+            Map.entry("sin", 1), Map.entry("cos", 1), Map.entry("tan", 1), Map.entry("asin", 1),
+            Map.entry("acos", 1), Map.entry("atan", 1), Map.entry("atan2", 2), Map.entry("sqrt", 1),
+            Map.entry("abs", 1), Map.entry("floor", 1), Map.entry("ceil", 1), Map.entry("round", 1),
+            Map.entry("min", 2), Map.entry("max", 2), Map.entry("pow", 2));
+
+    // Rekurzív leszálló elemző: expr = term (('+'|'-') term)*, term = unary (('*'|'/'|'%') unary)*,
+    // unary = '-' unary | power, power = atom ('^' unary)?
+    private static final class ExprParser {
+        final String s;
+        final int line;
+        int pos;
+
+        ExprParser(String s, int line) { this.s = s; this.line = line; }
+
+        static Expr parse(String text, int line) throws ScriptException {
+            ExprParser p = new ExprParser(text, line);
+            Expr e = p.expr();
+            p.skip();
+            if (p.pos < p.s.length()) throw p.error("Unexpected '" + p.s.substring(p.pos) + "'");
+            return e;
+        }
+
+        Expr expr() throws ScriptException {
+            Expr left = term();
+            while (true) {
+                skip();
+                if (peek('+') || peek('-')) { char op = s.charAt(pos++); left = fold(new Binary(op, left, term())); }
+                else return left;
+            }
+        }
+
+        Expr term() throws ScriptException {
+            Expr left = unary();
+            while (true) {
+                skip();
+                if (peek('*') || peek('/') || peek('%')) { char op = s.charAt(pos++); left = fold(new Binary(op, left, unary())); }
+                else return left;
+            }
+        }
+
+        Expr unary() throws ScriptException {
+            skip();
+            if (peek('-')) { pos++; Expr inner = unary(); return inner instanceof Num n ? new Num(-n.value()) : new Neg(inner); }
+            if (peek('+')) { pos++; return unary(); }
+            Expr base = atom();
+            skip();
+            if (peek('^')) { pos++; return fold(new Binary('^', base, unary())); }
+            return base;
+        }
+
+        Expr atom() throws ScriptException {
+            skip();
+            if (pos >= s.length()) throw error("Unexpected end of expression");
+            char c = s.charAt(pos);
+            if (c == '(') {
+                pos++;
+                Expr e = expr();
+                expect(')');
+                return e;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                int start = pos;
+                while (pos < s.length() && (Character.isDigit(s.charAt(pos)) || s.charAt(pos) == '.')) {
+                    // ".." a tartomány jele, nem tizedespont
+                    if (s.charAt(pos) == '.' && pos + 1 < s.length() && s.charAt(pos + 1) == '.') break;
+                    pos++;
+                }
+                if (pos < s.length() && (s.charAt(pos) == 'e' || s.charAt(pos) == 'E')) {
+                    int save = pos++;
+                    if (pos < s.length() && (s.charAt(pos) == '+' || s.charAt(pos) == '-')) pos++;
+                    if (pos < s.length() && Character.isDigit(s.charAt(pos))) {
+                        while (pos < s.length() && Character.isDigit(s.charAt(pos))) pos++;
+                    } else pos = save;
+                }
+                try {
+                    return new Num(Double.parseDouble(s.substring(start, pos)));
+                } catch (NumberFormatException e) {
+                    throw error("Invalid number '" + s.substring(start, pos) + "'");
+                }
+            }
+            if (Character.isLetter(c) || c == '_') {
+                String name = identifier();
+                skip();
+                if (peek('(')) {
+                    Integer arity = FUNCTIONS.get(name.toLowerCase());
+                    if (arity == null) throw error("Unknown function '" + name + "'");
+                    pos++;
+                    List<Expr> args = new ArrayList<>();
+                    skip();
+                    if (!peek(')')) {
+                        do { args.add(expr()); skip(); } while (peek(',') && ++pos > 0);
+                    }
+                    expect(')');
+                    if (args.size() != arity) throw error(name + " expects " + arity + " arguments");
+                    return fold(new Func(name.toLowerCase(), args));
+                }
+                if (name.equalsIgnoreCase("pi")) return new Num(Math.PI);
+                return new Var(name);
+            }
+            throw error("Unexpected '" + c + "'");
+        }
+
+        // Konstans részkifejezések fordításkor kiértékelve
+        private static Expr fold(Expr e) throws ScriptException {
+            boolean constant = switch (e) {
+                case Binary b -> b.left() instanceof Num && b.right() instanceof Num;
+                case Func f -> f.args().stream().allMatch(a -> a instanceof Num);
+                default -> false;
+            };
+            return constant ? new Num(e.eval(null)) : e;
+        }
+
+        String identifier() {
+            int start = pos;
+            while (pos < s.length() && (Character.isLetterOrDigit(s.charAt(pos)) || s.charAt(pos) == '_')) pos++;
+            return s.substring(start, pos);
+        }
+
+        boolean peek(char c) { return pos < s.length() && s.charAt(pos) == c; }
+
+        void skip() { while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++; }
+
+        void expect(char c) throws ScriptException {
+            skip();
+            if (!peek(c)) throw error("Expected '" + c + "'");
+            pos++;
+        }
+
+        ScriptException error(String message) {
+            return new ScriptException(at(line) + message + " in '" + s.trim() + "'");
+        }
+    }
+
+    // ==========================
+    // FORDÍTÁS
+    // ==========================
+
+    // Egy script törzs (a "Script { ... }" kapcsos zárójelei közötti rész) fordítása.
+    // A törzsben definiált makrók a "macros" táblába kerülnek (a már meglévőket is látja).
+    static CommandScript compile(String source, Map<String, Macro> macros) throws ScriptException {
+        Compiler c = new Compiler(source, macros);
+        Block block = c.block(false);
+        return new CommandScript(block);
+    }
+
+    // "Név(a, b) { ... }" -> makró
+    static Macro compileMacro(String source, Map<String, Macro> macros) throws ScriptException {
+        Compiler c = new Compiler(source, macros);
+        Macro m = c.macro();
+        c.skipSpace();
+        if (c.pos < source.length()) throw c.error("Unexpected text after macro body");
+        return m;
+    }
+
+    static List<Double> evalArgs(String args) throws ScriptException {
+        List<Double> values = new ArrayList<>();
+        for (String a : splitTopLevel(args)) {
+            if (!a.isBlank()) values.add(ExprParser.parse(a, 0).eval(new Env(null)));
+        }
+        return values;
+    }
+
+    private static final class Compiler {
+        final String s;
+        final Map<String, Macro> macros;
+        int pos;
+
+        Compiler(String s, Map<String, Macro> macros) { this.s = s; this.macros = macros; }
+
+        Block block(boolean braced) throws ScriptException {
+            List<Stmt> statements = new ArrayList<>();
+            while (true) {
+                skipSeparators();
+                if (pos >= s.length()) {
+                    if (braced) throw error("Missing '}'");
+                    return new Block(statements);
+                }
+                if (s.charAt(pos) == '}') {
+                    if (!braced) throw error("Unexpected '}'");
+                    pos++;
+                    return new Block(statements);
+                }
+                Stmt st = statement();
+                if (st != null) statements.add(st);
+            }
+        }
+
+        Stmt statement() throws ScriptException {
+            int line = line();
+            // Megjegyzés a sor elején
+            if (s.startsWith("//", pos) || s.charAt(pos) == '#') {
+                while (pos < s.length() && s.charAt(pos) != '\n') pos++;
+                return null;
+            }
+            int start = pos;
+            String word = identifier();
+            skipSpace();
+            switch (word) {
+                case "let", "var" -> {
+                    String name = identifier();
+                    if (name.isEmpty()) throw error("Variable name expected");
+                    skipSpace();
+                    if (!consume('=')) throw error("'=' expected after " + name);
+                    return new Assign(name, ExprParser.parse(untilStatementEnd(), line), true);
+                }
+                case "for" -> {
+                    String var = identifier();
+                    skipSpace();
+                    if (var.isEmpty() || !identifier().equals("in")) throw error("Usage: for i in a..b [step s] { ... }");
+                    String header = untilChar('{');
+                    pos++;
+                    int range = indexOfTopLevel(header, "..");
+                    if (range < 0) throw error("Range 'a..b' expected");
+                    String fromText = header.substring(0, range), rest = header.substring(range + 2);
+                    int stepAt = indexOfWord(rest, "step");
+                    Expr step = null;
+                    if (stepAt >= 0) {
+                        step = ExprParser.parse(rest.substring(stepAt + 4), line);
+                        rest = rest.substring(0, stepAt);
+                    }
+                    return new For(var, ExprParser.parse(fromText, line), ExprParser.parse(rest, line), step, block(true), line);
+                }
+                case "macro" -> {
+                    Macro m = macro();
+                    macros.put(m.name(), m);
+                    return null;
+                }
+                default -> { }
+            }
+            // Értékadás: x = ...
+            if (!word.isEmpty() && peek('=') && !s.startsWith("==", pos)) {
+                pos++;
+                return new Assign(word, ExprParser.parse(untilStatementEnd(), line), false);
+            }
+            // Makró hívás: Név(args)
+            if (!word.isEmpty() && macros.containsKey(word) && peek('(')) {
+                String text = untilStatementEnd().trim();
+                if (!text.endsWith(")")) throw error("')' expected in call to " + word);
+                List<Expr> args = new ArrayList<>();
+                for (String a : splitTopLevel(text.substring(1, text.length() - 1))) {
+                    if (!a.isBlank()) args.add(ExprParser.parse(a, line));
+                }
+                return new Call(word, args, line);
+            }
+            // Parancs sablon
+            pos = start;
+            return template(untilStatementEnd().trim(), line);
+        }
+
+        Macro macro() throws ScriptException {
+            skipSpace();
+            String name = identifier();
+            if (name.isEmpty()) throw error("Macro name expected");
+            if (isBuiltIn(name)) throw error("'" + name + "' is a built-in command and cannot be a macro name");
+            skipSpace();
+            if (!consume('(')) throw error("'(' expected after macro " + name);
+            int close = s.indexOf(')', pos);
+            if (close < 0) throw error("')' expected");
+            List<String> params = new ArrayList<>();
+            for (String p : s.substring(pos, close).split(",")) {
+                String param = p.trim();
+                if (param.isEmpty()) continue;
+                if (!param.matches("[A-Za-z_][A-Za-z0-9_]*")) throw error("Invalid parameter '" + param + "'");
+                params.add(param);
+            }
+            pos = close + 1;
+            skipSpace();
+            if (!consume('{')) throw error("'{' expected for macro " + name);
+            // A törzs fordításakor a saját neve már ismert (rekurzív hívás; a mélységet futáskor korlátozzuk)
+            Macro placeholder = new Macro(name, params, new Block(List.of()));
+            Macro previous = macros.put(name, placeholder);
+            try {
+                Block body = block(true);
+                return new Macro(name, List.copyOf(params), body);
+            } finally {
+                if (previous != null) macros.put(name, previous);
+                else macros.remove(name);
+            }
+        }
+
+        // {kifejezés} helyek kigyűjtése a parancs szövegből
+        Stmt template(String text, int line) throws ScriptException {
+            if (text.isEmpty()) return null;
+            if (text.startsWith("Script") || text.startsWith("Macro")) throw error("Nested Script / Macro is not allowed");
+            String blocked = nonTransactional(text);
+            if (blocked != null) throw error(blocked + " cannot run inside a Script / macro (it cannot be rolled back)");
+            List<Object> parts = new ArrayList<>();
+            int i = 0;
+            while (i < text.length()) {
+                int open = text.indexOf('{', i);
+                if (open < 0) { parts.add(text.substring(i)); break; }
+                int close = text.indexOf('}', open);
+                if (close < 0) throw error("Unclosed '{' in '" + text + "'");
+                if (open > i) parts.add(text.substring(i, open));
+                parts.add(ExprParser.parse(text.substring(open + 1, close), line));
+                i = close + 1;
+            }
+            return new Command(parts, line);
+        }
+
+        // Az utasítás vége: sortörés / ';' / blokkzáró '}' (zárójelen és {kifejezés}-en kívül)
+        String untilStatementEnd() {
+            int start = pos, depth = 0;
+            boolean inExpr = false;
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (inExpr) { if (c == '}') inExpr = false; }
+                else if (c == '{') inExpr = true;
+                else if (c == '(' || c == '[') depth++;
+                else if (c == ')' || c == ']') depth--;
+                else if (depth <= 0 && (c == '\n' || c == ';' || c == '}')) break;
+                pos++;
+            }
+            return s.substring(start, pos);
+        }
+
+        String untilChar(char end) throws ScriptException {
+            int i = s.indexOf(end, pos);
+            if (i < 0) throw error("'" + end + "' expected");
+            String text = s.substring(pos, i);
+            pos = i;
+            return text;
+        }
+
+        String identifier() {
+            int start = pos;
+            while (pos < s.length() && (Character.isLetterOrDigit(s.charAt(pos)) || s.charAt(pos) == '_')) pos++;
+            return s.substring(start, pos);
+        }
+
+        boolean peek(char c) { return pos < s.length() && s.charAt(pos) == c; }
+
+        boolean consume(char c) {
+            if (!peek(c)) return false;
+            pos++;
+            return true;
+        }
+
+        void skipSpace() { while (pos < s.length() && (s.charAt(pos) == ' ' || s.charAt(pos) == '\t' || s.charAt(pos) == '\r')) pos++; }
+
+        void skipSeparators() { while (pos < s.length() && (Character.isWhitespace(s.charAt(pos)) || s.charAt(pos) == ';')) pos++; }
+
+        int line() {
+            int line = 1;
+            for (int i = 0; i < pos && i < s.length(); i++) if (s.charAt(i) == '\n') line++;
+            return line;
+        }
+
+        ScriptException error(String message) {
+            return new ScriptException(at(line()) + message);
+        }
+    }
+
+    // Vessző mentén darabol, de a zárójeleken belül nem
+    private static List<String> splitTopLevel(String text) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0, start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(' || c == '[') depth++;
+            else if (c == ')' || c == ']') depth--;
+            else if (c == ',' && depth == 0) { parts.add(text.substring(start, i)); start = i + 1; }
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    private static int indexOfTopLevel(String text, String token) {
+        int depth = 0;
+        for (int i = 0; i + token.length() <= text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(') depth++;
+            else if (c == ')') depth--;
+            else if (depth == 0 && text.startsWith(token, i)) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOfWord(String text, String word) {
+        int i = text.indexOf(word);
+        while (i >= 0) {
+            boolean before = i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1));
+            boolean after = i + word.length() >= text.length() || !Character.isLetterOrDigit(text.charAt(i + word.length()));
+            if (before && after) return i;
+            i = text.indexOf(word, i + 1);
+        }
+        return -1;
+    }
+}
@@ -1,4 +1,35 @@
 package com.kristof._D_builder;
 
-public record Connection(int fromId, int toId, String color, double thickness,String materialName, double pricePerMeter) {
-}
\ No newline at end of file
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// Szín és anyag (név + méterár) palettabeli indexként; a szöveges alakot az accessorok adják vissza.
+// A JSON alak a korábbi: color, materialName és pricePerMeter is kimegy (az ár a rúd létrehozásakor rögzített).
+public record Connection(int fromId, int toId, @JsonIgnore int colorIndex, double thickness, @JsonIgnore int materialIndex) {
+
+    public Connection(int fromId, int toId, String color, double thickness, String materialName, double pricePerMeter) {
+        this(fromId, toId, Palette.COLORS.intern(color), thickness,
+                Palette.MATERIALS.intern(new Palette.Material(materialName, pricePerMeter)));
+    }
+
+    @JsonProperty("color")
+    public String color() {
+        return Palette.COLORS.get(colorIndex);
+    }
+
+    public Palette.Material material() {
+        return Palette.MATERIALS.get(materialIndex);
+    }
+
+    @JsonProperty("materialName")
+    public String materialName() {
+        Palette.Material m = material();
+        return m != null ? m.name() : null;
+    }
+
+    @JsonProperty("pricePerMeter")
+    public double pricePerMeter() {
+        Palette.Material m = material();
+        return m != null ? m.pricePerMeter() : 0;
+    }
+}
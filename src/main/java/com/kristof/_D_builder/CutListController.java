@@ -0,0 +1,24 @@
+package com.kristof._D_builder;
+
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/cutlist")
+@CrossOrigin(origins = "http://localhost:5173")
+public class CutListController {
+
+    private final CutListService cutListService;
+
+    public CutListController(CutListService cutListService) {
+        this.cutListService = cutListService;
+    }
+
+    // VÁGÁSI TERV: GET /api/cutlist?kerf=0.003&improveMs=500&stock=6
+    // kerf: fűrészrés (m), improveMs: javító fázis időkerete (0 = csak FFD/BFD), stock: szálhossz felülírása (m)
+    @GetMapping
+    public CutListService.CutListResult cutList(@RequestParam(defaultValue = "0.003") double kerf,
+                                                @RequestParam(defaultValue = "0") long improveMs,
+                                                @RequestParam(required = false) Double stock) {
+        return cutListService.optimize(new CutListService.Options(kerf, Math.min(improveMs, 10_000), stock));
+    }
+}
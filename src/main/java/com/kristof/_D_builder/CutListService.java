@@ -0,0 +1,336 @@
+package com.kristof._D_builder;
+
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+// Vágási terv (cut-list): a rudak hosszait anyagonként (szín + vastagság) szálhosszakba pakolja.
+// 1D bin packing: FFD (szegmensfa) és BFD (rendezett maradék-térkép), a jobbik marad;
+// opcionálisan időkorláton belüli párhuzamos javítás (szál-elhagyó lokális keresés).
+// A hosszak belül egész mikrométerben számolódnak, így nincs lebegőpontos kerekítési hiba.
+@Service
+public class CutListService {
+
+    private static final double UNIT = 1_000_000.0; // m -> µm
+
+    public record Options(double kerf, long improveMillis, Double stockOverride) {
+        public Options {
+            if (kerf < 0) kerf = 0;
+            if (improveMillis < 0) improveMillis = 0;
+            if (stockOverride != null && !(stockOverride > 0)) stockOverride = null;
+        }
+    }
+
+    // Egy vágás: melyik összekötés (vagy annak hányadik darabja, ha hosszabb a szálnál)
+    public record Cut(int fromId, int toId, double length, int part, int parts) {}
+
+    public record BarPlan(int bar, List<Cut> cuts, double used, double offcut) {}
+
+    public record MaterialPlan(String material, String color, double thickness, double stockLength, int pieces,
+                               int bars, int lowerBound, double usedLength, double waste, double wastePercent,
+                               double cost, String method, List<BarPlan> plan) {}
+
+    public record CutListResult(List<MaterialPlan> materials, int totalBars, double totalWaste, double totalCost,
+                                long millis) {}
+
+    private final WorldStateService worldStateService;
+    private final PricingService pricingService;
+
+    public CutListService(WorldStateService worldStateService, PricingService pricingService) {
+        this.worldStateService = worldStateService;
+        this.pricingService = pricingService;
+    }
+
+    public CutListResult optimize(Options options) {
+        long start = System.nanoTime();
+        WorldState state = worldStateService.getWorldState();
+        Map<Integer, Point3D> byId = new HashMap<>(state.points().size() * 2);
+        for (Point3D p : state.points()) byId.put(p.id(), p);
+
+        // 1. Csoportosítás anyag (szín) + vastagság szerint, a kapcsolat sorrendjében
+        Map<String, List<Connection>> groups = new LinkedHashMap<>();
+        for (Connection c : state.connections()) {
+            if (!byId.containsKey(c.fromId()) || !byId.containsKey(c.toId())) continue;
+            groups.computeIfAbsent(c.color().toLowerCase() + "|" + c.thickness(), k -> new ArrayList<>()).add(c);
+        }
+
+        // 2. Csoportonként pakolás (a csoportok egymástól függetlenek)
+        List<List<Connection>> groupList = new ArrayList<>(groups.values());
+        MaterialPlan[] plans = new MaterialPlan[groupList.size()];
+        IntStream.range(0, plans.length).parallel()
+                .forEach(g -> plans[g] = planGroup(groupList.get(g), byId, options));
+
+        int totalBars = 0;
+        double totalWaste = 0, totalCost = 0;
+        for (MaterialPlan p : plans) {
+            totalBars += p.bars();
+            totalWaste += p.waste();
+            totalCost += p.cost();
+        }
+        return new CutListResult(Arrays.asList(plans), totalBars, totalWaste, totalCost,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private MaterialPlan planGroup(List<Connection> group, Map<Integer, Point3D> byId, Options options) {
+        Connection first = group.get(0);
+        PricingService.MaterialInfo mat = pricingService.getMaterialByColor(first.color());
+        double stockLength = options.stockOverride() != null ? options.stockOverride() : mat.stockLength();
+        long stock = Math.round(stockLength * UNIT);
+        long kerf = Math.round(options.kerf() * UNIT);
+
+        // A szálnál hosszabb rudak egész szálakra + maradékra bomlanak (toldás)
+        List<long[]> raw = new ArrayList<>(group.size()); // {hossz µm, kapcsolat index, rész, részek}
+        for (int i = 0; i < group.size(); i++) {
+            Connection c = group.get(i);
+            Point3D a = byId.get(c.fromId()), b = byId.get(c.toId());
+            double dx = b.x() - a.x(), dy = b.y() - a.y(), dz = b.z() - a.z();
+            long len = Math.round(Math.sqrt(dx * dx + dy * dy + dz * dz) * UNIT);
+            if (len <= 0) continue;
+            if (len <= stock) { raw.add(new long[]{len, i, 1, 1}); continue; }
+            int parts = (int) ((len + stock - 1) / stock);
+            for (int part = 1; part <= parts; part++) {
+                long piece = part < parts ? stock : len - (long) (parts - 1) * stock;
+                raw.add(new long[]{piece, i, part, parts});
+            }
+        }
+
+        int n = raw.size();
+        long[] len = new long[n];
+        for (int i = 0; i < n; i++) len[i] = raw.get(i)[0];
+        // Minden darab len + kerf helyet foglal, a szál kapacitása stock + kerf (az utolsó vágás után nincs fűrészrés)
+        long capacity = stock + kerf;
+        long[] need = new long[n];
+        long total = 0;
+        for (int i = 0; i < n; i++) { need[i] = Math.min(len[i] + kerf, capacity); total += need[i]; }
+        int lowerBound = n == 0 ? 0 : (int) ((total + capacity - 1) / capacity);
+
+        // 3. Csökkenő sorrend, majd FFD és BFD
+        int[] order = descendingOrder(need);
+        Packing best = better(firstFitDecreasing(need, order, capacity, "FFD"), bestFitDecreasing(need, order, capacity, "BFD"));
+
+        // 4. Opcionális javítás, amíg van idő és nem értük el az alsó korlátot
+        if (options.improveMillis() > 0 && best.bars > lowerBound) {
+            best = improve(need, capacity, lowerBound, best, options.improveMillis());
+        }
+
+        // 5. Terv összeállítása
+        List<List<Integer>> bins = new ArrayList<>(best.bars);
+        for (int b = 0; b < best.bars; b++) bins.add(new ArrayList<>());
+        for (int i = 0; i < n; i++) bins.get(best.binOf[i]).add(i);
+
+        List<BarPlan> barPlans = new ArrayList<>(best.bars);
+        long usedTotal = 0;
+        for (int b = 0; b < bins.size(); b++) {
+            List<Integer> pieces = bins.get(b);
+            pieces.sort((x, y) -> Long.compare(len[y], len[x]));
+            List<Cut> cuts = new ArrayList<>(pieces.size());
+            long used = 0;
+            for (int i : pieces) {
+                long[] r = raw.get(i);
+                Connection c = group.get((int) r[1]);
+                cuts.add(new Cut(c.fromId(), c.toId(), len[i] / UNIT, (int) r[2], (int) r[3]));
+                used += len[i];
+            }
+            usedTotal += used;
+            barPlans.add(new BarPlan(b + 1, cuts, used / UNIT, (stock - used - (long) (pieces.size() - 1) * kerf) / UNIT));
+        }
+
+        double waste = ((long) best.bars * stock - usedTotal) / UNIT;
+        double bought = best.bars * stockLength;
+        return new MaterialPlan(mat.name(), first.color(), first.thickness(), stockLength, n, best.bars, lowerBound,
+                usedTotal / UNIT, waste, bought > 0 ? 100.0 * waste / bought : 0,
+                bought * mat.pricePerMeter(), best.method, barPlans);
+    }
+
+    // ==========================
+    // HEURISZTIKÁK
+    // ==========================
+
+    private static final class Packing {
+        final int[] binOf;
+        final int bars;
+        final long[] remaining;
+        final long largestOffcut; // döntetlennél a nagyobb (újrahasznosítható) maradék a jobb
+        final String method;
+
+        Packing(int[] binOf, int bars, long[] remaining, String method) {
+            this.binOf = binOf;
+            this.bars = bars;
+            this.remaining = remaining;
+            long largest = 0;
+            for (int b = 0; b < bars; b++) largest = Math.max(largest, remaining[b]);
+            this.largestOffcut = largest;
+            this.method = method;
+        }
+    }
+
+    private static Packing better(Packing a, Packing b) {
+        if (b == null) return a;
+        if (a == null) return b;
+        if (b.bars != a.bars) return b.bars < a.bars ? b : a;
+        return b.largestOffcut > a.largestOffcut ? b : a;
+    }
+
+    private static int[] descendingOrder(long[] need) {
+        int n = need.length;
+        if (n >= (1 << 20)) return boxedOrder(need);
+        // (hossz, index) egy long-ba csomagolva: primitív rendezés, boxing nélkül
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) keys[i] = (need[i] << 20) | i;
+        Arrays.parallelSort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = (int) (keys[n - 1 - i] & ((1 << 20) - 1));
+        return order;
+    }
+
+    private static int[] boxedOrder(long[] need) {
+        return IntStream.range(0, need.length).boxed()
+                .sorted((x, y) -> Long.compare(need[y], need[x]))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    // First Fit: szegmensfa a szálak maradék kapacitásán -> a legelső elég nagy szál O(log n) alatt.
+    // A még meg nem nyitott szálak teljes kapacitással szerepelnek, így a fa automatikusan nyit újat.
+    static Packing firstFitDecreasing(long[] need, int[] order, long capacity, String method) {
+        int n = need.length;
+        int size = 1;
+        while (size < Math.max(1, n)) size <<= 1;
+        long[] tree = new long[2 * size];
+        for (int i = 0; i < size; i++) tree[size + i] = i < n ? capacity : 0;
+        for (int i = size - 1; i >= 1; i--) tree[i] = Math.max(tree[2 * i], tree[2 * i + 1]);
+
+        int[] binOf = new int[n];
+        int bars = 0;
+        for (int i : order) {
+            int node = 1;
+            while (node < size) node = tree[2 * node] >= need[i] ? 2 * node : 2 * node + 1;
+            int bin = node - size;
+            binOf[i] = bin;
+            bars = Math.max(bars, bin + 1);
+            tree[node] -= need[i];
+            for (node >>= 1; node >= 1; node >>= 1) tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+        }
+        long[] remaining = new long[bars];
+        for (int b = 0; b < bars; b++) remaining[b] = tree[size + b];
+        return new Packing(binOf, bars, remaining, method);
+    }
+
+    // Best Fit: a legkisebb, még elég nagy maradékú szál (maradék -> szálak térkép)
+    static Packing bestFitDecreasing(long[] need, int[] order, long capacity, String method) {
+        int n = need.length;
+        TreeMap<Long, ArrayDeque<Integer>> byRemaining = new TreeMap<>();
+        long[] remaining = new long[Math.max(1, n)];
+        int[] binOf = new int[n];
+        int bars = 0;
+        for (int i : order) {
+            Map.Entry<Long, ArrayDeque<Integer>> fit = byRemaining.ceilingEntry(need[i]);
+            int bin;
+            if (fit == null) {
+                bin = bars++;
+                remaining[bin] = capacity;
+            } else {
+                bin = fit.getValue().pollFirst();
+                if (fit.getValue().isEmpty()) byRemaining.remove(fit.getKey());
+            }
+            remaining[bin] -= need[i];
+            binOf[i] = bin;
+            if (remaining[bin] > 0) byRemaining.computeIfAbsent(remaining[bin], k -> new ArrayDeque<>()).addLast(bin);
+        }
+        return new Packing(binOf, bars, remaining, method);
+    }
+
+    // Javító fázis (szál-elhagyás): a legüresebb szálak darabjait a többi szál szabad helyére próbáljuk szétosztani,
+    // szükség esetén egy kisebb darabbal cserélve (a cserélt darab kerül tovább). Ha sikerül, eggyel kevesebb szál kell.
+    // A szálak párhuzamosan más-más áldozatot próbálnak; minden kör az addigi legjobb pakolásból indul.
+    private static Packing improve(long[] need, long capacity, int lowerBound, Packing initial, long budgetMillis) {
+        long deadline = System.nanoTime() + budgetMillis * 1_000_000;
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors());
+        Packing best = initial;
+        while (best.bars > lowerBound && System.nanoTime() < deadline) {
+            Packing current = best;
+            int[] victims = IntStream.range(0, current.bars).boxed()
+                    .sorted((x, y) -> Long.compare(current.remaining[y], current.remaining[x]))
+                    .mapToInt(Integer::intValue).toArray();
+            Packing[] found = new Packing[workers];
+            AtomicBoolean done = new AtomicBoolean(false);
+            IntStream.range(0, workers).parallel().forEach(w -> {
+                for (int k = w; k < victims.length && !done.get() && System.nanoTime() < deadline; k += workers) {
+                    Packing p = eliminate(need, capacity, current, victims[k]);
+                    if (p != null) { found[w] = p; done.set(true); return; }
+                }
+            });
+            Packing next = null;
+            for (Packing p : found) next = better(next, p);
+            if (next == null) break; // egyik szál sem hagyható el
+            best = next;
+        }
+        return best;
+    }
+
+    private static final int MAX_MOVES = 64;
+
+    private static Packing eliminate(long[] need, long capacity, Packing packing, int victim) {
+        int bars = packing.bars;
+        long[] remaining = Arrays.copyOf(packing.remaining, bars);
+        int[] binOf = packing.binOf.clone();
+        List<List<Integer>> items = new ArrayList<>(bars);
+        for (int b = 0; b < bars; b++) items.add(new ArrayList<>(4));
+        for (int i = 0; i < binOf.length; i++) items.get(binOf[i]).add(i);
+
+        PriorityQueue<Integer> pending = new PriorityQueue<>((x, y) -> Long.compare(need[y], need[x]));
+        pending.addAll(items.get(victim));
+        items.get(victim).clear();
+        remaining[victim] = capacity;
+
+        int moves = 0;
+        while (!pending.isEmpty()) {
+            if (++moves > MAX_MOVES) return null;
+            int x = pending.poll();
+
+            // a) közvetlen best fit
+            int fitBin = -1;
+            long fitSlack = Long.MAX_VALUE;
+            for (int b = 0; b < bars; b++) {
+                if (b == victim) continue;
+                long slack = remaining[b] - need[x];
+                if (slack >= 0 && slack < fitSlack) { fitSlack = slack; fitBin = b; }
+            }
+            if (fitBin >= 0) {
+                items.get(fitBin).add(x);
+                binOf[x] = fitBin;
+                remaining[fitBin] -= need[x];
+                continue;
+            }
+
+            // b) csere egy kisebb darabbal (a legszorosabb illeszkedés); a kisebb darab megy tovább
+            int swapBin = -1, swapIdx = -1;
+            long swapSlack = Long.MAX_VALUE;
+            for (int b = 0; b < bars; b++) {
+                if (b == victim) continue;
+                List<Integer> list = items.get(b);
+                for (int j = 0; j < list.size(); j++) {
+                    int y = list.get(j);
+                    if (need[y] >= need[x]) continue;
+                    long slack = remaining[b] + need[y] - need[x];
+                    if (slack >= 0 && slack < swapSlack) { swapSlack = slack; swapBin = b; swapIdx = j; }
+                }
+            }
+            if (swapBin < 0) return null;
+            int y = items.get(swapBin).set(swapIdx, x);
+            binOf[x] = swapBin;
+            remaining[swapBin] += need[y] - need[x];
+            pending.add(y);
+        }
+
+        // Az utolsó szál a kiürült helyére költözik
+        int last = bars - 1;
+        if (victim != last) {
+            for (int i : items.get(last)) binOf[i] = victim;
+            remaining[victim] = remaining[last];
+        }
+        String method = packing.method.endsWith("+improve") ? packing.method : packing.method + "+improve";
+        return new Packing(binOf, bars - 1, Arrays.copyOf(remaining, bars - 1), method);
+    }
+}
@@ -0,0 +1,34 @@
+package com.kristof._D_builder;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@RestController
+@RequestMapping("/api/diagnostics")
+@CrossOrigin(origins = "http://localhost:5173")
+public class DiagnosticsController {
+
+    private final FlightRecorderService flightRecorderService;
+
+    public DiagnosticsController(FlightRecorderService flightRecorderService) {
+        this.flightRecorderService = flightRecorderService;
+    }
+
+    // JFR ÁLLAPOT: GET /api/diagnostics/jfr
+    @GetMapping("/jfr")
+    public FlightRecorderService.Status jfrStatus() {
+        return flightRecorderService.status();
+    }
+
+    // JFR KIÍRÁS: POST /api/diagnostics/jfr/dump  (a szerveren írt fájl útvonala; 409, ha nincs felvétel)
+    @PostMapping("/jfr/dump")
+    public ResponseEntity<String> dumpJfr() throws IOException {
+        Path file = flightRecorderService.dump();
+        if (file == null) return ResponseEntity.status(HttpStatus.CONFLICT).body("JFR recording is not running (tracing.jfr.enabled=false).");
+        return ResponseEntity.ok(file.toString());
+    }
+}
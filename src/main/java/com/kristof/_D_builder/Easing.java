@@ -0,0 +1,37 @@
+package com.kristof._D_builder;
+
+// Időgörbék a klipekhez: a 0..1 közötti lineáris haladást alakítják át
+public enum Easing {
+    LINEAR,
+    EASE_IN,
+    EASE_OUT,
+    EASE_IN_OUT,
+    SMOOTHSTEP;
+
+    public double apply(double t) {
+        switch (this) {
+            case EASE_IN: return t * t * t;
+            case EASE_OUT: { double u = 1.0 - t; return 1.0 - u * u * u; }
+            case EASE_IN_OUT: {
+                if (t < 0.5) return 4.0 * t * t * t;
+                double u = -2.0 * t + 2.0;
+                return 1.0 - u * u * u * 0.5;
+            }
+            case SMOOTHSTEP: return t * t * (3.0 - 2.0 * t);
+            default: return t;
+        }
+    }
+
+    // "easeInOut", "EASE_IN_OUT", "ease-in-out" -> EASE_IN_OUT; ismeretlen vagy üres -> LINEAR
+    public static Easing parse(String name) {
+        if (name == null || name.isBlank()) return LINEAR;
+        String key = name.trim()
+                .replaceAll("([a-z])([A-Z])", "$1_$2")
+                .replace('-', '_')
+                .toUpperCase();
+        for (Easing e : values()) {
+            if (e.name().equals(key)) return e;
+        }
+        return LINEAR;
+    }
+}
@@ -0,0 +1,139 @@
+package com.kristof._D_builder;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Entitásonkénti verzió bélyegek a felhasználói szerkesztésekhez (optimista, feltételes parancsokhoz).
+// Kulcs: pont ID (Integer) vagy gyűjtemény név (String); a WORLD kulcs az egész világot cserélő műveleteké
+// (Clear, projekt betöltés). A bélyeg az a világ verzió, amelyben a változás kiment, és hogy ki csinálta.
+// Érintéskor a bélyeg PENDING (a változás még nem látszik a klienseknek); lezáráskor (commit) a kulcs a
+// következő broadcasthoz kerül, ami a saját verziójával pecsételi le, így a bélyeg pontosan az a verzió,
+// amelyben a kliens először láthatta a változást. A bélyeg a legutóbbi más felhasználótól származó bélyeget
+// is őrzi (other), így a saját utólagos érintésünk nem takarja el, hogy közben más is írta az entitást.
+// A napló (journal) az érintések előtti bélyegeket tartja a köteg végéig: ebből dönthető el egy feltételes
+// parancs után, hogy volt-e ütközés, és ebből áll vissza egy visszagörgetett köteg.
+// Törölt entitás bélyege kiesik (forget), a világ cseréje (reset) után csak a WORLD bélyeg marad: a Clear
+// után az ID-k újra kiosztódnak, és a régi bélyegek különben hamis ütközést adnának. Mindkettő naplózott.
+// Írás a WorldStateService batchLock-ja alatt (érintés, napló), pecsételés a publishLock alatt.
+final class EntityVersions {
+
+    static final long PENDING = Long.MAX_VALUE;
+    static final String WORLD = "*";
+
+    record Stamp(long version, String user, Stamp other) {}
+
+    private record Touch(Object key, Stamp previous) {}
+
+    private final Map<Object, Stamp> stamps = new ConcurrentHashMap<>();
+    private final List<Touch> journal = new ArrayList<>();
+    private final List<Object> dirty = new ArrayList<>();      // érintett, még nem lezárt
+    private final List<Object> committed = new ArrayList<>();  // lezárt, a következő broadcastra vár
+
+    // ==========================
+    // ÉRINTÉS / NAPLÓ
+    // ==========================
+
+    void touch(Object key, String user) {
+        Stamp previous = stamps.get(key);
+        Stamp other = previous == null ? null
+                : Objects.equals(previous.user(), user) ? previous.other()
+                : new Stamp(previous.version(), previous.user(), null);
+        stamps.put(key, new Stamp(PENDING, user, other));
+        journal.add(new Touch(key, previous));
+        if (previous == null || previous.version() != PENDING) dirty.add(key);
+    }
+
+    void forget(Object key) {
+        Stamp previous = stamps.remove(key);
+        if (previous != null) journal.add(new Touch(key, previous));
+    }
+
+    void reset(String user) {
+        for (Map.Entry<Object, Stamp> e : stamps.entrySet()) {
+            if (!WORLD.equals(e.getKey())) journal.add(new Touch(e.getKey(), e.getValue()));
+        }
+        stamps.keySet().removeIf(key -> !WORLD.equals(key));
+        touch(WORLD, user);
+    }
+
+    int mark() {
+        return journal.size();
+    }
+
+    // Visszagörgetés: a mark óta érintett kulcsok bélyege visszaáll (fordított sorrendben)
+    void rollback(int mark) {
+        rollback(mark, null);
+    }
+
+    // Csak a megadott kulcsok (merge: a saját változásunkat ezeken visszavontuk)
+    void rollback(int mark, Set<Object> keys) {
+        for (int i = journal.size() - 1; i >= mark; i--) {
+            Touch t = journal.get(i);
+            if (keys != null && !keys.contains(t.key())) continue;
+            if (t.previous() == null) stamps.remove(t.key());
+            else stamps.put(t.key(), t.previous());
+            if (keys == null) journal.remove(i);
+        }
+    }
+
+    // Ütköző kulcsok a mark óta érintettek közül: a bélyegük (a parancs előtt) újabb a kliens által látott
+    // verziónál, és más csinálta (a még ki nem ment változás is újabb); a saját bélyeg mögötti más is számít
+    List<Object> conflicts(int mark, long baseVersion, String user) {
+        Stamp world = stamps.get(WORLD);
+        if (isNewer(world, baseVersion, user) && !touchedSince(mark, WORLD)) return List.of(WORLD);
+        Set<Object> seen = new HashSet<>();
+        List<Object> result = new ArrayList<>();
+        for (int i = mark; i < journal.size(); i++) {
+            Touch t = journal.get(i);
+            if (seen.add(t.key()) && isNewer(t.previous(), baseVersion, user)) result.add(t.key());
+        }
+        return result;
+    }
+
+    private boolean touchedSince(int mark, Object key) {
+        for (int i = mark; i < journal.size(); i++) if (journal.get(i).key().equals(key)) return true;
+        return false;
+    }
+
+    private static boolean isNewer(Stamp s, long baseVersion, String user) {
+        if (s == null) return false;
+        if (s.version() > baseVersion && !Objects.equals(s.user(), user)) return true;
+        return s.other() != null && s.other().version() > baseVersion && !Objects.equals(s.other().user(), user);
+    }
+
+    // ==========================
+    // LEZÁRÁS / PECSÉTELÉS
+    // ==========================
+
+    // A köteg lezárásakor (commit): a napló lezárul, az érintett kulcsok a következő broadcastra várnak
+    void commit() {
+        journal.clear();
+        committed.addAll(dirty);
+        dirty.clear();
+    }
+
+    // A broadcast a saját verziójával (publishLock alatt, a lezárt állapottal párban)
+    void publish(long version) {
+        for (Object key : committed) {
+            stamps.computeIfPresent(key, (k, s) -> s.version() == PENDING ? new Stamp(version, s.user(), seal(s.other(), version)) : s);
+        }
+        committed.clear();
+    }
+
+    // Ugyanabban a kötegben más által érintett (még függő) bélyeg is ezzel a verzióval megy ki
+    private static Stamp seal(Stamp s, long version) {
+        return s != null && s.version() == PENDING ? new Stamp(version, s.user(), null) : s;
+    }
+
+    // 0: nem volt felhasználói szerkesztés; PENDING: a változás még nem ment ki
+    long version(Object key) {
+        Stamp s = stamps.get(key);
+        return s != null ? s.version() : 0;
+    }
+
+    static String describe(Object key) {
+        if (WORLD.equals(key)) return "world";
+        if (key instanceof Integer id) return "p" + id;
+        return "collection '" + key + "'";
+    }
+}
@@ -0,0 +1,39 @@
+package com.kristof._D_builder;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.channels.Channels;
+
+@RestController
+@RequestMapping("/api/export")
+@CrossOrigin(origins = "http://localhost:5173")
+public class ExportController {
+
+    private final MeshExportService meshExportService;
+
+    public ExportController(MeshExportService meshExportService) {
+        this.meshExportService = meshExportService;
+    }
+
+    // EXPORT: GET /api/export/{stl|obj|glb}?segments=8&rodScale=0.02
+    // A fájl közvetlenül a válaszba folyik, nem épül fel a memóriában.
+    @GetMapping("/{format}")
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable String format,
+                                                        @RequestParam(defaultValue = "8") int segments,
+                                                        @RequestParam(defaultValue = "0.02") double rodScale) {
+        MeshExportService.Format fmt = MeshExportService.parseFormat(format);
+        if (fmt == null) return ResponseEntity.badRequest().build();
+
+        MeshExportService.Options options = new MeshExportService.Options(segments, rodScale);
+        StreamingResponseBody body = out -> meshExportService.export(fmt, Channels.newChannel(out), options);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(MeshExportService.contentType(fmt)))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"world." + fmt.name().toLowerCase() + "\"")
+                .body(body);
+    }
+}
@@ -1,6 +1,18 @@
 package com.kristof._D_builder;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.List;
 
-public record Face(List<Integer> pointIds, String color) {
-}
\ No newline at end of file
+public record Face(List<Integer> pointIds, @JsonIgnore int colorIndex) {
+
+    public Face(List<Integer> pointIds, String color) {
+        this(pointIds, Palette.COLORS.intern(color));
+    }
+
+    @JsonProperty("color")
+    public String color() {
+        return Palette.COLORS.get(colorIndex);
+    }
+}
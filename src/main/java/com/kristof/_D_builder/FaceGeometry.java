@@ -0,0 +1,132 @@
+package com.kristof._D_builder;
+
+import java.util.Arrays;
+
+// Egy lap kiszámolt geometriája: háromszögelés (a lap pointIds listájába mutató lokális indexek),
+// egységnyi normálvektor és felület. Sík, egyszerű sokszögre fülvágás (ear clipping), egyébként legyező.
+public record FaceGeometry(int[] triangles, double nx, double ny, double nz, double area) {
+
+    private static final double EPS = 1e-9;
+
+    public int triangleCount() {
+        return triangles.length / 3;
+    }
+
+    // coords: x,y,z,... a lap pontjai sorrendben
+    public static FaceGeometry compute(double[] coords) {
+        int n = coords.length / 3;
+        if (n < 3) return new FaceGeometry(new int[0], 0, 0, 0, 0);
+
+        // 1. Newell normál (nem konvex sokszögre is helyes irányt ad)
+        double nx = 0, ny = 0, nz = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            double xi = coords[3 * i], yi = coords[3 * i + 1], zi = coords[3 * i + 2];
+            double xj = coords[3 * j], yj = coords[3 * j + 1], zj = coords[3 * j + 2];
+            nx += (yi - yj) * (zi + zj);
+            ny += (zi - zj) * (xi + xj);
+            nz += (xi - xj) * (yi + yj);
+        }
+        double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+        int[] triangles = null;
+        if (len > EPS && n > 3 && isPlanar(coords, nx / len, ny / len, nz / len)) {
+            triangles = earClip(coords, nx, ny, nz);
+        }
+        if (triangles == null) triangles = fan(n);
+        if (len > EPS) { nx /= len; ny /= len; nz /= len; }
+
+        // 2. Felület a háromszögekből (nem sík lapnál is értelmes)
+        double area = 0;
+        for (int t = 0; t < triangles.length; t += 3) {
+            area += triangleArea(coords, triangles[t], triangles[t + 1], triangles[t + 2]);
+        }
+        return new FaceGeometry(triangles, nx, ny, nz, area);
+    }
+
+    private static int[] fan(int n) {
+        int[] t = new int[3 * (n - 2)];
+        for (int i = 1; i < n - 1; i++) {
+            t[3 * (i - 1)] = 0; t[3 * (i - 1) + 1] = i; t[3 * (i - 1) + 2] = i + 1;
+        }
+        return t;
+    }
+
+    private static boolean isPlanar(double[] c, double nx, double ny, double nz) {
+        double d0 = nx * c[0] + ny * c[1] + nz * c[2];
+        double extent = 0, maxDist = 0;
+        for (int i = 1; i < c.length / 3; i++) {
+            double dx = c[3 * i] - c[0], dy = c[3 * i + 1] - c[1], dz = c[3 * i + 2] - c[2];
+            extent = Math.max(extent, Math.abs(dx) + Math.abs(dy) + Math.abs(dz));
+            maxDist = Math.max(maxDist, Math.abs(nx * c[3 * i] + ny * c[3 * i + 1] + nz * c[3 * i + 2] - d0));
+        }
+        return maxDist <= 1e-6 * Math.max(1.0, extent);
+    }
+
+    // Fülvágás a normál domináns tengelyének elhagyásával kapott 2D vetületen.
+    // null, ha nem talál fület (önmetsző sokszög) -> a hívó legyezőre vált.
+    private static int[] earClip(double[] c, double nx, double ny, double nz) {
+        int n = c.length / 3;
+        double ax = Math.abs(nx), ay = Math.abs(ny), az = Math.abs(nz);
+        int u, v;
+        double sign;
+        if (az >= ax && az >= ay) { u = 0; v = 1; sign = Math.signum(nz); }
+        else if (ax >= ay) { u = 1; v = 2; sign = Math.signum(nx); }
+        else { u = 2; v = 0; sign = Math.signum(ny); }
+
+        double[] px = new double[n], py = new double[n];
+        for (int i = 0; i < n; i++) {
+            px[i] = c[3 * i + u];
+            py[i] = c[3 * i + v] * sign; // így a vetület mindig pozitív (CCW) körüljárású
+        }
+
+        int[] idx = new int[n];
+        for (int i = 0; i < n; i++) idx[i] = i;
+        int remaining = n;
+        int[] out = new int[3 * (n - 2)];
+        int o = 0;
+
+        int guard = 0, i = 0;
+        while (remaining > 3) {
+            if (guard++ > remaining) return null;
+            int prev = idx[(i + remaining - 1) % remaining], cur = idx[i % remaining], next = idx[(i + 1) % remaining];
+            if (isEar(px, py, idx, remaining, prev, cur, next)) {
+                out[o++] = prev; out[o++] = cur; out[o++] = next;
+                int at = i % remaining;
+                System.arraycopy(idx, at + 1, idx, at, remaining - at - 1);
+                remaining--;
+                guard = 0;
+                if (at >= remaining) i = 0; else i = at;
+            } else {
+                i = (i + 1) % remaining;
+            }
+        }
+        out[o++] = idx[0]; out[o++] = idx[1]; out[o++] = idx[2];
+        return o == out.length ? out : Arrays.copyOf(out, o);
+    }
+
+    private static boolean isEar(double[] px, double[] py, int[] idx, int remaining, int a, int b, int c) {
+        double cross = (px[b] - px[a]) * (py[c] - py[a]) - (py[b] - py[a]) * (px[c] - px[a]);
+        if (cross <= EPS) return false; // reflex vagy elfajult csúcs
+        for (int k = 0; k < remaining; k++) {
+            int p = idx[k];
+            if (p == a || p == b || p == c) continue;
+            if (inTriangle(px[p], py[p], px[a], py[a], px[b], py[b], px[c], py[c])) return false;
+        }
+        return true;
+    }
+
+    private static boolean inTriangle(double x, double y, double ax, double ay, double bx, double by, double cx, double cy) {
+        double d1 = (bx - ax) * (y - ay) - (by - ay) * (x - ax);
+        double d2 = (cx - bx) * (y - by) - (cy - by) * (x - bx);
+        double d3 = (ax - cx) * (y - cy) - (ay - cy) * (x - cx);
+        return d1 >= 0 && d2 >= 0 && d3 >= 0;
+    }
+
+    private static double triangleArea(double[] c, int a, int b, int d) {
+        double e1x = c[3 * b] - c[3 * a], e1y = c[3 * b + 1] - c[3 * a + 1], e1z = c[3 * b + 2] - c[3 * a + 2];
+        double e2x = c[3 * d] - c[3 * a], e2y = c[3 * d + 1] - c[3 * a + 1], e2z = c[3 * d + 2] - c[3 * a + 2];
+        double x = e1y * e2z - e1z * e2y, y = e1z * e2x - e1x * e2z, z = e1x * e2y - e1y * e2x;
+        return 0.5 * Math.sqrt(x * x + y * y + z * z);
+    }
+}
@@ -0,0 +1,78 @@
+package com.kristof._D_builder;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+// Lapok háromszögelésének, normáljának és felületének gyorsítótára.
+// Egy bejegyzés csak akkor érvénytelenül, ha a lap valamelyik pontja elmozdul (invalidatePoint),
+// vagy a lap maga törlődik.
+// A bejegyzés a pontok koordinátáit is tárolja, amelyekből számolódott: a hívó pontjai (akár egy régebbi,
+// kiküldött pillanatkép, akár egy mozgatással párhuzamosan olvasott élő állapot) csak egyező koordinátáknál
+// kapják meg a tárolt geometriát, így egy elavult számolás sosem ad rossz eredményt más hívónak.
+public class FaceGeometryCache {
+
+    private record Entry(FaceGeometry geometry, double[] coords) {}
+
+    private final Map<Face, Entry> cache = new ConcurrentHashMap<>();
+    // Fordított index: pont ID -> a rá épülő, gyorsítótárazott lapok
+    private final Map<Integer, Set<Face>> dependents = new ConcurrentHashMap<>();
+
+    // Null, ha a lap valamelyik pontja hiányzik
+    public FaceGeometry get(Face face, IntFunction<Point3D> lookup) {
+        List<Integer> ids = face.pointIds();
+        double[] coords = new double[ids.size() * 3];
+        for (int i = 0; i < ids.size(); i++) {
+            Point3D p = lookup.apply(ids.get(i));
+            if (p == null) return null;
+            coords[3 * i] = p.x(); coords[3 * i + 1] = p.y(); coords[3 * i + 2] = p.z();
+        }
+        Entry cached = cache.get(face);
+        if (cached != null && Arrays.equals(cached.coords(), coords)) return cached.geometry();
+
+        FaceGeometry geometry = FaceGeometry.compute(coords);
+        cache.put(face, new Entry(geometry, coords));
+        for (Integer id : ids) dependents.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(face);
+        return geometry;
+    }
+
+    public boolean isCached(Face face) {
+        return cache.containsKey(face);
+    }
+
+    // Pont mozgásakor: csak az adott pontra épülő lapok esnek ki (a lapok a többi pontjuk listájából is)
+    public void invalidatePoint(int id) {
+        if (dependents.isEmpty()) return;
+        Set<Face> affected = dependents.remove(id);
+        if (affected == null) return;
+        for (Face f : affected) {
+            cache.remove(f);
+            unlink(f, id);
+        }
+    }
+
+    public void remove(Face face) {
+        cache.remove(face);
+        unlink(face, -1);
+    }
+
+    public void clear() {
+        cache.clear();
+        dependents.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    // A lap kivétele a pontjai fordított indexéből; a kiürült pontlista is törlődik
+    private void unlink(Face face, int skipId) {
+        for (Integer id : face.pointIds()) {
+            if (id == skipId) continue;
+            dependents.computeIfPresent(id, (k, set) -> {
+                set.remove(face);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.kristof._D_builder;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+// Folyamatos JFR felvétel élesben: a JDK "default" profilja + a saját események (jfr/3d-builder.jfc).
+// Gyűrűs puffer a lemezen (max-age / max-size), így bármikor ki lehet írni az elmúlt órák megakadásait
+// (POST /api/diagnostics/jfr/dump), leálláskor pedig magától kiíródik.
+//   tracing.jfr.enabled          - be/ki (alap: false; parancssori -XX:StartFlightRecording mellett nem kell)
+//   tracing.jfr.max-age-minutes  - meddig őrzi az eseményeket (alap: 360)
+//   tracing.jfr.max-size-mb      - a lemezen tartott adat felső korlátja (alap: 512)
+//   tracing.jfr.directory        - a kiírt .jfr fájlok helye (alap: jfr)
+@Service
+public class FlightRecorderService {
+
+    public static final String PROFILE = "jfr/3d-builder.jfc";
+
+    public record Status(boolean recording, String state, long maxAgeMinutes, long maxSizeMb, String directory) {}
+
+    private final boolean enabled;
+    private final long maxAgeMinutes;
+    private final long maxSizeMb;
+    private final Path directory;
+    private volatile Recording recording;
+
+    public FlightRecorderService(@Value("${tracing.jfr.enabled:false}") boolean enabled,
+                                 @Value("${tracing.jfr.max-age-minutes:360}") long maxAgeMinutes,
+                                 @Value("${tracing.jfr.max-size-mb:512}") long maxSizeMb,
+                                 @Value("${tracing.jfr.directory:jfr}") String directory) {
+        this.enabled = enabled;
+        this.maxAgeMinutes = maxAgeMinutes;
+        this.maxSizeMb = maxSizeMb;
+        this.directory = Path.of(directory).toAbsolutePath();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        try {
+            Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+            settings.putAll(profile().getSettings());
+            Files.createDirectories(directory);
+
+            Recording r = new Recording(settings);
+            r.setName("3d-builder");
+            r.setToDisk(true);
+            r.setMaxAge(Duration.ofMinutes(maxAgeMinutes));
+            r.setMaxSize(maxSizeMb * 1024 * 1024);
+            r.setDumpOnExit(true);
+            r.setDestination(directory.resolve("3d-builder-exit.jfr"));
+            r.start();
+            recording = r;
+            System.out.println("JFR felvétel elindult (" + maxAgeMinutes + " perc / " + maxSizeMb + " MB): " + directory);
+        } catch (IOException | ParseException | RuntimeException e) {
+            System.err.println("JFR felvétel indítási hiba: " + e.getMessage());
+        }
+    }
+
+    // A saját események beállításai (küszöbök)
+    static Configuration profile() throws IOException, ParseException {
+        try (Reader reader = new InputStreamReader(new ClassPathResource(PROFILE).getInputStream(), StandardCharsets.UTF_8)) {
+            return Configuration.create(reader);
+        }
+    }
+
+    // Az eddig felvett adat kiírása (a felvétel közben fut tovább); null, ha nincs felvétel
+    public Path dump() throws IOException {
+        Recording r = recording;
+        if (r == null || r.getState() != RecordingState.RUNNING) return null;
+        Path file = directory.resolve("3d-builder-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".jfr");
+        r.dump(file);
+        return file;
+    }
+
+    public Status status() {
+        Recording r = recording;
+        return new Status(r != null && r.getState() == RecordingState.RUNNING, r != null ? r.getState().name() : "OFF",
+                maxAgeMinutes, maxSizeMb, directory.toString());
+    }
+
+    // Leálláskor a felvétel a cél fájlba íródik
+    @PreDestroy
+    public void stop() {
+        Recording r = recording;
+        recording = null;
+        if (r == null) return;
+        try {
+            r.stop();
+        } catch (RuntimeException e) {
+            System.err.println("JFR leállítási hiba: " + e.getMessage());
+        } finally {
+            r.close();
+        }
+    }
+}
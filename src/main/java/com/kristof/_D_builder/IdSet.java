@@ -0,0 +1,228 @@
+package com.kristof._D_builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+// Pont ID-k halmaza bitmapként (egy bit / ID).
+// O(1) tartalmazás, a tartományok (p3...p90000) szavanként töltődnek,
+// az unió / metszet / különbség 64 ID-t kezel egy lépésben.
+// A bejárás / lista a beszúrás sorrendjét adja (mint a korábbi List<Integer> gyűjtemény). Amíg az ID-k
+// növekvő sorrendben jönnek (generátor, tartomány), ez maga a bitmap sorrendje, külön tár nélkül; az első
+// "visszafelé" beszúrásnál egy ID tömb jön létre a sorrendnek. Az ismétlődő ID egyszer szerepel: a
+// gyűjtemény halmaz (egy pontot egy Move / Rotate egyszer mozgat, akkor is, ha kétszer adták meg).
+// Törléskor a tömb helye csak elhal (O(1)); a tömb akkor tömörül, ha a halott helyek többségbe kerülnek,
+// vagy bejárás előtt. Egy törölt, majd újra felvett ID régi helye is halott: az utolsó előfordulás számít.
+public final class IdSet {
+
+    private final BitSet bits;
+    // Beszúrási sorrend; null, amíg az megegyezik a növekvő ID sorrenddel
+    private int[] order;
+    private int orderSize;
+    // Halott helyek a sorrend tömbben (törölt ID-k)
+    private int staleCount;
+    // Módosítás számláló: a világ pillanatkép csak a megváltozott halmazok listáját készíti újra
+    private int modCount;
+
+    public IdSet() {
+        this.bits = new BitSet();
+    }
+
+    private IdSet(BitSet bits, int[] order, int orderSize) {
+        this.bits = bits;
+        this.order = order;
+        this.orderSize = orderSize;
+    }
+
+    // A megadott sorrendben (az ismétlődők és a negatív ID-k kimaradnak)
+    public static IdSet of(Collection<Integer> ids) {
+        IdSet set = new IdSet();
+        if (ids != null) {
+            for (Integer id : ids) {
+                if (id != null) set.append(id);
+            }
+        }
+        return set;
+    }
+
+    public IdSet copy() {
+        compactOrder();
+        return new IdSet((BitSet) bits.clone(), order != null ? Arrays.copyOf(order, orderSize) : null, orderSize);
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && bits.get(id);
+    }
+
+    // true, ha új elem volt
+    public boolean add(int id) {
+        if (!append(id)) return false;
+        modCount++;
+        return true;
+    }
+
+    // Zárt tartomány [from, to], fordított sorrendben is megadható (a sorrend is fordított lesz)
+    public void addRange(int from, int to) {
+        int min = Math.max(0, Math.min(from, to));
+        int max = Math.max(from, to);
+        if (max < 0) return;
+        // long számláló: a max = Integer.MAX_VALUE határ se csorduljon túl
+        if (order == null && from <= to && min > lastId()) {
+            bits.set(min, max); // növekvő, a végére: a bitmap sorrend marad
+            bits.set(max);
+        } else if (from <= to) {
+            for (long id = min; id <= max; id++) append((int) id);
+        } else {
+            for (long id = max; id >= min; id--) append((int) id);
+        }
+        modCount++;
+    }
+
+    public boolean remove(int id) {
+        if (id < 0 || !bits.get(id)) return false;
+        bits.clear(id);
+        if (order != null && ++staleCount > orderSize / 2) compactOrder();
+        modCount++;
+        return true;
+    }
+
+    // Visszaadja, hány új elem került be (a másik halmaz sorrendjében a végére)
+    public int addAll(IdSet other) {
+        int before = bits.cardinality();
+        if (order == null && other.order == null && other.bits.nextSetBit(0) > lastId()) {
+            bits.or(other.bits);
+        } else {
+            other.forEach(this::append);
+        }
+        modCount++;
+        return bits.cardinality() - before;
+    }
+
+    // Visszaadja, hány elem került ki
+    public int removeAll(IdSet other) {
+        int before = bits.cardinality();
+        bits.andNot(other.bits);
+        compactOrder();
+        modCount++;
+        return before - bits.cardinality();
+    }
+
+    public void retainAll(IdSet other) {
+        bits.and(other.bits);
+        compactOrder();
+        modCount++;
+    }
+
+    int modCount() {
+        return modCount;
+    }
+
+    public static IdSet union(IdSet a, IdSet b) {
+        IdSet r = a.copy();
+        r.addAll(b);
+        return r;
+    }
+
+    public static IdSet intersection(IdSet a, IdSet b) {
+        IdSet r = a.copy();
+        r.retainAll(b);
+        return r;
+    }
+
+    public static IdSet difference(IdSet a, IdSet b) {
+        IdSet r = a.copy();
+        r.removeAll(b);
+        return r;
+    }
+
+    public int size() {
+        return bits.cardinality();
+    }
+
+    public boolean isEmpty() {
+        return bits.isEmpty();
+    }
+
+    // Beszúrási sorrendben
+    public void forEach(IntConsumer action) {
+        compactOrder();
+        if (order != null) {
+            for (int i = 0; i < orderSize; i++) action.accept(order[i]);
+            return;
+        }
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            action.accept(i);
+        }
+    }
+
+    // List<Integer> nézet (beszúrási sorrendben) a WorldState / JSON / Mongo számára
+    public List<Integer> toList() {
+        List<Integer> list = new ArrayList<>(bits.cardinality());
+        forEach(list::add);
+        return list;
+    }
+
+    public int[] toArray() {
+        compactOrder();
+        return order != null ? Arrays.copyOf(order, orderSize) : bits.stream().toArray();
+    }
+
+    // Halmaz egyenlőség (a sorrend nem számít)
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IdSet other && bits.equals(other.bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return bits.hashCode();
+    }
+
+    // ==========================
+    // SORREND
+    // ==========================
+
+    private boolean append(int id) {
+        if (id < 0 || bits.get(id)) return false;
+        if (order == null && id < lastId()) materializeOrder();
+        bits.set(id);
+        if (order != null) {
+            if (orderSize == order.length) order = Arrays.copyOf(order, Math.max(16, orderSize + (orderSize >> 1)));
+            order[orderSize++] = id;
+        }
+        return true;
+    }
+
+    private int lastId() {
+        return bits.length() - 1;
+    }
+
+    // Eddig növekvő volt: a bitmap sorrendje lesz a tömb kezdete
+    private void materializeOrder() {
+        int n = bits.cardinality();
+        order = new int[Math.max(16, n + (n >> 1))];
+        orderSize = 0;
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) order[orderSize++] = i;
+    }
+
+    // A sorrendből kiesnek a már nem tag ID-k és az újra felvett ID-k régi helyei (egy menetben, hátulról:
+    // ID-nként az utolsó előfordulás marad)
+    private void compactOrder() {
+        if (order == null || (staleCount == 0 && orderSize == bits.cardinality())) return;
+        BitSet seen = new BitSet();
+        int w = orderSize;
+        for (int i = orderSize - 1; i >= 0; i--) {
+            int id = order[i];
+            if (bits.get(id) && !seen.get(id)) {
+                seen.set(id);
+                order[--w] = id;
+            }
+        }
+        System.arraycopy(order, w, order, 0, orderSize - w);
+        orderSize -= w;
+        staleCount = 0;
+    }
+}
@@ -0,0 +1,53 @@
+package com.kristof._D_builder;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+@RestController
+@RequestMapping("/api/import")
+@CrossOrigin(origins = "http://localhost:5173")
+public class ImportController {
+
+    private final MeshImportService meshImportService;
+
+    public ImportController(MeshImportService meshImportService) {
+        this.meshImportService = meshImportService;
+    }
+
+    // IMPORT: POST /api/import/{obj|ply}?edges=true&name=szken   (a kérés törzse maga a fájl)
+    // A törzs egy ideiglenes fájlba folyik, amit aztán memóriába képezve olvasunk be.
+    @PostMapping("/{format}")
+    public ResponseEntity<?> importMesh(@PathVariable String format,
+                                        @RequestParam(defaultValue = "true") boolean edges,
+                                        @RequestParam(defaultValue = "#ffffff") String color,
+                                        @RequestParam(required = false) String edgeColor,
+                                        @RequestParam(defaultValue = "1.0") double thickness,
+                                        @RequestParam(defaultValue = "#888888") String faceColor,
+                                        @RequestParam(required = false) String name,
+                                        HttpServletRequest request) throws IOException {
+        MeshImportService.Format fmt = MeshImportService.parseFormat(format);
+        if (fmt == null) return ResponseEntity.badRequest().body("Unsupported format: " + format);
+
+        Path temp = Files.createTempFile("3d-import-", "." + fmt.name().toLowerCase());
+        try {
+            try (InputStream in = request.getInputStream()) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            MeshImportService.Options options = new MeshImportService.Options(
+                    color, edgeColor != null ? edgeColor : color, thickness, faceColor, edges, name);
+            // Az import a küldő nevén fut (saját Undo lépés), mint a STOMP parancsai
+            return ResponseEntity.ok(meshImportService.importFile(temp, fmt, options, WebSocketConfig.editorName(request)));
+        } catch (IOException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Import failed: " + e.getMessage());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.kristof._D_builder;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Az élő világ időszakos mentése egy helyi bináris fájlba (ColumnarSnapshot), és visszatöltése induláskor.
+// Újraindítás / failover után a világ azonnal visszaáll, MongoDB és JSON körút nélkül
+// (akkor is, ha a Mongo épp nem elérhető). A LoadProject / SaveProject ettől független marad.
+//   snapshot.enabled      - be/ki (alap: true)
+//   snapshot.path         - a fájl helye (alap: data/world.snapshot)
+//   snapshot.interval-ms  - ellenőrzési periódus; csak akkor ír, ha a világ verziója változott (alap: 5000)
+@Service
+public class LocalSnapshotStore {
+
+    private final WorldStateService worldStateService;
+    private final boolean enabled;
+    private final Path file;
+
+    // Az írás külön szálon fut, hogy az ütemező (gameLoop) szálát ne fogja
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "snapshot-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+    private volatile long lastWrittenVersion = 0; // 0 = érintetlen, üres induló világ
+    private volatile boolean restored = false;
+
+    public LocalSnapshotStore(WorldStateService worldStateService,
+                              @Value("${snapshot.enabled:true}") boolean enabled,
+                              @Value("${snapshot.path:data/world.snapshot}") String path) {
+        this.worldStateService = worldStateService;
+        this.enabled = enabled;
+        this.file = Path.of(path).toAbsolutePath();
+    }
+
+    // ==========================
+    // VISSZATÖLTÉS
+    // ==========================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreOnStartup() {
+        if (!enabled) return;
+        try {
+            if (Files.exists(file)) {
+                long start = System.nanoTime();
+                ColumnarSnapshot.Loaded loaded = ColumnarSnapshot.read(file);
+                worldStateService.restoreFromSnapshot(loaded.state(), loaded.worldVersion());
+                lastWrittenVersion = worldStateService.getVersion();
+                System.out.printf("Snapshot visszatöltve: %s (%d pont, %d kapcsolat, %d bájt) %.1f ms alatt%n",
+                        file, loaded.state().points().size(), loaded.state().connections().size(), loaded.bytes(),
+                        (System.nanoTime() - start) / 1e6);
+            }
+        } catch (Exception e) {
+            // Sérült / régi formátumú fájl: üres világgal indulunk, a következő mentés felülírja
+            System.err.println("Snapshot visszatöltés hiba (" + file + "): " + e.getMessage());
+        } finally {
+            restored = true;
+        }
+    }
+
+    // ==========================
+    // MENTÉS
+    // ==========================
+
+    @Scheduled(fixedDelayString = "${snapshot.interval-ms:5000}")
+    public void tick() {
+        // Visszatöltés előtt nem írunk, különben az üres induló világ felülírná a fájlt
+        if (!enabled || !restored) return;
+        if (worldStateService.getVersion() == lastWrittenVersion) return;
+        if (!writing.compareAndSet(false, true)) return;
+        writer.execute(() -> {
+            try {
+                writeNow();
+            } catch (Exception e) {
+                System.err.println("Snapshot írás hiba (" + file + "): " + e.getMessage());
+            } finally {
+                writing.set(false);
+            }
+        });
+    }
+
+    // Ideiglenes fájlba ír, majd atomikusan a helyére nevezi: egy félbeszakadt írás nem rontja el az előzőt
+    private synchronized void writeNow() throws IOException {
+        // A verzió és az állapot egy párként (külön olvasva egy közbeeső broadcast elcsúsztatná őket)
+        WorldStateService.VersionedState published = worldStateService.getPublishedState();
+        long version = published.version();
+        if (version == lastWrittenVersion) return;
+        WorldState state = published.state();
+        Path dir = file.getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        ColumnarSnapshot.write(tmp, state, version);
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        lastWrittenVersion = version;
+    }
+
+    // Leállításkor az utolsó állapot is kerüljön ki
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+            if (enabled && restored) writeNow();
+        } catch (Exception e) {
+            System.err.println("Snapshot írás hiba leállításkor: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.kristof._D_builder;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Memóriába képzett (mmap) fájlszakasz szekvenciális olvasója.
+// A [start, end) tartományt legfeljebb WINDOW méretű ablakokban képezi le, így 2 GB feletti fájlokon is működik.
+// Szöveges (OBJ, ASCII PLY) és bináris (PLY) olvasásra egyaránt.
+final class MappedReader {
+
+    private static final long WINDOW = 256L << 20;
+
+    private final FileChannel channel;
+    private final long end;
+    private final ByteOrder order;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowLimit;
+    private int pos;
+
+    MappedReader(FileChannel channel, long start, long end, ByteOrder order) throws IOException {
+        this.channel = channel;
+        this.end = end;
+        this.order = order;
+        map(start);
+    }
+
+    private void map(long from) throws IOException {
+        long size = Math.min(WINDOW, end - from);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.max(0, size));
+        window.order(order);
+        windowStart = from;
+        windowLimit = (int) Math.max(0, size);
+        pos = 0;
+    }
+
+    // Biztosítja, hogy n bájt folyamatosan olvasható legyen az ablakban
+    private void ensure(int n) throws IOException {
+        if (pos + n > windowLimit) {
+            long abs = windowStart + pos;
+            if (abs + n > end) throw new IOException("Unexpected end of file.");
+            map(abs);
+        }
+    }
+
+    long position() {
+        return windowStart + pos;
+    }
+
+    boolean hasMore() throws IOException {
+        if (pos < windowLimit) return true;
+        if (windowStart + pos >= end) return false;
+        map(windowStart + pos);
+        return pos < windowLimit;
+    }
+
+    byte peek() throws IOException {
+        ensure(1);
+        return window.get(pos);
+    }
+
+    byte next() throws IOException {
+        ensure(1);
+        return window.get(pos++);
+    }
+
+    void skip(long n) throws IOException {
+        long target = windowStart + pos + n;
+        if (target > end) throw new IOException("Unexpected end of file.");
+        if (target >= windowStart && target <= windowStart + windowLimit) pos = (int) (target - windowStart);
+        else map(target);
+    }
+
+    // ==========================
+    // BINÁRIS
+    // ==========================
+
+    int readByte() throws IOException { ensure(1); return window.get(pos++); }
+    int readUByte() throws IOException { ensure(1); return window.get(pos++) & 0xFF; }
+    int readShort() throws IOException { ensure(2); short v = window.getShort(pos); pos += 2; return v; }
+    int readUShort() throws IOException { ensure(2); int v = window.getShort(pos) & 0xFFFF; pos += 2; return v; }
+    long readInt() throws IOException { ensure(4); int v = window.getInt(pos); pos += 4; return v; }
+    long readUInt() throws IOException { ensure(4); long v = window.getInt(pos) & 0xFFFFFFFFL; pos += 4; return v; }
+    float readFloat() throws IOException { ensure(4); float v = window.getFloat(pos); pos += 4; return v; }
+    double readDouble() throws IOException { ensure(8); double v = window.getDouble(pos); pos += 8; return v; }
+
+    // ==========================
+    // SZÖVEG
+    // ==========================
+
+    // Szóközök és tabok átugrása (sorvéget nem)
+    void skipBlanks() throws IOException {
+        while (hasMore()) {
+            byte b = window.get(pos);
+            if (b != ' ' && b != '\t') return;
+            pos++;
+        }
+    }
+
+    // A sor végéig (a '\n'-t is beleértve)
+    void skipLine() throws IOException {
+        while (hasMore()) {
+            if (window.get(pos++) == '\n') return;
+        }
+    }
+
+    // Van-e még szám/token a sorban
+    boolean atLineEnd() throws IOException {
+        skipBlanks();
+        if (!hasMore()) return true;
+        byte b = window.get(pos);
+        return b == '\n' || b == '\r' || b == '#';
+    }
+
+    // Token átugrása (a következő szóközig / sorvégig)
+    void skipToken() throws IOException {
+        while (hasMore()) {
+            byte b = window.get(pos);
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r') return;
+            pos++;
+        }
+    }
+
+    long parseLong() throws IOException {
+        skipBlanks();
+        boolean neg = false;
+        if (hasMore() && (peek() == '-' || peek() == '+')) neg = next() == '-';
+        long v = 0;
+        int digits = 0;
+        while (hasMore()) {
+            byte b = window.get(pos);
+            if (b < '0' || b > '9') break;
+            v = v * 10 + (b - '0');
+            pos++;
+            digits++;
+        }
+        if (digits == 0) throw new IOException("Number expected at byte " + position());
+        return neg ? -v : v;
+    }
+
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    // Gyors decimális szám olvasás (1.5, -2e-3, .25); extrém esetben Double.parseDouble
+    double parseDouble() throws IOException {
+        skipBlanks();
+        long start = position();
+        boolean neg = false;
+        if (hasMore() && (peek() == '-' || peek() == '+')) neg = next() == '-';
+
+        long mantissa = 0;
+        int digits = 0, exp10 = 0;
+        boolean any = false;
+        while (hasMore()) {
+            byte b = window.get(pos);
+            if (b < '0' || b > '9') break;
+            if (digits < 18) { mantissa = mantissa * 10 + (b - '0'); if (mantissa != 0) digits++; }
+            else exp10++;
+            pos++;
+            any = true;
+        }
+        if (hasMore() && window.get(pos) == '.') {
+            pos++;
+            while (hasMore()) {
+                byte b = window.get(pos);
+                if (b < '0' || b > '9') break;
+                if (digits < 18) { mantissa = mantissa * 10 + (b - '0'); if (mantissa != 0) digits++; exp10--; }
+                pos++;
+                any = true;
+            }
+        }
+        if (hasMore() && (window.get(pos) == 'e' || window.get(pos) == 'E')) {
+            pos++;
+            exp10 += (int) parseLong();
+        }
+        if (!any) return fallbackDouble(start);
+
+        double v = mantissa;
+        if (exp10 == 0) { /* egész */ }
+        else if (exp10 > 0 && exp10 < POW10.length) v *= POW10[exp10];
+        else if (exp10 < 0 && -exp10 < POW10.length) v /= POW10[-exp10];
+        else v = v * Math.pow(10, exp10);
+        return neg ? -v : v;
+    }
+
+    // nan / inf és egyéb különleges alakok
+    private double fallbackDouble(long start) throws IOException {
+        long cur = position();
+        if (cur != start) skip(start - cur);
+        StringBuilder sb = new StringBuilder();
+        while (hasMore()) {
+            byte b = window.get(pos);
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r') break;
+            sb.append((char) b);
+            pos++;
+        }
+        try {
+            return Double.parseDouble(sb.toString());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number '" + sb + "' at byte " + start);
+        }
+    }
+}
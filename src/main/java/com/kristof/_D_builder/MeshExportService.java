@@ -0,0 +1,369 @@
+package com.kristof._D_builder;
+
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Háló export (bináris STL, OBJ, GLB) közvetlenül egy NIO csatornába.
+// A vonalakból hengeres rudak lesznek (sugár = thickness * rodScale / 2), a lapok háromszögelése a FaceGeometryCache-ből jön.
+// A teljes fájl sosem épül fel a memóriában: darabonként generálunk és egy fix méretű pufferen át írunk.
+@Service
+public class MeshExportService {
+
+    public enum Format { STL, OBJ, GLB }
+
+    public record Options(int segments, double rodScale) {
+        public Options {
+            segments = Math.max(3, Math.min(64, segments));
+            if (!(rodScale > 0)) rodScale = 0.02;
+        }
+    }
+
+    private final WorldStateService worldStateService;
+
+    public MeshExportService(WorldStateService worldStateService) {
+        this.worldStateService = worldStateService;
+    }
+
+    public static Format parseFormat(String name) {
+        if (name == null) return null;
+        switch (name.trim().toLowerCase()) {
+            case "stl": return Format.STL;
+            case "obj": return Format.OBJ;
+            case "glb": case "gltf": return Format.GLB;
+            default: return null;
+        }
+    }
+
+    public static String contentType(Format format) {
+        switch (format) {
+            case STL: return "model/stl";
+            case OBJ: return "model/obj";
+            default: return "model/gltf-binary";
+        }
+    }
+
+    public void export(Format format, WritableByteChannel channel, Options options) throws IOException {
+        WorldState state = worldStateService.getWorldState();
+        List<FaceGeometry> faceGeometries = worldStateService.getFaceGeometries(state.faces(), state.points());
+        MeshSource source = new MeshSource(state, faceGeometries, options);
+        try (ChannelWriter out = new ChannelWriter(channel)) {
+            switch (format) {
+                case STL: writeStl(source, out); break;
+                case OBJ: writeObj(source, out); break;
+                case GLB: writeGlb(source, out); break;
+            }
+        }
+    }
+
+    // ==========================
+    // GEOMETRIA (egy snapshotból, többször bejárható)
+    // ==========================
+
+    static final class MeshSource {
+        private final Options options;
+        private final double[] rods;       // ax, ay, az, bx, by, bz, radius
+        private final int rodCount;
+        private final List<double[]> faces = new ArrayList<>(); // x,y,z,... a lap pontjai sorban
+        private final List<int[]> faceTriangles = new ArrayList<>(); // a FaceGeometryCache háromszögelése
+        private final long triangleCount;
+
+        MeshSource(WorldState state, List<FaceGeometry> faceGeometries, Options options) {
+            this.options = options;
+            Map<Integer, Point3D> byId = new HashMap<>(state.points().size() * 2);
+            for (Point3D p : state.points()) byId.put(p.id(), p);
+
+            double[] r = new double[state.connections().size() * 7];
+            int n = 0;
+            for (Connection c : state.connections()) {
+                Point3D a = byId.get(c.fromId()), b = byId.get(c.toId());
+                if (a == null || b == null) continue;
+                double dx = b.x() - a.x(), dy = b.y() - a.y(), dz = b.z() - a.z();
+                if (dx * dx + dy * dy + dz * dz == 0) continue;
+                int o = n * 7;
+                r[o] = a.x(); r[o + 1] = a.y(); r[o + 2] = a.z();
+                r[o + 3] = b.x(); r[o + 4] = b.y(); r[o + 5] = b.z();
+                r[o + 6] = Math.max(1e-6, c.thickness() * options.rodScale() / 2.0);
+                n++;
+            }
+            this.rods = r;
+            this.rodCount = n;
+
+            long tris = (long) n * rodTriangles(options.segments());
+            for (int fi = 0; fi < state.faces().size(); fi++) {
+                List<Integer> ids = state.faces().get(fi).pointIds();
+                FaceGeometry geometry = faceGeometries.get(fi);
+                if (ids == null || ids.size() < 3 || geometry == null) continue;
+                double[] coords = new double[ids.size() * 3];
+                boolean complete = true;
+                for (int i = 0; i < ids.size(); i++) {
+                    Point3D p = byId.get(ids.get(i));
+                    if (p == null) { complete = false; break; }
+                    coords[3 * i] = p.x(); coords[3 * i + 1] = p.y(); coords[3 * i + 2] = p.z();
+                }
+                if (!complete) continue;
+                faces.add(coords);
+                faceTriangles.add(geometry.triangles());
+                tris += geometry.triangleCount();
+            }
+            this.triangleCount = tris;
+        }
+
+        static int rodTriangles(int s) {
+            return 2 * s + 2 * (s - 2);
+        }
+
+        long triangleCount() { return triangleCount; }
+
+        void emit(MeshSink sink) throws IOException {
+            int s = options.segments();
+            double[] cos = new double[s], sin = new double[s];
+            for (int i = 0; i < s; i++) {
+                cos[i] = Math.cos(2 * Math.PI * i / s);
+                sin[i] = Math.sin(2 * Math.PI * i / s);
+            }
+            for (int k = 0; k < rodCount; k++) emitRod(sink, k * 7, s, cos, sin);
+            for (int i = 0; i < faces.size(); i++) emitFace(sink, faces.get(i), faceTriangles.get(i));
+        }
+
+        private void emitRod(MeshSink sink, int o, int s, double[] cos, double[] sin) throws IOException {
+            double ax = rods[o], ay = rods[o + 1], az = rods[o + 2];
+            double bx = rods[o + 3], by = rods[o + 4], bz = rods[o + 5], radius = rods[o + 6];
+
+            // Tengely és két rá merőleges egységvektor (u, v)
+            double dx = bx - ax, dy = by - ay, dz = bz - az;
+            double len = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            dx /= len; dy /= len; dz /= len;
+            // u = d x h, ahol h az X vagy (ha d majdnem X irányú) az Y tengely
+            double hx = Math.abs(dx) < 0.9 ? 1 : 0, hy = 1 - hx;
+            double ux = -dz * hy, uy = dz * hx, uz = dx * hy - dy * hx;
+            double ul = Math.sqrt(ux * ux + uy * uy + uz * uz);
+            ux /= ul; uy /= ul; uz /= ul;
+            double vx = dy * uz - dz * uy, vy = dz * ux - dx * uz, vz = dx * uy - dy * ux;
+
+            sink.beginPart();
+            for (int i = 0; i < s; i++) {
+                double ox = radius * (cos[i] * ux + sin[i] * vx);
+                double oy = radius * (cos[i] * uy + sin[i] * vy);
+                double oz = radius * (cos[i] * uz + sin[i] * vz);
+                sink.vertex(ax + ox, ay + oy, az + oz); // 2i     : alsó gyűrű
+                sink.vertex(bx + ox, by + oy, bz + oz); // 2i + 1 : felső gyűrű
+            }
+            for (int i = 0; i < s; i++) {
+                int j = (i + 1) % s;
+                int a0 = 2 * i, a1 = 2 * j, b0 = 2 * i + 1, b1 = 2 * j + 1;
+                sink.triangle(a0, a1, b1);
+                sink.triangle(a0, b1, b0);
+            }
+            // Végzáró lapok (legyező)
+            for (int i = 1; i < s - 1; i++) {
+                sink.triangle(0, 2 * (i + 1), 2 * i);
+                sink.triangle(1, 2 * i + 1, 2 * (i + 1) + 1);
+            }
+            sink.endPart();
+        }
+
+        private void emitFace(MeshSink sink, double[] f, int[] triangles) throws IOException {
+            int n = f.length / 3;
+            sink.beginPart();
+            for (int i = 0; i < n; i++) sink.vertex(f[3 * i], f[3 * i + 1], f[3 * i + 2]);
+            for (int t = 0; t < triangles.length; t += 3) sink.triangle(triangles[t], triangles[t + 1], triangles[t + 2]);
+            sink.endPart();
+        }
+    }
+
+    // ==========================
+    // STL (bináris)
+    // ==========================
+
+    private void writeStl(MeshSource source, ChannelWriter out) throws IOException {
+        byte[] header = new byte[80];
+        byte[] title = "3D-builder export".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(title, 0, header, 0, title.length);
+        out.ensure(84);
+        out.buffer.put(header);
+        out.buffer.putInt((int) Math.min(source.triangleCount(), 0xFFFFFFFFL));
+
+        source.emit(new PartBufferSink() {
+            @Override
+            public void triangle(int a, int b, int c) throws IOException {
+                double ax = x(a), ay = y(a), az = z(a);
+                double e1x = x(b) - ax, e1y = y(b) - ay, e1z = z(b) - az;
+                double e2x = x(c) - ax, e2y = y(c) - ay, e2z = z(c) - az;
+                double nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+                double nl = Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if (nl > 0) { nx /= nl; ny /= nl; nz /= nl; }
+
+                out.ensure(50);
+                ByteBuffer buf = out.buffer;
+                buf.putFloat((float) nx).putFloat((float) ny).putFloat((float) nz);
+                putVertex(buf, a); putVertex(buf, b); putVertex(buf, c);
+                buf.putShort((short) 0);
+            }
+        });
+    }
+
+    // ==========================
+    // OBJ (indexelt, darabonként folyamatosan)
+    // ==========================
+
+    private void writeObj(MeshSource source, ChannelWriter out) throws IOException {
+        out.ascii("# 3D-builder export\n");
+        out.ascii("o world\n");
+        source.emit(new MeshSink() {
+            long base = 1;   // OBJ indexek 1-től
+            int partCount;
+
+            @Override public void beginPart() { partCount = 0; }
+
+            @Override
+            public int vertex(double x, double y, double z) throws IOException {
+                out.ascii("v " + (float) x + " " + (float) y + " " + (float) z + "\n");
+                return partCount++;
+            }
+
+            @Override
+            public void triangle(int a, int b, int c) throws IOException {
+                out.ascii("f " + (base + a) + " " + (base + b) + " " + (base + c) + "\n");
+            }
+
+            @Override public void endPart() { base += partCount; }
+        });
+    }
+
+    // ==========================
+    // GLB (glTF 2.0 bináris, indexeletlen háromszögek)
+    // ==========================
+
+    private void writeGlb(MeshSource source, ChannelWriter out) throws IOException {
+        long vertexCount = source.triangleCount() * 3;
+        long binLength = vertexCount * 12;
+        if (binLength > Integer.MAX_VALUE - 4096) throw new IOException("Mesh too large for GLB (max 2 GB).");
+
+        // 1. menet: pontos min/max a POSITION accessorhoz (a glTF megköveteli)
+        float[] bounds = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+        if (vertexCount > 0) {
+            source.emit(new MeshSink() {
+                @Override public void beginPart() {}
+                @Override public void endPart() {}
+                @Override public void triangle(int a, int b, int c) {}
+                @Override
+                public int vertex(double x, double y, double z) {
+                    float fx = (float) x, fy = (float) y, fz = (float) z;
+                    bounds[0] = Math.min(bounds[0], fx); bounds[1] = Math.min(bounds[1], fy); bounds[2] = Math.min(bounds[2], fz);
+                    bounds[3] = Math.max(bounds[3], fx); bounds[4] = Math.max(bounds[4], fy); bounds[5] = Math.max(bounds[5], fz);
+                    return 0;
+                }
+            });
+        }
+
+        String json;
+        if (vertexCount > 0) {
+            json = "{\"asset\":{\"version\":\"2.0\",\"generator\":\"3D-builder\"},\"scene\":0,"
+                    + "\"scenes\":[{\"nodes\":[0]}],\"nodes\":[{\"mesh\":0}],"
+                    + "\"meshes\":[{\"primitives\":[{\"attributes\":{\"POSITION\":0},\"mode\":4}]}],"
+                    + "\"accessors\":[{\"bufferView\":0,\"componentType\":5126,\"count\":" + vertexCount + ",\"type\":\"VEC3\","
+                    + "\"min\":[" + bounds[0] + "," + bounds[1] + "," + bounds[2] + "],"
+                    + "\"max\":[" + bounds[3] + "," + bounds[4] + "," + bounds[5] + "]}],"
+                    + "\"bufferViews\":[{\"buffer\":0,\"byteLength\":" + binLength + ",\"target\":34962}],"
+                    + "\"buffers\":[{\"byteLength\":" + binLength + "}]}";
+        } else {
+            json = "{\"asset\":{\"version\":\"2.0\",\"generator\":\"3D-builder\"},\"scene\":0,\"scenes\":[{\"nodes\":[]}]}";
+        }
+        byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        int jsonPadded = (jsonBytes.length + 3) & ~3;
+        long total = 12 + 8 + jsonPadded + (vertexCount > 0 ? 8 + binLength : 0);
+
+        out.ensure(20);
+        out.buffer.putInt(0x46546C67).putInt(2).putInt((int) total); // "glTF", verzió 2
+        out.buffer.putInt(jsonPadded).putInt(0x4E4F534A);             // "JSON"
+        out.bytes(jsonBytes);
+        for (int i = jsonBytes.length; i < jsonPadded; i++) out.ascii(" ");
+        if (vertexCount == 0) return;
+
+        out.ensure(8);
+        out.buffer.putInt((int) binLength).putInt(0x004E4942);        // "BIN\0"
+
+        // 2. menet: a csúcsok kiírása
+        source.emit(new PartBufferSink() {
+            @Override
+            public void triangle(int a, int b, int c) throws IOException {
+                out.ensure(36);
+                putVertex(out.buffer, a); putVertex(out.buffer, b); putVertex(out.buffer, c);
+            }
+        });
+    }
+
+    // A darab csúcsait egy kis, újrahasznosított tömbben tartja (STL és GLB indexeletlen írásához)
+    private abstract static class PartBufferSink implements MeshSink {
+        private double[] v = new double[3 * 256];
+        private int count;
+
+        @Override public void beginPart() { count = 0; }
+        @Override public void endPart() {}
+
+        @Override
+        public int vertex(double x, double y, double z) {
+            if (3 * count + 3 > v.length) v = Arrays.copyOf(v, v.length * 2);
+            v[3 * count] = x; v[3 * count + 1] = y; v[3 * count + 2] = z;
+            return count++;
+        }
+
+        double x(int i) { return v[3 * i]; }
+        double y(int i) { return v[3 * i + 1]; }
+        double z(int i) { return v[3 * i + 2]; }
+
+        void putVertex(ByteBuffer buf, int i) {
+            buf.putFloat((float) v[3 * i]).putFloat((float) v[3 * i + 1]).putFloat((float) v[3 * i + 2]);
+        }
+    }
+
+    // Fix méretű (direct, little-endian) puffer, ami teli állapotban a csatornába ürül
+    static final class ChannelWriter implements AutoCloseable {
+        private static final int SIZE = 1 << 16;
+        private final WritableByteChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        ChannelWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        void bytes(byte[] data) throws IOException {
+            int off = 0;
+            while (off < data.length) {
+                if (!buffer.hasRemaining()) flush();
+                int n = Math.min(buffer.remaining(), data.length - off);
+                buffer.put(data, off, n);
+                off += n;
+            }
+        }
+
+        // Csak ASCII szöveghez (számok, kulcsszavak)
+        void ascii(String s) throws IOException {
+            int len = s.length();
+            if (len > SIZE) { bytes(s.getBytes(StandardCharsets.US_ASCII)); return; }
+            ensure(len);
+            for (int i = 0; i < len; i++) buffer.put((byte) s.charAt(i));
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
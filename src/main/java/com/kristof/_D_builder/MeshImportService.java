@@ -0,0 +1,462 @@
+package com.kristof._D_builder;
+
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// OBJ és PLY (ASCII / bináris) import memóriába képzett fájlból.
+// Az OBJ párhuzamosan, sorhatárra igazított darabokban olvasódik; bináris PLY-nál a csúcsok
+// index-tartományonként párhuzamosan. Az eredmény egyetlen lépésben (egy undo, egy broadcast) kerül a világba,
+// a pontok folytonos ID-t kapnak a nextId-től.
+@Service
+public class MeshImportService {
+
+    public enum Format { OBJ, PLY }
+
+    public record Options(String pointColor, String edgeColor, double thickness, String faceColor,
+                          boolean deriveEdges, String collection) {}
+
+    public record ImportResult(int firstId, int points, int faces, int connections) {}
+
+    private static final long MIN_CHUNK = 1L << 20;
+    private static final long MAX_CHUNK = 512L << 20;
+
+    private final WorldStateService worldStateService;
+
+    public MeshImportService(WorldStateService worldStateService) {
+        this.worldStateService = worldStateService;
+    }
+
+    public static Format parseFormat(String name) {
+        if (name == null) return null;
+        String n = name.trim().toLowerCase();
+        if (n.endsWith("obj")) return Format.OBJ;
+        if (n.endsWith("ply")) return Format.PLY;
+        return null;
+    }
+
+    // user: a szerkesztő (Undo / verzió bélyeg), null = névtelen
+    public ImportResult importFile(Path file, Format format, Options options, String user) throws IOException {
+        ParsedMesh mesh;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mesh = format == Format.OBJ ? parseObj(channel) : parsePly(channel);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        mesh.dropInvalidFaces();
+
+        int[] edges = collectEdges(mesh, options.deriveEdges());
+        ProceduralGenerator.Geometry geometry = ProceduralGenerator.Geometry.bulk(
+                mesh.coords, mesh.vertexCount, options.pointColor(),
+                edges, edges.length / 2, options.edgeColor(), options.thickness(),
+                mesh.faceOffsets.toArray(), mesh.faceIndices.toArray(), mesh.faceCount(), options.faceColor());
+
+        // Egy kötegként: a többi íróval sorban fut, egy undo lépés (a felhasználóé) és egy broadcast
+        int firstId;
+        try {
+            firstId = worldStateService.runAs(user, () -> worldStateService.runBatch(
+                    () -> worldStateService.addGeneratedGeometry(geometry, options.collection())));
+        } catch (RuntimeException | IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return new ImportResult(firstId, mesh.vertexCount, mesh.faceCount(), edges.length / 2);
+    }
+
+    // ==========================
+    // KÖZÖS SEGÉDEK
+    // ==========================
+
+    static final class IntList {
+        int[] data = new int[16];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int[] toArray() { return Arrays.copyOf(data, size); }
+    }
+
+    static final class DoubleList {
+        double[] data = new double[48];
+        int size;
+
+        void add(double v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+    }
+
+    // Beolvasott háló 0-alapú, globális csúcsindexekkel
+    static final class ParsedMesh {
+        double[] coords = new double[0];
+        int vertexCount;
+        IntList faceOffsets = new IntList();
+        IntList faceIndices = new IntList();
+        IntList lineEdges = new IntList(); // OBJ "l" sorok (pontpárok)
+
+        ParsedMesh() { faceOffsets.add(0); }
+
+        int faceCount() { return faceOffsets.size - 1; }
+
+        // A hibás indexű vagy 3-nál kevesebb csúcsú lapok kiszűrése
+        void dropInvalidFaces() {
+            IntList offsets = new IntList(), indices = new IntList();
+            offsets.add(0);
+            for (int f = 0; f < faceCount(); f++) {
+                int from = faceOffsets.data[f], to = faceOffsets.data[f + 1];
+                boolean ok = to - from >= 3;
+                for (int i = from; ok && i < to; i++) ok = faceIndices.data[i] >= 0 && faceIndices.data[i] < vertexCount;
+                if (!ok) continue;
+                for (int i = from; i < to; i++) indices.add(faceIndices.data[i]);
+                offsets.add(indices.size);
+            }
+            faceOffsets = offsets;
+            faceIndices = indices;
+
+            IntList lines = new IntList();
+            for (int i = 0; i + 1 < lineEdges.size; i += 2) {
+                int a = lineEdges.data[i], b = lineEdges.data[i + 1];
+                if (a >= 0 && b >= 0 && a < vertexCount && b < vertexCount && a != b) { lines.add(a); lines.add(b); }
+            }
+            lineEdges = lines;
+        }
+    }
+
+    // Egyedi, irányítatlan élek: lapok oldalai (ha kérték) + OBJ vonalak; rendezett long kulcsokkal, HashSet nélkül
+    private int[] collectEdges(ParsedMesh mesh, boolean fromFaces) {
+        int faceEdges = fromFaces ? mesh.faceIndices.size : 0;
+        long[] keys = new long[faceEdges + mesh.lineEdges.size / 2];
+        int n = 0;
+        if (fromFaces) {
+            for (int f = 0; f < mesh.faceCount(); f++) {
+                int from = mesh.faceOffsets.data[f], to = mesh.faceOffsets.data[f + 1];
+                for (int i = from; i < to; i++) {
+                    int a = mesh.faceIndices.data[i];
+                    int b = mesh.faceIndices.data[i + 1 < to ? i + 1 : from];
+                    if (a != b) keys[n++] = edgeKey(a, b);
+                }
+            }
+        }
+        for (int i = 0; i + 1 < mesh.lineEdges.size; i += 2) {
+            keys[n++] = edgeKey(mesh.lineEdges.data[i], mesh.lineEdges.data[i + 1]);
+        }
+        keys = Arrays.copyOf(keys, n);
+        Arrays.parallelSort(keys);
+
+        int[] edges = new int[2 * n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && keys[i] == keys[i - 1]) continue;
+            edges[2 * count] = (int) (keys[i] >>> 32);
+            edges[2 * count + 1] = (int) keys[i];
+            count++;
+        }
+        return Arrays.copyOf(edges, 2 * count);
+    }
+
+    private static long edgeKey(int a, int b) {
+        int lo = Math.min(a, b), hi = Math.max(a, b);
+        return ((long) lo << 32) | (hi & 0xFFFFFFFFL);
+    }
+
+    // ==========================
+    // OBJ
+    // ==========================
+
+    // Egy darab eredménye. Az abszolút indexek 1-alapúan (pozitívan) tárolódnak; a relatív (negatív) OBJ
+    // indexek a darab elejéhez képesti lokális indexként, RELATIVE_BIAS-szal eltolva, és az összefésüléskor oldódnak fel
+    private static final int RELATIVE_BIAS = 1 << 30;
+
+    private static final class ObjChunk {
+        final DoubleList coords = new DoubleList();
+        final IntList faceSizes = new IntList();
+        final IntList faceRefs = new IntList();
+        final IntList lineRefs = new IntList();
+        int vertexBase;
+    }
+
+    private ParsedMesh parseObj(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<long[]> ranges = splitAtLines(channel, size);
+
+        List<ObjChunk> chunks = ranges.parallelStream().map(r -> {
+            try { return parseObjChunk(channel, r[0], r[1]); }
+            catch (IOException e) { throw new UncheckedIOException(e); }
+        }).toList();
+
+        // Összefésülés: csúcsok egymás után, indexek feloldása
+        ParsedMesh mesh = new ParsedMesh();
+        int total = 0;
+        for (ObjChunk c : chunks) { c.vertexBase = total; total += c.coords.size / 3; }
+        mesh.vertexCount = total;
+        mesh.coords = new double[total * 3];
+        for (ObjChunk c : chunks) {
+            System.arraycopy(c.coords.data, 0, mesh.coords, c.vertexBase * 3, c.coords.size);
+            int ref = 0;
+            for (int f = 0; f < c.faceSizes.size; f++) {
+                int n = c.faceSizes.data[f];
+                for (int i = 0; i < n; i++) mesh.faceIndices.add(resolveObj(c.faceRefs.data[ref++], c.vertexBase));
+                mesh.faceOffsets.add(mesh.faceIndices.size);
+            }
+            for (int i = 0; i < c.lineRefs.size; i++) mesh.lineEdges.add(resolveObj(c.lineRefs.data[i], c.vertexBase));
+        }
+        return mesh;
+    }
+
+    private static int resolveObj(int ref, int vertexBase) {
+        if (ref > 0) return ref - 1;
+        if (ref == 0) return -1; // érvénytelen, a dropInvalidFaces kiszűri
+        return vertexBase + ref + RELATIVE_BIAS;
+    }
+
+    // A fájlt kb. egyenlő, sorhatáron kezdődő és végződő darabokra vágja
+    private List<long[]> splitAtLines(FileChannel channel, long size) throws IOException {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        long chunk = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / (cpus * 4L) + 1));
+        List<long[]> ranges = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + chunk);
+            // A darab végét a következő '\n' utánra toljuk
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                if (read <= 0) { end = size; break; }
+                int nl = -1;
+                for (int i = 0; i < read; i++) if (probe.get(i) == '\n') { nl = i; break; }
+                if (nl >= 0) { end += nl + 1; break; }
+                end += read;
+            }
+            ranges.add(new long[] { start, Math.min(end, size) });
+            start = end;
+        }
+        return ranges;
+    }
+
+    private ObjChunk parseObjChunk(FileChannel channel, long start, long end) throws IOException {
+        ObjChunk c = new ObjChunk();
+        if (end <= start) return c;
+        MappedReader r = new MappedReader(channel, start, end, ByteOrder.LITTLE_ENDIAN);
+        int localVertices = 0;
+        while (r.hasMore()) {
+            r.skipBlanks();
+            if (!r.hasMore()) break;
+            byte b = r.next();
+            byte after = r.hasMore() ? r.peek() : (byte) '\n';
+            boolean keyword = after == ' ' || after == '\t';
+
+            if (b == 'v' && keyword) {
+                c.coords.add(r.parseDouble());
+                c.coords.add(r.parseDouble());
+                c.coords.add(r.parseDouble());
+                localVertices++;
+            } else if ((b == 'f' || b == 'l') && keyword) {
+                int count = 0, prev = 0;
+                while (!r.atLineEnd()) {
+                    long idx = r.parseLong();
+                    r.skipToken(); // "/vt/vn" rész
+                    int ref = idx > 0 ? (int) idx : idx < 0 ? localVertices + (int) idx - RELATIVE_BIAS : 0;
+                    if (b == 'f') {
+                        c.faceRefs.add(ref);
+                    } else if (count > 0) {
+                        // Vonal: egymást követő pontpárok
+                        c.lineRefs.add(prev);
+                        c.lineRefs.add(ref);
+                    }
+                    prev = ref;
+                    count++;
+                }
+                if (b == 'f') c.faceSizes.add(count);
+            }
+            r.skipLine();
+        }
+        return c;
+    }
+
+    // ==========================
+    // PLY
+    // ==========================
+
+    private record PlyProperty(String name, String type, String countType, boolean list) {}
+
+    private static final class PlyElement {
+        final String name;
+        final long count;
+        final List<PlyProperty> properties = new ArrayList<>();
+
+        PlyElement(String name, long count) { this.name = name; this.count = count; }
+
+        // Fix rekordméret bájtban, vagy -1 ha van lista tulajdonság
+        int stride() {
+            int s = 0;
+            for (PlyProperty p : properties) {
+                if (p.list()) return -1;
+                s += typeSize(p.type());
+            }
+            return s;
+        }
+    }
+
+    private ParsedMesh parsePly(FileChannel channel) throws IOException {
+        // 1. Fejléc (ASCII, "end_header"-ig)
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(channel.size(), 1 << 16));
+        channel.read(head, 0);
+        String text = new String(head.array(), 0, head.position(), StandardCharsets.ISO_8859_1);
+        int endHeader = text.indexOf("end_header");
+        if (!text.startsWith("ply") || endHeader < 0) throw new IOException("Not a PLY file.");
+        int bodyStart = text.indexOf('\n', endHeader) + 1;
+
+        String format = null;
+        List<PlyElement> elements = new ArrayList<>();
+        for (String line : text.substring(0, endHeader).split("\r?\n")) {
+            String[] t = line.trim().split("\\s+");
+            if (t.length == 0) continue;
+            switch (t[0]) {
+                case "format": format = t[1]; break;
+                case "element": elements.add(new PlyElement(t[1], Long.parseLong(t[2]))); break;
+                case "property":
+                    if (elements.isEmpty()) throw new IOException("PLY property before element.");
+                    if (t[1].equals("list")) elements.get(elements.size() - 1).properties.add(new PlyProperty(t[4], t[3], t[2], true));
+                    else elements.get(elements.size() - 1).properties.add(new PlyProperty(t[2], t[1], null, false));
+                    break;
+                default: break;
+            }
+        }
+        if (format == null) throw new IOException("PLY format missing.");
+        boolean ascii = format.equals("ascii");
+        ByteOrder order = format.equals("binary_big_endian") ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+
+        // 2. Elemek sorban
+        ParsedMesh mesh = new ParsedMesh();
+        long size = channel.size();
+        long offset = bodyStart;
+        MappedReader reader = new MappedReader(channel, offset, size, order);
+        for (PlyElement e : elements) {
+            boolean isVertex = e.name.equals("vertex");
+            boolean isFace = e.name.equals("face");
+            if (e.count > Integer.MAX_VALUE / 3) throw new IOException("Too many " + e.name + " elements.");
+
+            if (isVertex && !ascii && e.stride() > 0) {
+                // Fix rekordméret: index-tartományonként párhuzamosan
+                long from = reader.position();
+                mesh.coords = readBinaryVerticesParallel(channel, from, e, order);
+                mesh.vertexCount = (int) e.count;
+                reader.skip(e.count * e.stride());
+                continue;
+            }
+
+            if (isVertex) {
+                mesh.coords = new double[(int) e.count * 3];
+                mesh.vertexCount = (int) e.count;
+            }
+            int ix = propertyIndex(e, "x"), iy = propertyIndex(e, "y"), iz = propertyIndex(e, "z");
+            for (long k = 0; k < e.count; k++) {
+                for (int p = 0; p < e.properties.size(); p++) {
+                    PlyProperty prop = e.properties.get(p);
+                    if (prop.list()) {
+                        int n = (int) readScalar(reader, prop.countType(), ascii);
+                        boolean indices = isFace && (prop.name().equals("vertex_indices") || prop.name().equals("vertex_index"));
+                        for (int i = 0; i < n; i++) {
+                            double v = readScalar(reader, prop.type(), ascii);
+                            if (indices) mesh.faceIndices.add((int) v);
+                        }
+                        if (indices) mesh.faceOffsets.add(mesh.faceIndices.size);
+                    } else {
+                        double v = readScalar(reader, prop.type(), ascii);
+                        if (isVertex) {
+                            if (p == ix) mesh.coords[(int) k * 3] = v;
+                            else if (p == iy) mesh.coords[(int) k * 3 + 1] = v;
+                            else if (p == iz) mesh.coords[(int) k * 3 + 2] = v;
+                        }
+                    }
+                }
+                if (ascii) reader.skipLine();
+            }
+        }
+        return mesh;
+    }
+
+    private double[] readBinaryVerticesParallel(FileChannel channel, long from, PlyElement e, ByteOrder order) {
+        int stride = e.stride();
+        int count = (int) e.count;
+        double[] coords = new double[count * 3];
+        int[] offsets = new int[3];
+        String[] types = new String[3];
+        String[] names = { "x", "y", "z" };
+        for (int a = 0; a < 3; a++) {
+            int off = 0;
+            offsets[a] = -1;
+            for (PlyProperty p : e.properties) {
+                if (p.name().equals(names[a])) { offsets[a] = off; types[a] = p.type(); break; }
+                off += typeSize(p.type());
+            }
+        }
+
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int perTask = (int) Math.max(1, Math.min(MAX_CHUNK / stride, Math.max(MIN_CHUNK / stride, (long) count / (cpus * 4L) + 1)));
+        List<int[]> tasks = new ArrayList<>();
+        for (int start = 0; start < count; start += perTask) tasks.add(new int[] { start, Math.min(count, start + perTask) });
+
+        tasks.parallelStream().forEach(t -> {
+            try {
+                MappedReader r = new MappedReader(channel, from + (long) t[0] * stride, from + (long) t[1] * stride, order);
+                for (int k = t[0]; k < t[1]; k++) {
+                    long rec = from + (long) k * stride;
+                    for (int a = 0; a < 3; a++) {
+                        if (offsets[a] < 0) continue;
+                        r.skip(rec + offsets[a] - r.position());
+                        coords[k * 3 + a] = readScalar(r, types[a], false);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        return coords;
+    }
+
+    private static int propertyIndex(PlyElement e, String name) {
+        for (int i = 0; i < e.properties.size(); i++) {
+            if (!e.properties.get(i).list() && e.properties.get(i).name().equals(name)) return i;
+        }
+        return -1;
+    }
+
+    private static int typeSize(String type) {
+        switch (type) {
+            case "char": case "int8": case "uchar": case "uint8": return 1;
+            case "short": case "int16": case "ushort": case "uint16": return 2;
+            case "int": case "int32": case "uint": case "uint32": case "float": case "float32": return 4;
+            case "double": case "float64": return 8;
+            default: throw new IllegalArgumentException("Unknown PLY type: " + type);
+        }
+    }
+
+    private static double readScalar(MappedReader r, String type, boolean ascii) throws IOException {
+        if (ascii) return r.parseDouble();
+        switch (type) {
+            case "char": case "int8": return r.readByte();
+            case "uchar": case "uint8": return r.readUByte();
+            case "short": case "int16": return r.readShort();
+            case "ushort": case "uint16": return r.readUShort();
+            case "int": case "int32": return r.readInt();
+            case "uint": case "uint32": return r.readUInt();
+            case "float": case "float32": return r.readFloat();
+            case "double": case "float64": return r.readDouble();
+            default: throw new IOException("Unknown PLY type: " + type);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.kristof._D_builder;
+
+import java.io.IOException;
+
+// Háló fogadó: a geometria "darabonként" (egy rúd, egy lap) érkezik.
+// A vertex() a darabon belüli (0-tól induló) indexet adja vissza, a triangle() ezekre hivatkozik.
+public interface MeshSink {
+
+    void beginPart() throws IOException;
+
+    int vertex(double x, double y, double z) throws IOException;
+
+    void triangle(int a, int b, int c) throws IOException;
+
+    void endPart() throws IOException;
+}
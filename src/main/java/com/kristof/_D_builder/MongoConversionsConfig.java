@@ -0,0 +1,110 @@
+package com.kristof._D_builder;
+
+import org.bson.Document;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A projekt dokumentumba ágyazott világ (ProjectData.worldState) csak a verziózás előtti mentésekben van.
+// Az új mentések a ProjectVersion manifesztbe és a tartalom szerint címzett darabokba (ProjectChunk) kerülnek,
+// és a darabok már a tömör oszlopos kódolást használják (ColumnarSnapshot törzs + deflate). Egy külön tömör
+// alak a beágyazott mezőhöz ugyanezt duplikálná, ezért itt csak olvasó van a régi, al-dokumentumos alakhoz.
+// Az ilyen projektet a ProjectStorageService az első betöltéskor verzióvá alakítja, és a beágyazott világot törli.
+@Configuration
+public class MongoConversionsConfig {
+
+    @Bean
+    public MongoCustomConversions mongoCustomConversions() {
+        return new MongoCustomConversions(List.of(new WorldStateReader()));
+    }
+
+    @ReadingConverter
+    static class WorldStateReader implements Converter<Document, WorldState> {
+        @Override
+        public WorldState convert(Document d) {
+            return readLegacy(d);
+        }
+    }
+
+    // ==========================
+    // RÉGI ALAK (beágyazott dokumentumok)
+    // ==========================
+
+    static WorldState readLegacy(Document d) {
+        List<Point3D> p = new ArrayList<>();
+        for (Document doc : docs(d, "points")) p.add(readPoint(doc));
+        List<Connection> c = new ArrayList<>();
+        for (Document doc : docs(d, "connections")) c.add(readConnection(doc));
+        List<Face> f = new ArrayList<>();
+        for (Document doc : docs(d, "faces")) f.add(readFace(doc));
+        List<WorldStateService.TimelineClip> clips = new ArrayList<>();
+        for (Document doc : docs(d, "clips")) clips.add(readClip(doc));
+
+        Map<String, List<Integer>> collections = new HashMap<>();
+        Object raw = d.get("collections");
+        if (raw instanceof Document coll) {
+            for (Map.Entry<String, Object> e : coll.entrySet()) {
+                List<Integer> ids = new ArrayList<>();
+                if (e.getValue() instanceof List<?> list) for (Object o : list) ids.add(toInt(o));
+                collections.put(e.getKey(), ids);
+            }
+        }
+        return new WorldState(p, c, f, collections, toDouble(d.get("currentTime")), d.getBoolean("isPlaying", false), clips);
+    }
+
+    private static List<Document> docs(Document d, String key) {
+        return d.getList(key, Document.class, List.of());
+    }
+
+    private static WorldStateService.TimelineClip readClip(Document d) {
+        WorldStateService.TimelineClip t = new WorldStateService.TimelineClip();
+        Object id = d.containsKey("_id") ? d.get("_id") : d.get("id");
+        t.id = id != null ? id.toString() : null;
+        t.name = d.getString("name");
+        t.targetId = toInt(d.get("targetId"));
+        t.type = d.getString("type");
+        t.startTime = toDouble(d.get("startTime"));
+        t.endTime = toDouble(d.get("endTime"));
+        t.sx = toDouble(d.get("sx")); t.sy = toDouble(d.get("sy")); t.sz = toDouble(d.get("sz"));
+        t.ex = toDouble(d.get("ex")); t.ey = toDouble(d.get("ey")); t.ez = toDouble(d.get("ez"));
+        if (d.getString("easing") != null) t.easing = d.getString("easing");
+        t.px = toDouble(d.get("px")); t.py = toDouble(d.get("py")); t.pz = toDouble(d.get("pz"));
+        t.bx = toDouble(d.get("bx")); t.by = toDouble(d.get("by")); t.bz = toDouble(d.get("bz"));
+        t.hasBase = d.getBoolean("hasBase", false);
+        return t;
+    }
+
+
+    private static Point3D readPoint(Document d) {
+        // Spring Data a beágyazott "id" mezőt is "_id"-ként írta
+        Object id = d.containsKey("_id") ? d.get("_id") : d.get("id");
+        return new Point3D(toInt(id), toDouble(d.get("x")), toDouble(d.get("y")), toDouble(d.get("z")), d.getString("color"));
+    }
+
+    private static Connection readConnection(Document d) {
+        return new Connection(toInt(d.get("fromId")), toInt(d.get("toId")), d.getString("color"),
+                toDouble(d.get("thickness")), d.getString("materialName"), toDouble(d.get("pricePerMeter")));
+    }
+
+    private static Face readFace(Document d) {
+        List<?> raw = d.getList("pointIds", Object.class, List.of());
+        List<Integer> ids = new ArrayList<>(raw.size());
+        for (Object o : raw) ids.add(toInt(o));
+        return new Face(ids, d.getString("color"));
+    }
+
+    private static int toInt(Object o) {
+        return o instanceof Number n ? n.intValue() : 0;
+    }
+
+    private static double toDouble(Object o) {
+        return o instanceof Number n ? n.doubleValue() : 0;
+    }
+}
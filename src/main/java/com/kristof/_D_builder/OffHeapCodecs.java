@@ -0,0 +1,120 @@
+package com.kristof._D_builder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A pont / rúd / lap sorok bináris alakja az OffHeapList darabjaiban (natív bájtsorrend, igazított double-ök).
+// A szín és az anyag palettabeli index (Palette), így minden sor fix szélességű.
+final class OffHeapCodecs {
+
+    private OffHeapCodecs() {}
+
+    // id(4) | szín(4) | x(8) | y(8) | z(8)  = 32 bájt / pont
+    static final int POINT_ID = 0;
+    static final int POINT_XYZ = 8;
+
+    static final OffHeapList.Codec<Point3D> POINTS = new OffHeapList.Codec<>() {
+        @Override
+        public int stride() { return 32; }
+
+        @Override
+        public void write(ByteBuffer b, int o, Point3D p) {
+            b.putInt(o, p.id());
+            b.putInt(o + 4, p.colorIndex());
+            b.putDouble(o + 8, p.x());
+            b.putDouble(o + 16, p.y());
+            b.putDouble(o + 24, p.z());
+        }
+
+        @Override
+        public Point3D read(ByteBuffer b, int o) {
+            return new Point3D(b.getInt(o), b.getDouble(o + 8), b.getDouble(o + 16), b.getDouble(o + 24), b.getInt(o + 4));
+        }
+    };
+
+    // from(4) | to(4) | vastagság(8) | szín(4) | anyag(4)  = 24 bájt / rúd
+    static final OffHeapList.Codec<Connection> CONNECTIONS = new OffHeapList.Codec<>() {
+        @Override
+        public int stride() { return 24; }
+
+        @Override
+        public void write(ByteBuffer b, int o, Connection c) {
+            b.putInt(o, c.fromId());
+            b.putInt(o + 4, c.toId());
+            b.putDouble(o + 8, c.thickness());
+            b.putInt(o + 16, c.colorIndex());
+            b.putInt(o + 20, c.materialIndex());
+        }
+
+        @Override
+        public Connection read(ByteBuffer b, int o) {
+            return new Connection(b.getInt(o), b.getInt(o + 4), b.getInt(o + 16), b.getDouble(o + 8), b.getInt(o + 20));
+        }
+    };
+
+    // Lap: kezdő pozíció a pont id tárban(4) | pontok száma(4) | szín(4)  = 12 bájt / lap.
+    // A pont id-k egy csak bővülő int tárban vannak; ürítéskor (clear) új tár indul, a régit a másolatok
+    // (undo) tartják életben, amíg kellenek.
+    static OffHeapList.Codec<Face> faces() {
+        return new FaceCodec(new IntPool());
+    }
+
+    private record FaceCodec(IntPool pool) implements OffHeapList.Codec<Face> {
+        @Override
+        public int stride() { return 12; }
+
+        @Override
+        public void write(ByteBuffer b, int o, Face f) {
+            List<Integer> ids = f.pointIds();
+            b.putInt(o, pool.append(ids));
+            b.putInt(o + 4, ids.size());
+            b.putInt(o + 8, f.colorIndex());
+        }
+
+        @Override
+        public Face read(ByteBuffer b, int o) {
+            return new Face(pool.read(b.getInt(o), b.getInt(o + 4)), b.getInt(o + 8));
+        }
+
+        @Override
+        public OffHeapList.Codec<Face> fresh() {
+            return faces();
+        }
+    }
+
+    // Csak bővülő int tár darabokban; a már kiírt értékek nem változnak, így a másolatok biztonságosan olvassák.
+    // Írás csak az OffHeapList írózárja alatt történik.
+    private static final class IntPool {
+        private static final int SHIFT = 16;
+        private static final int SIZE = 1 << SHIFT;
+
+        private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+        private int used;
+
+        int append(List<Integer> values) {
+            int start = used;
+            for (Integer v : values) {
+                int chunk = used >>> SHIFT;
+                ByteBuffer[] c = chunks;
+                if (chunk == c.length) {
+                    c = Arrays.copyOf(c, chunk + 1);
+                    c[chunk] = ByteBuffer.allocateDirect(SIZE * 4).order(ByteOrder.nativeOrder());
+                    chunks = c;
+                }
+                c[chunk].putInt((used & (SIZE - 1)) * 4, v);
+                used++;
+            }
+            return start;
+        }
+
+        List<Integer> read(int start, int count) {
+            ByteBuffer[] c = chunks;
+            List<Integer> ids = new ArrayList<>(count);
+            for (int i = start; i < start + count; i++) ids.add(c[i >>> SHIFT].getInt((i & (SIZE - 1)) * 4));
+            return ids;
+        }
+    }
+}
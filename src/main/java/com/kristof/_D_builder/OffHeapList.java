@@ -0,0 +1,380 @@
+package com.kristof._D_builder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+// Rekord lista a heapen kívül (world.storage=offheap).
+// A rekordok fix szélességű sorokként direkt ByteBuffer darabokban (chunk) élnek; a heapen csak a darabok
+// táblája van. A get() egy rövid életű rekordot ad vissza (a JIT többnyire ki is optimalizálja), így a heapen
+// csak az éppen használt ("forró") entitások vannak, nem a teljes világ.
+//
+// Másolat (freeze): a darabokat megosztja, csak a tábla másolódik. Az élő lista a megosztott darabot első
+// írásnál lemásolja (darabszintű copy-on-write), így az undo verem 50 állapota is szinte ugyanazt a memóriát
+// használja. Olvasás optimista (StampedLock), írás egyszerre egy szálon. Az iterátor gyengén konzisztens
+// (nem dob ConcurrentModificationException-t), mint a CopyOnWriteArrayList helyett várható.
+final class OffHeapList<T> extends AbstractList<T> implements RandomAccess {
+
+    // Egy rekord típus bináris alakja
+    interface Codec<T> {
+        int stride();
+
+        void write(ByteBuffer chunk, int offset, T value);
+
+        T read(ByteBuffer chunk, int offset);
+
+        // Ürítéskor (clear) új példány, ha a codec saját tárat használ (pl. a lapok pont listái)
+        default Codec<T> fresh() { return this; }
+    }
+
+    static final int CHUNK_SHIFT = 10;
+    static final int CHUNK = 1 << CHUNK_SHIFT;
+    private static final int MASK = CHUNK - 1;
+
+    private final StampedLock lock = new StampedLock();
+    private Codec<T> codec;
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    // Melyik epochban jött létre a darab; a régebbi darabot egy másolat is láthatja, ezért írás előtt másoljuk
+    private int[] chunkEpoch = new int[0];
+    private int epoch;
+    private int size;
+
+    OffHeapList(Codec<T> codec) {
+        this.codec = codec;
+    }
+
+    // ==========================
+    // OLVASÁS
+    // ==========================
+
+    @Override
+    public T get(int index) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            T value = null;
+            boolean inRange = false, torn = false;
+            try {
+                Codec<T> k = codec;
+                if (index >= 0 && index < size) {
+                    inRange = true;
+                    value = k.read(chunks[index >>> CHUNK_SHIFT], (index & MASK) * k.stride());
+                }
+            } catch (RuntimeException e) {
+                torn = true; // közben írás történt (pl. clear): alább zárral újra
+            }
+            if (!torn && lock.validate(stamp)) {
+                if (!inRange) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                return value;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            Objects.checkIndex(index, size);
+            return codec.read(chunks[index >>> CHUNK_SHIFT], (index & MASK) * codec.stride());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Egy int mező olvasása rekord nélkül (pl. a pont ID-ja a bináris kereséshez)
+    int getInt(int index, int fieldOffset) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int value = 0;
+            boolean inRange = false, torn = false;
+            try {
+                Codec<T> k = codec;
+                if (index >= 0 && index < size) {
+                    inRange = true;
+                    value = chunks[index >>> CHUNK_SHIFT].getInt((index & MASK) * k.stride() + fieldOffset);
+                }
+            } catch (RuntimeException e) {
+                torn = true;
+            }
+            if (!torn && lock.validate(stamp)) {
+                if (!inRange) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                return value;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            Objects.checkIndex(index, size);
+            return chunks[index >>> CHUNK_SHIFT].getInt((index & MASK) * codec.stride() + fieldOffset);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int n = size;
+        if (lock.validate(stamp)) return n;
+        stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Gyengén konzisztens bejárás index szerint (a közben törölt elemek végén rövidebb lehet)
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            int next;
+            T value;
+
+            @Override
+            public boolean hasNext() {
+                if (value != null) return true;
+                if (next >= size()) return false;
+                try {
+                    value = get(next++);
+                    return true;
+                } catch (IndexOutOfBoundsException e) {
+                    return false; // közben rövidült
+                }
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                T v = value;
+                value = null;
+                return v;
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED);
+    }
+
+    // Változtathatatlan másolat, a darabokat megosztva (O(darabszám))
+    List<T> freeze() {
+        long stamp = lock.writeLock();
+        try {
+            epoch++;
+            return new Frozen<>(this, codec, Arrays.copyOf(chunks, chunkCount(size)), size);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // ==========================
+    // ÍRÁS
+    // ==========================
+
+    @Override
+    public T set(int index, T value) {
+        long stamp = lock.writeLock();
+        try {
+            Objects.checkIndex(index, size);
+            T old = codec.read(chunks[index >>> CHUNK_SHIFT], (index & MASK) * codec.stride());
+            codec.write(writable(index >>> CHUNK_SHIFT), (index & MASK) * codec.stride(), value);
+            modCount++;
+            return old;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Három egymás utáni double mező írása helyben (pl. a pont x, y, z-je), rekord nélkül
+    void putDoubles(int index, int fieldOffset, double a, double b, double c) {
+        long stamp = lock.writeLock();
+        try {
+            Objects.checkIndex(index, size);
+            ByteBuffer chunk = writable(index >>> CHUNK_SHIFT);
+            int o = (index & MASK) * codec.stride() + fieldOffset;
+            chunk.putDouble(o, a);
+            chunk.putDouble(o + 8, b);
+            chunk.putDouble(o + 16, c);
+            modCount++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean add(T value) {
+        long stamp = lock.writeLock();
+        try {
+            append(value);
+            modCount++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void add(int index, T value) {
+        long stamp = lock.writeLock();
+        try {
+            Objects.checkIndex(index, size + 1);
+            ensureCapacity(size + 1);
+            for (int i = size; i > index; i--) copyEntry(i - 1, i);
+            codec.write(writable(index >>> CHUNK_SHIFT), (index & MASK) * codec.stride(), value);
+            size++;
+            modCount++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public T remove(int index) {
+        long stamp = lock.writeLock();
+        try {
+            Objects.checkIndex(index, size);
+            T old = codec.read(chunks[index >>> CHUNK_SHIFT], (index & MASK) * codec.stride());
+            for (int i = index + 1; i < size; i++) copyEntry(i, i - 1);
+            size--;
+            modCount++;
+            return old;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Egy menetben tömörít (a megtartott sorok előre csúsznak), nem elemenként töröl
+    @Override
+    public boolean removeIf(Predicate<? super T> filter) {
+        long stamp = lock.writeLock();
+        try {
+            int w = 0;
+            for (int r = 0; r < size; r++) {
+                T value = codec.read(chunks[r >>> CHUNK_SHIFT], (r & MASK) * codec.stride());
+                if (filter.test(value)) continue;
+                if (w != r) copyEntry(r, w);
+                w++;
+            }
+            if (w == size) return false;
+            size = w;
+            chunks = Arrays.copyOf(chunks, chunkCount(size));
+            chunkEpoch = Arrays.copyOf(chunkEpoch, chunks.length);
+            modCount++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return removeIf(v -> !c.contains(v));
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        long stamp = lock.writeLock();
+        try {
+            // Üres listába a saját másolatunk visszatöltése (undo / redo): csak a darab tábla kerül vissza
+            if (size == 0 && c instanceof Frozen<?> f && f.owner == this) {
+                @SuppressWarnings("unchecked") Frozen<T> frozen = (Frozen<T>) f;
+                codec = frozen.codec;
+                chunks = Arrays.copyOf(frozen.chunks, frozen.chunks.length);
+                chunkEpoch = new int[chunks.length];
+                Arrays.fill(chunkEpoch, -1);
+                size = frozen.size;
+                modCount++;
+                return size > 0;
+            }
+            ensureCapacity(size + c.size());
+            for (T value : c) append(value);
+            modCount++;
+            return !c.isEmpty();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            codec = codec.fresh();
+            chunks = new ByteBuffer[0];
+            chunkEpoch = new int[0];
+            size = 0;
+            modCount++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // ==========================
+    // DARABOK (írózár alatt)
+    // ==========================
+
+    private void append(T value) {
+        ensureCapacity(size + 1);
+        codec.write(writable(size >>> CHUNK_SHIFT), (size & MASK) * codec.stride(), value);
+        size++;
+    }
+
+    private void copyEntry(int from, int to) {
+        int stride = codec.stride();
+        ByteBuffer src = chunks[from >>> CHUNK_SHIFT];
+        writable(to >>> CHUNK_SHIFT).put((to & MASK) * stride, src, (from & MASK) * stride, stride);
+    }
+
+    private void ensureCapacity(int capacity) {
+        int needed = chunkCount(capacity);
+        if (needed <= chunks.length) return;
+        int old = chunks.length;
+        chunks = Arrays.copyOf(chunks, Math.max(needed, old + (old >> 1)));
+        chunkEpoch = Arrays.copyOf(chunkEpoch, chunks.length);
+        for (int i = old; i < chunks.length; i++) chunkEpoch[i] = epoch;
+    }
+
+    // Írható darab: a lusta foglalás és a megosztott darab másolása itt történik
+    private ByteBuffer writable(int chunk) {
+        ByteBuffer c = chunks[chunk];
+        if (c != null && chunkEpoch[chunk] == epoch) return c;
+        ByteBuffer copy = ByteBuffer.allocateDirect(CHUNK * codec.stride()).order(ByteOrder.nativeOrder());
+        if (c != null) copy.put(0, c, 0, c.capacity());
+        chunks[chunk] = copy;
+        chunkEpoch[chunk] = epoch;
+        return copy;
+    }
+
+    private static int chunkCount(int entries) {
+        return (entries + CHUNK - 1) >>> CHUNK_SHIFT;
+    }
+
+    // Megosztott darabokon ülő, változtathatatlan nézet (WorldState, undo verem)
+    private static final class Frozen<T> extends AbstractList<T> implements RandomAccess {
+        final OffHeapList<T> owner;
+        final Codec<T> codec;
+        final ByteBuffer[] chunks;
+        final int size;
+
+        Frozen(OffHeapList<T> owner, Codec<T> codec, ByteBuffer[] chunks, int size) {
+            this.owner = owner;
+            this.codec = codec;
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        @Override
+        public T get(int index) {
+            Objects.checkIndex(index, size);
+            return codec.read(chunks[index >>> CHUNK_SHIFT], (index & MASK) * codec.stride());
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.kristof._D_builder;
+
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/sessions")
+@CrossOrigin(origins = "http://localhost:5173")
+public class OutboundSessionController {
+
+    private final OutboundSessionRegistry outboundSessionRegistry;
+
+    public OutboundSessionController(OutboundSessionRegistry outboundSessionRegistry) {
+        this.outboundSessionRegistry = outboundSessionRegistry;
+    }
+
+    // KIMENŐ SOROK: GET /api/sessions/outbound  (kliensenkénti sorhossz, lemaradás, összevont/eldobott frame-ek)
+    @GetMapping("/outbound")
+    public OutboundSessionRegistry.Summary outbound() {
+        return outboundSessionRegistry.summary();
+    }
+}
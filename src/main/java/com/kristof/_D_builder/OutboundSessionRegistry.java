@@ -0,0 +1,95 @@
+package com.kristof._D_builder;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// A WebSocket kliensek kimenő sorainak nyilvántartása és beállításai.
+// Minden session egy BackpressureSessionDecorator-t kap (lásd WebSocketConfig); a limitek itt állíthatók:
+//   outbound.buffer-size-limit   - egy kliens sorában várakozó bájtok felső határa (alap: 2 MB)
+//   outbound.send-time-limit     - egyetlen küldés max. ideje ms-ban, utána a klienst bontjuk (alap: 10 s)
+//   outbound.coalesce            - azok a cél prefixek, ahol csak a legfrissebb frame számít
+@Component
+public class OutboundSessionRegistry {
+
+    public record SessionStats(String sessionId, boolean open, int queuedFrames, long queuedBytes,
+                               long sentFrames, long sentBytes, long coalescedFrames, long droppedFrames,
+                               long lagMillis, long lastLagMillis, long maxLagMillis, String closeReason) {}
+
+    public record Summary(int sessions, long queuedBytes, long maxLagMillis, long bufferSizeLimit,
+                          long sendTimeLimitMillis, List<String> coalesce, List<SessionStats> perSession) {}
+
+    private final long bufferSizeLimit;
+    private final long sendTimeLimitMillis;
+    private final List<String> coalescePrefixes;
+
+    private final Map<String, BackpressureSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    // Egy lassú kliens csak a saját (virtuális) küldő szálát foglalja
+    private final ExecutorService sender = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ws-outbound-", 0).factory());
+
+    public OutboundSessionRegistry(
+            @Value("${outbound.buffer-size-limit:2097152}") long bufferSizeLimit,
+            @Value("${outbound.send-time-limit:10000}") long sendTimeLimitMillis,
+            @Value("${outbound.coalesce:/topic/world-updates,/user/queue/world-view/,/topic/truss-results}") List<String> coalesce) {
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.coalescePrefixes = List.copyOf(coalesce);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+    WebSocketSession decorate(WebSocketSession session) {
+        BackpressureSessionDecorator decorated = new BackpressureSessionDecorator(session, this);
+        sessions.put(session.getId(), decorated);
+        return decorated;
+    }
+
+    void remove(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    long bufferSizeLimit() { return bufferSizeLimit; }
+
+    long sendTimeLimitMillis() { return sendTimeLimitMillis; }
+
+    ExecutorService sender() { return sender; }
+
+    boolean isCoalescable(String destination) {
+        for (String prefix : coalescePrefixes) {
+            if (destination.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    // ==========================
+    // METRIKÁK
+    // ==========================
+
+    public Summary summary() {
+        List<SessionStats> stats = new ArrayList<>(sessions.size());
+        long bytes = 0, maxLag = 0;
+        for (BackpressureSessionDecorator s : sessions.values()) {
+            SessionStats st = s.stats();
+            stats.add(st);
+            bytes += st.queuedBytes();
+            maxLag = Math.max(maxLag, st.lagMillis());
+        }
+        // A leginkább lemaradt kliensek elöl
+        stats.sort(Comparator.comparingLong(SessionStats::lagMillis).reversed());
+        return new Summary(stats.size(), bytes, maxLag, bufferSizeLimit, sendTimeLimitMillis, coalescePrefixes, stats);
+    }
+}
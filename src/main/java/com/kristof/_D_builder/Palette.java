@@ -0,0 +1,129 @@
+package com.kristof._D_builder;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Megosztott, csak bővülő értéktábla (szín, anyag).
+// Minden különböző érték egyszer él a memóriában; a pontok / rudak / lapok csak a kis int indexét tárolják,
+// a szöveges alak a szerializáció határán (JSON, Mongo, snapshot) áll elő újra.
+// Az index a folyamaton belül stabil, ezért csak memóriában használható, kiírni mindig az értéket kell.
+// Kiürítés nincs (az élő entitások, a visszavonási lépések és a megtartott verziók is az indexekre hivatkoznak),
+// ezért a méret korlátos, a korlát felett az új érték hibát ad.
+// A színek kisbetűs alakra normalizálódnak; a #rrggbb színek (a színválasztó teljes tartománya) nem foglalnak
+// helyet a táblában, magát az RGB értéket kódolja az index. A táblába így csak a színnevek kerülnek.
+public class Palette<T> {
+
+    // Anyag: név + méterár (a rúd létrehozásakor rögzített ár)
+    public record Material(String name, double pricePerMeter) {}
+
+    public static final Palette<String> COLORS = new Colors();
+    public static final Palette<Material> MATERIALS = new Palette<>("materials", 4_096);
+
+    // null -> -1 (pl. szín nélküli lap)
+    public static final int NONE = -1;
+
+    private final Map<T, Integer> indexes = new ConcurrentHashMap<>();
+    private volatile Object[] values = new Object[16];
+    private int size;
+    private final String name;
+    private final int capacity;
+
+    private Palette(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+    }
+
+    public int intern(T value) {
+        if (value == null) return NONE;
+        Integer index = indexes.get(value);
+        if (index != null) return index;
+        synchronized (this) {
+            index = indexes.get(value);
+            if (index != null) return index;
+            if (size >= capacity) {
+                throw new IllegalArgumentException("Too many distinct " + name + " (limit " + capacity + "): " + value);
+            }
+            Object[] v = values;
+            if (size == v.length) v = Arrays.copyOf(v, size * 2);
+            v[size] = value;
+            values = v;
+            indexes.put(value, size);
+            return size++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return index < 0 ? null : (T) values[index];
+    }
+
+    // ==========================
+    // SZÍNEK
+    // ==========================
+
+    // A szín egységes alakja: "#RGB" / "#RRGGBB" -> "#rrggbb", a színnév kisbetűs (null marad null)
+    public static String normalizeColor(String color) {
+        if (color == null) return null;
+        String c = color.trim();
+        int rgb = parseHex(c);
+        return rgb >= 0 ? hex(rgb) : c.toLowerCase(Locale.ROOT);
+    }
+
+    // -1, ha nem #rgb / #rrggbb alakú
+    private static int parseHex(String c) {
+        int len = c.length();
+        if ((len != 7 && len != 4) || c.charAt(0) != '#') return -1;
+        int rgb = 0;
+        for (int i = 1; i < len; i++) {
+            int d = Character.digit(c.charAt(i), 16);
+            if (d < 0) return -1;
+            rgb = len == 7 ? (rgb << 4) | d : (rgb << 8) | (d << 4) | d;
+        }
+        return rgb;
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static String hex(int rgb) {
+        char[] c = new char[7];
+        c[0] = '#';
+        for (int i = 6; i >= 1; i--, rgb >>>= 4) c[i] = HEX[rgb & 0xF];
+        return new String(c);
+    }
+
+    private static final class Colors extends Palette<String> {
+
+        // A #rrggbb színek indexe: RGB_TAG | rgb (a táblás indexek a korlát miatt ennél jóval kisebbek)
+        private static final int RGB_TAG = 1 << 24;
+
+        // A szöveges alak gyorsítótára (közvetlen leképezés, ütközéskor felülíródik), hogy a szerializáció
+        // ne hozzon létre minden pontra új stringet
+        private record Hex(int rgb, String text) {}
+        private final Hex[] texts = new Hex[4096];
+
+        private Colors() {
+            super("colors", 16_384);
+        }
+
+        @Override
+        public int intern(String value) {
+            if (value == null) return NONE;
+            String c = value.trim();
+            int rgb = parseHex(c);
+            if (rgb >= 0) return RGB_TAG | rgb;
+            return super.intern(c.toLowerCase(Locale.ROOT));
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < RGB_TAG) return super.get(index);
+            int rgb = index & 0xFFFFFF;
+            int slot = (rgb ^ (rgb >>> 12)) & (texts.length - 1);
+            Hex h = texts[slot];
+            if (h == null || h.rgb() != rgb) texts[slot] = h = new Hex(rgb, hex(rgb));
+            return h.text();
+        }
+    }
+}
@@ -1,4 +1,17 @@
 package com.kristof._D_builder;
 
-public record Point3D(int id, double x, double y, double z, String color) {
-}
\ No newline at end of file
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// A szín csak palettabeli index (Palette.COLORS); a szöveges szín a color()-ból jön
+public record Point3D(int id, double x, double y, double z, @JsonIgnore int colorIndex) {
+
+    public Point3D(int id, double x, double y, double z, String color) {
+        this(id, x, y, z, Palette.COLORS.intern(color));
+    }
+
+    @JsonProperty("color")
+    public String color() {
+        return Palette.COLORS.get(colorIndex);
+    }
+}
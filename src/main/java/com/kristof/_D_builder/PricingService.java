@@ -12,18 +12,19 @@ public class PricingService {
 
     static {
         // ITT DEFINIÁLD A TERMÉKEIDET:
-        // Szín (HEX)       |  Megnevezés              | Ár (Ft/méter)
-        MATERIAL_DB.put("#ffffff", new MaterialInfo("Standard Acélrúd", 1500.0));
-        MATERIAL_DB.put("#ff0000", new MaterialInfo("Erősített Gerenda", 3200.0));
-        MATERIAL_DB.put("#0000ff", new MaterialInfo("Alumínium Profil", 2100.0));
-        MATERIAL_DB.put("#00ff00", new MaterialInfo("Dekorcsík", 500.0));
+        // Szín (HEX)       |  Megnevezés              | Ár (Ft/méter) | Szálhossz (m)
+        MATERIAL_DB.put("#ffffff", new MaterialInfo("Standard Acélrúd", 1500.0, 6.0));
+        MATERIAL_DB.put("#ff0000", new MaterialInfo("Erősített Gerenda", 3200.0, 12.0));
+        MATERIAL_DB.put("#0000ff", new MaterialInfo("Alumínium Profil", 2100.0, 6.0));
+        MATERIAL_DB.put("#00ff00", new MaterialInfo("Dekorcsík", 500.0, 3.0));
     }
 
     public MaterialInfo getMaterialByColor(String color) {
         // Ha olyan színt kapunk, ami nincs a listában, adunk egy alapértelmezettet
-        return MATERIAL_DB.getOrDefault(color.toLowerCase(), new MaterialInfo("Ismeretlen Anyag", 0.0));
+        return MATERIAL_DB.getOrDefault(color.toLowerCase(), new MaterialInfo("Ismeretlen Anyag", 0.0, 6.0));
     }
 
     // Egy kis segédosztály az adatoknak (Record)
-    public record MaterialInfo(String name, double pricePerMeter) {}
+    // stockLength: a beszerezhető szál hossza (a vágási tervhez)
+    public record MaterialInfo(String name, double pricePerMeter, double stockLength) {}
 }
\ No newline at end of file
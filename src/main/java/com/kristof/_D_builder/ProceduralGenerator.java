@@ -0,0 +1,202 @@
+package com.kristof._D_builder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Szerver oldali generátorok (Grid, Lattice, Circle, Array).
+// Nem nyúlnak a világhoz: egy Geometry-t építenek lokális (0..n-1) indexekkel,
+// amit a WorldStateService egyetlen lépésben (egy undo, egy broadcast) tölt be.
+public final class ProceduralGenerator {
+
+    private ProceduralGenerator() {}
+
+    // Tömör, növekvő tömbös tároló: 100k+ elemnél sem gyárt objektumot elemenként
+    public static final class Geometry {
+        double[] coords = new double[3 * 64];
+        String[] pointColors = new String[64];
+        int pointCount;
+
+        int[] edges = new int[2 * 64];
+        String[] edgeColors = new String[64];
+        double[] edgeThickness = new double[64];
+        int edgeCount;
+
+        // Lapok: a faceIndices[faceOffsets[f] .. faceOffsets[f+1]) szakasz a lap pontjainak lokális indexei
+        int[] faceOffsets = new int[] { 0 };
+        int[] faceIndices = new int[0];
+        String faceColor = "#888888";
+        int faceCount;
+
+        public int pointCount() { return pointCount; }
+        public int edgeCount() { return edgeCount; }
+        public int faceCount() { return faceCount; }
+
+        // Tömeges feltöltés (pl. importernél): a tömbök átvétele másolás nélkül
+        static Geometry bulk(double[] coords, int pointCount, String pointColor,
+                             int[] edges, int edgeCount, String edgeColor, double thickness,
+                             int[] faceOffsets, int[] faceIndices, int faceCount, String faceColor) {
+            Geometry g = new Geometry();
+            g.coords = coords;
+            g.pointCount = pointCount;
+            g.pointColors = new String[pointCount];
+            Arrays.fill(g.pointColors, pointColor);
+            g.edges = edges;
+            g.edgeCount = edgeCount;
+            g.edgeColors = new String[edgeCount];
+            Arrays.fill(g.edgeColors, edgeColor);
+            g.edgeThickness = new double[edgeCount];
+            Arrays.fill(g.edgeThickness, thickness);
+            g.faceOffsets = faceOffsets;
+            g.faceIndices = faceIndices;
+            g.faceCount = faceCount;
+            g.faceColor = faceColor;
+            return g;
+        }
+
+        int addPoint(double x, double y, double z, String color) {
+            if (pointCount == pointColors.length) {
+                int cap = pointColors.length * 2;
+                coords = Arrays.copyOf(coords, cap * 3);
+                pointColors = Arrays.copyOf(pointColors, cap);
+            }
+            int i = pointCount++;
+            coords[3 * i] = x; coords[3 * i + 1] = y; coords[3 * i + 2] = z;
+            pointColors[i] = color;
+            return i;
+        }
+
+        void addEdge(int a, int b, String color, double thickness) {
+            if (edgeCount == edgeColors.length) {
+                int cap = edgeColors.length * 2;
+                edges = Arrays.copyOf(edges, cap * 2);
+                edgeColors = Arrays.copyOf(edgeColors, cap);
+                edgeThickness = Arrays.copyOf(edgeThickness, cap);
+            }
+            int i = edgeCount++;
+            edges[2 * i] = a; edges[2 * i + 1] = b;
+            edgeColors[i] = color;
+            edgeThickness[i] = thickness;
+        }
+    }
+
+    public record Style(String pointColor, String edgeColor, double thickness) {}
+
+    // ==========================
+    // GRID: nx*ny*nz pont, tengely menti szomszédok összekötve
+    // ==========================
+    public static Geometry grid(int nx, int ny, int nz, double spacing, double ox, double oy, double oz, Style style) {
+        return lattice(nx, ny, nz, spacing, ox, oy, oz, false, style);
+    }
+
+    // ==========================
+    // LATTICE: rács + cellánként a lapátlók (merevítés), térbeli rácsos tartóhoz
+    // ==========================
+    public static Geometry lattice(int nx, int ny, int nz, double spacing, double ox, double oy, double oz,
+                                   boolean braced, Style style) {
+        checkCounts(nx, ny, nz);
+        Geometry g = new Geometry();
+        for (int k = 0; k < nz; k++) {
+            for (int j = 0; j < ny; j++) {
+                for (int i = 0; i < nx; i++) {
+                    g.addPoint(ox + i * spacing, oy + j * spacing, oz + k * spacing, style.pointColor());
+                }
+            }
+        }
+
+        String c = style.edgeColor();
+        double t = style.thickness();
+        for (int k = 0; k < nz; k++) {
+            for (int j = 0; j < ny; j++) {
+                for (int i = 0; i < nx; i++) {
+                    int idx = i + nx * (j + ny * k);
+                    boolean hx = i + 1 < nx, hy = j + 1 < ny, hz = k + 1 < nz;
+                    if (hx) g.addEdge(idx, idx + 1, c, t);
+                    if (hy) g.addEdge(idx, idx + nx, c, t);
+                    if (hz) g.addEdge(idx, idx + nx * ny, c, t);
+                    if (braced) {
+                        if (hx && hy) g.addEdge(idx, idx + 1 + nx, c, t);
+                        if (hx && hz) g.addEdge(idx, idx + 1 + nx * ny, c, t);
+                        if (hy && hz) g.addEdge(idx, idx + nx + nx * ny, c, t);
+                    }
+                }
+            }
+        }
+        return g;
+    }
+
+    // ==========================
+    // CIRCLE: n pont egy körön, zárt gyűrűvé kötve. axis: a kör síkjának normálisa
+    // ==========================
+    public static Geometry circle(int n, double radius, double cx, double cy, double cz, String axis, Style style) {
+        if (n < 2) throw new IllegalArgumentException("Circle needs at least 2 points.");
+        checkTotal(n, n);
+        Geometry g = new Geometry();
+        double step = 2 * Math.PI / n;
+        String a = axis == null ? "y" : axis.trim().toLowerCase();
+        for (int i = 0; i < n; i++) {
+            double u = radius * Math.cos(i * step), v = radius * Math.sin(i * step);
+            switch (a) {
+                case "x": g.addPoint(cx, cy + u, cz + v, style.pointColor()); break;
+                case "z": g.addPoint(cx + u, cy + v, cz, style.pointColor()); break;
+                default: g.addPoint(cx + u, cy, cz + v, style.pointColor()); break;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int next = (i + 1) % n;
+            if (n == 2 && i == 1) continue; // két pontnál csak egy vonal
+            g.addEdge(i, next, style.edgeColor(), style.thickness());
+        }
+        return g;
+    }
+
+    // ==========================
+    // ARRAY: a megadott pontok (és a köztük futó vonalak) count darab eltolt másolata
+    // ==========================
+    public static Geometry array(List<Point3D> source, List<Connection> connections, int count,
+                                 double dx, double dy, double dz) {
+        if (count < 1) throw new IllegalArgumentException("Count must be at least 1.");
+        Map<Integer, Integer> localIndex = new HashMap<>(source.size() * 2);
+        for (int i = 0; i < source.size(); i++) localIndex.put(source.get(i).id(), i);
+
+        // Csak a gyűjteményen belüli vonalakat másoljuk
+        int[] inner = new int[connections.size() * 2];
+        Connection[] innerConn = new Connection[connections.size()];
+        int innerCount = 0;
+        for (Connection c : connections) {
+            Integer a = localIndex.get(c.fromId()), b = localIndex.get(c.toId());
+            if (a == null || b == null) continue;
+            inner[2 * innerCount] = a; inner[2 * innerCount + 1] = b;
+            innerConn[innerCount++] = c;
+        }
+
+        int n = source.size();
+        // A méret a generálás előtt (long-ban), nem a tömbök növekedése közben
+        checkTotal(n == 0 ? 0 : (long) count * n, n == 0 ? 0 : (long) count * innerCount);
+        Geometry g = new Geometry();
+        for (int copy = 1; copy <= count; copy++) {
+            int base = g.pointCount;
+            for (Point3D p : source) {
+                g.addPoint(p.x() + dx * copy, p.y() + dy * copy, p.z() + dz * copy, p.color());
+            }
+            for (int e = 0; e < innerCount; e++) {
+                g.addEdge(base + inner[2 * e], base + inner[2 * e + 1], innerConn[e].color(), innerConn[e].thickness());
+            }
+            if (n == 0) break;
+        }
+        return g;
+    }
+
+    private static void checkCounts(int nx, int ny, int nz) {
+        if (nx < 1 || ny < 1 || nz < 1) throw new IllegalArgumentException("Counts must be at least 1.");
+        if ((long) nx * ny * nz > MAX_ELEMENTS) throw new IllegalArgumentException("Too many points (max 5 000 000).");
+    }
+
+    private static final long MAX_ELEMENTS = 5_000_000L;
+
+    private static void checkTotal(long points, long edges) {
+        if (points > MAX_ELEMENTS) throw new IllegalArgumentException("Too many points (max 5 000 000).");
+        if (edges > MAX_ELEMENTS) throw new IllegalArgumentException("Too many connections (max 5 000 000).");
+    }
+}
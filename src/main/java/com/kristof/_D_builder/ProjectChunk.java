@@ -0,0 +1,28 @@
+package com.kristof._D_builder;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Tartalom szerint címzett darab: az azonosító a (tömörítetlen) tartalom SHA-256 hash-e,
+// így ugyanaz a pont / rúd blokk bármennyi verzióban is csak egyszer tárolódik.
+@Document(collection = "project_chunks")
+public class ProjectChunk {
+
+    @Id
+    public String hash;
+
+    public String kind;
+    public int count;
+    public int rawSize;
+    public byte[] data; // ColumnarSnapshot törzs, deflate-tel tömörítve
+
+    public ProjectChunk() {}
+
+    public ProjectChunk(String hash, String kind, int count, int rawSize, byte[] data) {
+        this.hash = hash;
+        this.kind = kind;
+        this.count = count;
+        this.rawSize = rawSize;
+        this.data = data;
+    }
+}
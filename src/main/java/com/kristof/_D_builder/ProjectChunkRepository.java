@@ -0,0 +1,17 @@
+package com.kristof._D_builder;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ProjectChunkRepository extends MongoRepository<ProjectChunk, String> {
+
+    // Mely hash-ek vannak már meg (a tartalom nélkül)
+    @Query(value = "{ '_id': { $in: ?0 } }", fields = "{ '_id': 1 }")
+    List<ProjectChunk> findExisting(Collection<String> hashes);
+
+    @Query(value = "{}", fields = "{ '_id': 1 }")
+    List<ProjectChunk> findAllHashes();
+}
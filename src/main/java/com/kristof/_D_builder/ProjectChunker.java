@@ -0,0 +1,147 @@
+package com.kristof._D_builder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+// A világ szétbontása tartalom szerint címzett darabokra (verziózott mentés), és vissza.
+// A pontok és rudak pont ID blokkok szerint (4096 ID / blokk) kerülnek darabokba, így egy kis szerkesztés
+// csak az érintett blokk(ok) hash-ét változtatja meg; a többi darab az előző verzióval közös marad.
+// A lapok az első pontjuk, a klipek a célpontjuk ID blokkja szerint (nem listapozíció szerint, így egy
+// beszúrás / törlés nem tolja el az összes későbbi darabot).
+// Összerakáskor a sorrend blokkonként áll vissza; egy blokkon (és így egy célponton) belül az eredeti marad,
+// ami a klipeknél számít: ugyanannak a pontnak az átfedő klipjei közül a listában későbbi érvényesül.
+// Egy darab tartalma egy részleges WorldState ColumnarSnapshot törzse (a színek / anyagok szövegként).
+// A darabok egymástól függetlenek, így a kódolás és a visszaolvasás párhuzamosan fut (common pool).
+final class ProjectChunker {
+
+    static final String POINTS = "points", CONNECTIONS = "connections", FACES = "faces", CLIPS = "clips",
+            COLLECTION = "collection";
+
+    private static final int ID_BLOCK_SHIFT = 12;
+
+    // Egy darab: hivatkozás a manifeszthez + a tömörítetlen tartalom
+    record Chunk(ProjectVersion.ChunkRef ref, byte[] raw) {}
+
+    // Még kódolatlan darab (a szétosztás sorban, a kódolás párhuzamosan megy)
+    private record Part(String kind, String key, int count, WorldState state) {}
+
+    private ProjectChunker() {}
+
+    // ==========================
+    // SZÉTBONTÁS
+    // ==========================
+
+    static List<Chunk> split(WorldState state) {
+        List<Part> pending = new ArrayList<>();
+
+        // Pontok: ID blokk szerint, a blokkon belül az eredeti sorrendben
+        Map<Integer, List<Point3D>> pointBlocks = new TreeMap<>();
+        for (Point3D p : state.points()) {
+            pointBlocks.computeIfAbsent(p.id() >> ID_BLOCK_SHIFT, k -> new ArrayList<>()).add(p);
+        }
+        pointBlocks.forEach((block, list) -> pending.add(new Part(POINTS, String.valueOf(block), list.size(),
+                new WorldState(list, List.of(), List.of(), Map.of(), 0, false, List.of()))));
+
+        // Rudak: a kezdőpont ID blokkja szerint
+        Map<Integer, List<Connection>> connectionBlocks = new TreeMap<>();
+        for (Connection c : state.connections()) {
+            connectionBlocks.computeIfAbsent(c.fromId() >> ID_BLOCK_SHIFT, k -> new ArrayList<>()).add(c);
+        }
+        connectionBlocks.forEach((block, list) -> pending.add(new Part(CONNECTIONS, String.valueOf(block), list.size(),
+                new WorldState(List.of(), list, List.of(), Map.of(), 0, false, List.of()))));
+
+        // Lapok: az első pont ID blokkja szerint (pont nélküli lap: -1)
+        Map<Integer, List<Face>> faceBlocks = new TreeMap<>();
+        if (state.faces() != null) {
+            for (Face f : state.faces()) {
+                int block = f.pointIds().isEmpty() || f.pointIds().get(0) == null ? -1 : f.pointIds().get(0) >> ID_BLOCK_SHIFT;
+                faceBlocks.computeIfAbsent(block, k -> new ArrayList<>()).add(f);
+            }
+        }
+        faceBlocks.forEach((block, list) -> pending.add(new Part(FACES, String.valueOf(block), list.size(),
+                new WorldState(List.of(), List.of(), list, Map.of(), 0, false, List.of()))));
+
+        // Klipek: a célpont ID blokkja szerint
+        Map<Integer, List<WorldStateService.TimelineClip>> clipBlocks = new TreeMap<>();
+        if (state.clips() != null) {
+            for (WorldStateService.TimelineClip c : state.clips()) {
+                clipBlocks.computeIfAbsent(c.targetId >> ID_BLOCK_SHIFT, k -> new ArrayList<>()).add(c);
+            }
+        }
+        clipBlocks.forEach((block, list) -> pending.add(new Part(CLIPS, String.valueOf(block), list.size(),
+                new WorldState(List.of(), List.of(), List.of(), Map.of(), 0, false, list))));
+
+        // Gyűjtemények: egyenként, név szerint rendezve
+        Map<String, List<Integer>> collections = state.collections() != null ? new TreeMap<>(state.collections()) : Map.of();
+        collections.forEach((name, ids) -> pending.add(new Part(COLLECTION, name, ids.size(),
+                new WorldState(List.of(), List.of(), List.of(), Map.of(name, ids), 0, false, List.of()))));
+
+        // Kódolás + hash párhuzamosan, az eredeti sorrendben
+        return pending.parallelStream().map(ProjectChunker::chunk).toList();
+    }
+
+    private static Chunk chunk(Part part) {
+        byte[] raw = ColumnarSnapshot.encode(part.state());
+        return new Chunk(new ProjectVersion.ChunkRef(part.kind(), part.key(), sha256(raw), part.count(), raw.length), raw);
+    }
+
+    // ==========================
+    // ÖSSZERAKÁS
+    // ==========================
+
+    // A manifeszt sorrendjében fűzi össze a darabokat; rawByHash a tömörítetlen tartalmat adja (ez is a
+    // párhuzamos dekódolás részeként fut, így a kicsomagolás is több szálon megy)
+    static WorldState assemble(List<ProjectVersion.ChunkRef> refs, Function<String, byte[]> rawByHash, double currentTime) {
+        WorldState[] parts = new WorldState[refs.size()];
+        int[] sizes = new int[5];
+        IntStream.range(0, parts.length).parallel().forEach(i -> {
+            ProjectVersion.ChunkRef ref = refs.get(i);
+            byte[] raw = rawByHash.apply(ref.hash());
+            if (raw == null) throw new IllegalStateException("Missing chunk " + ref.hash() + " (" + ref.kind() + " " + ref.key() + ").");
+            parts[i] = ColumnarSnapshot.decode(raw);
+        });
+        for (ProjectVersion.ChunkRef ref : refs) {
+            switch (ref.kind()) {
+                case POINTS -> sizes[0] += ref.count();
+                case CONNECTIONS -> sizes[1] += ref.count();
+                case FACES -> sizes[2] += ref.count();
+                case CLIPS -> sizes[3] += ref.count();
+                default -> sizes[4]++;
+            }
+        }
+
+        List<Point3D> points = new ArrayList<>(sizes[0]);
+        List<Connection> connections = new ArrayList<>(sizes[1]);
+        List<Face> faces = new ArrayList<>(sizes[2]);
+        List<WorldStateService.TimelineClip> clips = new ArrayList<>(sizes[3]);
+        Map<String, List<Integer>> collections = new HashMap<>(sizes[4] * 2);
+        for (int i = 0; i < parts.length; i++) {
+            ProjectVersion.ChunkRef ref = refs.get(i);
+            WorldState part = parts[i];
+            switch (ref.kind()) {
+                case POINTS -> points.addAll(part.points());
+                case CONNECTIONS -> connections.addAll(part.connections());
+                case FACES -> faces.addAll(part.faces());
+                case CLIPS -> clips.addAll(part.clips());
+                case COLLECTION -> collections.putAll(part.collections());
+                default -> throw new IllegalStateException("Unknown chunk kind: " + ref.kind());
+            }
+        }
+        return new WorldState(points, connections, faces, collections, currentTime, false, clips);
+    }
+
+    // ==========================
+    // SEGÉDEK
+    // ==========================
+
+    static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
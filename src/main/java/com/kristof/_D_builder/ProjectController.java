@@ -1,6 +1,8 @@
 package com.kristof._D_builder;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -12,10 +14,12 @@ import java.util.List;
 public class ProjectController {
 
     private final ProjectStorageService projectStorageService;
+    private final ProjectJobService projectJobService;
 
     @Autowired
-    public ProjectController(ProjectStorageService projectStorageService) {
+    public ProjectController(ProjectStorageService projectStorageService, ProjectJobService projectJobService) {
         this.projectStorageService = projectStorageService;
+        this.projectJobService = projectJobService;
     }
 
     // LISTÁZÁS: GET /api/projects
@@ -24,26 +28,46 @@ public class ProjectController {
         return projectStorageService.getAllProjects();
     }
 
-    // MENTÉS: POST /api/projects?name=Valami
+    // MENTÉS: POST /api/projects?name=Valami  (háttérben; 202 + a feladat, a vége a /topic/project-jobs címen)
     @PostMapping
-    public ProjectData saveProject(@RequestParam String name) {
-        return projectStorageService.saveCurrentProject(name);
+    public ResponseEntity<ProjectJobService.JobStatus> saveProject(@RequestParam String name) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(projectJobService.submitSave(name));
     }
 
-    // BETÖLTÉS: POST /api/projects/{id}/load
+    // FELADATOK: GET /api/projects/jobs  (legújabb elöl)
+    @GetMapping("/jobs")
+    public List<ProjectJobService.JobStatus> listJobs() {
+        return projectJobService.getJobs();
+    }
+
+    // GET /api/projects/jobs/{jobId}
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ProjectJobService.JobStatus> getJob(@PathVariable String jobId) {
+        return ResponseEntity.of(projectJobService.getJob(jobId));
+    }
+
+    // VERZIÓK: GET /api/projects/{id}/versions  (legújabb elöl)
+    @GetMapping("/{id}/versions")
+    public List<ProjectVersion> listVersions(@PathVariable String id) {
+        return projectStorageService.getVersions(id);
+    }
+
+    // ÖSSZEHASONLÍTÁS: GET /api/projects/versions/{from}/diff/{to}
+    @GetMapping("/versions/{from}/diff/{to}")
+    public ResponseEntity<ProjectStorageService.VersionDiff> diffVersions(@PathVariable String from, @PathVariable String to) {
+        return ResponseEntity.of(projectStorageService.diff(from, to));
+    }
+
+    // BETÖLTÉS: POST /api/projects/{id}/load  (projekt ID: legutóbbi verzió; verzió ID: az a verzió)
+    // Háttérben fut: 202 + a feladat; ha nincs ilyen projekt, a feladat FAILED állapotba kerül
     @PostMapping("/{id}/load")
-    public ResponseEntity<String> loadProject(@PathVariable String id) {
-        boolean success = projectStorageService.loadProject(id);
-        if (success) {
-            return ResponseEntity.ok("Project loaded successfully.");
-        } else {
-            return ResponseEntity.notFound().build();
-        }
+    public ResponseEntity<ProjectJobService.JobStatus> loadProject(@PathVariable String id, HttpServletRequest request) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(projectJobService.submitLoad(id, WebSocketConfig.editorName(request)));
     }
 
-    // TÖRLÉS: DELETE /api/projects/{id}
+    // TÖRLÉS: DELETE /api/projects/{id}  (háttérben, a mentésekkel sorban; 202 + a feladat)
     @DeleteMapping("/{id}")
-    public void deleteProject(@PathVariable String id) {
-        projectStorageService.deleteProject(id);
+    public ResponseEntity<ProjectJobService.JobStatus> deleteProject(@PathVariable String id) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(projectJobService.submitDelete(id));
     }
 }
\ No newline at end of file
@@ -14,8 +14,13 @@ public class ProjectData {
     public long createdAt = System.currentTimeMillis();
 
     // JAVÍTVA: Nem WorldStateService.WorldState, hanem simán WorldState
+    // Csak a régi (verziózás előtti) mentéseknél van kitöltve; az újak a ProjectVersion manifesztekben vannak
     public WorldState worldState;
 
+    // Verziók (ProjectVersion): a legutóbbi azonosítója és a verziók száma
+    public String latestVersionId;
+    public int versionCount;
+
     // Üres konstruktor (kell a MongoDB-nek)
     public ProjectData() {}
 
@@ -0,0 +1,170 @@
+package com.kristof._D_builder;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Háttérben futó mentés / betöltés / törlés (nem a STOMP / parancs / REST szálon).
+// Mentés: a kérés pillanatában lezárt (változtathatatlan) pillanatkép megy a háttér szálra, ott történik a
+// darabolás, kódolás, tömörítés és az adatbázis írás; közben a világ tovább szerkeszthető.
+// Betöltés: a darabok beolvasása és (párhuzamos) dekódolása a háttérben, a világ érintése nélkül; a végén
+// egyetlen lépésben cserélődik be (restoreStateFromDb).
+// A feladatok egy szálon, beküldési sorrendben futnak (egy mentés utáni betöltés a mentett állapotot látja).
+// A törlés (és a vele járó darab szemétgyűjtés) is itt fut, így nem törölhet ki egy közben futó mentés által
+// már meglévőnek talált darabot.
+// Az állapotváltozások a /topic/project-jobs címre mennek, és a REST végponton is lekérdezhetők.
+@Service
+public class ProjectJobService {
+
+    public static final String TOPIC = "/topic/project-jobs";
+    private static final int MAX_FINISHED = 100;
+
+    public enum Kind { SAVE, LOAD, DELETE }
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    // target: mentésnél a projekt neve, betöltésnél a projekt / verzió ID, törlésnél a projekt ID;
+    // resultId: a mentett verzió ID-ja
+    public record JobStatus(String id, Kind kind, String target, State state, String message, String resultId,
+                            long submittedAt, long startedAt, long finishedAt, long durationMs) {}
+
+    private final ProjectStorageService projectStorageService;
+    private final WorldStateService worldStateService;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "project-io");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong sequence = new AtomicLong();
+    // Beküldési sorrendben; a lezárt feladatokból csak az utolsó MAX_FINISHED marad meg
+    private final Map<String, JobStatus> jobs = new LinkedHashMap<>();
+
+    public ProjectJobService(ProjectStorageService projectStorageService, WorldStateService worldStateService,
+                             SimpMessagingTemplate messagingTemplate) {
+        this.projectStorageService = projectStorageService;
+        this.worldStateService = worldStateService;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdown();
+    }
+
+    // ==========================
+    // BEKÜLDÉS
+    // ==========================
+
+    // A pillanatkép a hívó szálán készül (a parancs kötegek között), minden más a háttérben
+    public JobStatus submitSave(String name) {
+        WorldState snapshot = worldStateService.getWorldState();
+        return submit(Kind.SAVE, name, () -> {
+            ProjectData saved = projectStorageService.saveProject(name, snapshot);
+            return new Outcome("Project saved! ID: " + saved.id + " (version " + saved.versionCount
+                    + ", id " + saved.latestVersionId + ")", saved.latestVersionId, true);
+        });
+    }
+
+    // A betöltés a kérő nevén fut (az ő Undo lépése), a szerkesztőt ezért a hívó szálán rögzítjük
+    public JobStatus submitLoad(String id) {
+        return submitLoad(id, worldStateService.currentEditor());
+    }
+
+    public JobStatus submitLoad(String id, String user) {
+        return submit(Kind.LOAD, id, () -> {
+            Optional<WorldState> state = projectStorageService.readProject(id);
+            if (state.isEmpty()) return new Outcome("Project not found.", null, false);
+            worldStateService.restoreStateFromDb(state.get(), user);
+            return new Outcome("Project loaded.", id, true);
+        });
+    }
+
+    public JobStatus submitDelete(String id) {
+        return submit(Kind.DELETE, id, () -> {
+            int removed = projectStorageService.deleteProject(id);
+            return new Outcome("Project deleted (" + removed + " unused chunks removed).", id, true);
+        });
+    }
+
+    public Optional<JobStatus> getJob(String id) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(id));
+        }
+    }
+
+    // Legújabb elöl
+    public List<JobStatus> getJobs() {
+        synchronized (jobs) {
+            List<JobStatus> list = new ArrayList<>(jobs.values());
+            Collections.reverse(list);
+            return list;
+        }
+    }
+
+    // ==========================
+    // FUTTATÁS
+    // ==========================
+
+    private record Outcome(String message, String resultId, boolean ok) {}
+
+    @FunctionalInterface
+    private interface Work { Outcome run() throws Exception; }
+
+    private JobStatus submit(Kind kind, String target, Work work) {
+        String id = kind.name().toLowerCase() + "-" + sequence.incrementAndGet();
+        JobStatus queued = new JobStatus(id, kind, target, State.QUEUED, null, null, System.currentTimeMillis(), 0, 0, 0);
+        update(queued);
+        worker.execute(() -> run(queued, work));
+        return queued;
+    }
+
+    private void run(JobStatus queued, Work work) {
+        long started = System.currentTimeMillis();
+        update(new JobStatus(queued.id(), queued.kind(), queued.target(), State.RUNNING, null, null,
+                queued.submittedAt(), started, 0, 0));
+        State state;
+        String message, resultId = null;
+        try {
+            Outcome outcome = work.run();
+            state = outcome.ok() ? State.DONE : State.FAILED;
+            message = outcome.message();
+            resultId = outcome.resultId();
+        } catch (Exception e) {
+            state = State.FAILED;
+            String action = switch (queued.kind()) {
+                case SAVE -> "saving";
+                case LOAD -> "loading";
+                case DELETE -> "deleting";
+            };
+            message = "Error " + action + ": " + e.getMessage();
+        }
+        long finished = System.currentTimeMillis();
+        update(new JobStatus(queued.id(), queued.kind(), queued.target(), state, message, resultId,
+                queued.submittedAt(), started, finished, finished - started));
+    }
+
+    private void update(JobStatus status) {
+        synchronized (jobs) {
+            jobs.put(status.id(), status);
+            int finished = 0;
+            for (JobStatus j : jobs.values()) if (j.state() == State.DONE || j.state() == State.FAILED) finished++;
+            Iterator<JobStatus> it = jobs.values().iterator();
+            while (finished > MAX_FINISHED && it.hasNext()) {
+                JobStatus j = it.next();
+                if (j.state() == State.DONE || j.state() == State.FAILED) { it.remove(); finished--; }
+            }
+        }
+        try {
+            messagingTemplate.convertAndSend(TOPIC, status);
+        } catch (Exception e) {
+            System.err.println("Project job broadcast hiba: " + e.getMessage());
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package com.kristof._D_builder;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import java.util.List;
 
 // <Mit mentünk, Mi az ID típusa> -> <ProjectData, String>
 public interface ProjectRepository extends MongoRepository<ProjectData, String> {
 
     // Egyedi kereső metódusok (a Spring automatikusan megírja őket a név alapján)
+    // A régi mentések teljes világa nélkül (a listához nem kell)
+    @Query(value = "{}", fields = "{ 'worldState': 0 }", sort = "{ 'createdAt': -1 }")
     List<ProjectData> findAllByOrderByCreatedAtDesc();
 
     ProjectData findByName(String name);
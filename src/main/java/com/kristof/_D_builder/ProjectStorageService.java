@@ -2,50 +2,220 @@ package com.kristof._D_builder;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import java.util.List;
-import java.util.Optional;
 
+import java.util.*;
+import java.util.function.Function;
+
+// Projektek verziózott mentése.
+// Minden mentés egy új ProjectVersion (kicsi manifeszt); a világ tartalom szerint címzett darabokban
+// (ProjectChunk) van, amiből csak az addig nem látottak íródnak ki. Egy kis szerkesztés után a mentés
+// így csak néhány blokkot ír, a régi verziók pedig megmaradnak (betölthetők, összehasonlíthatók).
 @Service
 public class ProjectStorageService {
 
     private final ProjectRepository repository;
+    private final ProjectVersionRepository versionRepository;
+    private final ProjectChunkRepository chunkRepository;
     private final WorldStateService worldStateService; // Hogy le tudjuk kérni az aktuális állapotot
 
+    // Mentés és törlés (szemétgyűjtés) egymás után fut, akkor is, ha nem a ProjectJobService szálán hívják:
+    // a mentés a már tároltnak talált darabokra hivatkozik, ezeket egy közben futó szemétgyűjtés nem törölheti,
+    // és két azonos nevű mentés sem hozhat létre két projektet / azonos verziószámot
+    private final Object writeLock = new Object();
+
+    // Két verzió különbsége (a közös darabokat nem kell betölteni)
+    public record VersionDiff(String fromId, int fromNumber, String toId, int toNumber,
+                              int sharedChunks, int changedChunks,
+                              int pointsAdded, int pointsRemoved, int pointsChanged,
+                              int connectionsAdded, int connectionsRemoved, int connectionsChanged,
+                              int facesBefore, int facesAfter, int clipsBefore, int clipsAfter,
+                              List<String> collectionsChanged) {}
+
     @Autowired
-    public ProjectStorageService(ProjectRepository repository, WorldStateService worldStateService) {
+    public ProjectStorageService(ProjectRepository repository, ProjectVersionRepository versionRepository,
+                                 ProjectChunkRepository chunkRepository, WorldStateService worldStateService) {
         this.repository = repository;
+        this.versionRepository = versionRepository;
+        this.chunkRepository = chunkRepository;
         this.worldStateService = worldStateService;
     }
 
-    // Mentés
+    // Mentés: új verzió a (név szerinti) projekthez
     public ProjectData saveCurrentProject(String name) {
-        // 1. Lekérjük a jelenlegi világot (ez a különálló WorldState objektum)
-        WorldState currentState = worldStateService.getWorldState();
-
-        // 2. Létrehozzuk a mentendő adatot
-        ProjectData project = new ProjectData(name, currentState);
+        // Lekérjük a jelenlegi világot (különálló, változtathatatlan pillanatkép)
+        return saveProject(name, worldStateService.getWorldState());
+    }
 
-        // 3. Ha már létezik ilyen nevű, felülírjuk (vagy dobhatnánk hibát is)
-        ProjectData existing = repository.findByName(name);
-        if (existing != null) {
-            project.id = existing.id; // Az ID megtartásával felülírja (update)
+    // Mentés egy már rögzített állapotból (a háttér mentés így a kérés pillanatának világát írja ki)
+    public ProjectData saveProject(String name, WorldState currentState) {
+        synchronized (writeLock) {
+            return saveLocked(name, currentState);
         }
+    }
+
+    private ProjectData saveLocked(String name, WorldState currentState) {
+        // A projekt fej (név szerint); új projektnél előbb elmentjük, hogy legyen ID-ja
+        ProjectData project = repository.findByName(name);
+        if (project == null) project = repository.save(new ProjectData(name, null));
+
+        // Régi (verziózás előtti) mentés: az felülírás helyett az első verzió lesz
+        ProjectVersion parent = versionRepository.findTopByProjectIdOrderByNumberDesc(project.id);
+        if (parent == null && project.worldState != null) parent = storeVersion(project, project.worldState, null);
 
+        ProjectVersion version = storeVersion(project, currentState, parent);
+        project.worldState = null;
+        project.latestVersionId = version.id;
+        project.versionCount = version.number;
         return repository.save(project);
     }
 
-    // Betöltés
+    private ProjectVersion storeVersion(ProjectData project, WorldState state, ProjectVersion parent) {
+        TraceEvents.ProjectSave event = new TraceEvents.ProjectSave();
+        event.begin();
+        long t0 = System.nanoTime();
+        List<ProjectChunker.Chunk> chunks = ProjectChunker.split(state);
+        long t1 = System.nanoTime();
+
+        // Csak a még nem tárolt tartalom megy ki (egy mentésen belül is egyszer)
+        Map<String, ProjectChunker.Chunk> unique = new LinkedHashMap<>();
+        for (ProjectChunker.Chunk c : chunks) unique.putIfAbsent(c.ref().hash(), c);
+        for (ProjectChunk existing : chunkRepository.findExisting(unique.keySet())) unique.remove(existing.hash);
+        long t2 = System.nanoTime();
+
+        // Tömörítés párhuzamosan (a darabok függetlenek)
+        List<ProjectChunk> fresh = unique.values().parallelStream()
+                .map(c -> new ProjectChunk(c.ref().hash(), c.ref().kind(), c.ref().count(), c.raw().length,
+                        ColumnarSnapshot.compress(c.raw())))
+                .toList();
+        long newBytes = 0;
+        for (ProjectChunk c : fresh) newBytes += c.data.length;
+        long t3 = System.nanoTime();
+        if (!fresh.isEmpty()) chunkRepository.saveAll(fresh);
+
+        ProjectVersion v = new ProjectVersion();
+        v.projectId = project.id;
+        v.name = project.name;
+        v.number = parent != null ? parent.number + 1 : 1;
+        v.parentId = parent != null ? parent.id : null;
+        v.pointCount = state.points().size();
+        v.connectionCount = state.connections().size();
+        v.faceCount = state.faces() != null ? state.faces().size() : 0;
+        v.clipCount = state.clips() != null ? state.clips().size() : 0;
+        v.currentTime = state.currentTime();
+        v.newChunks = fresh.size();
+        v.newBytes = newBytes;
+        v.chunks = chunks.stream().map(ProjectChunker.Chunk::ref).toList();
+        v = versionRepository.save(v);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.project = project.name;
+            event.versionNumber = v.number;
+            event.points = v.pointCount;
+            event.chunks = chunks.size();
+            event.newChunks = fresh.size();
+            event.newBytes = newBytes;
+            event.encodeTime = (t1 - t0) + (t3 - t2);
+            event.writeTime = (t2 - t1) + (System.nanoTime() - t3);
+            event.commit();
+        }
+        return v;
+    }
+
+    // Betöltés: projekt ID (a legutóbbi verzió) vagy egy konkrét verzió ID
     public boolean loadProject(String id) {
-        Optional<ProjectData> projectOpt = repository.findById(id);
-        if (projectOpt.isPresent()) {
-            ProjectData project = projectOpt.get();
-            // Visszatöltjük az adatot a WorldStateService-be
-            // (Ehhez a WorldStateService-ben kell majd egy loadWorldState metódus, de egyelőre a clear + add-okkal is megoldható lenne,
-            // de elegánsabb, ha írunk egy restore-t. Ezt a következő lépésben megcsináljuk.)
-            worldStateService.restoreStateFromDb(project.worldState);
-            return true;
+        Optional<WorldState> state = readProject(id);
+        state.ifPresent(s -> worldStateService.restoreStateFromDb(s, worldStateService.currentEditor()));
+        return state.isPresent();
+    }
+
+    public boolean loadVersion(String versionId) {
+        Optional<WorldState> state = readVersion(versionId);
+        state.ifPresent(s -> worldStateService.restoreStateFromDb(s, worldStateService.currentEditor()));
+        return state.isPresent();
+    }
+
+    // Beolvasás és dekódolás a világ érintése nélkül (a cserét a hívó végzi, pl. a háttér betöltés)
+    public Optional<WorldState> readProject(String id) {
+        return traced(id, event -> {
+            long t0 = System.nanoTime();
+            Optional<ProjectData> projectOpt = repository.findById(id);
+            if (projectOpt.isPresent()) {
+                ProjectData project = projectOpt.get();
+                if (project.latestVersionId != null) return readVersion(project.latestVersionId, event);
+                // Régi mentés: a teljes világ a dokumentumban van; rögtön az első verzió lesz belőle
+                event.legacy = true;
+                event.fetchTime = System.nanoTime() - t0;
+                if (project.worldState == null) return Optional.empty();
+                WorldState state = project.worldState;
+                migrateLegacy(project);
+                return Optional.of(state);
+            }
+            return readVersion(id, event);
+        });
+    }
+
+    // A beágyazott világból verzió (darabok + manifeszt); hiba esetén a régi alak marad, a betöltés attól még megy
+    private void migrateLegacy(ProjectData project) {
+        try {
+            synchronized (writeLock) {
+                ProjectVersion version = storeVersion(project, project.worldState, null);
+                project.worldState = null;
+                project.latestVersionId = version.id;
+                project.versionCount = version.number;
+                repository.save(project);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Régi projekt átalakítás hiba (" + project.id + "): " + e.getMessage());
+        }
+    }
+
+    public Optional<WorldState> readVersion(String versionId) {
+        return traced(versionId, event -> readVersion(versionId, event));
+    }
+
+    private Optional<WorldState> readVersion(String versionId, TraceEvents.ProjectLoad event) {
+        return versionRepository.findById(versionId).map(v -> assemble(v, event));
+    }
+
+    // JFR: egy betöltés (olvasás + dekódolás) egy ProjectLoad esemény
+    private static Optional<WorldState> traced(String target, Function<TraceEvents.ProjectLoad, Optional<WorldState>> read) {
+        TraceEvents.ProjectLoad event = new TraceEvents.ProjectLoad();
+        event.begin();
+        Optional<WorldState> state = read.apply(event);
+        event.end();
+        if (event.shouldCommit()) {
+            event.target = target;
+            event.points = state.map(s -> s.points().size()).orElse(0);
+            event.commit();
         }
-        return false;
+        return state;
+    }
+
+    private WorldState assemble(ProjectVersion v, TraceEvents.ProjectLoad event) {
+        long t0 = System.nanoTime();
+        Map<String, ProjectChunk> chunks = fetch(v.chunks.stream().map(ProjectVersion.ChunkRef::hash).toList());
+        long t1 = System.nanoTime();
+        WorldState state = ProjectChunker.assemble(v.chunks, raw(chunks), v.currentTime);
+        event.chunks = v.chunks.size();
+        for (ProjectChunk c : chunks.values()) event.bytes += c.data.length;
+        event.fetchTime = t1 - t0;
+        event.decodeTime = System.nanoTime() - t1;
+        return state;
+    }
+
+    // Tömörített darabok hash szerint; a kicsomagolás a (párhuzamos) dekódolással együtt történik
+    private Map<String, ProjectChunk> fetch(Collection<String> hashes) {
+        Map<String, ProjectChunk> chunks = new HashMap<>();
+        for (ProjectChunk c : chunkRepository.findAllById(new HashSet<>(hashes))) chunks.put(c.hash, c);
+        return chunks;
+    }
+
+    private static Function<String, byte[]> raw(Map<String, ProjectChunk> chunks) {
+        return hash -> {
+            ProjectChunk c = chunks.get(hash);
+            return c != null ? ColumnarSnapshot.decompress(c.data, c.rawSize) : null;
+        };
     }
 
     // Listázás
@@ -53,8 +223,114 @@ public class ProjectStorageService {
         return repository.findAllByOrderByCreatedAtDesc();
     }
 
-    // Törlés
-    public void deleteProject(String id) {
-        repository.deleteById(id);
+    // Egy projekt verziói (legújabb elöl, a darab listák nélkül)
+    public List<ProjectVersion> getVersions(String projectId) {
+        return versionRepository.findSummariesByProjectId(projectId);
+    }
+
+    // ==========================
+    // ÖSSZEHASONLÍTÁS
+    // ==========================
+
+    // Csak az eltérő hash-ű darabok töltődnek be; a pontok ID, a rudak végpontpár szerint párosulnak
+    public Optional<VersionDiff> diff(String fromId, String toId) {
+        Optional<ProjectVersion> fromOpt = versionRepository.findById(fromId), toOpt = versionRepository.findById(toId);
+        if (fromOpt.isEmpty() || toOpt.isEmpty()) return Optional.empty();
+        ProjectVersion from = fromOpt.get(), to = toOpt.get();
+
+        Map<String, ProjectVersion.ChunkRef> before = byPlace(from.chunks), after = byPlace(to.chunks);
+        Set<String> places = new TreeSet<>(before.keySet());
+        places.addAll(after.keySet());
+
+        int shared = 0;
+        List<ProjectVersion.ChunkRef> changedBefore = new ArrayList<>(), changedAfter = new ArrayList<>();
+        List<String> collectionsChanged = new ArrayList<>();
+        for (String place : places) {
+            ProjectVersion.ChunkRef a = before.get(place), b = after.get(place);
+            if (a != null && b != null && a.hash().equals(b.hash())) { shared++; continue; }
+            ProjectVersion.ChunkRef any = a != null ? a : b;
+            if (ProjectChunker.COLLECTION.equals(any.kind())) collectionsChanged.add(any.key());
+            if (a != null) changedBefore.add(a);
+            if (b != null) changedAfter.add(b);
+        }
+
+        List<String> hashes = new ArrayList<>();
+        for (ProjectVersion.ChunkRef r : changedBefore) hashes.add(r.hash());
+        for (ProjectVersion.ChunkRef r : changedAfter) hashes.add(r.hash());
+        Function<String, byte[]> raw = raw(fetch(hashes));
+        WorldState a = ProjectChunker.assemble(only(changedBefore), raw, 0);
+        WorldState b = ProjectChunker.assemble(only(changedAfter), raw, 0);
+
+        Map<Integer, Point3D> pa = new HashMap<>(), pb = new HashMap<>();
+        for (Point3D p : a.points()) pa.put(p.id(), p);
+        for (Point3D p : b.points()) pb.put(p.id(), p);
+        int[] points = compare(pa, pb);
+
+        Map<Long, Connection> ca = new HashMap<>(), cb = new HashMap<>();
+        for (Connection c : a.connections()) ca.put(pairKey(c), c);
+        for (Connection c : b.connections()) cb.put(pairKey(c), c);
+        int[] connections = compare(ca, cb);
+
+        return Optional.of(new VersionDiff(from.id, from.number, to.id, to.number,
+                shared, places.size() - shared,
+                points[0], points[1], points[2], connections[0], connections[1], connections[2],
+                from.faceCount, to.faceCount, from.clipCount, to.clipCount, collectionsChanged));
+    }
+
+    private static Map<String, ProjectVersion.ChunkRef> byPlace(List<ProjectVersion.ChunkRef> refs) {
+        Map<String, ProjectVersion.ChunkRef> map = new HashMap<>();
+        if (refs != null) for (ProjectVersion.ChunkRef r : refs) map.put(r.kind() + "/" + r.key(), r);
+        return map;
+    }
+
+    // A pontok / rudak összevetéséhez elég a két fajta darab
+    private static List<ProjectVersion.ChunkRef> only(List<ProjectVersion.ChunkRef> refs) {
+        return refs.stream().filter(r -> ProjectChunker.POINTS.equals(r.kind()) || ProjectChunker.CONNECTIONS.equals(r.kind())).toList();
+    }
+
+    private static long pairKey(Connection c) {
+        return ((long) c.fromId() << 32) | (c.toId() & 0xffffffffL);
+    }
+
+    // {hozzáadott, törölt, módosult}
+    private static <K, V> int[] compare(Map<K, V> before, Map<K, V> after) {
+        int added = 0, removed = 0, changed = 0;
+        for (Map.Entry<K, V> e : after.entrySet()) {
+            V old = before.get(e.getKey());
+            if (old == null) added++;
+            else if (!old.equals(e.getValue())) changed++;
+        }
+        for (K key : before.keySet()) if (!after.containsKey(key)) removed++;
+        return new int[]{added, removed, changed};
+    }
+
+    // ==========================
+    // TÖRLÉS
+    // ==========================
+
+    // A projekt és a verziói; utána a már sehonnan nem hivatkozott darabok is (a törölt darabok számát adja)
+    public int deleteProject(String id) {
+        synchronized (writeLock) {
+            versionRepository.deleteByProjectId(id);
+            repository.deleteById(id);
+            return collectGarbage();
+        }
+    }
+
+    public int collectGarbage() {
+        synchronized (writeLock) {
+            return collectLocked();
+        }
+    }
+
+    private int collectLocked() {
+        Set<String> referenced = new HashSet<>();
+        for (ProjectVersion v : versionRepository.findAllChunkHashes()) {
+            if (v.chunks != null) for (ProjectVersion.ChunkRef r : v.chunks) referenced.add(r.hash());
+        }
+        List<String> orphans = new ArrayList<>();
+        for (ProjectChunk c : chunkRepository.findAllHashes()) if (!referenced.contains(c.hash)) orphans.add(c.hash);
+        if (!orphans.isEmpty()) chunkRepository.deleteAllById(orphans);
+        return orphans.size();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package com.kristof._D_builder;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.List;
+
+// Egy projekt egy mentett verziója: kicsi manifeszt, ami a tartalom hash szerint tárolt darabokra
+// (ProjectChunk) hivatkozik. Két verzió közös darabjai csak egyszer vannak az adatbázisban.
+@Document(collection = "project_versions")
+@CompoundIndex(name = "project_number", def = "{'projectId': 1, 'number': -1}", unique = true)
+public class ProjectVersion {
+
+    // kind: points / connections / faces / clips / collection; key: a darab helye a világban (blokk / név)
+    public record ChunkRef(String kind, String key, String hash, int count, int size) {}
+
+    @Id
+    public String id;
+
+    public String projectId;
+    public String name;
+    public int number;
+    public String parentId; // az előző verzió (null az elsőnél)
+    public long createdAt = System.currentTimeMillis();
+
+    public int pointCount;
+    public int connectionCount;
+    public int faceCount;
+    public int clipCount;
+    public double currentTime;
+
+    public int newChunks;    // ennyi darab került be új tartalomként ennél a mentésnél
+    public long newBytes;    // és ennyi (tömörített) bájt
+
+    public List<ChunkRef> chunks;
+
+    public ProjectVersion() {}
+}
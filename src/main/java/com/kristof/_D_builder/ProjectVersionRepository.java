@@ -0,0 +1,21 @@
+package com.kristof._D_builder;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.util.List;
+
+public interface ProjectVersionRepository extends MongoRepository<ProjectVersion, String> {
+
+    // Listázáshoz a darab lista nélkül (az a nagyobb része)
+    @Query(value = "{ 'projectId': ?0 }", fields = "{ 'chunks': 0 }", sort = "{ 'number': -1 }")
+    List<ProjectVersion> findSummariesByProjectId(String projectId);
+
+    ProjectVersion findTopByProjectIdOrderByNumberDesc(String projectId);
+
+    void deleteByProjectId(String projectId);
+
+    // Szemétgyűjtéshez: csak a darab hivatkozások (a teljes darab tartalom nélkül)
+    @Query(value = "{}", fields = "{ 'chunks': 1 }")
+    List<ProjectVersion> findAllChunkHashes();
+}
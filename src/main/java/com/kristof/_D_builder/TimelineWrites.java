@@ -0,0 +1,70 @@
+package com.kristof._D_builder;
+
+import java.util.Arrays;
+
+// Egy tick pozíció írásai primitív tömbökben: a kiértékelők ide írnak, nem egyenként a világba, és a
+// WorldStateService a tick végén egy menetben teszi be őket. A tömbök tickről tickre újrahasznosulnak
+// (csak a legnagyobb tickhez nőnek), így a tick nem foglal memóriát.
+// Ugyanarra a pontra a tick utolsó írása érvényes (mint a korábbi egymás utáni updatePoint hívásoknál).
+final class TimelineWrites implements ClipEvaluator.Target {
+
+    private int[] ids = new int[64];
+    private double[] coords = new double[3 * 64];
+    // Rendezés után: (id << 32 | írás sorszáma), ID szerint növekvő, ID-nként csak az utolsó írás
+    private long[] order = new long[64];
+    private int count;
+    private int settled;
+
+    void reset() {
+        count = 0;
+        settled = 0;
+    }
+
+    @Override
+    public boolean updatePoint(int id, double x, double y, double z) {
+        if (Double.isNaN(x) || Double.isNaN(y) || Double.isNaN(z)) return false;
+        if (count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+            coords = Arrays.copyOf(coords, 3 * count * 2);
+            order = new long[count * 2];
+        }
+        ids[count] = id;
+        coords[3 * count] = x;
+        coords[3 * count + 1] = y;
+        coords[3 * count + 2] = z;
+        count++;
+        return true;
+    }
+
+    // ID szerint rendez és az ismétlődő ID-kből az utolsó írást tartja meg; a különböző pontok számát adja
+    int settle() {
+        for (int i = 0; i < count; i++) order[i] = ((long) ids[i] << 32) | i;
+        Arrays.sort(order, 0, count);
+        int u = 0;
+        for (int i = 0; i < count; i++) {
+            if (i + 1 < count && (int) (order[i + 1] >>> 32) == (int) (order[i] >>> 32)) continue;
+            order[u++] = order[i];
+        }
+        settled = u;
+        return u;
+    }
+
+    // A rendezett írások (0 <= i < settle())
+    int id(int i) { return (int) (order[i] >>> 32); }
+    double x(int i) { return coords[3 * (int) order[i]]; }
+    double y(int i) { return coords[3 * (int) order[i] + 1]; }
+    double z(int i) { return coords[3 * (int) order[i] + 2]; }
+
+    // A pont írásának sorszáma a rendezett írások között, vagy -1
+    int find(int id) {
+        int lo = 0, hi = settled - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midId = id(mid);
+            if (midId < id) lo = mid + 1;
+            else if (midId > id) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,157 @@
+package com.kristof._D_builder;
+
+import jdk.jfr.*;
+
+// Saját JDK Flight Recorder események: egy parancs útja a feldolgozástól a kliensig, egyenként.
+// (Az összesített metrikák az egyedi lassú műveletet nem mutatják meg.)
+// Kikapcsolt felvételnél egy esemény létrehozása / commit-ja gyakorlatilag ingyenes; a drágább mezőket
+// csak shouldCommit() után töltjük ki. A beállításokat (küszöbök) a resources/jfr/3d-builder.jfc adja,
+// folyamatos felvételt a FlightRecorderService indít (tracing.jfr.enabled=true).
+final class TraceEvents {
+
+    static final String CATEGORY = "3D Builder";
+
+    private TraceEvents() {}
+
+    // Egy parancs feldolgozása (értelmezés + végrehajtás, a Script-ek sorai külön eseményt kapnak)
+    @Name("com.kristof.builder.Command")
+    @Label("Command")
+    @Category({CATEGORY, "Commands"})
+    @StackTrace(false)
+    static final class Command extends Event {
+        @Label("Command Type") String commandType;
+        @Label("Length") int length;
+        @Label("Succeeded") boolean ok;
+    }
+
+    // Egy világ módosítás az első érintéstől (saveState / pont frissítés) a kiküldésig (broadcast)
+    @Name("com.kristof.builder.WorldMutation")
+    @Label("World Mutation")
+    @Category({CATEGORY, "World"})
+    @StackTrace(false)
+    static final class WorldMutation extends Event {
+        static final EventType TYPE = EventType.getEventType(WorldMutation.class);
+
+        @Label("Points Before") int pointsBefore;
+        @Label("Points After") int pointsAfter;
+        @Label("Connections Before") int connectionsBefore;
+        @Label("Connections After") int connectionsAfter;
+        @Label("Faces Before") int facesBefore;
+        @Label("Faces After") int facesAfter;
+        @Label("Points Updated") int pointsUpdated;
+        @Label("In Batch") @Description("Deferred broadcast inside runBatch / runDeferred") boolean batched;
+    }
+
+    // Undo pillanatkép (saveState)
+    @Name("com.kristof.builder.UndoSnapshot")
+    @Label("Undo Snapshot")
+    @Category({CATEGORY, "World"})
+    @StackTrace(false)
+    static final class UndoSnapshot extends Event {
+        @Label("Points") int points;
+        @Label("Connections") int connections;
+        @Label("Faces") int faces;
+        @Label("Undo Depth") int undoDepth;
+    }
+
+    // Élő állapot pillanatkép (lezárás / commit, undo); megosztott tárolókkal, elemenkénti másolás nélkül
+    @Name("com.kristof.builder.StateCopy")
+    @Label("World State Copy")
+    @Category({CATEGORY, "World"})
+    @StackTrace(false)
+    static final class StateCopy extends Event {
+        @Label("Points") int points;
+        @Label("Connections") int connections;
+        @Label("Faces") int faces;
+        @Label("Clips") int clips;
+        @Label("Off-Heap") boolean offHeap;
+    }
+
+    // JSON szerializálás (STOMP üzenet vagy REST snapshot)
+    @Name("com.kristof.builder.JsonSerialization")
+    @Label("JSON Serialization")
+    @Category({CATEGORY, "Messaging"})
+    @StackTrace(false)
+    static final class JsonSerialization extends Event {
+        @Label("Payload Type") String payloadType;
+        @Label("Size") @DataAmount long bytes;
+    }
+
+    // Egy world update kiküldése: állapot rögzítés, teljes topic, szűrt nézetek
+    @Name("com.kristof.builder.Broadcast")
+    @Label("World Broadcast")
+    @Category({CATEGORY, "Messaging"})
+    @StackTrace(false)
+    static final class Broadcast extends Event {
+        @Label("World Version") long worldVersion;
+        @Label("Points") int points;
+        @Label("Connections") int connections;
+        @Label("Views") int views;
+        @Label("Capture Time") @Timespan(Timespan.NANOSECONDS) long captureTime;
+        @Label("Send Time") @Timespan(Timespan.NANOSECONDS) long sendTime;
+        @Label("Views Time") @Timespan(Timespan.NANOSECONDS) long viewsTime;
+    }
+
+    // Egy frame tényleges kiírása egy kliens websocketjére (a kimenő sor után)
+    @Name("com.kristof.builder.WebSocketSend")
+    @Label("WebSocket Send")
+    @Category({CATEGORY, "Messaging"})
+    @StackTrace(false)
+    static final class WebSocketSend extends Event {
+        @Label("Session") String sessionId;
+        @Label("Size") @DataAmount long bytes;
+        @Label("Queued Time") @Timespan(Timespan.MILLISECONDS) long queuedTime;
+    }
+
+    // Egy gameLoop tick (csak lejátszás közben) fázisonként
+    @Name("com.kristof.builder.GameLoopTick")
+    @Label("Game Loop Tick")
+    @Category({CATEGORY, "Timeline"})
+    @StackTrace(false)
+    static final class GameLoopTick extends Event {
+        @Label("Timeline Time") double timelineTime;
+        @Label("Clips") int clips;
+        @Label("Advance Time") @Timespan(Timespan.NANOSECONDS) long advanceTime;
+        @Label("Evaluate Time") @Timespan(Timespan.NANOSECONDS) long evaluateTime;
+        @Label("Broadcast Time") @Timespan(Timespan.NANOSECONDS) long broadcastTime;
+    }
+
+    // Projekt mentés (Mongo): darabolás / kódolás / tömörítés és az írás külön
+    @Name("com.kristof.builder.ProjectSave")
+    @Label("Project Save")
+    @Category({CATEGORY, "Storage"})
+    @StackTrace(false)
+    static final class ProjectSave extends Event {
+        @Label("Project") String project;
+        @Label("Version") int versionNumber;
+        @Label("Points") int points;
+        @Label("Chunks") int chunks;
+        @Label("New Chunks") int newChunks;
+        @Label("Written") @DataAmount long newBytes;
+        @Label("Encode Time") @Timespan(Timespan.NANOSECONDS) long encodeTime;
+        @Label("Write Time") @Timespan(Timespan.NANOSECONDS) long writeTime;
+    }
+
+    // Projekt betöltés (Mongo): olvasás és (párhuzamos) dekódolás külön; a becserélés nincs benne
+    @Name("com.kristof.builder.ProjectLoad")
+    @Label("Project Load")
+    @Category({CATEGORY, "Storage"})
+    @StackTrace(false)
+    static final class ProjectLoad extends Event {
+        @Label("Target") String target;
+        @Label("Legacy Document") boolean legacy;
+        @Label("Points") int points;
+        @Label("Chunks") int chunks;
+        @Label("Read") @DataAmount long bytes;
+        @Label("Fetch Time") @Timespan(Timespan.NANOSECONDS) long fetchTime;
+        @Label("Decode Time") @Timespan(Timespan.NANOSECONDS) long decodeTime;
+    }
+
+    // Parancs típus: az első név ("AddPoint(1,2,3)" -> "AddPoint")
+    static String commandType(String command) {
+        if (command == null) return null;
+        int end = 0;
+        while (end < command.length() && end < 64 && Character.isLetterOrDigit(command.charAt(end))) end++;
+        return end > 0 ? command.substring(0, end) : command.substring(0, Math.min(command.length(), 16));
+    }
+}
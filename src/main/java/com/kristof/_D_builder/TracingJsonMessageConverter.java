@@ -0,0 +1,34 @@
+package com.kristof._D_builder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+
+// A Spring Boot-os STOMP JSON konverter, JFR JsonSerialization eseménnyel (payload típus + méret).
+// Az üzenet egyszer szerializálódik, a broker utána minden előfizetőnek ugyanazt a bájtsort küldi.
+// A szöveg és bájt payload a gyári konvertereknél marad (különben idézőjelek közé kerülne).
+final class TracingJsonMessageConverter extends MappingJackson2MessageConverter {
+
+    TracingJsonMessageConverter(ObjectMapper objectMapper) {
+        setObjectMapper(objectMapper);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz != String.class && clazz != byte[].class;
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        TraceEvents.JsonSerialization event = new TraceEvents.JsonSerialization();
+        event.begin();
+        Object result = super.convertToInternal(payload, headers, conversionHint);
+        event.end();
+        if (event.shouldCommit()) {
+            event.payloadType = payload.getClass().getSimpleName();
+            event.bytes = result instanceof byte[] b ? b.length : result instanceof String str ? str.length() : 0;
+            event.commit();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,29 @@
+package com.kristof._D_builder;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/truss")
+@CrossOrigin(origins = "http://localhost:5173")
+public class TrussController {
+
+    private final TrussSolverService trussSolverService;
+
+    public TrussController(TrussSolverService trussSolverService) {
+        this.trussSolverService = trussSolverService;
+    }
+
+    // UTOLSÓ EREDMÉNY: GET /api/truss  (204, ha még nem futott számítás)
+    @GetMapping
+    public ResponseEntity<TrussSolverService.TrussResult> lastResult() {
+        TrussSolverService.TrussResult result = trussSolverService.getLastResult();
+        return result != null ? ResponseEntity.ok(result) : ResponseEntity.noContent().build();
+    }
+
+    // ÚJRASZÁMOLÁS: POST /api/truss/analyze
+    @PostMapping("/analyze")
+    public TrussSolverService.TrussResult analyze() {
+        return trussSolverService.analyzeNow();
+    }
+}
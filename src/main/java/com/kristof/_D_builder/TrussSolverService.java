@@ -0,0 +1,345 @@
+package com.kristof._D_builder;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Lineáris statikus rácsszerkezet (truss) számítás a pontokból és összekötésekből.
+// Rúd = csuklós, csak tengelyirányú erőt visel; keresztmetszet: tömör kör, átmérő = thickness * sectionScale.
+// Mértékegységek: koordináták méterben, terhek Newtonban, feszültség Pa-ban.
+// Az eredmények a /topic/truss-results csatornára mennek; automatikus módban minden világváltozás után újraszámol.
+@Service
+public class TrussSolverService {
+
+    public static final String RESULTS_TOPIC = "/topic/truss-results";
+
+    private static final double TOLERANCE = 1e-6;
+    private static final int MAX_ITERATIONS = 20000;
+    private static final double GRAVITY = 9.81;
+
+    // Anyagjellemzők a PricingService anyagnevei szerint (E [Pa], folyáshatár [Pa], sűrűség [kg/m3])
+    public record TrussMaterial(double youngModulus, double yieldStrength, double density) {}
+
+    private static final TrussMaterial STEEL = new TrussMaterial(210e9, 235e6, 7850);
+    private static final Map<String, TrussMaterial> MATERIALS = new HashMap<>();
+
+    static {
+        MATERIALS.put("Standard Acélrúd", STEEL);
+        MATERIALS.put("Erősített Gerenda", new TrussMaterial(210e9, 355e6, 7850));
+        MATERIALS.put("Alumínium Profil", new TrussMaterial(70e9, 160e6, 2700));
+        MATERIALS.put("Dekorcsík", STEEL);
+    }
+
+    // Rudankénti eredmény (force > 0: húzás, < 0: nyomás). color csak kiemelés módban.
+    public record MemberResult(int fromId, int toId, double force, double stress, double utilization, String color) {}
+
+    public record NodeResult(int id, double dx, double dy, double dz) {}
+
+    public record TrussResult(long worldVersion, boolean converged, int iterations, double residual, long solveMillis,
+                              int nodes, int members, int overstressed, double maxDisplacement, double maxUtilization,
+                              boolean highlight, String message, List<MemberResult> memberResults, List<NodeResult> displacements) {}
+
+    private final WorldStateService worldStateService;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    // Megtámasztások: pont ID -> rögzített irányok bitmaszkja (1 = x, 2 = y, 4 = z)
+    private final Map<Integer, Integer> supports = new ConcurrentHashMap<>();
+    // Terhek: pont ID -> {fx, fy, fz} [N]
+    private final Map<Integer, double[]> loads = new ConcurrentHashMap<>();
+
+    private volatile boolean autoAnalysis = false;
+    private volatile boolean highlight = false;
+    private volatile boolean selfWeight = false;
+    private volatile double sectionScale = 0.02;
+
+    // Külön szál: a számítás nem foghatja meg a 33 ms-os gameLoop ütemezőjét
+    private final ExecutorService solverExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "truss-solver");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean solving = new AtomicBoolean(false);
+    private volatile long lastSolvedVersion = -1;
+    // Beállítás változásnál (támasz, teher, opció) automatikus módban is újra kell számolni
+    private volatile boolean dirty = false;
+
+    // Inkrementális állapot: változatlan topológiánál a mátrix minta marad, és az előző elmozdulásból indulunk
+    private TrussSystem system;
+    private double[] lastDisplacement;
+    private volatile TrussResult lastResult;
+
+    public TrussSolverService(WorldStateService worldStateService, SimpMessagingTemplate messagingTemplate) {
+        this.worldStateService = worldStateService;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        solverExecutor.shutdownNow();
+    }
+
+    // ==========================
+    // TÁMASZOK / TERHEK / BEÁLLÍTÁSOK
+    // ==========================
+
+    // axes: "xyz" (csukló), "y" (görgő), stb.
+    public int addSupports(IdSet ids, String axes) {
+        int mask = parseAxes(axes);
+        if (mask == 0) return 0;
+        int[] count = {0};
+        ids.forEach(id -> { supports.put(id, mask); count[0]++; });
+        dirty = true;
+        return count[0];
+    }
+
+    public int removeSupports(IdSet ids) {
+        int[] count = {0};
+        ids.forEach(id -> { if (supports.remove(id) != null) count[0]++; });
+        dirty = true;
+        return count[0];
+    }
+
+    public int addLoads(IdSet ids, double fx, double fy, double fz) {
+        int[] count = {0};
+        ids.forEach(id -> {
+            loads.merge(id, new double[]{fx, fy, fz}, (a, b) -> new double[]{a[0] + b[0], a[1] + b[1], a[2] + b[2]});
+            count[0]++;
+        });
+        dirty = true;
+        return count[0];
+    }
+
+    public int removeLoads(IdSet ids) {
+        int[] count = {0};
+        ids.forEach(id -> { if (loads.remove(id) != null) count[0]++; });
+        dirty = true;
+        return count[0];
+    }
+
+    public void clearSupports() { supports.clear(); dirty = true; }
+    public void clearLoads() { loads.clear(); dirty = true; }
+
+    public void setAutoAnalysis(boolean on) { autoAnalysis = on; dirty = true; }
+    public void setHighlight(boolean on) { highlight = on; dirty = true; }
+    public void setSelfWeight(boolean on) { selfWeight = on; dirty = true; }
+
+    public void setSectionScale(double scale) {
+        if (scale > 0) { sectionScale = scale; dirty = true; }
+    }
+
+    public TrussResult getLastResult() { return lastResult; }
+
+    private static int parseAxes(String axes) {
+        if (axes == null || axes.isBlank()) return 7;
+        String a = axes.trim().toLowerCase();
+        if (a.equals("fixed") || a.equals("pin") || a.equals("pinned")) return 7;
+        int mask = 0;
+        if (a.contains("x")) mask |= 1;
+        if (a.contains("y")) mask |= 2;
+        if (a.contains("z")) mask |= 4;
+        return mask;
+    }
+
+    // ==========================
+    // SZÁMÍTÁS
+    // ==========================
+
+    // Automatikus mód: csak új világverzió (vagy beállítás változás) esetén, és egyszerre csak egy számítás fut
+    @Scheduled(fixedDelay = 100)
+    public void autoAnalyze() {
+        if (!autoAnalysis) return;
+        if (worldStateService.getVersion() == lastSolvedVersion && !dirty) return;
+        if (!solving.compareAndSet(false, true)) return;
+        solverExecutor.execute(() -> {
+            try {
+                publish(analyze());
+            } catch (Exception e) {
+                System.err.println("Truss számítási hiba: " + e.getMessage());
+            } finally {
+                solving.set(false);
+            }
+        });
+    }
+
+    // Egyszeri számítás a parancs szálán (Analyze parancs); eredményt ki is küldi
+    public TrussResult analyzeNow() {
+        TrussResult result = analyze();
+        publish(result);
+        return result;
+    }
+
+    private void publish(TrussResult result) {
+        try {
+            messagingTemplate.convertAndSend(RESULTS_TOPIC, result);
+        } catch (Exception e) {
+            System.err.println("Truss broadcast hiba: " + e.getMessage());
+        }
+    }
+
+    private synchronized TrussResult analyze() {
+        long start = System.nanoTime();
+        dirty = false;
+        // A verziót az állapot előtt olvassuk: ha közben változik, a következő kör úgyis újraszámol
+        long worldVersion = worldStateService.getVersion();
+        WorldState state = worldStateService.getWorldState();
+        lastSolvedVersion = worldVersion;
+
+        List<Point3D> points = state.points();
+        List<Connection> connections = state.connections();
+
+        // 1. Minta: újraépítés csak topológia változáskor
+        int[] key = TrussSystem.topologyKey(points, connections);
+        TrussSystem previous = system;
+        if (previous == null || !Arrays.equals(previous.topologyKey, key)) {
+            system = TrussSystem.build(points, connections, key);
+        }
+        TrussSystem sys = system;
+        int n = sys.nodeCount(), m = sys.memberCount();
+        if (n == 0 || m == 0) {
+            lastDisplacement = null;
+            return remember(new TrussResult(worldVersion, true, 0, 0, 0, n, m, 0, 0, 0, highlight,
+                    "No members to analyze.", List.of(), List.of()));
+        }
+
+        // 2. Koordináták, rúd merevségek, teher vektor
+        double[] coords = new double[3 * n];
+        Map<Integer, Integer> indexOf = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) indexOf.put(sys.nodeIds[i], i);
+        for (Point3D p : points) {
+            Integer i = indexOf.get(p.id());
+            if (i == null) continue;
+            coords[3 * i] = p.x(); coords[3 * i + 1] = p.y(); coords[3 * i + 2] = p.z();
+        }
+
+        double scale = sectionScale;
+        double[] area = new double[m], inertia = new double[m], stiffness = new double[m], length = new double[m];
+        TrussMaterial[] material = new TrussMaterial[m];
+        double[] f = new double[3 * n];
+        for (int e = 0; e < m; e++) {
+            Connection c = connections.get(sys.memberSource[e]);
+            material[e] = MATERIALS.getOrDefault(c.materialName(), STEEL);
+            double d = Math.max(c.thickness(), 0) * scale;
+            area[e] = Math.PI * d * d / 4;
+            inertia[e] = Math.PI * d * d * d * d / 64;
+            int a = sys.memberA[e], b = sys.memberB[e];
+            double dx = coords[3 * b] - coords[3 * a], dy = coords[3 * b + 1] - coords[3 * a + 1], dz = coords[3 * b + 2] - coords[3 * a + 2];
+            length[e] = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            stiffness[e] = length[e] > 1e-12 ? material[e].youngModulus() * area[e] / length[e] : 0;
+            if (selfWeight) {
+                double half = material[e].density() * area[e] * length[e] * GRAVITY / 2;
+                f[3 * a + 1] -= half;
+                f[3 * b + 1] -= half;
+            }
+        }
+        for (Map.Entry<Integer, double[]> load : loads.entrySet()) {
+            Integer i = indexOf.get(load.getKey());
+            if (i == null) continue;
+            f[3 * i] += load.getValue()[0]; f[3 * i + 1] += load.getValue()[1]; f[3 * i + 2] += load.getValue()[2];
+        }
+
+        double[] unit = new double[3 * m];
+        sys.assemble(coords, stiffness, unit);
+
+        // 3. Szabad szabadságfokok: támaszok + merevség nélküli irányok (pl. síkbeli rács síkra merőleges iránya)
+        boolean[] free = new boolean[3 * n];
+        double maxDiag = 0;
+        for (int d = 0; d < 3 * n; d++) maxDiag = Math.max(maxDiag, sys.diagonal(d));
+        int supported = 0, unstable = 0;
+        for (int i = 0; i < n; i++) {
+            int mask = supports.getOrDefault(sys.nodeIds[i], 0);
+            if (mask != 0) supported++;
+            for (int k = 0; k < 3; k++) {
+                int d = 3 * i + k;
+                if ((mask & (1 << k)) != 0) continue;
+                if (sys.diagonal(d) <= 1e-12 * maxDiag) { unstable++; continue; }
+                free[d] = true;
+            }
+        }
+        if (supported == 0) {
+            lastDisplacement = null;
+            return remember(new TrussResult(worldVersion, false, 0, 0, 0, n, m, 0, 0, 0, highlight,
+                    "No supports defined. Use Support(...) first.", List.of(), List.of()));
+        }
+
+        // 4. Megoldás: meleg indítás az előző elmozdulásból (azonos topológiánál közvetlenül, egyébként pont ID alapján)
+        double[] x = warmStart(previous, sys);
+        TrussSystem.SolveStats stats = sys.solve(f, free, x, 1e-10 * maxDiag, TOLERANCE, MAX_ITERATIONS);
+        lastDisplacement = x;
+
+        // 5. Rúderők, feszültségek, kihasználtság (húzás: folyáshatár, nyomás: + Euler kihajlás)
+        List<MemberResult> memberResults = new ArrayList<>(m);
+        int overstressed = 0;
+        double maxUtil = 0;
+        for (int e = 0; e < m; e++) {
+            int a = sys.memberA[e], b = sys.memberB[e];
+            double elong = unit[3 * e] * (x[3 * b] - x[3 * a]) + unit[3 * e + 1] * (x[3 * b + 1] - x[3 * a + 1])
+                    + unit[3 * e + 2] * (x[3 * b + 2] - x[3 * a + 2]);
+            double force = stiffness[e] * elong;
+            double stress = area[e] > 0 ? force / area[e] : 0;
+            double util = area[e] > 0 ? Math.abs(stress) / material[e].yieldStrength() : 0;
+            if (force < 0 && length[e] > 1e-12) {
+                double critical = Math.PI * Math.PI * material[e].youngModulus() * inertia[e] / (length[e] * length[e]);
+                if (critical > 0) util = Math.max(util, -force / critical);
+            }
+            if (util >= 1) overstressed++;
+            maxUtil = Math.max(maxUtil, util);
+            memberResults.add(new MemberResult(sys.nodeIds[a], sys.nodeIds[b], force, stress, util,
+                    highlight ? utilizationColor(util) : null));
+        }
+
+        List<NodeResult> displacements = new ArrayList<>(n);
+        double maxDisp = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = x[3 * i], dy = x[3 * i + 1], dz = x[3 * i + 2];
+            maxDisp = Math.max(maxDisp, Math.sqrt(dx * dx + dy * dy + dz * dz));
+            displacements.add(new NodeResult(sys.nodeIds[i], dx, dy, dz));
+        }
+
+        String message = stats.converged()
+                ? "Solved in " + stats.iterations() + " iterations."
+                : "Not converged after " + stats.iterations() + " iterations - the structure may be a mechanism (check supports).";
+        if (unstable > 0) message += " " + unstable + " unrestrained DOFs without stiffness were fixed.";
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        return remember(new TrussResult(worldVersion, stats.converged(), stats.iterations(), stats.relativeResidual(), millis,
+                n, m, overstressed, maxDisp, maxUtil, highlight, message, memberResults, displacements));
+    }
+
+    private TrussResult remember(TrussResult result) {
+        lastResult = result;
+        return result;
+    }
+
+    private double[] warmStart(TrussSystem previous, TrussSystem current) {
+        double[] x = new double[3 * current.nodeCount()];
+        double[] old = lastDisplacement;
+        if (previous == null || old == null || old.length != 3 * previous.nodeCount()) return x;
+        if (previous == current) {
+            System.arraycopy(old, 0, x, 0, x.length);
+            return x;
+        }
+        Map<Integer, Integer> oldIndex = new HashMap<>(previous.nodeCount() * 2);
+        for (int i = 0; i < previous.nodeCount(); i++) oldIndex.put(previous.nodeIds[i], i);
+        for (int i = 0; i < current.nodeCount(); i++) {
+            Integer o = oldIndex.get(current.nodeIds[i]);
+            if (o == null) continue;
+            x[3 * i] = old[3 * o]; x[3 * i + 1] = old[3 * o + 1]; x[3 * i + 2] = old[3 * o + 2];
+        }
+        return x;
+    }
+
+    // 0 -> zöld, 0.5 -> sárga, 1 alatt -> narancs, 1 felett -> piros
+    private static String utilizationColor(double util) {
+        if (util >= 1) return "#ff0000";
+        int r = (int) Math.round(255 * Math.min(1, 2 * util));
+        int g = (int) Math.round(255 * Math.min(1, 2 * (1 - util)));
+        return String.format("#%02x%02x00", r, g);
+    }
+}
@@ -0,0 +1,346 @@
+package com.kristof._D_builder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+// Rácsos szerkezet (truss) merevségi mátrixa 3x3-as blokk-CSR formában + párhuzamos PCG megoldó.
+// A ritkasági minta (melyik csomópont melyikkel szomszédos) csak topológia változáskor épül újra;
+// pont mozgatásakor csak a blokkértékek számolódnak újra (assemble), a minta és a slotok maradnak.
+final class TrussSystem {
+
+    // Ez alatt a csomópontszám alatt a párhuzamosítás többe kerül, mint amit hoz
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int NODES_PER_CHUNK = 1024;
+
+    final int[] nodeIds;        // csomópont index -> pont ID
+    final int[] memberA, memberB; // rúd -> csomópont indexek
+    final int[] memberSource;   // rúd -> index a kapott Connection listában
+    final int[] topologyKey;    // pont ID-k + rúd végpontok: ezzel ismerjük fel a változatlan topológiát
+
+    private final int[] rowPtr; // blokk sorok kezdete a cols-ban
+    private final int[] cols;   // blokk oszlop (csomópont index)
+    private final int[] slots;  // rudanként 4 blokk: aa, ab, ba, bb
+    private final int[] diagSlot;
+    final double[] values;      // blokkonként 9 érték (sorfolytonos)
+
+    private final int chunks;
+
+    private TrussSystem(int[] nodeIds, int[] memberA, int[] memberB, int[] memberSource, int[] topologyKey) {
+        this.nodeIds = nodeIds;
+        this.memberA = memberA;
+        this.memberB = memberB;
+        this.memberSource = memberSource;
+        this.topologyKey = topologyKey;
+
+        int n = nodeIds.length, m = memberA.length;
+
+        // 1. Szomszédsági lista (mindkét irányban + önmaga)
+        int[] degree = new int[n];
+        for (int e = 0; e < m; e++) { degree[memberA[e]]++; degree[memberB[e]]++; }
+        int[] adjStart = new int[n + 1];
+        for (int i = 0; i < n; i++) adjStart[i + 1] = adjStart[i] + degree[i] + 1;
+        int[] adj = new int[adjStart[n]];
+        int[] fill = new int[n];
+        for (int i = 0; i < n; i++) { adj[adjStart[i]] = i; fill[i] = 1; }
+        for (int e = 0; e < m; e++) {
+            int a = memberA[e], b = memberB[e];
+            adj[adjStart[a] + fill[a]++] = b;
+            adj[adjStart[b] + fill[b]++] = a;
+        }
+
+        // 2. Soronként rendezés + duplikátumok (párhuzamos rudak) kiszűrése -> CSR
+        rowPtr = new int[n + 1];
+        int nnz = 0;
+        for (int i = 0; i < n; i++) {
+            Arrays.sort(adj, adjStart[i], adjStart[i + 1]);
+            int last = -1;
+            for (int k = adjStart[i]; k < adjStart[i + 1]; k++) {
+                if (adj[k] != last) { adj[adjStart[i] + (nnz - rowPtr[i])] = adj[k]; nnz++; last = adj[k]; }
+            }
+            rowPtr[i + 1] = nnz;
+        }
+        cols = new int[nnz];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(adj, adjStart[i], cols, rowPtr[i], rowPtr[i + 1] - rowPtr[i]);
+        }
+        values = new double[nnz * 9];
+
+        diagSlot = new int[n];
+        for (int i = 0; i < n; i++) diagSlot[i] = findSlot(i, i);
+        slots = new int[m * 4];
+        for (int e = 0; e < m; e++) {
+            int a = memberA[e], b = memberB[e];
+            slots[4 * e] = diagSlot[a];
+            slots[4 * e + 1] = findSlot(a, b);
+            slots[4 * e + 2] = findSlot(b, a);
+            slots[4 * e + 3] = diagSlot[b];
+        }
+
+        chunks = n < PARALLEL_THRESHOLD ? 1
+                : Math.max(1, Math.min(n / NODES_PER_CHUNK, ForkJoinPool.getCommonPoolParallelism() * 4));
+    }
+
+    private int findSlot(int row, int col) {
+        return Arrays.binarySearch(cols, rowPtr[row], rowPtr[row + 1], col);
+    }
+
+    // Topológia kulcs: [pontszám, pont ID-k..., rúd végpont ID párok...] (csak az érvényes rudak)
+    static int[] topologyKey(List<Point3D> points, List<Connection> connections) {
+        int[] key = new int[1 + points.size() + 2 * connections.size()];
+        int k = 0;
+        key[k++] = points.size();
+        int maxId = -1;
+        for (Point3D p : points) { key[k++] = p.id(); maxId = Math.max(maxId, p.id()); }
+        boolean[] exists = new boolean[maxId + 1];
+        for (Point3D p : points) exists[p.id()] = true;
+        for (Connection c : connections) {
+            int a = c.fromId(), b = c.toId();
+            if (a == b || a < 0 || b < 0 || a > maxId || b > maxId || !exists[a] || !exists[b]) continue;
+            key[k++] = a;
+            key[k++] = b;
+        }
+        return k == key.length ? key : Arrays.copyOf(key, k);
+    }
+
+    static TrussSystem build(List<Point3D> points, List<Connection> connections, int[] topologyKey) {
+        int n = topologyKey[0];
+        int[] nodeIds = Arrays.copyOfRange(topologyKey, 1, 1 + n);
+        int maxId = -1;
+        for (int id : nodeIds) maxId = Math.max(maxId, id);
+        int[] indexOf = new int[maxId + 1];
+        Arrays.fill(indexOf, -1);
+        for (int i = 0; i < n; i++) indexOf[nodeIds[i]] = i;
+
+        int m = (topologyKey.length - 1 - n) / 2;
+        int[] a = new int[m], b = new int[m], source = new int[m];
+        int e = 0;
+        for (int ci = 0; ci < connections.size() && e < m; ci++) {
+            Connection c = connections.get(ci);
+            int from = c.fromId(), to = c.toId();
+            if (from == to || from < 0 || to < 0 || from > maxId || to > maxId) continue;
+            if (indexOf[from] < 0 || indexOf[to] < 0) continue;
+            a[e] = indexOf[from];
+            b[e] = indexOf[to];
+            source[e] = ci;
+            e++;
+        }
+        return new TrussSystem(nodeIds, a, b, source, topologyKey);
+    }
+
+    int nodeCount() { return nodeIds.length; }
+    int memberCount() { return memberA.length; }
+
+    // ==========================
+    // ÖSSZEÁLLÍTÁS
+    // ==========================
+
+    // coords: csomópontonként x,y,z   axialStiffness: rudanként EA/L
+    // unit: rudanként az A->B egységvektor (kimenet, az erők számolásához)
+    void assemble(double[] coords, double[] axialStiffness, double[] unit) {
+        Arrays.fill(values, 0);
+        for (int e = 0; e < memberA.length; e++) {
+            int a = memberA[e], b = memberB[e];
+            double dx = coords[3 * b] - coords[3 * a];
+            double dy = coords[3 * b + 1] - coords[3 * a + 1];
+            double dz = coords[3 * b + 2] - coords[3 * a + 2];
+            double len = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            double k = axialStiffness[e];
+            if (len < 1e-12 || !(k > 0)) { unit[3 * e] = unit[3 * e + 1] = unit[3 * e + 2] = 0; continue; }
+            double cx = dx / len, cy = dy / len, cz = dz / len;
+            unit[3 * e] = cx; unit[3 * e + 1] = cy; unit[3 * e + 2] = cz;
+
+            double xx = k * cx * cx, xy = k * cx * cy, xz = k * cx * cz;
+            double yy = k * cy * cy, yz = k * cy * cz, zz = k * cz * cz;
+            addBlock(slots[4 * e], xx, xy, xz, yy, yz, zz, 1);
+            addBlock(slots[4 * e + 1], xx, xy, xz, yy, yz, zz, -1);
+            addBlock(slots[4 * e + 2], xx, xy, xz, yy, yz, zz, -1);
+            addBlock(slots[4 * e + 3], xx, xy, xz, yy, yz, zz, 1);
+        }
+    }
+
+    private void addBlock(int slot, double xx, double xy, double xz, double yy, double yz, double zz, double sign) {
+        int o = slot * 9;
+        values[o] += sign * xx;     values[o + 1] += sign * xy; values[o + 2] += sign * xz;
+        values[o + 3] += sign * xy; values[o + 4] += sign * yy; values[o + 5] += sign * yz;
+        values[o + 6] += sign * xz; values[o + 7] += sign * yz; values[o + 8] += sign * zz;
+    }
+
+    double diagonal(int dof) {
+        int node = dof / 3, k = dof % 3;
+        return values[diagSlot[node] * 9 + 4 * k];
+    }
+
+    // ==========================
+    // PÁRHUZAMOS PCG (blokk-Jacobi előkondicionálás: csomópontonkénti 3x3 inverz)
+    // ==========================
+
+    record SolveStats(boolean converged, int iterations, double relativeResidual) {}
+
+    // Megoldja K x = f-et a szabad szabadságfokokon (free[d] == false -> x[d] = 0).
+    // x bemenetként a kezdő közelítés (meleg indítás az előző megoldásból), kimenetként a megoldás.
+    // shift: kis diagonális stabilizálás a mechanizmusok ellen.
+    SolveStats solve(double[] f, boolean[] free, double[] x, double shift, double tolerance, int maxIterations) {
+        int dofs = nodeIds.length * 3;
+        double[] mask = new double[dofs];
+        for (int d = 0; d < dofs; d++) {
+            if (!free[d]) { x[d] = 0; continue; }
+            mask[d] = 1;
+        }
+        double[] precond = blockInverses(mask, shift);
+
+        double[] r = new double[dofs], z = new double[dofs], p = new double[dofs], q = new double[dofs];
+        double[] partA = new double[chunks], partB = new double[chunks], partC = new double[chunks];
+
+        // r = f - K x,  z = M^-1 r,  p = z
+        multiply(x, q, mask, shift, null);
+        forChunks(c -> {
+            double rz = 0, rr = 0, ff = 0;
+            for (int d = 3 * chunkStart(c); d < 3 * chunkStart(c + 1); d++) {
+                r[d] = (f[d] - q[d]) * mask[d];
+                rr += r[d] * r[d];
+                ff += f[d] * f[d] * mask[d];
+            }
+            for (int i = chunkStart(c); i < chunkStart(c + 1); i++) {
+                applyBlock(precond, i, r, z);
+                int d = 3 * i;
+                p[d] = z[d]; p[d + 1] = z[d + 1]; p[d + 2] = z[d + 2];
+                rz += r[d] * z[d] + r[d + 1] * z[d + 1] + r[d + 2] * z[d + 2];
+            }
+            partA[c] = rz;
+            partB[c] = rr;
+            partC[c] = ff;
+        }, chunks);
+        double fNorm = Math.sqrt(sum(partC));
+        double rz = sum(partA);
+        double rNorm = Math.sqrt(sum(partB));
+        if (fNorm == 0) {
+            Arrays.fill(x, 0);
+            return new SolveStats(true, 0, 0);
+        }
+        if (rNorm <= tolerance * fNorm) return new SolveStats(true, 0, rNorm / fNorm);
+
+        int it = 0;
+        while (it < maxIterations) {
+            it++;
+            // q = K p, pq = p·q
+            multiply(p, q, mask, shift, partA);
+            double pq = sum(partA);
+            if (!(pq > 0)) break; // nem pozitív definit irány (mechanizmus)
+            double alpha = rz / pq;
+
+            forChunks(c -> {
+                double rzc = 0, rrc = 0;
+                for (int d = 3 * chunkStart(c); d < 3 * chunkStart(c + 1); d++) {
+                    x[d] += alpha * p[d];
+                    r[d] -= alpha * q[d];
+                    rrc += r[d] * r[d];
+                }
+                for (int i = chunkStart(c); i < chunkStart(c + 1); i++) {
+                    applyBlock(precond, i, r, z);
+                    int d = 3 * i;
+                    rzc += r[d] * z[d] + r[d + 1] * z[d + 1] + r[d + 2] * z[d + 2];
+                }
+                partA[c] = rzc;
+                partB[c] = rrc;
+            }, chunks);
+            double rzNew = sum(partA);
+            rNorm = Math.sqrt(sum(partB));
+            if (rNorm <= tolerance * fNorm) return new SolveStats(true, it, rNorm / fNorm);
+
+            double beta = rzNew / rz;
+            rz = rzNew;
+            forChunks(c -> {
+                for (int d = 3 * chunkStart(c); d < 3 * chunkStart(c + 1); d++) p[d] = z[d] + beta * p[d];
+            }, chunks);
+        }
+        return new SolveStats(false, it, rNorm / fNorm);
+    }
+
+    // Csomópontonként a (K + shift*I) diagonális 3x3 blokkjának inverze (9 érték / csomópont).
+    // A rögzített irányok sora/oszlopa egységre cserélődik; szinguláris blokknál skalár Jacobi.
+    private double[] blockInverses(double[] mask, double shift) {
+        int n = nodeIds.length;
+        double[] inv = new double[9 * n];
+        for (int i = 0; i < n; i++) {
+            int o = 9 * diagSlot[i], d = 3 * i;
+            double[] b = new double[9];
+            for (int r = 0; r < 3; r++) {
+                for (int c = 0; c < 3; c++) {
+                    boolean active = mask[d + r] != 0 && mask[d + c] != 0;
+                    b[3 * r + c] = active ? values[o + 3 * r + c] + (r == c ? shift : 0) : (r == c ? 1 : 0);
+                }
+            }
+            double c00 = b[4] * b[8] - b[5] * b[7], c01 = b[5] * b[6] - b[3] * b[8], c02 = b[3] * b[7] - b[4] * b[6];
+            double det = b[0] * c00 + b[1] * c01 + b[2] * c02;
+            double scaleRef = Math.abs(b[0] * b[4] * b[8]);
+            int io = 9 * i;
+            if (Math.abs(det) > 1e-12 * scaleRef && det != 0) {
+                double id = 1.0 / det;
+                inv[io] = c00 * id;
+                inv[io + 1] = (b[2] * b[7] - b[1] * b[8]) * id;
+                inv[io + 2] = (b[1] * b[5] - b[2] * b[4]) * id;
+                inv[io + 3] = c01 * id;
+                inv[io + 4] = (b[0] * b[8] - b[2] * b[6]) * id;
+                inv[io + 5] = (b[2] * b[3] - b[0] * b[5]) * id;
+                inv[io + 6] = c02 * id;
+                inv[io + 7] = (b[1] * b[6] - b[0] * b[7]) * id;
+                inv[io + 8] = (b[0] * b[4] - b[1] * b[3]) * id;
+            } else {
+                for (int k = 0; k < 3; k++) inv[io + 4 * k] = b[4 * k] > 0 ? 1.0 / b[4 * k] : 0;
+            }
+            for (int r = 0; r < 3; r++) {
+                for (int c = 0; c < 3; c++) inv[io + 3 * r + c] *= mask[d + r] * mask[d + c];
+            }
+        }
+        return inv;
+    }
+
+    private static void applyBlock(double[] inv, int node, double[] r, double[] z) {
+        int o = 9 * node, d = 3 * node;
+        double rx = r[d], ry = r[d + 1], rz = r[d + 2];
+        z[d] = inv[o] * rx + inv[o + 1] * ry + inv[o + 2] * rz;
+        z[d + 1] = inv[o + 3] * rx + inv[o + 4] * ry + inv[o + 5] * rz;
+        z[d + 2] = inv[o + 6] * rx + inv[o + 7] * ry + inv[o + 8] * rz;
+    }
+
+    // out = (K + shift*I) v a szabad szabadságfokokon; dots != null esetén darabonként v·out
+    private void multiply(double[] v, double[] out, double[] mask, double shift, double[] dots) {
+        forChunks(c -> {
+            double dot = 0;
+            for (int i = chunkStart(c); i < chunkStart(c + 1); i++) {
+                double sx = 0, sy = 0, sz = 0;
+                for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                    int j = 3 * cols[k], o = 9 * k;
+                    double vx = v[j], vy = v[j + 1], vz = v[j + 2];
+                    sx += values[o] * vx + values[o + 1] * vy + values[o + 2] * vz;
+                    sy += values[o + 3] * vx + values[o + 4] * vy + values[o + 5] * vz;
+                    sz += values[o + 6] * vx + values[o + 7] * vy + values[o + 8] * vz;
+                }
+                int d = 3 * i;
+                out[d] = (sx + shift * v[d]) * mask[d];
+                out[d + 1] = (sy + shift * v[d + 1]) * mask[d + 1];
+                out[d + 2] = (sz + shift * v[d + 2]) * mask[d + 2];
+                if (dots != null) dot += v[d] * out[d] + v[d + 1] * out[d + 1] + v[d + 2] * out[d + 2];
+            }
+            if (dots != null) dots[c] = dot;
+        }, chunks);
+    }
+
+    private int chunkStart(int c) {
+        return (int) ((long) nodeIds.length * c / chunks);
+    }
+
+    private void forChunks(IntConsumer body, int count) {
+        if (count == 1) body.accept(0);
+        else IntStream.range(0, count).parallel().forEach(body);
+    }
+
+    private static double sum(double[] parts) {
+        double s = 0;
+        for (double v : parts) s += v;
+        return s;
+    }
+}
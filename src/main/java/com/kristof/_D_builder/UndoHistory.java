@@ -0,0 +1,114 @@
+package com.kristof._D_builder;
+
+import java.util.*;
+
+// Felhasználónkénti undo / redo. Egy lépés a szerkesztés előtti és utáni világ pillanatkép párja
+// (megosztott tárolókkal, így olcsó); visszavonáskor csak a lépés által változtatott entitások állnak vissza
+// (WorldDiff), és csak ott, ahol azóta más nem írta felül őket. Így az egyik felhasználó Undo-ja nem
+// vonja vissza a többiek munkáját.
+// A lépések egy közös listában vannak (legújabb a végén), felhasználónként és összesen is korlátozva;
+// a null felhasználó (név nélküli kliens, REST) egy közös "névtelen" előzmény.
+// Csak a WorldStateService batchLock-ja alatt használjuk.
+final class UndoHistory {
+
+    static final class Entry {
+        final String user;
+        final WorldState before;
+        WorldState after;
+
+        Entry(String user, WorldState before, WorldState after) {
+            this.user = user;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private final int perUser;
+    private final int total;
+    private final Deque<Entry> undo = new ArrayDeque<>();
+    private final Map<String, Deque<Entry>> redo = new HashMap<>();
+    private Entry open;
+
+    UndoHistory(int perUser, int total) {
+        this.perUser = perUser;
+        this.total = total;
+    }
+
+    // Új lépés a felhasználónak (az előző nyitott lépés ezzel lezárul); a felhasználó redo-ja törlődik
+    void begin(String user, WorldState live) {
+        close(live);
+        open = new Entry(user, live, null);
+        undo.addLast(open);
+        redo.remove(key(user));
+        trim(user);
+    }
+
+    boolean isOpen() {
+        return open != null;
+    }
+
+    void close(WorldState live) {
+        if (open == null) return;
+        open.after = live;
+        open = null;
+    }
+
+    // Visszagörgetett köteg: a köteg elején nyitott lépés eldobása
+    void dropOpen() {
+        if (open == null) return;
+        undo.removeLastOccurrence(open);
+        open = null;
+    }
+
+    // A felhasználó legutóbbi (lezárt) lépése, levéve a listáról
+    Entry popUndo(String user) {
+        Iterator<Entry> it = undo.descendingIterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (e != open && Objects.equals(e.user, user)) {
+                it.remove();
+                return e;
+            }
+        }
+        return null;
+    }
+
+    // Redo után a lépés (új pillanatképekkel) visszakerül; a redo lista ettől nem törlődik
+    void pushUndo(Entry e) {
+        undo.addLast(e);
+        trim(e.user);
+    }
+
+    void pushRedo(Entry e) {
+        Deque<Entry> stack = redo.computeIfAbsent(key(e.user), k -> new ArrayDeque<>());
+        stack.push(e);
+        while (stack.size() > perUser) stack.removeLast();
+    }
+
+    Entry popRedo(String user) {
+        Deque<Entry> stack = redo.get(key(user));
+        return stack == null ? null : stack.poll();
+    }
+
+    int depth() {
+        return undo.size();
+    }
+
+    private void trim(String user) {
+        int count = 0;
+        for (Entry e : undo) if (Objects.equals(e.user, user)) count++;
+        Iterator<Entry> it = undo.iterator();
+        while (count > perUser && it.hasNext()) {
+            Entry e = it.next();
+            if (e != open && Objects.equals(e.user, user)) { it.remove(); count--; }
+        }
+        it = undo.iterator();
+        while (undo.size() > total && it.hasNext()) {
+            if (it.next() != open) it.remove();
+        }
+    }
+
+    private static String key(String user) {
+        return user != null ? user : "";
+    }
+}
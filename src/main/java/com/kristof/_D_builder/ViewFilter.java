@@ -0,0 +1,21 @@
+package com.kristof._D_builder;
+
+// Egy kliens nézetének szűrője. Minden mező opcionális (null = nincs szűrés).
+// bbox: [minX, minY, minZ, maxX, maxY, maxZ]
+// lod:  0 = minden, 1 = csak szerkezet (lapok és klipek nélkül), 2 = csak pontok
+public record ViewFilter(double[] bbox, String collection, Integer lod) {
+
+    public int lodTier() {
+        return lod == null ? 0 : Math.max(0, Math.min(2, lod));
+    }
+
+    public boolean hasBox() {
+        return bbox != null && bbox.length == 6;
+    }
+
+    public boolean inBox(Point3D p) {
+        if (!hasBox()) return true;
+        return p.x() >= bbox[0] && p.y() >= bbox[1] && p.z() >= bbox[2]
+                && p.x() <= bbox[3] && p.y() <= bbox[4] && p.z() <= bbox[5];
+    }
+}
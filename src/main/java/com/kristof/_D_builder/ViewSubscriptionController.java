@@ -0,0 +1,45 @@
+package com.kristof._D_builder;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+@Controller
+public class ViewSubscriptionController {
+
+    private final ViewSubscriptionService viewSubscriptionService;
+    private final WorldStateService worldStateService;
+
+    public ViewSubscriptionController(ViewSubscriptionService viewSubscriptionService, WorldStateService worldStateService) {
+        this.viewSubscriptionService = viewSubscriptionService;
+        this.worldStateService = worldStateService;
+    }
+
+    // Szűrő beállítása / módosítása: /app/view/{viewId}  body: {"bbox":[...], "collection":"fal", "lod":1}
+    // Válaszként azonnal megy egy szűrt állapot (a küldő /user/queue/world-view/{viewId} sorára), hogy ne
+    // kelljen a következő broadcastra várni.
+    @MessageMapping("/view/{viewId}")
+    public void subscribe(@DestinationVariable String viewId, @Payload ViewFilter filter,
+                          SimpMessageHeaderAccessor headers) {
+        String sessionId = headers.getSessionId();
+        if (sessionId == null) return;
+        viewSubscriptionService.register(sessionId, viewId, filter);
+        WorldStateService.VersionedState published = worldStateService.getPublishedState();
+        viewSubscriptionService.send(sessionId, viewId, ViewSubscriptionService.filter(published.state(), filter), published.version());
+    }
+
+    // Leiratkozás: /app/view/{viewId}/close (csak a saját session nézete)
+    @MessageMapping("/view/{viewId}/close")
+    public void unsubscribe(@DestinationVariable String viewId, SimpMessageHeaderAccessor headers) {
+        viewSubscriptionService.unregister(headers.getSessionId(), viewId);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        viewSubscriptionService.unregisterSession(event.getSessionId());
+    }
+}
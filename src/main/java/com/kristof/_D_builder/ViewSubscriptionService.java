@@ -0,0 +1,208 @@
+package com.kristof._D_builder;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Szűrt (nézet alapú) feliratkozások.
+// A kliens a /user/queue/world-view/{viewId} sorra iratkozik fel, és a /app/view/{viewId} címre küldi a szűrőt.
+// A nézet a küldő sessionjéhez tartozik (session + viewId a kulcs): más session ugyanazzal a viewId-vel a
+// sajátját kapja, és nem írhatja felül / zárhatja be a másikét. A /topic/world-updates továbbra is a teljes
+// világot kapja.
+// A szűrés nem a broadcastoló szálon fut: egy külön szál mindig csak a legutolsó verziót küldi ki (a közbenső
+// verziók kimaradnak), és az azonos szűrőjű nézetek egyszer kiszámolt állapotot kapnak.
+@Service
+public class ViewSubscriptionService {
+
+    public static final String VIEW_QUEUE_PREFIX = "/queue/world-view/";
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    private final Map<ViewKey, ViewFilter> views = new ConcurrentHashMap<>();
+
+    private record ViewKey(String sessionId, String viewId) {}
+
+    // A szűrő értékszerű kulcsa (a ViewFilter tömb mezője miatt a record equals nem használható)
+    private record FilterKey(List<Double> bbox, String collection, int lod) {
+        static FilterKey of(ViewFilter f) {
+            if (f == null) return new FilterKey(null, null, 0);
+            List<Double> box = null;
+            if (f.hasBox()) {
+                box = new ArrayList<>(6);
+                for (double d : f.bbox()) box.add(d);
+            }
+            String collection = f.collection() != null && !f.collection().isBlank() ? f.collection() : null;
+            return new FilterKey(box, collection, f.lodTier());
+        }
+    }
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "view-publisher");
+        t.setDaemon(true);
+        return t;
+    });
+    // A még ki nem küldött legújabb állapot; a régebbit felülírja
+    private final AtomicReference<WorldStateService.VersionedState> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    // Csak a worker szál írja
+    private long lastSentVersion = -1;
+
+    public ViewSubscriptionService(SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    public void register(String sessionId, String viewId, ViewFilter filter) {
+        if (sessionId == null) return;
+        views.put(new ViewKey(sessionId, viewId), filter);
+    }
+
+    // Csak a saját nézet zárható be
+    public boolean unregister(String sessionId, String viewId) {
+        if (sessionId == null) return false;
+        return views.remove(new ViewKey(sessionId, viewId)) != null;
+    }
+
+    // Bontáskor a session összes nézete megszűnik
+    public void unregisterSession(String sessionId) {
+        if (sessionId == null) return;
+        views.keySet().removeIf(k -> sessionId.equals(k.sessionId()));
+    }
+
+    public int activeViewCount() {
+        return views.size();
+    }
+
+    // A WorldStateService hívja minden broadcastnál, ugyanazzal az állapottal, amit a teljes topic is kap.
+    // Csak sorba teszi: a szűrés és a küldés a worker szálon történik.
+    public void publish(WorldState state, long version) {
+        if (views.isEmpty()) return;
+        WorldStateService.VersionedState next = new WorldStateService.VersionedState(version, state);
+        pending.accumulateAndGet(next, (old, now) -> old == null || now.version() > old.version() ? now : old);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) return;
+        try {
+            worker.execute(this::drain);
+        } catch (Exception e) {
+            scheduled.set(false); // leállítás közben
+        }
+    }
+
+    private void drain() {
+        try {
+            WorldStateService.VersionedState next;
+            while ((next = pending.getAndSet(null)) != null) {
+                try {
+                    publishNow(next);
+                } catch (Exception e) {
+                    System.err.println("View broadcast hiba: " + e.getMessage());
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        // A zárás és az utolsó getAndSet között érkezett állapot se maradjon ki
+        if (pending.get() != null) schedule();
+    }
+
+    // Egy verzió kiküldése az összes nézetnek; az azonos szűrők eredménye közös
+    void publishNow(WorldStateService.VersionedState published) {
+        if (published.version() <= lastSentVersion) return;
+        lastSentVersion = published.version();
+        Map<FilterKey, WorldState> results = new HashMap<>();
+        for (Map.Entry<ViewKey, ViewFilter> e : views.entrySet()) {
+            ViewFilter f = e.getValue();
+            WorldState state = results.computeIfAbsent(FilterKey.of(f), k -> filter(published.state(), f));
+            send(e.getKey().sessionId(), e.getKey().viewId(), state, published.version());
+        }
+    }
+
+    // Egy nézet állapota a session saját sorára (a session id a "user", a kapcsolat felhasználójától függetlenül)
+    public void send(String sessionId, String viewId, WorldState state, long version) {
+        try {
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setSessionId(sessionId);
+            headers.setHeader(WorldStateService.VERSION_HEADER, version);
+            headers.setLeaveMutable(true);
+            messagingTemplate.convertAndSendToUser(sessionId, VIEW_QUEUE_PREFIX + viewId, state, headers.getMessageHeaders());
+        } catch (Exception ex) {
+            System.err.println("View broadcast hiba (" + viewId + "): " + ex.getMessage());
+        }
+    }
+
+    public static WorldState filter(WorldState state, ViewFilter filter) {
+        if (filter == null) return state;
+        int lod = filter.lodTier();
+
+        // 1. Pontok: gyűjtemény + bounding box
+        IdSet collectionIds = null;
+        if (filter.collection() != null && !filter.collection().isBlank()) {
+            List<Integer> ids = state.collections() != null ? state.collections().get(filter.collection()) : null;
+            collectionIds = IdSet.of(ids);
+        }
+
+        List<Point3D> points = new ArrayList<>();
+        IdSet visible = new IdSet();
+        for (Point3D p : state.points()) {
+            if (collectionIds != null && !collectionIds.contains(p.id())) continue;
+            if (!filter.inBox(p)) continue;
+            points.add(p);
+            visible.add(p.id());
+        }
+
+        // 2. Vonalak: mindkét végpontnak látszania kell
+        List<Connection> connections = new ArrayList<>();
+        if (lod < 2) {
+            for (Connection c : state.connections()) {
+                if (visible.contains(c.fromId()) && visible.contains(c.toId())) connections.add(c);
+            }
+        }
+
+        // 3. Lapok és klipek csak teljes részletességnél
+        List<Face> faces = new ArrayList<>();
+        List<WorldStateService.TimelineClip> clips = new ArrayList<>();
+        if (lod == 0) {
+            for (Face f : state.faces()) {
+                if (allVisible(visible, f.pointIds())) faces.add(f);
+            }
+            for (WorldStateService.TimelineClip c : state.clips()) {
+                if (visible.contains(c.targetId)) clips.add(c);
+            }
+        }
+
+        // 4. Gyűjtemények a látható pontokra szűkítve
+        Map<String, List<Integer>> collections = new HashMap<>();
+        if (state.collections() != null) {
+            state.collections().forEach((name, ids) -> {
+                List<Integer> kept = new ArrayList<>();
+                for (Integer id : ids) if (id != null && visible.contains(id)) kept.add(id);
+                if (!kept.isEmpty()) collections.put(name, kept);
+            });
+        }
+
+        return new WorldState(points, connections, faces, collections, state.currentTime(), state.isPlaying(), clips);
+    }
+
+    private static boolean allVisible(IdSet visible, List<Integer> ids) {
+        for (Integer id : ids) {
+            if (id == null || !visible.contains(id)) return false;
+        }
+        return true;
+    }
+}
@@ -1,20 +1,52 @@
 package com.kristof._D_builder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker // Ez kapcsolja be a "varázslatot"
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final OutboundSessionRegistry outboundSessionRegistry;
+    private final ObjectMapper objectMapper;
+
+    public WebSocketConfig(OutboundSessionRegistry outboundSessionRegistry, ObjectMapper objectMapper) {
+        this.outboundSessionRegistry = outboundSessionRegistry;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // A JSON szerializálás mérhető legyen (JFR); a Boot saját JSON konvertere elé kerül
+        messageConverters.add(0, new TracingJsonMessageConverter(objectMapper));
+        return true;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Ide küldi a szerver az adatokat (mint egy rádióadó)
         // A frontend erre a csatornára ("topic") fog feliratkozni.
-        config.enableSimpleBroker("/topic");
+        // A /queue a kliensenkénti válaszoknak kell (/user/queue/command-replies)
+        config.enableSimpleBroker("/topic", "/queue");
+        config.setUserDestinationPrefix("/user");
 
         // Ide küldi a frontend a parancsokat (mint egy betelefonálós műsor)
         config.setApplicationDestinationPrefixes("/app");
@@ -24,8 +56,52 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // Ez a "Bejárat" (Endpoint). Ide csatlakozik a React.
         // A setAllowedOriginPatterns("*") nagyon fontos, hogy engedje a csatlakozást máshonnan is!
+        // A bejövő üzenetek sessionönként sorrendben érnek a controllerhez (a pipeline erre épít)
+        registry.setPreserveReceiveOrder(true);
         registry.addEndpoint("/3d-ws")
                 .setAllowedOriginPatterns("*")
+                .setHandshakeHandler(new EditorHandshakeHandler())
                 .withSockJS(); // Ez segít, ha a böngésző nem támogatná a sima WebSocketet
     }
-}
\ No newline at end of file
+
+    // A szerkesztő azonosítója (saját Undo / Redo, verzió bélyeg) a kérésből, nem a kliens üzenetéből:
+    // bejelentkezett felhasználó neve, különben a böngésző HTTP session-je (újracsatlakozás után is ugyanaz)
+    static String editorName(HttpServletRequest request) {
+        Principal user = request.getUserPrincipal();
+        if (user != null) return user.getName();
+        return "session-" + request.getSession(true).getId();
+    }
+
+    // A STOMP kapcsolat felhasználója a kézfogáskor dől el (a parancsok ezen a néven futnak)
+    private static final class EditorHandshakeHandler extends DefaultHandshakeHandler {
+        @Override
+        protected Principal determineUser(ServerHttpRequest request, WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            if (request instanceof ServletServerHttpRequest servlet) {
+                String name = editorName(servlet.getServletRequest());
+                return () -> name;
+            }
+            return super.determineUser(request, wsHandler, attributes);
+        }
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Minden kliens saját kimenő sort kap (BackpressureSessionDecorator): a lassú kliens
+        // elavult világ frame-jei összevonódnak, és csak őt bontjuk, ha a limitet túllépi.
+        // A Spring saját puffer/idő limitjét a mi soraink mögé toljuk, hogy ne az döntsön előbb.
+        registration.setSendBufferSizeLimit((int) Math.min(Integer.MAX_VALUE, outboundSessionRegistry.bufferSizeLimit() * 2));
+        registration.setSendTimeLimit((int) Math.min(Integer.MAX_VALUE, outboundSessionRegistry.sendTimeLimitMillis() * 2));
+        registration.addDecoratorFactory(handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                super.afterConnectionEstablished(outboundSessionRegistry.decorate(session));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                outboundSessionRegistry.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        });
+    }
+}
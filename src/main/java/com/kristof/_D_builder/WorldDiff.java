@@ -0,0 +1,127 @@
+package com.kristof._D_builder;
+
+import java.util.*;
+
+// Két világ pillanatkép különbsége entitásonként (a felhasználónkénti undo / redo és a feltételes parancsok
+// "merge" módja használja). A "from" a visszaállítandó, a "to" az elvárt jelenlegi érték; null = nem létezett.
+// A pillanatképek megosztják a változatlan elemeket, ezért a változatlan rész referencia összehasonlítással
+// gyorsan kiesik; csak a tényleges eltérések kerülnek a listákba.
+final class WorldDiff {
+
+    record PointChange(int id, Point3D from, Point3D to) {}
+
+    record CollectionChange(String name, List<Integer> from, List<Integer> to) {}
+
+    record ClipChange(String id, WorldStateService.TimelineClip from, WorldStateService.TimelineClip to) {}
+
+    final List<PointChange> points;
+    final List<Connection> connectionsOnlyInFrom, connectionsOnlyInTo;
+    final List<Face> facesOnlyInFrom, facesOnlyInTo;
+    final List<CollectionChange> collections;
+    final List<ClipChange> clips;
+
+    private WorldDiff(List<PointChange> points, List<Connection> connectionsOnlyInFrom, List<Connection> connectionsOnlyInTo,
+                      List<Face> facesOnlyInFrom, List<Face> facesOnlyInTo, List<CollectionChange> collections,
+                      List<ClipChange> clips) {
+        this.points = points;
+        this.connectionsOnlyInFrom = connectionsOnlyInFrom;
+        this.connectionsOnlyInTo = connectionsOnlyInTo;
+        this.facesOnlyInFrom = facesOnlyInFrom;
+        this.facesOnlyInTo = facesOnlyInTo;
+        this.collections = collections;
+        this.clips = clips;
+    }
+
+    static WorldDiff between(WorldState from, WorldState to) {
+        List<Connection> cFrom = new ArrayList<>(), cTo = new ArrayList<>();
+        symmetric(from.connections(), to.connections(), cFrom, cTo);
+        List<Face> fFrom = new ArrayList<>(), fTo = new ArrayList<>();
+        symmetric(from.faces(), to.faces(), fFrom, fTo);
+        return new WorldDiff(points(from.points(), to.points()), cFrom, cTo, fFrom, fTo,
+                collections(from.collections(), to.collections()), clips(from.clips(), to.clips()));
+    }
+
+    boolean isEmpty() {
+        return points.isEmpty() && connectionsOnlyInFrom.isEmpty() && connectionsOnlyInTo.isEmpty()
+                && facesOnlyInFrom.isEmpty() && facesOnlyInTo.isEmpty() && collections.isEmpty() && clips.isEmpty();
+    }
+
+    // ==========================
+    // PONTOK
+    // ==========================
+
+    // A pontlista ID szerint növekvő (a nextId-ből sorban jönnek): összefésülés egy menetben; ha mégsem
+    // rendezett (pl. régi projekt), ID szerinti táblával
+    private static List<PointChange> points(List<Point3D> from, List<Point3D> to) {
+        List<PointChange> changes = new ArrayList<>();
+        int i = 0, j = 0, lastFrom = Integer.MIN_VALUE, lastTo = Integer.MIN_VALUE;
+        while (i < from.size() || j < to.size()) {
+            Point3D a = i < from.size() ? from.get(i) : null, b = j < to.size() ? to.get(j) : null;
+            if (a != null && b != null && (a == b || a.equals(b))) { lastFrom = a.id(); lastTo = b.id(); i++; j++; continue; }
+            if ((a != null && a.id() < lastFrom) || (b != null && b.id() < lastTo)) return pointsById(from, to);
+            if (b == null || (a != null && a.id() < b.id())) { changes.add(new PointChange(a.id(), a, null)); lastFrom = a.id(); i++; }
+            else if (a == null || b.id() < a.id()) { changes.add(new PointChange(b.id(), null, b)); lastTo = b.id(); j++; }
+            else { changes.add(new PointChange(a.id(), a, b)); lastFrom = a.id(); lastTo = b.id(); i++; j++; }
+        }
+        return changes;
+    }
+
+    private static List<PointChange> pointsById(List<Point3D> from, List<Point3D> to) {
+        Map<Integer, Point3D> byId = new HashMap<>(to.size() * 2);
+        for (Point3D p : to) byId.put(p.id(), p);
+        List<PointChange> changes = new ArrayList<>();
+        for (Point3D a : from) {
+            Point3D b = byId.remove(a.id());
+            if (b == null || !a.equals(b)) changes.add(new PointChange(a.id(), a, b));
+        }
+        for (Point3D b : byId.values()) changes.add(new PointChange(b.id(), null, b));
+        return changes;
+    }
+
+    // ==========================
+    // RUDAK / LAPOK
+    // ==========================
+
+    // A közös eleje és vége referencia szerint kiesik, csak a középső részt hasonlítjuk halmazként
+    private static <T> void symmetric(List<T> from, List<T> to, List<T> onlyInFrom, List<T> onlyInTo) {
+        int start = 0, endFrom = from.size(), endTo = to.size();
+        while (start < endFrom && start < endTo && from.get(start) == to.get(start)) start++;
+        while (endFrom > start && endTo > start && from.get(endFrom - 1) == to.get(endTo - 1)) { endFrom--; endTo--; }
+        List<T> midFrom = from.subList(start, endFrom), midTo = to.subList(start, endTo);
+        if (midFrom.isEmpty()) { onlyInTo.addAll(midTo); return; }
+        if (midTo.isEmpty()) { onlyInFrom.addAll(midFrom); return; }
+        Set<T> setFrom = new HashSet<>(midFrom), setTo = new HashSet<>(midTo);
+        for (T x : midFrom) if (!setTo.contains(x)) onlyInFrom.add(x);
+        for (T x : midTo) if (!setFrom.contains(x)) onlyInTo.add(x);
+    }
+
+    // ==========================
+    // GYŰJTEMÉNYEK / KLIPEK
+    // ==========================
+
+    private static List<CollectionChange> collections(Map<String, List<Integer>> from, Map<String, List<Integer>> to) {
+        if (from == to) return List.of();
+        List<CollectionChange> changes = new ArrayList<>();
+        Set<String> names = new TreeSet<>(from.keySet());
+        names.addAll(to.keySet());
+        for (String name : names) {
+            List<Integer> a = from.get(name), b = to.get(name);
+            if (a == b || (a != null && a.equals(b))) continue; // IdSet.toList: beszúrási sorrend
+            changes.add(new CollectionChange(name, a, b));
+        }
+        return changes;
+    }
+
+    // A klipek copy-on-write módon változnak (EditClip új példányt tesz be), így a referencia elég
+    private static List<ClipChange> clips(List<WorldStateService.TimelineClip> from, List<WorldStateService.TimelineClip> to) {
+        Map<String, WorldStateService.TimelineClip> byId = new LinkedHashMap<>();
+        for (WorldStateService.TimelineClip c : to) byId.put(c.id, c);
+        List<ClipChange> changes = new ArrayList<>();
+        for (WorldStateService.TimelineClip a : from) {
+            WorldStateService.TimelineClip b = byId.remove(a.id);
+            if (a != b) changes.add(new ClipChange(a.id, a, b));
+        }
+        for (WorldStateService.TimelineClip b : byId.values()) changes.add(new ClipChange(b.id, null, b));
+        return changes;
+    }
+}
@@ -0,0 +1,338 @@
+package com.kristof._D_builder;
+
+import java.util.*;
+
+// Másodlagos indexek egy lezárt (változtathatatlan) világ pillanatképhez, a WorldQueryService-nek.
+// Egy példány egy verzióhoz tartozik; a részindexek az első olyan lekérdezéskor épülnek fel, amelyiknek
+// kellenek, utána az adott verzió összes lekérdezése közösen használja őket. Új verziónál az előző index
+// részei átkerülnek, ha a változás nem érinthette őket (next): lejátszás közben csak a pozíciók mozognak,
+// így csak a hossz index épül újra. A találatok pozíciók a pillanatkép listáiban, növekvő sorrendben.
+final class WorldIndex {
+
+    final long version;
+    final WorldState state;
+
+    private int[] pointPositionById;             // pont ID -> pozíció (-1: nincs ilyen)
+    private Map<String, int[]> pointsByColor;
+    private Map<String, int[]> connectionsByMaterial;
+    private long[] connectionsByLength;          // (float hossz bitjei << 32) | pozíció, rendezve
+    private int[] facesByPointStart, facesByPointEnd, facesByPoint; // pont pozíció -> lap pozíciók (CSR)
+    private ClipIntervals clipIntervals;
+
+    WorldIndex(long version, WorldState state) {
+        this.version = version;
+        this.state = state;
+    }
+
+    // Az újabb pillanatkép indexe ebből: a változatlan alapú részindexek megosztva átkerülnek, a többi
+    // (mint egy friss indexnél) az első kérésre épül. Egy menet az elemeken, foglalás nélkül.
+    WorldIndex next(long version, WorldState next) {
+        WorldIndex idx = new WorldIndex(version, next);
+        synchronized (this) {
+            boolean samePoints = true, sameIds = true, sameColors = true;
+            if (pointPositionById != null || pointsByColor != null || facesByPoint != null || connectionsByLength != null) {
+                List<Point3D> a = state.points(), b = next.points();
+                if (a.size() != b.size()) { samePoints = sameIds = sameColors = false; }
+                for (int i = 0; sameIds && i < a.size(); i++) {
+                    Point3D p = a.get(i), q = b.get(i);
+                    if (p == q) continue;
+                    if (p.id() != q.id()) sameIds = false;
+                    if (p.colorIndex() != q.colorIndex()) sameColors = false;
+                    if (samePoints && !p.equals(q)) samePoints = false;
+                }
+                sameColors &= sameIds;
+            }
+            boolean sameConnections = (connectionsByMaterial != null || connectionsByLength != null)
+                    && sameElements(state.connections(), next.connections());
+            if (sameIds) idx.pointPositionById = pointPositionById;
+            if (sameColors) idx.pointsByColor = pointsByColor;
+            if (sameConnections) idx.connectionsByMaterial = connectionsByMaterial;
+            if (sameConnections && samePoints) idx.connectionsByLength = connectionsByLength;
+            if (sameIds && facesByPoint != null && sameElements(state.faces(), next.faces())) {
+                idx.facesByPointStart = facesByPointStart;
+                idx.facesByPointEnd = facesByPointEnd;
+                idx.facesByPoint = facesByPoint;
+            }
+            // A klipek copy-on-write módon változnak: a referencia egyezés elég
+            if (clipIntervals != null && sameElements(state.clips(), next.clips())) idx.clipIntervals = clipIntervals;
+        }
+        return idx;
+    }
+
+    private static <T> boolean sameElements(List<T> a, List<T> b) {
+        if (a == b) return true;
+        if (a == null || b == null || a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            T x = a.get(i), y = b.get(i);
+            if (x != y && !x.equals(y)) return false;
+        }
+        return true;
+    }
+
+    // ==========================
+    // PONTOK
+    // ==========================
+
+    synchronized int pointPosition(int id) {
+        if (pointPositionById == null) {
+            List<Point3D> points = state.points();
+            int maxId = -1;
+            for (Point3D p : points) maxId = Math.max(maxId, p.id());
+            int[] table = new int[maxId + 1];
+            Arrays.fill(table, -1);
+            for (int i = 0; i < points.size(); i++) table[points.get(i).id()] = i;
+            pointPositionById = table;
+        }
+        return id >= 0 && id < pointPositionById.length ? pointPositionById[id] : -1;
+    }
+
+    synchronized int[] pointsWithColor(String color) {
+        if (pointsByColor == null) {
+            List<Point3D> points = state.points();
+            Map<Integer, IntList> byIndex = new HashMap<>();
+            for (int i = 0; i < points.size(); i++) byIndex.computeIfAbsent(points.get(i).colorIndex(), k -> new IntList()).add(i);
+            pointsByColor = resolve(byIndex, Palette.COLORS);
+        }
+        return pointsByColor.getOrDefault(Palette.normalizeColor(color), EMPTY);
+    }
+
+    int[] pointsInCollection(String name) {
+        List<Integer> ids = state.collections() != null ? state.collections().get(name) : null;
+        if (ids == null) return EMPTY;
+        IntList positions = new IntList();
+        for (Integer id : ids) {
+            int pos = pointPosition(id);
+            if (pos >= 0) positions.add(pos);
+        }
+        int[] result = positions.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    // ==========================
+    // RUDAK
+    // ==========================
+
+    synchronized int[] connectionsWithMaterial(String material) {
+        if (connectionsByMaterial == null) {
+            List<Connection> connections = state.connections();
+            Map<Integer, IntList> byIndex = new HashMap<>();
+            for (int i = 0; i < connections.size(); i++) byIndex.computeIfAbsent(connections.get(i).materialIndex(), k -> new IntList()).add(i);
+            // Azonos nevű, de eltérő árú anyagok egy kulcs alá kerülnek
+            Map<String, int[]> byName = new HashMap<>();
+            byIndex.forEach((index, list) -> {
+                Palette.Material m = Palette.MATERIALS.get(index);
+                byName.merge(m != null ? m.name() : null, list.toArray(), WorldIndex::union);
+            });
+            connectionsByMaterial = byName;
+        }
+        return connectionsByMaterial.getOrDefault(material, EMPTY);
+    }
+
+    // A kulcs a hossz float alakja; a kerekítés monoton, így csak a határ float értékű elemeket kell pontosan
+    // (double hosszal) ellenőrizni, a közöttük lévők biztosan a tartományba esnek
+    int[] connectionsWithLength(Double min, Double max) {
+        if (max != null && (max < 0 || (min != null && min > max))) return EMPTY;
+        long[] sorted = lengthIndex();
+        int minBits = min != null && min > 0 ? Float.floatToIntBits(min.floatValue()) : 0;
+        int maxBits = max != null ? Float.floatToIntBits(max.floatValue()) : Integer.MAX_VALUE;
+        int from = lowerBound(sorted, (long) minBits << 32);
+        int to = maxBits == Integer.MAX_VALUE ? sorted.length : lowerBound(sorted, ((long) maxBits + 1) << 32);
+        int[] result = new int[to - from];
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            int bits = (int) (sorted[i] >>> 32), pos = (int) sorted[i];
+            if (bits == minBits || bits == maxBits) {
+                double length = connectionLength(state.connections().get(pos));
+                if ((min != null && length < min) || (max != null && length > max)) continue;
+            }
+            result[n++] = pos;
+        }
+        result = Arrays.copyOf(result, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private synchronized long[] lengthIndex() {
+        if (connectionsByLength == null) {
+            List<Connection> connections = state.connections();
+            long[] keys = new long[connections.size()];
+            int n = 0;
+            for (int i = 0; i < connections.size(); i++) {
+                double length = connectionLength(connections.get(i));
+                if (Double.isNaN(length)) continue; // hiányzó végpont
+                keys[n++] = ((long) Float.floatToIntBits((float) length) << 32) | i;
+            }
+            keys = Arrays.copyOf(keys, n);
+            Arrays.sort(keys);
+            connectionsByLength = keys;
+        }
+        return connectionsByLength;
+    }
+
+    double connectionLength(Connection c) {
+        int a = pointPosition(c.fromId()), b = pointPosition(c.toId());
+        if (a < 0 || b < 0) return Double.NaN;
+        Point3D p = state.points().get(a), q = state.points().get(b);
+        double dx = q.x() - p.x(), dy = q.y() - p.y(), dz = q.z() - p.z();
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    // ==========================
+    // LAPOK
+    // ==========================
+
+    synchronized int[] facesWithPoint(int pointId) {
+        int pos = pointPosition(pointId);
+        if (pos < 0) return EMPTY;
+        if (facesByPoint == null) {
+            List<Face> faces = state.faces();
+            int[] start = new int[state.points().size() + 1];
+            for (Face f : faces) {
+                for (Integer id : f.pointIds()) {
+                    int p = pointPosition(id);
+                    if (p >= 0) start[p + 1]++;
+                }
+            }
+            for (int i = 0; i < start.length - 1; i++) start[i + 1] += start[i];
+            int[] fill = Arrays.copyOf(start, start.length - 1);
+            int[] entries = new int[start[start.length - 1]];
+            for (int i = 0; i < faces.size(); i++) {
+                for (Integer id : faces.get(i).pointIds()) {
+                    int p = pointPosition(id);
+                    // Egy lapon többször szereplő pont csak egyszer
+                    if (p >= 0 && (fill[p] == start[p] || entries[fill[p] - 1] != i)) entries[fill[p]++] = i;
+                }
+            }
+            // A kihagyott duplikátumok miatt a sorok vége a fill-ben van
+            facesByPointStart = start;
+            facesByPoint = entries;
+            facesByPointEnd = fill;
+        }
+        return Arrays.copyOfRange(facesByPoint, facesByPointStart[pos], facesByPointEnd[pos]);
+    }
+
+    // ==========================
+    // KLIPEK
+    // ==========================
+
+    // [startTime, endTime] tartalmazza az időpontot; intervallum fával O(log n + találat)
+    int[] clipsActiveAt(double time) {
+        IntList positions = new IntList();
+        clipIntervals().stab(time, positions);
+        int[] result = positions.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    private synchronized ClipIntervals clipIntervals() {
+        if (clipIntervals == null) clipIntervals = new ClipIntervals(state.clips());
+        return clipIntervals;
+    }
+
+    // Kezdési idő szerint rendezett intervallumok implicit kiegyensúlyozott fában (a [lo, hi) tartomány gyökere
+    // a közepe); csúcsonként a részfa legkésőbbi vége, így a lekérdezés kihagyja azokat a részfákat, amelyekben
+    // minden klip véget ért, és megáll ott, ahol a kezdések már az időpont után vannak
+    private static final class ClipIntervals {
+        private final double[] start, end, maxEnd;
+        private final int[] position;
+
+        ClipIntervals(List<WorldStateService.TimelineClip> clips) {
+            int n = clips.size();
+            double[] starts = new double[n];
+            for (int i = 0; i < n; i++) starts[i] = clips.get(i).startTime;
+            Integer[] sorted = new Integer[n];
+            for (int i = 0; i < n; i++) sorted[i] = i;
+            Arrays.sort(sorted, Comparator.comparingDouble(i -> starts[i]));
+            start = new double[n];
+            end = new double[n];
+            maxEnd = new double[n];
+            position = new int[n];
+            for (int i = 0; i < n; i++) {
+                WorldStateService.TimelineClip c = clips.get(sorted[i]);
+                start[i] = c.startTime;
+                end[i] = c.endTime;
+                position[i] = sorted[i];
+            }
+            build(0, n);
+        }
+
+        private double build(int lo, int hi) {
+            if (lo >= hi) return Double.NEGATIVE_INFINITY;
+            int mid = (lo + hi) >>> 1;
+            maxEnd[mid] = Math.max(end[mid], Math.max(build(lo, mid), build(mid + 1, hi)));
+            return maxEnd[mid];
+        }
+
+        void stab(double time, IntList out) {
+            stab(0, start.length, time, out);
+        }
+
+        private void stab(int lo, int hi, double time, IntList out) {
+            if (lo >= hi) return;
+            int mid = (lo + hi) >>> 1;
+            if (maxEnd[mid] < time) return;
+            stab(lo, mid, time, out);
+            if (start[mid] > time) return;
+            if (end[mid] >= time) out.add(position[mid]);
+            stab(mid + 1, hi, time, out);
+        }
+    }
+
+    // ==========================
+    // SEGÉDEK
+    // ==========================
+
+    static final int[] EMPTY = new int[0];
+
+    // Két növekvő pozíció lista metszete
+    static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { result[n++] = a[i]; i++; j++; }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static Map<String, int[]> resolve(Map<Integer, IntList> byIndex, Palette<String> palette) {
+        Map<String, int[]> result = new HashMap<>(byIndex.size() * 2);
+        byIndex.forEach((index, list) -> result.put(palette.get(index), list.toArray()));
+        return result;
+    }
+
+    private static int lowerBound(long[] sorted, long key) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Bővülő int tömb (boxolás nélkül)
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
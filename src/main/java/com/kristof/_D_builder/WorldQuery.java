@@ -0,0 +1,38 @@
+package com.kristof._D_builder;
+
+import java.util.List;
+
+// Célzott lekérdezés a világra (REST: /api/world/query/{kind}, STOMP: /app/query). Minden szűrő opcionális,
+// a megadottak ÉS kapcsolatban vannak.
+// kind:        points | connections | faces | clips
+// points:      color, collection
+// connections: material, minLength, maxLength
+// faces:       pointId (a pontot tartalmazó lapok)
+// clips:       time (az adott időpontban aktív klipek)
+// offset / limit: lapozás; fields: a kiírt mezők (null = mind); version: csak ennél a világ verziónál
+// (lapozáskor a már olvasott lapok verziója, hogy a lapok ne csússzanak el egy közbeni változásnál; a
+// legutóbb lekérdezett néhány verzió akkor is elérhető, ha a világ azóta változott)
+public record WorldQuery(String id, String kind, String color, String collection, String material,
+                         Double minLength, Double maxLength, Integer pointId, Double time,
+                         Integer offset, Integer limit, List<String> fields, Long version) {
+
+    public enum Kind {
+        POINTS(List.of("id", "x", "y", "z", "color", "version")),
+        CONNECTIONS(List.of("index", "fromId", "toId", "color", "thickness", "material", "pricePerMeter", "length")),
+        FACES(List.of("index", "pointIds", "color")),
+        CLIPS(List.of("id", "name", "targetId", "type", "startTime", "endTime", "easing",
+                "sx", "sy", "sz", "ex", "ey", "ez", "px", "py", "pz", "bx", "by", "bz", "hasBase"));
+
+        public final List<String> fields;
+
+        Kind(List<String> fields) {
+            this.fields = fields;
+        }
+
+        public static Kind parse(String kind) {
+            if (kind == null) return null;
+            for (Kind k : values()) if (k.name().equalsIgnoreCase(kind.trim())) return k;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.kristof._D_builder;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/world/query")
+@CrossOrigin(origins = "http://localhost:5173", exposedHeaders = {"X-World-Version", "X-Total-Count", "X-Next-Offset"})
+public class WorldQueryController {
+
+    private static final int FLUSH_EVERY = 1000;
+
+    private final WorldQueryService worldQueryService;
+
+    public WorldQueryController(WorldQueryService worldQueryService) {
+        this.worldQueryService = worldQueryService;
+    }
+
+    // LEKÉRDEZÉS: GET /api/world/query/{points|connections|faces|clips}
+    //   ?color=red&collection=fal  |  ?material=Steel&minLength=1&maxLength=2  |  ?pointId=5  |  ?time=1.5
+    //   &offset=0&limit=1000&fields=id,x,y&version=42
+    // Válasz: application/x-ndjson (soronként egy elem), folyamatosan írva. A fejlécekben a világ verzió, az
+    // összes találat és a következő lap offsetje; a további lapokat a version paraméterrel érdemes kérni (a
+    // legutóbb lekérdezett néhány verzió megmarad; 409, ha a kért verzió már nem érhető el).
+    @GetMapping("/{kind}")
+    public ResponseEntity<?> query(@PathVariable String kind,
+                                   @RequestParam(required = false) String color,
+                                   @RequestParam(required = false) String collection,
+                                   @RequestParam(required = false) String material,
+                                   @RequestParam(required = false) Double minLength,
+                                   @RequestParam(required = false) Double maxLength,
+                                   @RequestParam(required = false) Integer pointId,
+                                   @RequestParam(required = false) Double time,
+                                   @RequestParam(required = false) Integer offset,
+                                   @RequestParam(required = false) Integer limit,
+                                   @RequestParam(required = false) List<String> fields,
+                                   @RequestParam(required = false) Long version) {
+        WorldQueryService.Page page;
+        try {
+            page = worldQueryService.query(new WorldQuery(null, kind, color, collection, material, minLength, maxLength,
+                    pointId, time, offset, limit, fields, version));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+
+        StreamingResponseBody body = out -> worldQueryService.write(page, out, FLUSH_EVERY);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header("X-World-Version", Long.toString(page.version()))
+                .header("X-Total-Count", Integer.toString(page.total()))
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (page.nextOffset() != null) response.header("X-Next-Offset", Integer.toString(page.nextOffset()));
+        return response.body(body);
+    }
+
+    // STOMP: /app/query  {"id": "q1", "kind": "points", "color": "red", "limit": 5000, "fields": ["id", "x"]}
+    // Az eredmény darabokban a küldő /user/queue/query-results sorára megy (ugyanazzal az id-val)
+    @MessageMapping("/query")
+    public void stream(@Payload WorldQuery query, SimpMessageHeaderAccessor headers) {
+        worldQueryService.stream(headers.getSessionId(), query);
+    }
+}
@@ -0,0 +1,293 @@
+package com.kristof._D_builder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Célzott lekérdezések a kiküldött (publikált) világ állapotra, a teljes világ letöltése nélkül.
+// A szűrők a WorldIndex másodlagos indexeiből jönnek (nem teljes bejárásból); az index verziónként egyszer
+// jön létre (az előzőből, a változatlan részeket átvéve), és az adott verzió összes lekérdezése / lapja
+// közösen használja. A legutóbb lekérdezett néhány verzió indexe megmarad, így a version paraméterrel
+// lapozó kliens lejátszás közben is a saját verzióját kapja. Több szűrőnél a találati listák
+// metszete adja az eredményt. A kimenet JSON lines (soronként egy elem), a kért mezőkre szűkítve.
+// REST-en egy folyamatos válasz, STOMP-on (/app/query) a küldő /user/queue/query-results sorára darabokban.
+@Service
+public class WorldQueryService {
+
+    public static final String RESULT_QUEUE = "/queue/query-results";
+    private static final int CHUNK_ITEMS = 500;
+
+    // Egy lap leírása: az index (verzió + pillanatkép), az összes találat, és a lap pozíciói a pillanatkép listájában
+    public record Page(WorldQuery.Kind kind, WorldIndex index, int total, int offset, int[] positions, Integer nextOffset,
+                       Set<String> fields) {
+
+        public long version() {
+            return index.version;
+        }
+    }
+
+    // STOMP válasz darab: lines = legfeljebb CHUNK_ITEMS elem JSON lines alakban; az utolsó darab last = true,
+    // és ebben van a következő lap offsetje is. Hibánál egyetlen darab megy, error kitöltve.
+    public record ResultChunk(String id, long worldVersion, int total, int offset, int count, Integer nextOffset,
+                              boolean last, String lines, String error) {}
+
+    private final WorldStateService worldStateService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final int defaultLimit;
+    private final int maxLimit;
+
+    private volatile WorldIndex index;
+    // A legutóbb lekérdezett verziók indexei (LRU): csak lekérdezett verzióhoz épül index, így lejátszás közben
+    // sem tart meg minden ticket, csak a lapozásokhoz tartozó néhány pillanatképet
+    private final Map<Long, WorldIndex> retained;
+
+    public WorldQueryService(WorldStateService worldStateService, SimpMessagingTemplate messagingTemplate, ObjectMapper objectMapper,
+                             @Value("${query.default-limit:1000}") int defaultLimit,
+                             @Value("${query.max-limit:100000}") int maxLimit,
+                             @Value("${query.retained-versions:8}") int retainedVersions) {
+        this.worldStateService = worldStateService;
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+        this.retained = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, WorldIndex> eldest) {
+                return size() > Math.max(1, retainedVersions);
+            }
+        };
+    }
+
+    // ==========================
+    // LEKÉRDEZÉS
+    // ==========================
+
+    // Hibás lekérdezésnél IllegalArgumentException, már nem megtartott verziónál IllegalStateException;
+    // a hibaüzenet a kliensnek szól
+    public Page query(WorldQuery q) {
+        WorldQuery.Kind kind = WorldQuery.Kind.parse(q.kind());
+        if (kind == null) throw new IllegalArgumentException("Unknown kind: " + q.kind() + " (points, connections, faces, clips)");
+        Set<String> fields = fields(kind, q.fields());
+        int offset = q.offset() != null ? Math.max(0, q.offset()) : 0;
+        int limit = q.limit() != null ? Math.max(0, Math.min(maxLimit, q.limit())) : defaultLimit;
+
+        WorldIndex idx = q.version() != null ? index(q.version()) : index();
+
+        int[] all = select(idx, kind, q);
+        int total = all != null ? all.length : size(idx.state, kind);
+        int from = Math.min(offset, total), to = (int) Math.min(total, (long) from + limit);
+        int[] positions = new int[to - from];
+        for (int i = 0; i < positions.length; i++) positions[i] = all != null ? all[from + i] : from + i;
+        return new Page(kind, idx, total, from, positions, to < total ? to : null, fields);
+    }
+
+    // Az index a kiküldött állapothoz tartozik (ugyanaz a verzió, amit a kliensek a world-version fejlécben látnak)
+    private WorldIndex index() {
+        WorldStateService.VersionedState published = worldStateService.getPublishedState();
+        WorldIndex idx = index;
+        if (idx != null && idx.state == published.state()) return idx;
+        synchronized (retained) {
+            idx = index;
+            if (idx == null || idx.state != published.state()) {
+                idx = idx == null ? new WorldIndex(published.version(), published.state())
+                        : idx.next(published.version(), published.state());
+                index = idx;
+                retained.put(idx.version, idx);
+            }
+            return idx;
+        }
+    }
+
+    // Lapozás egy korábbi lap verzióján: a jelenlegi, vagy egy megtartott verzió indexe
+    private WorldIndex index(long version) {
+        WorldIndex idx = index();
+        if (idx.version == version) return idx;
+        synchronized (retained) {
+            WorldIndex pinned = retained.get(version);
+            if (pinned != null) return pinned;
+        }
+        throw new IllegalStateException("World version " + version + " is no longer available (current " + idx.version + "); restart paging.");
+    }
+
+    // null: nincs szűrő (minden elem); különben a találatok növekvő pozíciói
+    private static int[] select(WorldIndex idx, WorldQuery.Kind kind, WorldQuery q) {
+        int[] result = null;
+        switch (kind) {
+            case POINTS -> {
+                if (q.color() != null) result = and(result, idx.pointsWithColor(q.color()));
+                if (q.collection() != null) result = and(result, idx.pointsInCollection(q.collection()));
+            }
+            case CONNECTIONS -> {
+                if (q.material() != null) result = and(result, idx.connectionsWithMaterial(q.material()));
+                if (q.minLength() != null || q.maxLength() != null) result = and(result, idx.connectionsWithLength(q.minLength(), q.maxLength()));
+            }
+            case FACES -> {
+                if (q.pointId() != null) result = and(result, idx.facesWithPoint(q.pointId()));
+            }
+            case CLIPS -> {
+                if (q.time() != null) result = and(result, idx.clipsActiveAt(q.time()));
+            }
+        }
+        return result;
+    }
+
+    private static int[] and(int[] a, int[] b) {
+        return a == null ? b : WorldIndex.intersect(a, b);
+    }
+
+    private static int size(WorldState state, WorldQuery.Kind kind) {
+        return switch (kind) {
+            case POINTS -> state.points().size();
+            case CONNECTIONS -> state.connections().size();
+            case FACES -> state.faces().size();
+            case CLIPS -> state.clips().size();
+        };
+    }
+
+    private static Set<String> fields(WorldQuery.Kind kind, List<String> requested) {
+        if (requested == null || requested.isEmpty()) return null;
+        Set<String> fields = new HashSet<>();
+        for (String f : requested) {
+            String name = f.trim();
+            if (name.isEmpty()) continue;
+            if (!kind.fields.contains(name)) throw new IllegalArgumentException("Unknown field for " + kind.name().toLowerCase() + ": " + name + " " + kind.fields);
+            fields.add(name);
+        }
+        return fields.isEmpty() ? null : fields;
+    }
+
+    // ==========================
+    // KIÍRÁS (JSON lines)
+    // ==========================
+
+    // Az elemek a lap sorrendjében, soronként; flushEvery elemenként ürít, hogy a kliens folyamatosan kapja
+    public void write(Page page, OutputStream out, int flushEvery) throws IOException {
+        write(page, 0, page.positions().length, out, flushEvery);
+    }
+
+    // A lap [from, to) része (STOMP-on darabonként megy ki); a kimenetet nem zárja le
+    public void write(Page page, int from, int to, OutputStream out, int flushEvery) throws IOException {
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.setRootValueSeparator(null);
+            int[] positions = page.positions();
+            for (int i = from; i < to; i++) {
+                writeItem(gen, page.index(), page.kind(), positions[i], page.fields());
+                gen.writeRaw('\n');
+                if (flushEvery > 0 && (i - from + 1) % flushEvery == 0) gen.flush();
+            }
+        }
+    }
+
+    private void writeItem(JsonGenerator gen, WorldIndex idx, WorldQuery.Kind kind, int pos, Set<String> f) throws IOException {
+        WorldState state = idx.state;
+        switch (kind) {
+            case POINTS -> {
+                Point3D p = state.points().get(pos);
+                gen.writeStartObject();
+                if (f == null || f.contains("id")) gen.writeNumberField("id", p.id());
+                if (f == null || f.contains("x")) gen.writeNumberField("x", p.x());
+                if (f == null || f.contains("y")) gen.writeNumberField("y", p.y());
+                if (f == null || f.contains("z")) gen.writeNumberField("z", p.z());
+                if (f == null || f.contains("color")) gen.writeStringField("color", p.color());
+                // Csak kérésre (fields=...,version): a pont utolsó felhasználói módosításának világ verziója, ez adható
+                // meg IfUnchanged / baseVersion alapnak; az élő bélyeg, így újabb is lehet a lap verziójánál
+                if (f != null && f.contains("version")) gen.writeNumberField("version", worldStateService.getEntityVersion(p.id()));
+                gen.writeEndObject();
+            }
+            case CONNECTIONS -> {
+                Connection c = state.connections().get(pos);
+                gen.writeStartObject();
+                if (f == null || f.contains("index")) gen.writeNumberField("index", pos);
+                if (f == null || f.contains("fromId")) gen.writeNumberField("fromId", c.fromId());
+                if (f == null || f.contains("toId")) gen.writeNumberField("toId", c.toId());
+                if (f == null || f.contains("color")) gen.writeStringField("color", c.color());
+                if (f == null || f.contains("thickness")) gen.writeNumberField("thickness", c.thickness());
+                if (f == null || f.contains("material")) gen.writeStringField("material", c.materialName());
+                if (f == null || f.contains("pricePerMeter")) gen.writeNumberField("pricePerMeter", c.pricePerMeter());
+                if (f == null || f.contains("length")) {
+                    double length = idx.connectionLength(c);
+                    if (Double.isNaN(length)) gen.writeNullField("length");
+                    else gen.writeNumberField("length", length);
+                }
+                gen.writeEndObject();
+            }
+            case FACES -> {
+                Face face = state.faces().get(pos);
+                gen.writeStartObject();
+                if (f == null || f.contains("index")) gen.writeNumberField("index", pos);
+                if (f == null || f.contains("pointIds")) {
+                    gen.writeArrayFieldStart("pointIds");
+                    for (Integer id : face.pointIds()) gen.writeNumber(id);
+                    gen.writeEndArray();
+                }
+                if (f == null || f.contains("color")) gen.writeStringField("color", face.color());
+                gen.writeEndObject();
+            }
+            case CLIPS -> {
+                // Kevés elem: a klip a szokásos Jackson alakjában, a kért mezőkre szűkítve
+                ObjectNode node = objectMapper.valueToTree(state.clips().get(pos));
+                if (f != null) node.retain(f);
+                gen.writeTree(node);
+            }
+        }
+    }
+
+    // ==========================
+    // STOMP
+    // ==========================
+
+    public void stream(String sessionId, WorldQuery q) {
+        Page page;
+        try {
+            page = query(q);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            send(sessionId, new ResultChunk(q.id(), worldStateService.getVersion(), 0, 0, 0, null, true, null, e.getMessage()));
+            return;
+        }
+        int n = page.positions().length;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        for (int from = 0; ; from += CHUNK_ITEMS) {
+            int to = Math.min(n, from + CHUNK_ITEMS);
+            buffer.reset();
+            try {
+                write(page, from, to, buffer, 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            boolean last = to >= n;
+            send(sessionId, new ResultChunk(q.id(), page.version(), page.total(), page.offset() + from, to - from,
+                    last ? page.nextOffset() : null, last, buffer.toString(StandardCharsets.UTF_8), null));
+            if (last) return;
+        }
+    }
+
+    private void send(String sessionId, ResultChunk chunk) {
+        if (sessionId == null) return;
+        try {
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setSessionId(sessionId);
+            headers.setLeaveMutable(true);
+            messagingTemplate.convertAndSendToUser(sessionId, RESULT_QUEUE, chunk, headers.getMessageHeaders());
+        } catch (Exception e) {
+            System.err.println("Query result hiba (" + sessionId + "): " + e.getMessage());
+        }
+    }
+}
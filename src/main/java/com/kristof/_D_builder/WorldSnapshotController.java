@@ -0,0 +1,90 @@
+package com.kristof._D_builder;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/world")
+@CrossOrigin(origins = "http://localhost:5173", exposedHeaders = {HttpHeaders.ETAG, "X-World-Version"})
+public class WorldSnapshotController {
+
+    private final WorldSnapshotService worldSnapshotService;
+    private final WorldStateService worldStateService;
+
+    public WorldSnapshotController(WorldSnapshotService worldSnapshotService, WorldStateService worldStateService) {
+        this.worldSnapshotService = worldSnapshotService;
+        this.worldStateService = worldStateService;
+    }
+
+    // SNAPSHOT: GET /api/world   (If-None-Match -> 304, Accept-Encoding: gzip -> tömörített válasz)
+    // A kliens ezután a /topic/world-updates "world-version" fejléce alapján folytatja.
+    @GetMapping
+    public ResponseEntity<byte[]> snapshot(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                           @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        WorldSnapshotService.Snapshot snapshot = worldSnapshotService.current();
+
+        if (ifNoneMatch != null && (ifNoneMatch.contains(snapshot.etag()) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(snapshot.etag())
+                    .header("X-World-Version", Long.toString(snapshot.version()))
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(snapshot.etag())
+                .header("X-World-Version", Long.toString(snapshot.version()))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+        if (acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip")) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.gzip());
+        }
+        return response.body(snapshot.json());
+    }
+
+    // VERZIÓ: GET /api/world/version  (olcsó lekérdezés, pl. újracsatlakozás előtt)
+    @GetMapping("/version")
+    public Map<String, Long> version() {
+        return Map.of("version", worldSnapshotService.currentVersion());
+    }
+
+    // LAPOK: GET /api/world/faces  (szerveren háromszögelt lapok normállal és felülettel)
+    // A háromszögek pont ID-kat tartalmaznak, így a kliensnek nem kell újra háromszögelnie.
+    @GetMapping("/faces")
+    public Map<String, Object> faces() {
+        WorldState state = worldStateService.getWorldState();
+        List<FaceGeometry> geometries = worldStateService.getFaceGeometries(state.faces(), state.points());
+
+        List<Map<String, Object>> result = new ArrayList<>(geometries.size());
+        double totalArea = 0;
+        for (int i = 0; i < geometries.size(); i++) {
+            FaceGeometry g = geometries.get(i);
+            if (g == null) continue;
+            Face f = state.faces().get(i);
+            int[] triangles = new int[g.triangles().length];
+            for (int t = 0; t < triangles.length; t++) triangles[t] = f.pointIds().get(g.triangles()[t]);
+
+            Map<String, Object> face = new LinkedHashMap<>();
+            face.put("pointIds", f.pointIds());
+            face.put("color", f.color());
+            face.put("normal", new double[]{g.nx(), g.ny(), g.nz()});
+            face.put("area", g.area());
+            face.put("triangles", triangles);
+            result.add(face);
+            totalArea += g.area();
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("faces", result);
+        body.put("totalArea", totalArea);
+        return body;
+    }
+}
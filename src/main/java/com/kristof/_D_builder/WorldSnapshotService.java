@@ -0,0 +1,99 @@
+package com.kristof._D_builder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPOutputStream;
+
+// Verziózott világ snapshot a későn csatlakozó klienseknek.
+// Egy verziót csak egyszer szerializálunk (és tömörítünk), így egy újracsatlakozási hullám
+// sem jelent kliensenként új JSON-t.
+// Az ETag a folyamat indításkori azonosítóját (epoch) is tartalmazza: a verziószámláló újraindításkor
+// elölről kezdődhet (nincs / régi a helyi snapshot, összeomlás), és egy régi kliens "w42"-je így sem kaphat
+// 304-et egy másik világra. Újraindítás után a kliensek egyszer újra letöltik a világot.
+@Service
+public class WorldSnapshotService {
+
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36)
+            + Integer.toString(ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE), 36);
+
+    private final WorldStateService worldStateService;
+    private final ObjectMapper objectMapper;
+
+    private volatile Snapshot cached;
+
+    public WorldSnapshotService(WorldStateService worldStateService, ObjectMapper objectMapper) {
+        this.worldStateService = worldStateService;
+        this.objectMapper = objectMapper;
+    }
+
+    public static final class Snapshot {
+        private final long version;
+        private final byte[] json;
+        private volatile byte[] gzip;
+
+        Snapshot(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+
+        public long version() { return version; }
+        public byte[] json() { return json; }
+
+        public String etag() { return "\"" + EPOCH + "-w" + version + "\""; }
+
+        // A tömörített változat csak akkor készül el, ha valaki kéri
+        public byte[] gzip() {
+            byte[] g = gzip;
+            if (g == null) {
+                synchronized (this) {
+                    g = gzip;
+                    if (g == null) {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, json.length / 4));
+                        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+                            gz.write(json);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        gzip = g = out.toByteArray();
+                    }
+                }
+            }
+            return g;
+        }
+    }
+
+    public long currentVersion() {
+        return worldStateService.getPublishedState().version();
+    }
+
+    public Snapshot current() {
+        WorldStateService.VersionedState published = worldStateService.getPublishedState();
+        Snapshot c = cached;
+        if (c != null && c.version() == published.version()) return c;
+
+        synchronized (this) {
+            c = cached;
+            if (c != null && c.version() >= published.version()) return c;
+            TraceEvents.JsonSerialization event = new TraceEvents.JsonSerialization();
+            event.begin();
+            try {
+                c = new Snapshot(published.version(), objectMapper.writeValueAsBytes(published.state()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.payloadType = "WorldState (REST snapshot)";
+                event.bytes = c.json().length;
+                event.commit();
+            }
+            cached = c;
+            return c;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.kristof._D_builder;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -8,23 +10,35 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
 
 @Service
 public class WorldStateService {
 
     private final SimpMessagingTemplate messagingTemplate;
     private final PricingService pricingService;
-
-    // Szálbiztos tárolók
-    private final List<Point3D> points = new CopyOnWriteArrayList<>();
-    private final List<Connection> connections = new CopyOnWriteArrayList<>();
-    private final List<Face> faces = new CopyOnWriteArrayList<>();
-    private final Map<String, List<Integer>> collections = new ConcurrentHashMap<>();
-
-    // Undo/Redo
-    private final Stack<WorldState> undoStack = new Stack<>();
-    private final Stack<WorldState> redoStack = new Stack<>();
+    private final ViewSubscriptionService viewSubscriptionService;
+
+    // Szálbiztos tárolók (world.storage=offheap: a geometria a heapen kívül, lásd OffHeapList)
+    private final List<Point3D> points;
+    private final List<Connection> connections;
+    private final List<Face> faces;
+    // Lapok háromszögelése / normálja / felülete (csak a lap pontjainak mozgásakor számolódik újra)
+    private final FaceGeometryCache faceGeometryCache = new FaceGeometryCache();
+    // Gyűjtemények bitmapként; a WorldState felé List<Integer> nézetként mennek ki
+    private final Map<String, IdSet> collections = new ConcurrentHashMap<>();
+
+    // Undo/Redo felhasználónként (lépésenként előtte / utána pillanatkép, lásd UndoHistory)
     private static final int MAX_HISTORY = 50;
+    private static final int MAX_TOTAL_HISTORY = 200;
+    private final UndoHistory history = new UndoHistory(MAX_HISTORY, MAX_TOTAL_HISTORY);
+
+    // Entitásonkénti verzió bélyegek (feltételes parancsok); a szerkesztő az éppen futó parancs felhasználója
+    // (runAs), null = névtelen / rendszer. Szálhoz kötött: egy másik szál (tick, REST) írása nem kaphatja meg
+    // egy épp futó parancs felhasználóját.
+    private final EntityVersions versions = new EntityVersions();
+    private final ThreadLocal<String> editor = new ThreadLocal<>();
 
     // Animációk
     private final Map<Integer, AnimationData> activeAnimations = new ConcurrentHashMap<>();
@@ -32,24 +46,142 @@ public class WorldStateService {
 
     private final AtomicInteger nextId = new AtomicInteger(0);
 
+    // Világ verzió: minden kiküldött állapot új verziót kap (broadcast fejléc + REST ETag)
+    public static final String VERSION_HEADER = "world-version";
+    private final AtomicLong version = new AtomicLong(0);
+    private final Object publishLock = new Object();
+    private volatile VersionedState lastPublished;
+
+    // A világ utolsó lezárt (commit) állapota: változtathatatlan, a tárolókkal szerkezetileg megosztott
+    // pillanatkép. Az író a módosítás végén (köteg vége / broadcast) cseréli le egy lépésben; az olvasók
+    // (REST, export, BOM, mentés, broadcast) zár és másolás nélkül kapják, mindig konzisztens metszetként.
+    private volatile WorldState current;
+    // A gyűjtemények lista alakja halmazonként, amíg a halmaz nem változik (IdSet.modCount)
+    private record FrozenCollection(IdSet set, int modCount, List<Integer> ids) {}
+    private Map<String, FrozenCollection> frozenCollections = Map.of();
+    private Map<String, List<Integer>> frozenCollectionView = Map.of();
+
+    // Egy kiküldött állapot a verziójával együtt (late join / snapshot végpont)
+    public record VersionedState(long version, WorldState state) {}
+
     // TIMELINE
     private final List<TimelineClip> timelineClips = new CopyOnWriteArrayList<>();
+    // A klipek lefordított kiértékelői (a tick ezt a tömböt járja be, nem a klip listát)
+    private volatile ClipEvaluator[] compiledClips = new ClipEvaluator[0];
+    // A tick írásai ide gyűlnek (primitív tömbök), és a tick végén egy menetben kerülnek a pontokba
+    private final TimelineWrites timelineWrites = new TimelineWrites();
     private double currentTime = 0.0;
     private double maxTime = 60.0;
     private boolean isPlaying = false;
     private long lastLoopTime = System.currentTimeMillis();
 
-    public WorldStateService(SimpMessagingTemplate messagingTemplate, PricingService pricingService) {
+    // Kötegelt végrehajtás (runBatch / runDeferred): a köteget futtató szál; rajta a broadcast csak jelez
+    // (batchDirty), atomikus kötegben (Script) a saveState sem ment külön lépést
+    private final Object batchLock = new Object();
+    private volatile Thread batchOwner;
+    private boolean batchAtomic;
+    private boolean batchDirty;
+    // Broadcast nélküli írás történt (updatePoint, play / pause, addClipExplicit): a következő lezárás nem
+    // cserélheti le csendben a közzétett állapotot, hanem új verzióval ki kell küldeni
+    private volatile boolean liveDirty;
+
+    // JFR: a szálon folyamatban lévő világ módosítás esemény (csak ha egy felvétel kéri)
+    private final ThreadLocal<TraceEvents.WorldMutation> openMutation = new ThreadLocal<>();
+
+    public WorldStateService(SimpMessagingTemplate messagingTemplate, PricingService pricingService,
+                             ViewSubscriptionService viewSubscriptionService) {
+        this(messagingTemplate, pricingService, viewSubscriptionService, "heap");
+    }
+
+    @Autowired
+    public WorldStateService(SimpMessagingTemplate messagingTemplate, PricingService pricingService,
+                             ViewSubscriptionService viewSubscriptionService,
+                             @Value("${world.storage:heap}") String storage) {
         this.messagingTemplate = messagingTemplate;
         this.pricingService = pricingService;
+        this.viewSubscriptionService = viewSubscriptionService;
+        if ("offheap".equalsIgnoreCase(storage)) {
+            this.points = new OffHeapList<>(OffHeapCodecs.POINTS);
+            this.connections = new OffHeapList<>(OffHeapCodecs.CONNECTIONS);
+            this.faces = new OffHeapList<>(OffHeapCodecs.faces());
+        } else {
+            this.points = new CopyOnWriteArrayList<>();
+            this.connections = new CopyOnWriteArrayList<>();
+            this.faces = new CopyOnWriteArrayList<>();
+        }
+        this.current = snapshotLive();
     }
 
     private void broadcast() {
+        mutationPublished();
+        // Kötegen belül csak megjegyezzük; a köteg végén egyetlen broadcast megy ki
+        if (batchOwner == Thread.currentThread()) { batchDirty = true; return; }
+        TraceEvents.Broadcast event = new TraceEvents.Broadcast();
+        event.begin();
+        long t0 = System.nanoTime();
+        commit();
+        long v;
+        WorldState state;
+        // A verzió és az állapot párosa konzisztens, és nem "ugorhat vissza" párhuzamos broadcastnál
+        synchronized (publishLock) {
+            v = version.incrementAndGet();
+            state = current;
+            lastPublished = new VersionedState(v, state);
+            versions.publish(v);
+        }
+        long t1 = System.nanoTime();
         try {
-            messagingTemplate.convertAndSend("/topic/world-updates", getWorldState());
+            messagingTemplate.convertAndSend("/topic/world-updates", state, Map.<String, Object>of(VERSION_HEADER, v));
         } catch (Exception e) {
             System.err.println("Broadcast hiba: " + e.getMessage());
         }
+        long t2 = System.nanoTime();
+        // Szűrt nézetek (ugyanabból az állapotból; csak sorba állítás, a szűrés a view-publisher szálon fut)
+        viewSubscriptionService.publish(state, v);
+        event.end();
+        if (event.shouldCommit()) {
+            event.worldVersion = v;
+            event.points = state.points().size();
+            event.connections = state.connections().size();
+            event.views = viewSubscriptionService.activeViewCount();
+            event.captureTime = t1 - t0;
+            event.sendTime = t2 - t1;
+            event.viewsTime = System.nanoTime() - t2;
+            event.commit();
+        }
+    }
+
+    // ==========================
+    // JFR: VILÁG MÓDOSÍTÁS
+    // ==========================
+
+    // A saveState (új) vagy az első pont frissítés nyitja a szál módosítás eseményét, a broadcast zárja
+    private void mutationStarted(boolean fresh, int pointsUpdated) {
+        if (!TraceEvents.WorldMutation.TYPE.isEnabled()) return;
+        TraceEvents.WorldMutation event = openMutation.get();
+        if (event == null || fresh) {
+            event = new TraceEvents.WorldMutation();
+            event.pointsBefore = points.size();
+            event.connectionsBefore = connections.size();
+            event.facesBefore = faces.size();
+            event.begin();
+            openMutation.set(event);
+        }
+        event.pointsUpdated += pointsUpdated;
+    }
+
+    private void mutationPublished() {
+        TraceEvents.WorldMutation event = openMutation.get();
+        if (event == null) return;
+        openMutation.remove();
+        event.end();
+        if (event.shouldCommit()) {
+            event.pointsAfter = points.size();
+            event.connectionsAfter = connections.size();
+            event.facesAfter = faces.size();
+            event.batched = batchOwner == Thread.currentThread();
+            event.commit();
+        }
     }
 
     // ==========================
@@ -112,8 +244,9 @@ public class WorldStateService {
     }
 
     public int rotateCollection(String name, String axis, double degrees) {
-        List<Integer> ids = collections.get(name);
-        if (ids == null || ids.isEmpty()) return 0;
+        IdSet set = collections.get(name);
+        if (set == null || set.isEmpty()) return 0;
+        List<Integer> ids = set.toList();
 
         double cx = 0, cy = 0, cz = 0;
         int validCount = 0;
@@ -175,48 +308,140 @@ public class WorldStateService {
     @Scheduled(fixedRate = 33)
     public void gameLoop() {
         if (isPlaying) {
-            long now = System.currentTimeMillis();
-            double deltaSeconds = (now - lastLoopTime) / 1000.0;
-            lastLoopTime = now;
-
-            currentTime += deltaSeconds;
+            TraceEvents.GameLoopTick tick = new TraceEvents.GameLoopTick();
+            tick.begin();
+            long t0 = System.nanoTime(), t1, t2;
+            // A tick írásai a parancs kötegekkel sorban futnak (a pillanatkép így sosem egy köteg közepe)
+            synchronized (batchLock) {
+                long now = System.currentTimeMillis();
+                double deltaSeconds = (now - lastLoopTime) / 1000.0;
+                lastLoopTime = now;
+
+                currentTime += deltaSeconds;
+
+                if (currentTime >= maxTime) {
+                    currentTime = 0;
+                }
 
-            if (currentTime >= maxTime) {
-                currentTime = 0;
+                t1 = System.nanoTime();
+                applyTimelineState();
+                t2 = System.nanoTime();
             }
-
-            applyTimelineState();
             broadcast();
+            tick.end();
+            if (tick.shouldCommit()) {
+                tick.timelineTime = currentTime;
+                tick.clips = compiledClips.length;
+                tick.advanceTime = t1 - t0;
+                tick.evaluateTime = t2 - t1;
+                tick.broadcastTime = System.nanoTime() - t2;
+                tick.commit();
+            }
         } else {
             lastLoopTime = System.currentTimeMillis();
         }
     }
 
     private void applyTimelineState() {
-        for (TimelineClip clip : timelineClips) {
-            // ... (idő ellenőrzés ugyanaz marad) ...
-            if (currentTime >= clip.startTime && currentTime <= clip.endTime) {
+        ClipEvaluator[] evaluators = compiledClips;
+        double time = currentTime;
+        TimelineWrites writes = timelineWrites;
+        writes.reset();
+        for (int i = 0; i < evaluators.length; i++) {
+            evaluators[i].evaluate(time, writes);
+        }
+        applyPositions(writes);
+    }
 
-                double totalDuration = clip.endTime - clip.startTime;
-                if (totalDuration <= 0) continue;
+    // A tick pozícióinak beírása egy menetben. Heapen kívül helyben (primitív írás, rekord nélkül); a heapen a
+    // pont rekord változtathatatlan (a pillanatképek osztoznak rajta), ezért ott csak a ténylegesen elmozdult
+    // pontok kapnak új rekordot, és a tömb tickenként egyszer másolódik, nem pontonként.
+    private void applyPositions(TimelineWrites writes) {
+        int n = writes.settle();
+        if (n == 0) return;
+        int moved = 0;
+        if (points instanceof OffHeapList<Point3D> offHeap) {
+            for (int i = 0; i < n; i++) {
+                int index = indexOfPoint(writes.id(i));
+                if (index < 0) continue;
+                offHeap.putDoubles(index, OffHeapCodecs.POINT_XYZ, writes.x(i), writes.y(i), writes.z(i));
+                faceGeometryCache.invalidatePoint(writes.id(i));
+                moved++;
+            }
+        } else {
+            int lastIndex = -1;
+            for (int i = 0; i < n; i++) {
+                int index = indexOfPoint(writes.id(i));
+                if (index < 0 || samePosition(points.get(index), writes, i)) continue;
+                faceGeometryCache.invalidatePoint(writes.id(i));
+                lastIndex = index;
+                moved++;
+            }
+            if (moved == 1) {
+                Point3D p = points.get(lastIndex);
+                int i = writes.find(p.id());
+                points.set(lastIndex, new Point3D(p.id(), writes.x(i), writes.y(i), writes.z(i), p.colorIndex()));
+            } else if (moved > 1) {
+                points.replaceAll(p -> {
+                    int i = writes.find(p.id());
+                    if (i < 0 || samePosition(p, writes, i)) return p;
+                    return new Point3D(p.id(), writes.x(i), writes.y(i), writes.z(i), p.colorIndex());
+                });
+            }
+        }
+        if (moved > 0) {
+            mutationStarted(false, moved);
+            liveDirty = true;
+        }
+    }
 
-                double t = (currentTime - clip.startTime) / totalDuration;
+    private static boolean samePosition(Point3D p, TimelineWrites writes, int i) {
+        return p.x() == writes.x(i) && p.y() == writes.y(i) && p.z() == writes.z(i);
+    }
 
-                double curX = lerp(clip.sx, clip.ex, t);
-                double curY = lerp(clip.sy, clip.ey, t);
-                double curZ = lerp(clip.sz, clip.ez, t);
+    // ==========================
+    // KLIP FORDÍTÁS
+    // ==========================
 
-                // JAVÍTÁS: equalsIgnoreCase használata
-                if (clip.type.equalsIgnoreCase("MOVE")) {
-                    updatePoint(clip.targetId, curX, curY, curZ);
-                }
-                // (Később ide jöhet a ROTATE ág is)
+    private ClipEvaluator compileClip(TimelineClip clip) {
+        return ClipEvaluator.compile(clip, clip.hasBase ? null : getPoint(clip.targetId));
+    }
+
+    // Új klip: csak az új kiértékelőt fordítjuk le és fűzzük a tömb végére
+    private synchronized void appendCompiledClip(TimelineClip clip) {
+        ClipEvaluator ev = compileClip(clip);
+        if (ev == null) return;
+        ClipEvaluator[] old = compiledClips;
+        ClipEvaluator[] next = Arrays.copyOf(old, old.length + 1);
+        next[old.length] = ev;
+        compiledClips = next;
+    }
+
+    // Módosított klip: csak a hozzá tartozó kiértékelőt cseréljük
+    private synchronized void replaceCompiledClip(TimelineClip clip) {
+        ClipEvaluator ev = compileClip(clip);
+        List<ClipEvaluator> next = new ArrayList<>(compiledClips.length + 1);
+        boolean placed = false;
+        for (ClipEvaluator old : compiledClips) {
+            if (old.clipId.equals(clip.id)) {
+                if (ev != null) next.add(ev);
+                placed = true;
+            } else {
+                next.add(old);
             }
         }
+        if (!placed && ev != null) next.add(ev);
+        compiledClips = next.toArray(new ClipEvaluator[0]);
     }
 
-    private double lerp(double start, double end, double t) {
-        return start + t * (end - start);
+    // Törlés / visszaállítás után a teljes tömb újraépül
+    private synchronized void recompileClips() {
+        List<ClipEvaluator> next = new ArrayList<>(timelineClips.size());
+        for (TimelineClip clip : timelineClips) {
+            ClipEvaluator ev = compileClip(clip);
+            if (ev != null) next.add(ev);
+        }
+        compiledClips = next.toArray(new ClipEvaluator[0]);
     }
 
     // ==========================
@@ -224,26 +449,351 @@ public class WorldStateService {
     // ==========================
 
     public void saveState() {
-        WorldState currentState = getWorldState();
-        undoStack.push(currentState);
-        if (undoStack.size() > MAX_HISTORY) undoStack.remove(0);
-        redoStack.clear();
+        mutationStarted(true, 0);
+        if (batchAtomic && batchOwner == Thread.currentThread()) return; // a köteg eleje már elmentette
+        TraceEvents.UndoSnapshot event = new TraceEvents.UndoSnapshot();
+        event.begin();
+        WorldState currentState;
+        // Az előzmény (mint a bélyegek) csak a batchLock alatt változik, köteg nélküli hívásnál is
+        synchronized (batchLock) {
+            currentState = snapshotLive();
+            history.begin(editor.get(), currentState);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.points = currentState.points().size();
+            event.connections = currentState.connections().size();
+            event.faces = currentState.faces().size();
+            event.undoDepth = history.depth();
+            event.commit();
+        }
+    }
+
+    // ==========================
+    // KÖTEGELT VÉGREHAJTÁS (Script / makró / parancs pipeline)
+    // ==========================
+
+    @FunctionalInterface
+    public interface BatchBody<T> { T run() throws Exception; }
+
+    // A törzs összes módosítása egy undo bejegyzés és egy broadcast; kivételnél a köteg előtti állapot áll vissza.
+    // Egyszerre egy köteg fut (a többi vár); a köteg szálán a saveState / broadcast nem csinál semmit.
+    // A visszaállítás csak azért biztonságos, mert minden író a batchLock alatt fut (parancs pipeline, REST
+    // parancs, import, projekt / snapshot betöltés, timeline tick): köteg közben más nem írhat a világba.
+    // Egymásba ágyazható (pl. Script a pipeline kötegén belül): a belső köteg a külsőnek jelez.
+    public <T> T runBatch(BatchBody<T> body) throws Exception {
+        synchronized (batchLock) {
+            boolean nested = batchOwner == Thread.currentThread();
+            boolean outerAtomic = batchAtomic, outerDirty = batchDirty;
+            boolean pushedUndo = !(nested && outerAtomic);
+            WorldState before = snapshotLive();
+            int stampMark = versions.mark();
+            saveState();
+            batchOwner = Thread.currentThread();
+            batchAtomic = true;
+            batchDirty = false;
+            try {
+                return body.run();
+            } catch (Exception e) {
+                restoreState(before);
+                versions.rollback(stampMark);
+                if (pushedUndo) history.dropOpen();
+                batchDirty = true;
+                throw e;
+            } finally {
+                boolean dirty = batchDirty;
+                if (nested) {
+                    batchAtomic = outerAtomic;
+                    batchDirty = outerDirty || dirty;
+                } else {
+                    batchOwner = null;
+                    batchAtomic = false;
+                    batchDirty = false;
+                    // Lezárás: a köteg minden változása egyszerre, új verzióval válik láthatóvá
+                    if (dirty || liveDirty) broadcast();
+                    else commit();
+                }
+            }
+        }
     }
 
+    // Csak a broadcastokat vonja össze: minden parancs megtartja a saját undo lépését, nincs visszagörgetés,
+    // a törzs végén (ha volt változás) egyetlen broadcast megy ki
+    public <T> T runDeferred(BatchBody<T> body) throws Exception {
+        synchronized (batchLock) {
+            if (batchOwner == Thread.currentThread()) return body.run();
+            batchOwner = Thread.currentThread();
+            batchAtomic = false;
+            batchDirty = false;
+            try {
+                return body.run();
+            } finally {
+                boolean dirty = batchDirty;
+                batchOwner = null;
+                batchDirty = false;
+                if (dirty || liveDirty) broadcast();
+                else commit();
+            }
+        }
+    }
+
+    // Egy felhasználó parancsa: a szerkesztések az ő nevén futnak (verzió bélyeg, saját undo lépés).
+    // A parancs végén a nyitott undo lépés lezárul, így a következő (akár más felhasználó) parancsa már nem
+    // ehhez a lépéshez tartozik.
+    public <T> T runAs(String user, BatchBody<T> body) throws Exception {
+        synchronized (batchLock) {
+            String outer = editor.get();
+            editor.set(user);
+            try {
+                return runDeferred(body);
+            } finally {
+                if (history.isOpen()) history.close(snapshotLive());
+                if (outer != null) editor.set(outer);
+                else editor.remove();
+            }
+        }
+    }
+
+    // A szálon éppen futó parancs felhasználója (runAs), null = névtelen / rendszer
+    public String currentEditor() {
+        return editor.get();
+    }
+
+    // Feltételes (optimista) végrehajtás: a törzs lefut, utána ellenőrizzük, hogy az általa írt entitásokat
+    // (pont, gyűjtemény) változtatta-e más a baseVersion (a kliens által utoljára látott világ verzió) óta.
+    // Ütközésnél merge = false: az egész visszagörgetődik; merge = true: csak az ütköző entitások állnak
+    // vissza a parancs előtti értékre, a többi változás megmarad.
+    public record ConditionalResult<T>(T value, boolean applied, List<String> conflicts) {}
+
+    public <T> ConditionalResult<T> runIfUnchanged(long baseVersion, boolean merge, BatchBody<T> body) throws Exception {
+        synchronized (batchLock) {
+            String user = editor.get();
+            List<String> conflicts = new ArrayList<>();
+            try {
+                T value = runBatch(() -> {
+                    int mark = versions.mark();
+                    WorldState start = snapshotLive();
+                    T result = body.run();
+                    List<Object> stale = versions.conflicts(mark, baseVersion, user);
+                    if (stale.isEmpty()) return result;
+                    for (Object key : stale) conflicts.add(EntityVersions.describe(key));
+                    if (!merge || stale.contains(EntityVersions.WORLD)) throw new StaleWriteException();
+                    Set<Object> keys = new HashSet<>(stale);
+                    revert(WorldDiff.between(start, snapshotLive()), keys);
+                    versions.rollback(mark, keys);
+                    return result;
+                });
+                return new ConditionalResult<>(value, true, conflicts);
+            } catch (StaleWriteException e) {
+                return new ConditionalResult<>(null, false, conflicts);
+            }
+        }
+    }
+
+    private static final class StaleWriteException extends Exception {
+        StaleWriteException() {
+            super(null, null, false, false);
+        }
+    }
+
+    // A szerkesztő (runAs) legutóbbi saját lépését vonja vissza; amit azóta más módosított, az kimarad
     public String undo() {
-        if (undoStack.isEmpty()) return "Nothing to undo.";
-        redoStack.push(getWorldState());
-        restoreState(undoStack.pop());
-        broadcast();
-        return "Undo successful.";
+        synchronized (batchLock) {
+            if (history.isOpen()) history.close(snapshotLive());
+            UndoHistory.Entry entry = history.popUndo(editor.get());
+            if (entry == null) return "Nothing to undo.";
+            WorldState before = snapshotLive();
+            List<String> skipped = revert(WorldDiff.between(entry.before, entry.after), null);
+            history.pushRedo(new UndoHistory.Entry(editor.get(), before, snapshotLive()));
+            broadcast();
+            return skipped.isEmpty() ? "Undo successful." : "Undo partially applied, changed by others since: " + String.join(", ", skipped) + ".";
+        }
     }
 
     public String redo() {
-        if (redoStack.isEmpty()) return "Nothing to redo.";
-        undoStack.push(getWorldState());
-        restoreState(redoStack.pop());
-        broadcast();
-        return "Redo successful.";
+        synchronized (batchLock) {
+            if (history.isOpen()) history.close(snapshotLive());
+            UndoHistory.Entry entry = history.popRedo(editor.get());
+            if (entry == null) return "Nothing to redo.";
+            WorldState before = snapshotLive();
+            List<String> skipped = revert(WorldDiff.between(entry.before, entry.after), null);
+            history.pushUndo(new UndoHistory.Entry(editor.get(), before, snapshotLive()));
+            broadcast();
+            return skipped.isEmpty() ? "Redo successful." : "Redo partially applied, changed by others since: " + String.join(", ", skipped) + ".";
+        }
+    }
+
+    // ==========================
+    // SZELEKTÍV VISSZAÁLLÍTÁS (undo / redo / merge)
+    // ==========================
+
+    // A diff "to" értékeit "from"-ra állítja vissza, de csak ott, ahol az élő érték még a "to" (azóta senki
+    // nem írta felül); a kihagyott entitásokat adja vissza. only != null: csak ezek a kulcsok (pont ID /
+    // gyűjtemény név) és a rájuk illeszkedő rudak / lapok; a klipek csak a teljes visszaállításban.
+    // A pontok ID-ja nem kerül újra kiosztásra (a nextId nem lép vissza).
+    private List<String> revert(WorldDiff d, Set<Object> only) {
+        List<String> skipped = new ArrayList<>();
+
+        // 1. Gyűjtemények (a pont törlés előtt, ami a tagságokat is érinti)
+        for (WorldDiff.CollectionChange c : d.collections) {
+            if (only != null && !only.contains(c.name())) continue;
+            IdSet live = collections.get(c.name());
+            if (!Objects.equals(live != null ? live.toList() : null, c.to())) { skipped.add("collection '" + c.name() + "'"); continue; }
+            if (c.from() == null) { collections.remove(c.name()); forget(c.name()); }
+            else { collections.put(c.name(), IdSet.of(c.from())); touch(c.name()); }
+        }
+
+        // 2. Pontok: helyben csere, törlés, visszaszúrás ID sorrendben
+        Set<Integer> removed = new HashSet<>();
+        List<Point3D> inserted = new ArrayList<>();
+        for (WorldDiff.PointChange c : d.points) {
+            if (only != null && !only.contains(c.id())) continue;
+            int index = indexOfPoint(c.id());
+            Point3D live = index >= 0 ? points.get(index) : null;
+            if (!Objects.equals(live, c.to())) { skipped.add("p" + c.id()); continue; }
+            if (c.from() != null && live != null) points.set(index, c.from());
+            else if (c.from() != null) inserted.add(c.from());
+            else if (live != null) removed.add(c.id());
+            faceGeometryCache.invalidatePoint(c.id());
+            if (c.from() != null) touch(c.id());
+            else forget(c.id());
+        }
+        if (!removed.isEmpty()) {
+            points.removeIf(p -> removed.contains(p.id()));
+            connections.removeIf(c -> removed.contains(c.fromId()) || removed.contains(c.toId()));
+            faces.removeIf(f -> f.pointIds().stream().anyMatch(removed::contains));
+            collections.values().forEach(set -> removed.forEach(set::remove));
+            removed.forEach(id -> { activeAnimations.remove(id); activeRotationAnims.remove(id); });
+        }
+        if (!inserted.isEmpty()) {
+            inserted.sort(Comparator.comparingInt(Point3D::id));
+            List<Point3D> merged = new ArrayList<>(points.size() + inserted.size());
+            int j = 0;
+            for (Point3D p : points) {
+                while (j < inserted.size() && inserted.get(j).id() < p.id()) merged.add(inserted.get(j++));
+                merged.add(p);
+            }
+            while (j < inserted.size()) merged.add(inserted.get(j++));
+            points.clear();
+            points.addAll(merged);
+            int maxId = inserted.get(inserted.size() - 1).id();
+            nextId.accumulateAndGet(maxId + 1, Math::max);
+        }
+
+        // 3. Rudak / lapok: a lépés által hozzáadottak ki, az általa törültek vissza (ha a végpontok megvannak)
+        Set<Connection> addedConnections = new HashSet<>();
+        for (Connection c : d.connectionsOnlyInTo) {
+            if (only == null || only.contains(c.fromId()) || only.contains(c.toId())) addedConnections.add(c);
+        }
+        if (!addedConnections.isEmpty()) connections.removeIf(addedConnections::contains);
+        List<Connection> restoredConnections = new ArrayList<>();
+        if (!d.connectionsOnlyInFrom.isEmpty()) {
+            Set<Long> pairs = new HashSet<>();
+            for (Connection c : connections) pairs.add(pairKey(c.fromId(), c.toId()));
+            for (Connection c : d.connectionsOnlyInFrom) {
+                if (only != null && !only.contains(c.fromId()) && !only.contains(c.toId())) continue;
+                if (indexOfPoint(c.fromId()) < 0 || indexOfPoint(c.toId()) < 0 || !pairs.add(pairKey(c.fromId(), c.toId()))) continue;
+                restoredConnections.add(c);
+            }
+            connections.addAll(restoredConnections);
+        }
+        for (Connection c : addedConnections) { touch(c.fromId()); touch(c.toId()); }
+        for (Connection c : restoredConnections) { touch(c.fromId()); touch(c.toId()); }
+
+        Set<Face> addedFaces = new HashSet<>();
+        for (Face f : d.facesOnlyInTo) {
+            if (only == null || f.pointIds().stream().anyMatch(only::contains)) addedFaces.add(f);
+        }
+        if (!addedFaces.isEmpty()) {
+            faces.removeIf(addedFaces::contains);
+            addedFaces.forEach(faceGeometryCache::remove);
+        }
+        List<Face> restoredFaces = new ArrayList<>();
+        for (Face f : d.facesOnlyInFrom) {
+            if (only != null && f.pointIds().stream().noneMatch(only::contains)) continue;
+            if (f.pointIds().stream().anyMatch(id -> indexOfPoint(id) < 0) || faces.contains(f)) continue;
+            restoredFaces.add(f);
+        }
+        faces.addAll(restoredFaces);
+        for (Face f : addedFaces) f.pointIds().forEach(this::touch);
+        for (Face f : restoredFaces) f.pointIds().forEach(this::touch);
+
+        // 4. Klipek (a klip példányok copy-on-write módon cserélődnek, a referencia azonosít)
+        if (only == null && !d.clips.isEmpty()) {
+            for (WorldDiff.ClipChange c : d.clips) {
+                int index = -1;
+                for (int i = 0; i < timelineClips.size(); i++) if (timelineClips.get(i).id.equals(c.id())) { index = i; break; }
+                TimelineClip live = index >= 0 ? timelineClips.get(index) : null;
+                if (live != c.to()) { skipped.add("clip '" + (c.to() != null ? c.to().name : c.from().name) + "'"); continue; }
+                if (c.from() != null && live != null) timelineClips.set(index, c.from());
+                else if (c.from() != null) timelineClips.add(c.from());
+                else if (live != null) timelineClips.remove(index);
+            }
+            recompileClips();
+        }
+        return skipped;
+    }
+
+    private static long pairKey(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | (Math.max(a, b) & 0xffffffffL);
+    }
+
+    // A pontlista mindig ID szerint növekvő (új pont a végére a növekvő nextId-vel, visszaszúrás a helyére, a
+    // külső forrásból betöltött lista rendezve): ID -> index bináris kereséssel. Heapen kívül csak az ID mező
+    // olvasódik (rekord nélkül), így 1M pontnál is ~20 int olvasás, nem a teljes lista dekódolása.
+    private int indexOfPoint(int id) {
+        OffHeapList<Point3D> offHeap = points instanceof OffHeapList<Point3D> o ? o : null;
+        int lo = 0, hi = points.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midId = offHeap != null ? offHeap.getInt(mid, OffHeapCodecs.POINT_ID) : points.get(mid).id();
+            if (midId < id) lo = mid + 1;
+            else if (midId > id) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // Külső forrásból (Mongo, snapshot fájl) jött pontlista: ha nem ID szerint növekvő, rendezett másolat
+    private static WorldState withSortedPoints(WorldState state) {
+        List<Point3D> list = state.points();
+        if (list == null) return state;
+        for (int i = 1; i < list.size(); i++) {
+            if (list.get(i - 1).id() > list.get(i).id()) {
+                List<Point3D> sorted = new ArrayList<>(list);
+                sorted.sort(Comparator.comparingInt(Point3D::id));
+                return new WorldState(sorted, state.connections(), state.faces(), state.collections(),
+                        state.currentTime(), state.isPlaying(), state.clips());
+            }
+        }
+        return state;
+    }
+
+    // Felhasználói szerkesztés jelzése (verzió bélyeg); az idővonal lejátszása nem az
+    private void touch(Object key) {
+        synchronized (batchLock) {
+            versions.touch(key, editor.get());
+        }
+    }
+
+    // Törölt entitás: a bélyege kiesik (nem gyűlnek a törölt pontok / gyűjtemények bélyegei)
+    private void forget(Object key) {
+        synchronized (batchLock) {
+            versions.forget(key);
+        }
+    }
+
+    // Az egész világ cseréje (Clear, projekt betöltés): csak a világ bélyeg marad
+    private void touchWorld() {
+        synchronized (batchLock) {
+            versions.reset(editor.get());
+        }
+    }
+
+    // A pont utolsó felhasználói módosításának világ verziója (0: azóta nem szerkesztették, ami betöltés óta
+    // volt; Long.MAX_VALUE: a változás még nem ment ki)
+    public long getEntityVersion(int pointId) {
+        return versions.version(pointId);
     }
 
     private void restoreState(WorldState state) {
@@ -256,9 +806,10 @@ public class WorldStateService {
 
         this.faces.clear();
         if (state.faces() != null) this.faces.addAll(state.faces());
+        this.faceGeometryCache.clear();
 
         this.collections.clear();
-        if (state.collections() != null) this.collections.putAll(state.collections());
+        if (state.collections() != null) state.collections().forEach((k, v) -> this.collections.put(k, IdSet.of(v)));
 
         // 2. Animációk és klipek visszaállítása
         this.activeAnimations.clear();
@@ -266,6 +817,7 @@ public class WorldStateService {
 
         this.timelineClips.clear();
         if (state.clips() != null) this.timelineClips.addAll(state.clips());
+        recompileClips();
 
         // 3. KRITIKUS: ID Számláló (nextId) szinkronizálása!
         // Meg kell keresni a legnagyobb ID-t a visszaállított pontok között,
@@ -281,9 +833,26 @@ public class WorldStateService {
 
         System.out.println("State restored. Next ID set to: " + this.nextId.get());
     }
-    // Ezt add hozzá a WorldStateService.java-hoz:
-    public void restoreStateFromDb(WorldState state) {
+    // Betöltött projekt becserélése (a ProjectJobService háttér száláról): a parancs kötegekkel sorban fut,
+    // és csak a köteg végén zárul le, így az olvasók és a kliensek a régi vagy az új világot látják, félkészet
+    // nem; a végén egyetlen broadcast megy ki
+    // user: aki betöltötte (az ő Undo lépése és világ bélyege; a háttérszálon nincs futó parancs)
+    public void restoreStateFromDb(WorldState state, String user) {
+        try {
+            runAs(user, () -> {
+                swapInFromDb(withSortedPoints(state));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void swapInFromDb(WorldState state) {
         saveState(); // Elmentjük a jelenlegit az Undo stackbe, biztos ami biztos
+        touchWorld();
 
         this.points.clear();
         if (state.points() != null) this.points.addAll(state.points());
@@ -293,12 +862,14 @@ public class WorldStateService {
 
         this.faces.clear();
         if (state.faces() != null) this.faces.addAll(state.faces());
+        this.faceGeometryCache.clear();
 
         this.collections.clear();
-        if (state.collections() != null) this.collections.putAll(state.collections());
+        if (state.collections() != null) state.collections().forEach((k, v) -> this.collections.put(k, IdSet.of(v)));
 
         this.timelineClips.clear();
         if (state.clips() != null) this.timelineClips.addAll(state.clips());
+        recompileClips();
 
         this.currentTime = 0;
         this.isPlaying = false;
@@ -320,9 +891,36 @@ public class WorldStateService {
 
         broadcast();
     }
+    // Helyi snapshotból (újraindításkor): nincs undo bejegyzés.
+    // A snapshot utáni verziók (az utolsó mentés és az összeomlás között) is kimehettek a klienseknek, ezért a
+    // számozás nem a snapshot verziójától folytatódik, hanem egy órából számolt alsó korlát fölött
+    // (indulási idő ms * 1000): az előző futás ennél csak ezredmásodpercenként >1000 verziónál adhatott volna
+    // ki nagyobbat. Így a kliensek world-version értékei nem ütköznek (és JS számként is pontosak maradnak).
+    static final long VERSIONS_PER_MS = 1000;
+
+    public void restoreFromSnapshot(WorldState state, long snapshotVersion) {
+        try {
+            runDeferred(() -> {
+                restoreState(withSortedPoints(state));
+                this.currentTime = state.currentTime();
+                this.isPlaying = false;
+                long floor = Math.max(snapshotVersion, System.currentTimeMillis() * VERSIONS_PER_MS);
+                version.accumulateAndGet(floor, Math::max);
+                broadcast();
+                return null;
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public void addPoint(double x, double y, double z, String color) {
         saveState();
-        points.add(new Point3D(nextId.getAndIncrement(), x, y, z, (color == null || color.isEmpty()) ? "orange" : color));
+        int id = nextId.getAndIncrement();
+        points.add(new Point3D(id, x, y, z, (color == null || color.isEmpty()) ? "orange" : color));
+        touch(id);
         broadcast();
     }
 
@@ -333,25 +931,27 @@ public class WorldStateService {
 
     public boolean updatePoint(int id, double x, double y, double z) {
         if (Double.isNaN(x) || Double.isNaN(y) || Double.isNaN(z)) return false;
-        for (int i = 0; i < points.size(); i++) {
-            if (points.get(i).id() == id) {
-                points.set(i, new Point3D(id, x, y, z, points.get(i).color()));
-                // broadcast() itt nincs, mert a loop hívja, vagy a hívó fél
-                return true;
-            }
-        }
-        return false;
+        int i = indexOfPoint(id);
+        if (i < 0) return false;
+        if (points instanceof OffHeapList<Point3D> offHeap) offHeap.putDoubles(i, OffHeapCodecs.POINT_XYZ, x, y, z);
+        else points.set(i, new Point3D(id, x, y, z, points.get(i).colorIndex()));
+        faceGeometryCache.invalidatePoint(id);
+        mutationStarted(false, 1);
+        touch(id);
+        // broadcast() itt nincs, mert a loop hívja, vagy a hívó fél (vagy a köteg vége)
+        liveDirty = true;
+        return true;
     }
 
     public boolean updatePointColor(int id, String color) {
         saveState(); // <--- MENTÉS
-        for (int i = 0; i < points.size(); i++) {
-            if (points.get(i).id() == id) {
-                points.set(i, new Point3D(id, points.get(i).x(), points.get(i).y(), points.get(i).z(), color));
-                broadcast(); return true;
-            }
-        }
-        return false;
+        int i = indexOfPoint(id);
+        if (i < 0) return false;
+        Point3D p = points.get(i);
+        points.set(i, new Point3D(id, p.x(), p.y(), p.z(), color));
+        touch(id);
+        broadcast();
+        return true;
     }
 
     public void addConnection(int id1, int id2, String color, double thick) {
@@ -365,6 +965,7 @@ public class WorldStateService {
 
                 // Frissítjük a kapcsolatot az új adatokkal
                 connections.set(i, new Connection(id1, id2, color, thick, mat.name(), mat.pricePerMeter()));
+                touch(id1); touch(id2);
                 broadcast();
                 return;
             }
@@ -375,16 +976,83 @@ public class WorldStateService {
 
         // Hozzáadjuk a listához a kibővített adatokkal
         connections.add(new Connection(id1, id2, color, thick, mat.name(), mat.pricePerMeter()));
+        touch(id1); touch(id2);
         broadcast();
     }
 
-    public void addFace(List<Integer> ids, String color) { saveState(); faces.add(new Face(ids, color)); broadcast(); }
-    public void createCollection(String n, List<Integer> ids) { saveState(); collections.put(n, new ArrayList<>(ids)); broadcast(); }
+    // Generált / importált geometria betöltése egy lépésben: egy undo mentés, egy broadcast.
+    // A pontok nextId-től folytonos ID-t kapnak; visszaadja az első ID-t.
+    public int addGeneratedGeometry(ProceduralGenerator.Geometry g, String collectionName) {
+        saveState();
+        int n = g.pointCount;
+        int firstId = nextId.getAndAdd(n);
+
+        // Szín / anyag paletta index színenként egyszer, nem elemenként: {szín index, anyag index}
+        Map<String, Integer> pointPalette = new HashMap<>();
+        Map<String, int[]> edgePalette = new HashMap<>();
+
+        // A rekordok csak a tárolóba másoláskor jönnek létre (heapen kívüli tárolónál nincs köztes rekord lista)
+        List<Point3D> newPoints = new AbstractList<>() {
+            @Override
+            public Point3D get(int i) {
+                String color = (g.pointColors[i] == null || g.pointColors[i].isEmpty()) ? "orange" : g.pointColors[i];
+                return new Point3D(firstId + i, g.coords[3 * i], g.coords[3 * i + 1], g.coords[3 * i + 2],
+                        pointPalette.computeIfAbsent(color, Palette.COLORS::intern));
+            }
+
+            @Override
+            public int size() { return n; }
+        };
+
+        List<Connection> newConnections = new AbstractList<>() {
+            @Override
+            public Connection get(int e) {
+                int[] idx = edgePalette.computeIfAbsent(g.edgeColors[e], color -> {
+                    PricingService.MaterialInfo mat = pricingService.getMaterialByColor(color);
+                    return new int[]{Palette.COLORS.intern(color),
+                            Palette.MATERIALS.intern(new Palette.Material(mat.name(), mat.pricePerMeter()))};
+                });
+                return new Connection(firstId + g.edges[2 * e], firstId + g.edges[2 * e + 1], idx[0],
+                        g.edgeThickness[e], idx[1]);
+            }
+
+            @Override
+            public int size() { return g.edgeCount; }
+        };
+
+        List<Face> newFaces = new ArrayList<>(g.faceCount);
+        for (int f = 0; f < g.faceCount; f++) {
+            int from = g.faceOffsets[f], to = g.faceOffsets[f + 1];
+            List<Integer> ids = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) ids.add(firstId + g.faceIndices[i]);
+            newFaces.add(new Face(ids, g.faceColor));
+        }
+
+        // CopyOnWriteArrayList: az addAll csak egyszer másolja a tömböt
+        points.addAll(newPoints);
+        connections.addAll(newConnections);
+        if (!newFaces.isEmpty()) faces.addAll(newFaces);
+
+        if (collectionName != null && !collectionName.isEmpty()) {
+            if (n > 0) collections.computeIfAbsent(collectionName, k -> new IdSet()).addRange(firstId, firstId + n - 1);
+            touch(collectionName); // a tömegesen generált pontok egyenként nem kapnak bélyeget
+        }
+
+        broadcast();
+        return firstId;
+    }
+
+    public List<Connection> getConnections() { return share(connections); }
+
+    public void addFace(List<Integer> ids, String color) { saveState(); faces.add(new Face(ids, color)); ids.forEach(this::touch); broadcast(); }
+    public void createCollection(String n, List<Integer> ids) { createCollection(n, IdSet.of(ids)); }
+    public void createCollection(String n, IdSet ids) { saveState(); collections.put(n, ids.copy()); touch(n); broadcast(); }
 
     // ÚJ: Gyűjtemény törlése név alapján
     public boolean removeCollection(String name) {
         saveState(); // Undo-hoz mentés
         if (collections.remove(name) != null) {
+            forget(name);
             broadcast(); // Minden kliensnek szólunk
             return true;
         }
@@ -396,42 +1064,67 @@ public class WorldStateService {
         if (!collections.containsKey(oldName)) return false;
 
         saveState();
-        List<Integer> ids = collections.remove(oldName); // Kivesszük a régit
+        IdSet ids = collections.remove(oldName); // Kivesszük a régit
         collections.put(newName, ids); // Betesszük az újat
+        forget(oldName); touch(newName);
 
         broadcast();
         return true;
     }
-    public int addToCollection(String n, List<Integer> ids) {
+    public int addToCollection(String n, List<Integer> ids) { return addToCollection(n, IdSet.of(ids)); }
+
+    public int addToCollection(String n, IdSet ids) {
         saveState();
-        collections.putIfAbsent(n, new ArrayList<>());
-        List<Integer> list = collections.get(n);
-        int c=0;
-        for(Integer id : ids) {
-            // JAVÍTVA: Integer.valueOf(id)
-            if(!list.contains(Integer.valueOf(id))) {
-                list.add(Integer.valueOf(id));
-                c++;
-            }
-        }
+        int c = collections.computeIfAbsent(n, k -> new IdSet()).addAll(ids);
+        touch(n);
         broadcast(); return c;
     }
 
-    public int removeFromCollection(String n, List<Integer> ids) {
+    public int removeFromCollection(String n, List<Integer> ids) { return removeFromCollection(n, IdSet.of(ids)); }
+
+    public int removeFromCollection(String n, IdSet ids) {
         saveState();
-        if(!collections.containsKey(n)) return 0;
-        int c=0;
-        for(Integer id : ids) {
-            // JAVÍTVA: Integer.valueOf(id)
-            if(collections.get(n).remove(Integer.valueOf(id))) c++;
-        }
+        IdSet set = collections.get(n);
+        if(set == null) return 0;
+        int c = set.removeAll(ids);
+        touch(n);
         broadcast(); return c;
     }
 
+    public enum SetOperation { UNION, INTERSECTION, DIFFERENCE }
+
+    // Halmazművelet gyűjteményeken: target = a (op) b (op) c ...
+    // Visszaadja az eredmény méretét, vagy -1-et, ha valamelyik forrás nem létezik.
+    public int combineCollections(String target, SetOperation op, List<String> sources) {
+        if (sources.isEmpty()) return -1;
+        List<IdSet> sets = new ArrayList<>(sources.size());
+        for (String name : sources) {
+            IdSet set = collections.get(name);
+            if (set == null) return -1;
+            sets.add(set);
+        }
+
+        IdSet result = sets.get(0).copy();
+        for (int i = 1; i < sets.size(); i++) {
+            switch (op) {
+                case UNION: result.addAll(sets.get(i)); break;
+                case INTERSECTION: result.retainAll(sets.get(i)); break;
+                case DIFFERENCE: result.removeAll(sets.get(i)); break;
+            }
+        }
+
+        saveState();
+        collections.put(target, result);
+        touch(target);
+        broadcast();
+        return result.size();
+    }
+
     public boolean moveCollection(String name, String axis, double amount) {
         saveState();
-        List<Integer> ids = collections.get(name);
-        if(ids==null) return false;
+        IdSet set = collections.get(name);
+        if(set==null) return false;
+        List<Integer> ids = set.toList();
         boolean moved = false;
         for(Integer id : ids) {
             Point3D p = getPoint(id);
@@ -447,29 +1140,49 @@ public class WorldStateService {
     public boolean deletePoint(int id) {
         saveState();
         if(points.removeIf(p->p.id()==id)) {
-            connections.removeIf(c->c.fromId()==id||c.toId()==id);
+            forget(id);
+            connections.removeIf(c -> {
+                if (c.fromId() != id && c.toId() != id) return false;
+                touch(c.fromId() == id ? c.toId() : c.fromId()); // a szomszéd rúdja is eltűnt
+                return true;
+            });
 
             faces.removeIf(f -> f.pointIds().contains(Integer.valueOf(id)));
+            faceGeometryCache.invalidatePoint(id);
 
-            collections.values().forEach(l->l.remove(Integer.valueOf(id)));
+            collections.forEach((name, s) -> { if (s.remove(id)) touch(name); });
             stopAnimation(id);
             broadcast(); return true;
         } return false;
     }
 
-    public boolean deleteConnection(int id1, int id2) { saveState(); if(connections.removeIf(c->(c.fromId()==id1 && c.toId()==id2) || (c.fromId()==id2 && c.toId()==id1))) { broadcast(); return true; } return false; }
-    public boolean deleteFace(List<Integer> ids) { saveState(); Set<Integer> s = new HashSet<>(ids); if(faces.removeIf(f->new HashSet<>(f.pointIds()).equals(s))) { broadcast(); return true; } return false; }
+    public boolean deleteConnection(int id1, int id2) { saveState(); if(connections.removeIf(c->(c.fromId()==id1 && c.toId()==id2) || (c.fromId()==id2 && c.toId()==id1))) { touch(id1); touch(id2); broadcast(); return true; } return false; }
+    public boolean deleteFace(List<Integer> ids) {
+        saveState();
+        Set<Integer> s = new HashSet<>(ids);
+        List<Face> removed = new ArrayList<>();
+        for (Face f : faces) if (new HashSet<>(f.pointIds()).equals(s)) removed.add(f);
+        if (removed.isEmpty()) return false;
+        faces.removeAll(removed);
+        removed.forEach(faceGeometryCache::remove);
+        ids.forEach(this::touch);
+        broadcast();
+        return true;
+    }
 
     public void clear() {
         saveState();
         points.clear(); connections.clear(); faces.clear(); collections.clear();
+        faceGeometryCache.clear();
+        touchWorld();
         activeAnimations.clear(); activeRotationAnims.clear();
         nextId.set(0);
         broadcast();
     }
 
     public int startCollectionAnimation(String n, double dx, double dy, double dz, double s) {
-        List<Integer> ids=collections.get(n); if(ids==null)return 0;
+        IdSet set=collections.get(n); if(set==null)return 0;
+        List<Integer> ids=set.toList();
         int c=0;
         for(Integer id : ids){
             if(startAnimation(id, getPoint(id).x()+dx, getPoint(id).y()+dy, getPoint(id).z()+dz, s)) c++;
@@ -520,21 +1233,122 @@ public class WorldStateService {
         return count;
     }
 
-    public int stopCollectionAnimation(String n) { List<Integer> ids=collections.get(n); if(ids==null) return 0; int c=0; for(int id:ids) if(stopAnimation(id)) c++; return c; }
+    public int stopCollectionAnimation(String n) { IdSet set=collections.get(n); if(set==null) return 0; int c=0; for(int id:set.toArray()) if(stopAnimation(id)) c++; return c; }
+
+    public long getVersion() { return version.get(); }
+    // A következő kiosztandó pont ID (az eddigi ID-k mind ez alatt vannak)
+    public int getNextId() { return nextId.get(); }
+    public double getMaxTime() { return maxTime; }
+
+    // A lefordított klipek pillanatképe (a tömb sosem módosul helyben, csak cserélődik)
+    ClipEvaluator[] getCompiledClips() { return compiledClips; }
+
+    // ==========================
+    // LAP GEOMETRIA (gyorsítótárból)
+    // ==========================
+
+    public FaceGeometry getFaceGeometry(Face face) {
+        return faceGeometryCache.get(face, this::getPoint);
+    }
+
+    // A megadott lapok geometriája (ugyanabban a sorrendben, hiányzó pontnál null).
+    // A pontlistát csak akkor indexeljük, ha tényleg van számolandó lap.
+    public List<FaceGeometry> getFaceGeometries(List<Face> faceList, List<Point3D> pointList) {
+        Map<Integer, Point3D> byId = new HashMap<>();
+        IntFunction<Point3D> lookup = id -> {
+            if (byId.isEmpty()) for (Point3D p : pointList) byId.put(p.id(), p);
+            return byId.get(id);
+        };
+        List<FaceGeometry> result = new ArrayList<>(faceList.size());
+        for (Face f : faceList) result.add(faceGeometryCache.get(f, lookup));
+        return result;
+    }
+
+    // Az utoljára kiküldött állapot; induláskor (még nem volt broadcast) az aktuális állapot 0-s verzióval
+    public VersionedState getPublishedState() {
+        VersionedState last = lastPublished;
+        return last != null ? last : new VersionedState(0, getWorldState());
+    }
+
+    // ID -> index bináris kereséssel (lásd indexOfPoint); az ellenőrzés a párhuzamos írás miatt eltolódott indexre kell
+    public Point3D getPoint(int id) {
+        try {
+            int index = indexOfPoint(id);
+            Point3D p = index >= 0 ? points.get(index) : null;
+            return p != null && p.id() == id ? p : null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
 
-    public Point3D getPoint(int id) { return points.stream().filter(p -> p.id() == id).findFirst().orElse(null); }
+    // Több pont lekérése egy bejárással (a megadott ID-k sorrendjében, a hiányzók kimaradnak)
+    public List<Point3D> getPoints(Collection<Integer> ids) {
+        Map<Integer, Point3D> byId = new HashMap<>(ids.size() * 2);
+        Set<Integer> wanted = new HashSet<>(ids);
+        for (Point3D p : points) {
+            if (wanted.contains(p.id())) byId.put(p.id(), p);
+        }
+        List<Point3D> result = new ArrayList<>(byId.size());
+        for (Integer id : ids) {
+            Point3D p = byId.get(id);
+            if (p != null) result.add(p);
+        }
+        return result;
+    }
+    // Zár és másolás nélkül: az utolsó lezárt pillanatkép. A köteget futtató szál a saját, még le nem zárt
+    // változásait is látja (pl. egy Script-en belüli Solve az előző sorok pontjait).
     public WorldState getWorldState() {
+        return batchOwner == Thread.currentThread() ? snapshotLive() : current;
+    }
+
+    // Lezárás: az élő tárolók pillanatképe lesz a közzétett állapot. A kötegekkel sorban fut, így nem
+    // kerülhet ki egy félig lefutott köteg (pl. törölt pont, de még meglévő rúd). Változást csak a broadcast
+    // zár le (verzió léptetéssel); a kötegek vége liveDirty esetén ezért broadcastot hív, nem csak commit-ot.
+    private void commit() {
+        synchronized (batchLock) {
+            liveDirty = false;
+            WorldState state = snapshotLive();
+            history.close(state);
+            // A bélyegek a lezárt állapottal párban várnak a következő broadcast verziójára
+            synchronized (publishLock) {
+                current = state;
+                versions.commit();
+            }
+        }
+    }
+
+    // Az élő tárolók változtathatatlan nézete, elemenkénti másolás nélkül: a CopyOnWriteArrayList klónja a
+    // belső tömböt osztja meg (azt az író sosem módosítja, csak lecseréli), a heapen kívüli lista a darabjait
+    private WorldState snapshotLive() {
+        TraceEvents.StateCopy event = new TraceEvents.StateCopy();
+        event.begin();
         WorldState worldState = new WorldState(
-                new ArrayList<>(points),
-                new ArrayList<>(connections),
-                new ArrayList<>(faces),
-                new HashMap<>(collections),
+                share(points),
+                share(connections),
+                share(faces),
+                shareCollections(),
                 this.currentTime,
                 this.isPlaying,
-                new ArrayList<>(timelineClips) // <--- 7. paraméter: A klipek listája
+                share(timelineClips) // <--- 7. paraméter: A klipek listája
         );
+        event.end();
+        if (event.shouldCommit()) {
+            event.points = worldState.points().size();
+            event.connections = worldState.connections().size();
+            event.faces = worldState.faces().size();
+            event.clips = worldState.clips().size();
+            event.offHeap = points instanceof OffHeapList;
+            event.commit();
+        }
         return worldState;
     }
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> share(List<T> list) {
+        if (list instanceof OffHeapList<T> offHeap) return offHeap.freeze();
+        if (list instanceof CopyOnWriteArrayList<T> cow) return Collections.unmodifiableList((List<T>) cow.clone());
+        return List.copyOf(list);
+    }
+
     private static class AnimationData {
         double startX, startY, startZ, targetX, targetY, targetZ, speed, progress=0.0; boolean movingForward=true;
         public AnimationData(Point3D p, double tx, double ty, double tz, double s) { startX=p.x(); startY=p.y(); startZ=p.z(); targetX=tx; targetY=ty; targetZ=tz; speed=s; }
@@ -553,10 +1367,36 @@ public class WorldStateService {
     }
 
     public List<Integer> getCollectionIds(String name) {
-        if (collections.containsKey(name)) {
-            return new ArrayList<>(collections.get(name));
+        IdSet set = collections.get(name);
+        return set != null ? set.toList() : null;
+    }
+
+    // Bitmap másolat (null, ha nincs ilyen gyűjtemény)
+    public IdSet getCollection(String name) {
+        IdSet set = collections.get(name);
+        return set != null ? set.copy() : null;
+    }
+
+    // Csak a megváltozott halmazok listája készül újra; ha egyik sem változott, az előző térkép marad
+    private synchronized Map<String, List<Integer>> shareCollections() {
+        Map<String, FrozenCollection> previous = frozenCollections;
+        Map<String, FrozenCollection> next = new HashMap<>(collections.size() * 2);
+        boolean changed = previous.size() != collections.size();
+        for (Map.Entry<String, IdSet> e : collections.entrySet()) {
+            IdSet set = e.getValue();
+            FrozenCollection f = previous.get(e.getKey());
+            if (f == null || f.set() != set || f.modCount() != set.modCount()) {
+                f = new FrozenCollection(set, set.modCount(), Collections.unmodifiableList(set.toList()));
+                changed = true;
+            }
+            next.put(e.getKey(), f);
         }
-        return null;
+        if (!changed) return frozenCollectionView;
+        Map<String, List<Integer>> view = new HashMap<>(next.size() * 2);
+        next.forEach((k, f) -> view.put(k, f.ids()));
+        frozenCollections = next;
+        frozenCollectionView = Collections.unmodifiableMap(view);
+        return frozenCollectionView;
     }
 
     public int startGroupRotationAnim(List<Integer> ids, String axis, double speed, double px, double py, double pz) {
@@ -584,6 +1424,11 @@ public class WorldStateService {
         public double endTime;
         public double sx, sy, sz;
         public double ex, ey, ez;
+        public String easing = "LINEAR";
+        // ROTATE / SCALE: pivot és a célpont kiinduló pozíciója
+        public double px, py, pz;
+        public double bx, by, bz;
+        public boolean hasBase;
 
         public TimelineClip() {
             // A MongoDB-nek szüksége van erre!
@@ -602,6 +1447,19 @@ public class WorldStateService {
             this.sx = sx; this.sy = sy; this.sz = sz;
             this.ex = ex; this.ey = ey; this.ez = ez;
         }
+
+        public TimelineClip copy() {
+            TimelineClip c = new TimelineClip();
+            c.id = id; c.name = name; c.targetId = targetId; c.type = type;
+            c.startTime = startTime; c.endTime = endTime;
+            c.sx = sx; c.sy = sy; c.sz = sz;
+            c.ex = ex; c.ey = ey; c.ez = ez;
+            c.easing = easing;
+            c.px = px; c.py = py; c.pz = pz;
+            c.bx = bx; c.by = by; c.bz = bz;
+            c.hasBase = hasBase;
+            return c;
+        }
     }
 
     // ==========================
@@ -611,10 +1469,12 @@ public class WorldStateService {
     public void play() {
         this.isPlaying = true;
         this.lastLoopTime = System.currentTimeMillis();
+        liveDirty = true;
     }
 
     public void pause() {
         this.isPlaying = false;
+        liveDirty = true;
     }
 
     public void stop() {
@@ -635,15 +1495,33 @@ public class WorldStateService {
     }
 
     public void addClip(int targetId, String type, double start, double end, double tx, double ty, double tz, String name) {
+        Point3D p = getPoint(targetId);
+        if (p == null) return;
+        addClip(targetId, type, start, end, tx, ty, tz, name, Easing.LINEAR, p.x(), p.y(), p.z());
+    }
+
+    // MOVE: (tx,ty,tz) a célpozíció.
+    // ROTATE: (tx,ty,tz) a végső szögek fokban X/Y/Z körül, a (px,py,pz) pivot körül.
+    // SCALE: (tx,ty,tz) a végső szorzók tengelyenként, a (px,py,pz) pivothoz képest.
+    public void addClip(int targetId, String type, double start, double end, double tx, double ty, double tz,
+                        String name, Easing easing, double px, double py, double pz) {
         saveState();
         Point3D p = getPoint(targetId);
         if (p == null) return;
 
         double sx = p.x(), sy = p.y(), sz = p.z();
-        if (type.startsWith("ROTATE")) { sx=0; sy=0; sz=0; }
+        String upper = type.trim().toUpperCase();
+        if (upper.startsWith("ROTATE")) { sx=0; sy=0; sz=0; }
+        if (upper.startsWith("SCALE")) { sx=1; sy=1; sz=1; }
 
         // Átadjuk a nevet a konstruktornak
-        timelineClips.add(new TimelineClip(name, targetId, type, start, end, sx, sy, sz, tx, ty, tz));
+        TimelineClip clip = new TimelineClip(name, targetId, type, start, end, sx, sy, sz, tx, ty, tz);
+        clip.easing = (easing == null ? Easing.LINEAR : easing).name();
+        clip.px = px; clip.py = py; clip.pz = pz;
+        clip.bx = p.x(); clip.by = p.y(); clip.bz = p.z();
+        clip.hasBase = true;
+        timelineClips.add(clip);
+        appendCompiledClip(clip);
 
         if (end > maxTime) maxTime = end + 5.0;
         broadcast();
@@ -653,9 +1531,12 @@ public class WorldStateService {
                                 double sx, double sy, double sz,
                                 double ex, double ey, double ez) {
         saveState();
-        timelineClips.add(new TimelineClip("", targetId, type, start, end, sx, sy, sz, ex, ey, ez));
+        TimelineClip clip = new TimelineClip("", targetId, type, start, end, sx, sy, sz, ex, ey, ez);
+        timelineClips.add(clip);
+        appendCompiledClip(clip);
 
         if (end > maxTime) maxTime = end + 5.0;
+        liveDirty = true;
     }
 
     public int deleteClip(String name) {
@@ -667,23 +1548,34 @@ public class WorldStateService {
         int deletedCount = prevSize - timelineClips.size();
 
         if (deletedCount > 0) {
+            recompileClips();
             broadcast();
         }
         return deletedCount;
     }
     public boolean updateClip(String clipId, String newName, double newStart, double newEnd) {
+        return updateClip(clipId, newName, newStart, newEnd, null);
+    }
+
+    // easing == null esetén az időgörbe nem változik
+    public boolean updateClip(String clipId, String newName, double newStart, double newEnd, Easing easing) {
 
         boolean found = timelineClips.stream().anyMatch(c -> c.id.equals(clipId));
         if(found) saveState();
 
-        for (TimelineClip clip : timelineClips) {
-            if (clip.id.equals(clipId)) {
+        for (int i = 0; i < timelineClips.size(); i++) {
+            if (timelineClips.get(i).id.equals(clipId)) {
                 if (newStart < 0) newStart = 0;
                 if (newEnd <= newStart) newEnd = newStart + 0.1;
 
+                // Másolaton módosítunk: a korábbi pillanatképek (undo, mentés alatt álló világ) klipjei nem változnak
+                TimelineClip clip = timelineClips.get(i).copy();
                 clip.name = newName;
                 clip.startTime = newStart;
                 clip.endTime = newEnd;
+                if (easing != null) clip.easing = easing.name();
+                timelineClips.set(i, clip);
+                replaceCompiledClip(clip);
 
                 if (newEnd > maxTime) maxTime = newEnd + 5.0;
 
@@ -702,6 +1594,7 @@ public class WorldStateService {
         boolean removed = timelineClips.removeIf(c -> c.id.equals(id));
 
         if (removed) {
+            recompileClips();
             broadcast(); // Frissítjük a klienst
         } else {
             System.out.println("Warning: Clip with ID " + id + " not found.");
@@ -0,0 +1,141 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private static WorldState sampleWorld() {
+        List<Point3D> points = List.of(
+                new Point3D(0, 0, 0, 0, "#ff0000"),
+                new Point3D(1, 1.5, -2.25, 3, "#00ff00"),
+                new Point3D(7, 1e-9, 1e9, -0.0, "#ff0000"));
+        List<Connection> connections = List.of(
+                new Connection(0, 1, "#ffffff", 0.5, "Steel", 12.5),
+                new Connection(1, 7, "#ff0000", 1.0, null, 0));
+        List<Face> faces = List.of(new Face(List.of(0, 1, 7), "#0000ff"));
+        Map<String, List<Integer>> collections = new LinkedHashMap<>();
+        collections.put("frame", List.of(7, 0, 1));
+        collections.put("empty", List.of());
+        WorldStateService.TimelineClip clip = new WorldStateService.TimelineClip("lift", 1, "MOVE", 0.5, 2.5, 1.5, -2.25, 3, 1.5, 4, 3);
+        clip.easing = "EASE_IN_OUT";
+        return new WorldState(points, connections, faces, collections, 1.25, false, List.of(clip));
+    }
+
+    private static void assertSameWorld(WorldState expected, WorldState actual) {
+        assertEquals(expected.points(), actual.points());
+        assertEquals(expected.points().get(1).color(), actual.points().get(1).color());
+        assertEquals(expected.connections().size(), actual.connections().size());
+        for (int i = 0; i < expected.connections().size(); i++) {
+            Connection e = expected.connections().get(i), a = actual.connections().get(i);
+            assertEquals(e.fromId(), a.fromId());
+            assertEquals(e.toId(), a.toId());
+            assertEquals(e.color(), a.color());
+            assertEquals(e.thickness(), a.thickness());
+            assertEquals(e.materialName(), a.materialName());
+            assertEquals(e.pricePerMeter(), a.pricePerMeter());
+        }
+        assertEquals(expected.faces().get(0).pointIds(), actual.faces().get(0).pointIds());
+        assertEquals(expected.faces().get(0).color(), actual.faces().get(0).color());
+        assertEquals(expected.collections(), actual.collections());
+        assertEquals(List.copyOf(expected.collections().keySet()), List.copyOf(actual.collections().keySet()));
+        assertEquals(expected.currentTime(), actual.currentTime());
+        assertEquals(1, actual.clips().size());
+        WorldStateService.TimelineClip e = expected.clips().get(0), a = actual.clips().get(0);
+        assertEquals(e.id, a.id);
+        assertEquals(e.name, a.name);
+        assertEquals(e.type, a.type);
+        assertEquals(e.targetId, a.targetId);
+        assertEquals(e.easing, a.easing);
+        assertEquals(e.startTime, a.startTime);
+        assertEquals(e.endTime, a.endTime);
+        assertEquals(e.ey, a.ey);
+    }
+
+    @Test
+    void fileRoundTripKeepsWorldAndHeader() throws IOException {
+        Path file = dir.resolve("world.snap");
+        WorldState world = sampleWorld();
+        long bytes = ColumnarSnapshot.write(file, world, 42);
+        assertEquals(Files.size(file), bytes);
+
+        ColumnarSnapshot.Loaded loaded = ColumnarSnapshot.read(file);
+        assertEquals(42, loaded.worldVersion());
+        assertEquals(bytes, loaded.bytes());
+        assertSameWorld(world, loaded.state());
+    }
+
+    @Test
+    void encodedBodyRoundTripsThroughCompression() {
+        WorldState world = sampleWorld();
+        byte[] raw = ColumnarSnapshot.encode(world);
+        byte[] packed = ColumnarSnapshot.compress(raw);
+        assertArrayEquals(raw, ColumnarSnapshot.decompress(packed, raw.length));
+        assertSameWorld(world, ColumnarSnapshot.decode(raw));
+    }
+
+    @Test
+    void emptyWorldRoundTrips() throws IOException {
+        Path file = dir.resolve("empty.snap");
+        WorldState empty = new WorldState(List.of(), List.of(), List.of(), Map.of(), 0, false, List.of());
+        ColumnarSnapshot.write(file, empty, 0);
+        WorldState back = ColumnarSnapshot.read(file).state();
+        assertTrue(back.points().isEmpty());
+        assertTrue(back.clips().isEmpty());
+    }
+
+    @Test
+    void corruptedBodyFailsChecksum() throws IOException {
+        Path file = dir.resolve("corrupt.snap");
+        long bytes = ColumnarSnapshot.write(file, sampleWorld(), 1);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            long at = bytes - 9;
+            ch.read(one, at);
+            one.put(0, (byte) (one.get(0) ^ 0x5A)).rewind();
+            ch.write(one, at);
+        }
+        IOException e = assertThrows(IOException.class, () -> ColumnarSnapshot.read(file));
+        assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+    }
+
+    @Test
+    void truncatedFileIsRejected() throws IOException {
+        Path file = dir.resolve("short.snap");
+        long bytes = ColumnarSnapshot.write(file, sampleWorld(), 1);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(bytes - 4);
+        }
+        IOException e = assertThrows(IOException.class, () -> ColumnarSnapshot.read(file));
+        assertTrue(e.getMessage().contains("Truncated"), e.getMessage());
+    }
+
+    @Test
+    void foreignFileIsRejected() throws IOException {
+        Path file = dir.resolve("other.snap");
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> ColumnarSnapshot.read(file));
+    }
+
+    @Test
+    void corruptCompressedChunkIsRejected() {
+        byte[] raw = ColumnarSnapshot.encode(sampleWorld());
+        byte[] packed = ColumnarSnapshot.compress(raw);
+        assertThrows(IllegalStateException.class, () -> ColumnarSnapshot.decompress(packed, raw.length + 1));
+    }
+}
@@ -0,0 +1,115 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandScriptTest {
+
+    private final List<String> executed = new ArrayList<>();
+    private final CommandScript.Executor recorder = command -> {
+        executed.add(command);
+        return "ok";
+    };
+
+    private int run(String source) throws CommandScript.ScriptException {
+        Map<String, CommandScript.Macro> macros = new HashMap<>();
+        return CommandScript.compile(source, macros).run(recorder, macros);
+    }
+
+    @Test
+    void expandsLoopsVariablesAndExpressions() throws Exception {
+        int count = run("""
+                let h = 0.5
+                for i in 0..2 { AddPoint({i}, {i*h}, {max(i, 1)}) }
+                Connect(p{1+1}, p{2^3})
+                """);
+        assertEquals(4, count);
+        assertEquals(List.of("AddPoint(0, 0, 1)", "AddPoint(1, 0.5, 1)", "AddPoint(2, 1, 2)", "Connect(p2, p8)"), executed);
+    }
+
+    @Test
+    void semicolonsAndNegativeStep() throws Exception {
+        run("for i in 3..1 step -1 { Move(p{i}, 0, 0, 0) }; Play");
+        assertEquals(List.of("Move(p3, 0, 0, 0)", "Move(p2, 0, 0, 0)", "Move(p1, 0, 0, 0)", "Play"), executed);
+    }
+
+    @Test
+    void macrosTakeArgumentsAndSeeCallerVariables() throws Exception {
+        run("""
+                let z = 7
+                macro Step(i) { AddPoint({i}, {i*2}, {z}) }
+                for i in 0..1 { Step(i + 10) }
+                """);
+        assertEquals(List.of("AddPoint(10, 20, 7)", "AddPoint(11, 22, 7)"), executed);
+    }
+
+    @Test
+    void topLevelMacroCallUsesGivenArguments() throws Exception {
+        Map<String, CommandScript.Macro> macros = new HashMap<>();
+        CommandScript.Macro macro = CommandScript.compileMacro("Stairs(n, h) { for i in 0..n-1 { AddPoint({i}, {i*h}, 0) } }", macros);
+        assertEquals(List.of("n", "h"), macro.params());
+        int count = CommandScript.call(macro, CommandScript.evalArgs("3, 0.25"), recorder, macros);
+        assertEquals(3, count);
+        assertEquals("AddPoint(2, 0.5, 0)", executed.get(2));
+    }
+
+    @Test
+    void failingCommandStopsTheScriptWithLine() {
+        CommandScript.Executor failing = command -> command.startsWith("Connect") ? "Error Connect: missing point" : "ok";
+        CommandScript.ScriptException e = assertThrows(CommandScript.ScriptException.class, () -> {
+            Map<String, CommandScript.Macro> macros = new HashMap<>();
+            CommandScript.compile("AddPoint(0, 0, 0)\nConnect(p0, p9)\nAddPoint(1, 0, 0)", macros).run(failing, macros);
+        });
+        assertTrue(e.getMessage().startsWith("line 2: "), e.getMessage());
+    }
+
+    @Test
+    void runawayRecursionIsLimited() {
+        CommandScript.ScriptException e = assertThrows(CommandScript.ScriptException.class,
+                () -> run("macro Loop(i) { Loop(i + 1) }\nLoop(0)"));
+        assertTrue(e.getMessage().contains("too deep"), e.getMessage());
+    }
+
+    @Test
+    void rejectsMalformedScripts() {
+        assertThrows(CommandScript.ScriptException.class, () -> run("for i in 0..3 step 0 { Play }"));
+        assertThrows(CommandScript.ScriptException.class, () -> run("for i in 0..3 { Play"));
+        assertThrows(CommandScript.ScriptException.class, () -> run("AddPoint({x}, 0, 0)"));
+        assertThrows(CommandScript.ScriptException.class, () -> run("Script { Play }"));
+        assertTrue(executed.isEmpty());
+    }
+
+    @Test
+    void rejectsCommandsThatCannotBeRolledBack() {
+        for (String command : List.of("Undo", "redo", "Clear", "SaveProject(a)", "LoadProject(a)")) {
+            CommandScript.ScriptException e = assertThrows(CommandScript.ScriptException.class, () -> run("Play\n" + command));
+            assertTrue(e.getMessage().contains("cannot run inside"), e.getMessage());
+        }
+        assertTrue(executed.isEmpty(), "compile errors must not run anything");
+        assertNull(CommandScript.nonTransactional("ClearSupports"));
+        assertEquals("Undo", CommandScript.nonTransactional(" Undo"));
+    }
+
+    @Test
+    void recognisesReadOnlyAnalyses() {
+        assertTrue(CommandScript.isAnalysis("Analyze"));
+        assertTrue(CommandScript.isAnalysis(" CutList(improve=500)"));
+        assertTrue(CommandScript.isAnalysis("CheckCollisions(0, 10)"));
+        assertFalse(CommandScript.isAnalysis("Collisions(on)"));
+        assertFalse(CommandScript.isAnalysis("Script { Analyze }"));
+    }
+
+    @Test
+    void macroNamesCannotShadowBuiltIns() {
+        assertThrows(CommandScript.ScriptException.class, () -> run("macro Move(i) { Play }"));
+        assertThrows(CommandScript.ScriptException.class,
+                () -> CommandScript.compileMacro("addpoint(x) { Play }", new HashMap<>()));
+        assertDoesNotThrow(() -> CommandScript.compileMacro("MoveAll(x) { Play }", new HashMap<>()));
+    }
+}
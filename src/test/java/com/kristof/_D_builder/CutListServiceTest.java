@@ -0,0 +1,102 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CutListServiceTest {
+
+    private final SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> true);
+    private final WorldStateService world = new WorldStateService(template, new PricingService(), new ViewSubscriptionService(template));
+    private final CutListService cutList = new CutListService(world, new PricingService());
+
+    private int row = 0;
+
+    // Egy rúd a megadott hosszal, saját végpontokkal (Standard Acélrúd, 6 m-es szál)
+    private void member(double length) {
+        int a = world.getNextId();
+        world.addPoint(0, row, 0, "red");
+        world.addPoint(length, row, 0, "red");
+        world.addConnection(a, a + 1, "#ffffff", 1);
+        row++;
+    }
+
+    private CutListService.MaterialPlan plan(double kerf, long improveMillis, Double stock) {
+        CutListService.CutListResult result = cutList.optimize(new CutListService.Options(kerf, improveMillis, stock));
+        assertEquals(1, result.materials().size());
+        return result.materials().get(0);
+    }
+
+    @Test
+    void everyPieceIsPlacedOnceAndNoBarOverflows() {
+        Random random = new Random(11);
+        Map<Integer, Double> lengths = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            double length = Math.round((0.2 + random.nextDouble() * 3) * 1000) / 1000.0;
+            lengths.put(world.getNextId(), length);
+            member(length);
+        }
+        double kerf = 0.004;
+        CutListService.MaterialPlan plan = plan(kerf, 200, null);
+
+        Map<Integer, Integer> placed = new HashMap<>();
+        for (CutListService.BarPlan bar : plan.plan()) {
+            double used = 0;
+            for (CutListService.Cut cut : bar.cuts()) {
+                assertEquals(1, cut.parts());
+                placed.merge(cut.fromId(), 1, Integer::sum);
+                assertEquals(lengths.get(cut.fromId()), cut.length(), 1e-6);
+                used += cut.length();
+            }
+            // Darabok + a köztük lévő fűrészrések elférnek a szálban
+            assertTrue(used + (bar.cuts().size() - 1) * kerf <= plan.stockLength() + 1e-9, "bar " + bar.bar());
+            assertTrue(bar.offcut() >= -1e-9);
+        }
+        assertEquals(lengths.keySet(), placed.keySet());
+        assertTrue(placed.values().stream().allMatch(c -> c == 1));
+        assertEquals(300, plan.pieces());
+        assertTrue(plan.bars() >= plan.lowerBound());
+    }
+
+    @Test
+    void kerfKeepsTwoHalvesOnSeparateBars() {
+        member(3);
+        member(3);
+        assertEquals(1, plan(0, 0, null).bars());
+        assertEquals(2, plan(0.005, 0, null).bars());
+    }
+
+    @Test
+    void improveReachesTheLowerBound() {
+        // 10 m-es szálon {4,4,3,3,3,3}: FFD / BFD 3 szálat ad, az optimum {4,3,3} + {4,3,3} = 2
+        for (double length : new double[]{4, 4, 3, 3, 3, 3}) member(length);
+        CutListService.MaterialPlan greedy = plan(0, 0, 10.0);
+        assertEquals(2, greedy.lowerBound());
+        assertEquals(3, greedy.bars());
+
+        CutListService.MaterialPlan improved = plan(0, 5000, 10.0);
+        assertEquals(2, improved.bars());
+        assertEquals(improved.lowerBound(), improved.bars());
+        assertTrue(improved.method().endsWith("+improve"), improved.method());
+        assertEquals(0, improved.waste(), 1e-9);
+    }
+
+    @Test
+    void memberLongerThanStockIsSplit() {
+        member(14);
+        CutListService.MaterialPlan plan = plan(0, 0, null);
+        assertEquals(3, plan.pieces());
+        assertEquals(3, plan.bars());
+
+        List<CutListService.Cut> cuts = plan.plan().stream().flatMap(b -> b.cuts().stream()).toList();
+        assertEquals(List.of(1, 2, 3), cuts.stream().map(CutListService.Cut::part).sorted().toList());
+        assertTrue(cuts.stream().allMatch(c -> c.parts() == 3 && c.length() <= plan.stockLength()));
+        assertEquals(14, cuts.stream().mapToDouble(CutListService.Cut::length).sum(), 1e-6);
+    }
+}
@@ -0,0 +1,129 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdSetTest {
+
+    @Test
+    void keepsInsertionOrderAndDropsDuplicates() {
+        IdSet set = IdSet.of(List.of(5, 2, 9, 2, 5, 7));
+        assertEquals(List.of(5, 2, 9, 7), set.toList());
+        assertArrayEquals(new int[]{5, 2, 9, 7}, set.toArray());
+        assertEquals(4, set.size());
+    }
+
+    @Test
+    void ascendingInsertsStayInBitmapOrder() {
+        IdSet set = new IdSet();
+        set.addRange(10, 20);
+        set.add(25);
+        set.addRange(30, 32);
+        assertEquals(15, set.size());
+        assertEquals(10, set.toList().get(0));
+        assertEquals(32, set.toList().get(14));
+    }
+
+    @Test
+    void outOfOrderInsertAfterRangeIsAppended() {
+        IdSet set = new IdSet();
+        set.addRange(10, 12);
+        set.add(3);
+        set.addRange(2, 0);
+        assertEquals(List.of(10, 11, 12, 3, 2, 1, 0), set.toList());
+    }
+
+    @Test
+    void removeKeepsOrderOfTheRest() {
+        IdSet set = IdSet.of(List.of(8, 1, 4, 6));
+        assertTrue(set.remove(1));
+        assertFalse(set.remove(1));
+        assertEquals(List.of(8, 4, 6), set.toList());
+        set.add(1);
+        assertEquals(List.of(8, 4, 6, 1), set.toList());
+    }
+
+    @Test
+    void reAddedIdMovesToTheEndWithoutListingInBetween() {
+        IdSet set = IdSet.of(List.of(8, 1, 4, 6));
+        set.remove(1);
+        set.remove(4);
+        set.add(1);
+        set.remove(6);
+        set.add(4);
+        set.add(6);
+        assertEquals(List.of(8, 1, 4, 6), set.toList());
+        assertEquals(4, set.size());
+        assertEquals(List.of(8, 1, 4, 6), set.copy().toList());
+    }
+
+    @Test
+    void removingManyOutOfOrderIdsStaysLinear() {
+        IdSet set = new IdSet();
+        int n = 200_000;
+        for (int id = n - 1; id >= 0; id--) set.add(id);
+        long t0 = System.nanoTime();
+        for (int id = 0; id < n; id += 2) set.remove(id);
+        assertTrue(System.nanoTime() - t0 < 2_000_000_000L, "remove is not O(1) amortised");
+        assertEquals(n / 2, set.size());
+        assertEquals(n - 1, set.toArray()[0]);
+        assertEquals(1, set.toArray()[n / 2 - 1]);
+    }
+
+    @Test
+    void setAlgebraFollowsLeftOperandOrder() {
+        IdSet a = IdSet.of(List.of(9, 3, 5, 1));
+        IdSet b = IdSet.of(List.of(5, 7, 9));
+
+        assertEquals(List.of(9, 3, 5, 1, 7), IdSet.union(a, b).toList());
+        assertEquals(List.of(9, 5), IdSet.intersection(a, b).toList());
+        assertEquals(List.of(3, 1), IdSet.difference(a, b).toList());
+        // az operandusok nem változnak
+        assertEquals(List.of(9, 3, 5, 1), a.toList());
+    }
+
+    @Test
+    void bulkAddAndRemoveReportCounts() {
+        IdSet a = IdSet.of(List.of(1, 2, 3));
+        assertEquals(2, a.addAll(IdSet.of(List.of(3, 4, 5))));
+        assertEquals(2, a.removeAll(IdSet.of(List.of(1, 5, 99))));
+        assertEquals(List.of(2, 3, 4), a.toList());
+    }
+
+    @Test
+    void copyIsIndependent() {
+        IdSet a = IdSet.of(List.of(4, 2));
+        IdSet b = a.copy();
+        b.add(1);
+        a.remove(4);
+        assertEquals(List.of(2), a.toList());
+        assertEquals(List.of(4, 2, 1), b.toList());
+    }
+
+    @Test
+    void equalityIgnoresOrder() {
+        assertEquals(IdSet.of(List.of(1, 2, 3)), IdSet.of(List.of(3, 2, 1)));
+        assertEquals(IdSet.of(List.of(1, 2, 3)).hashCode(), IdSet.of(List.of(3, 1, 2)).hashCode());
+    }
+
+    @Test
+    void modCountChangesOnlyOnRealChanges() {
+        IdSet set = IdSet.of(List.of(1));
+        int before = set.modCount();
+        set.add(1);
+        set.remove(7);
+        assertEquals(before, set.modCount());
+        set.add(2);
+        assertNotEquals(before, set.modCount());
+    }
+
+    @Test
+    void negativeIdsAreIgnored() {
+        IdSet set = IdSet.of(List.of(-1, 0));
+        assertFalse(set.contains(-1));
+        assertEquals(List.of(0), set.toList());
+    }
+}
@@ -0,0 +1,20 @@
+package com.kristof._D_builder;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+// A terheléses teszt indítója: a normál alkalmazás a "loadtest" profillal, a teszt classpath-szal
+// (így a LoadTestHarness is betöltődik). A harness az indulás közben fut le; utána leállunk, ha kell.
+public class LoadTestApplication {
+
+	public static void main(String[] args) {
+		ConfigurableApplicationContext context = SpringApplication.from(Application::main)
+				.withAdditionalProfiles("loadtest")
+				.run(args)
+				.getApplicationContext();
+		if (context.getEnvironment().getProperty("loadtest.exit", Boolean.class, true)) {
+			System.exit(SpringApplication.exit(context));
+		}
+	}
+
+}
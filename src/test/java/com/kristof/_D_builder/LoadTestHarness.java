@@ -0,0 +1,457 @@
+package com.kristof._D_builder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.WebSocketContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.*;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Terheléses teszt: N darab szimulált STOMP kliens ugyanabban a JVM-ben, a /3d-ws végponton keresztül.
+// A teszt forrásokban él (nem kerül a kiadott jarba), és csak a "loadtest" profillal indul, a LoadTestApplication-nel:
+//   mvn spring-boot:test-run -Dspring-boot.run.main-class=com.kristof._D_builder.LoadTestApplication
+// A kliensek a beállított arányban küldenek parancsokat (AddPoint, Connect, gyűjtemény mozgatás, Play/Seek...),
+// a pipeline protokollon (/app/command, correlation id). A végén riport: parancsonként a válasz és a
+// world update késleltetés percentilisei, CPU, allokációs ráta, broadcast sávszélesség.
+// A MongoDB-t a terhelés nem használja (nincs Save/Load a mixben), így helyi, üres Mongo-val vagy anélkül is fut.
+//   loadtest.clients           - kliensek száma (alap: 10)
+//   loadtest.duration-seconds  - mérés hossza (alap: 30)
+//   loadtest.rate              - parancs / másodperc / kliens (alap: 5)
+//   loadtest.seed-grid         - induló NxN rács, ebből kapnak a kliensek gyűjteményt (alap: 20)
+//   loadtest.mix               - parancs súlyok (alap: AddPoint:40,Connect:25,CollectionMove:10,Seek:10,Move:5,Play:5,Pause:5)
+//   loadtest.report            - riport fájl (alap: target/loadtest-report.json)
+//   loadtest.exit              - a riport után leáll az alkalmazás (alap: true, a LoadTestApplication olvassa)
+@Component
+@Profile("loadtest")
+public class LoadTestHarness implements ApplicationRunner {
+
+    private static final String COMMAND_DESTINATION = "/app/command";
+    private static final String REPLY_DESTINATION = "/user" + CommandPipelineService.REPLY_QUEUE;
+    private static final String WORLD_TOPIC = "/topic/world-updates";
+
+    // kind: "reply" = küldés -> saját válasz, "update" = küldés -> a változást tartalmazó world update
+    public record Percentiles(String command, String kind, long count, long failed, long lost, double p50Ms,
+                              double p90Ms, double p99Ms, double maxMs) {}
+
+    public record Report(int clients, int connected, double durationSeconds, double ratePerClient,
+                         long commandsSent, double commandsPerSecond, List<Percentiles> latency,
+                         long framesReceived, double receivedMBytesPerSecond, double serverSentMBytesPerSecond,
+                         long coalescedFrames, long droppedFrames,
+                         double processCpuAvgPercent, double processCpuMaxPercent, int cpus,
+                         double allocationMBytesPerSecond, long gcCount, long gcMillis,
+                         long finalPoints, long finalConnections) {}
+
+    private final WebServerApplicationContext context;
+    private final WorldStateService worldStateService;
+    private final OutboundSessionRegistry outboundSessionRegistry;
+    private final ObjectMapper objectMapper;
+
+    private final int clientCount;
+    private final int durationSeconds;
+    private final double rate;
+    private final int seedGrid;
+    private final String mix;
+    private final String reportPath;
+
+    // Közös számlálók. A Connect / Move csak olyan id-t választ, amelynek a létrehozását a szerver már
+    // visszaigazolta (rács + sikeres AddPoint válaszok); a küldéskor még úton lévő pontokra nem hivatkozik.
+    private final AtomicInteger knownPoints = new AtomicInteger();
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+    private final AtomicLong commandsSent = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    public LoadTestHarness(WebServerApplicationContext context, WorldStateService worldStateService,
+                           OutboundSessionRegistry outboundSessionRegistry, ObjectMapper objectMapper,
+                           @Value("${loadtest.clients:10}") int clientCount,
+                           @Value("${loadtest.duration-seconds:30}") int durationSeconds,
+                           @Value("${loadtest.rate:5}") double rate,
+                           @Value("${loadtest.seed-grid:20}") int seedGrid,
+                           @Value("${loadtest.mix:AddPoint:40,Connect:25,CollectionMove:10,Seek:10,Move:5,Play:5,Pause:5}") String mix,
+                           @Value("${loadtest.report:target/loadtest-report.json}") String reportPath) {
+        this.context = context;
+        this.worldStateService = worldStateService;
+        this.outboundSessionRegistry = outboundSessionRegistry;
+        this.objectMapper = objectMapper;
+        this.clientCount = Math.max(1, clientCount);
+        this.durationSeconds = Math.max(1, durationSeconds);
+        this.rate = rate > 0 ? rate : 1;
+        this.seedGrid = Math.max(2, seedGrid);
+        this.mix = mix;
+        this.reportPath = reportPath;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        int port = context.getWebServer().getPort();
+        String url = "ws://localhost:" + port + "/3d-ws/websocket";
+        System.out.printf("LOADTEST: %d kliens, %d s, %.1f parancs/s/kliens -> %s%n", clientCount, durationSeconds, rate, url);
+
+        WebSocketStompClient stompClient = createStompClient();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                    Thread t = new Thread(r, "loadtest-client");
+                    t.setDaemon(true);
+                    return t;
+                });
+        List<SimulatedClient> clients = new ArrayList<>();
+        try {
+            // Kezdő világ: üres + egy rács, amiből a kliensek gyűjteményt kapnak
+            for (int c = 0; c < clientCount; c++) {
+                SimulatedClient client = new SimulatedClient(c, new WeightedMix(mix));
+                client.connect(stompClient, url);
+                clients.add(client);
+            }
+            // A pipeline sorrendben dolgozza fel a parancsokat, a beállítás nem kerül a mérésbe
+            SimulatedClient first = clients.get(0);
+            first.send("setup", "Clear");
+            first.send("setup", "Grid(" + seedGrid + ", " + seedGrid + ", 1, 1, name=lt-seed)");
+            int slice = Math.max(1, seedGrid * seedGrid / clientCount);
+            for (SimulatedClient client : clients) {
+                int from = (client.index * slice) % (seedGrid * seedGrid);
+                int to = Math.min(seedGrid * seedGrid - 1, from + slice - 1);
+                client.send("setup", "AddCollection(" + client.collection + ", [p" + from + "...p" + to + "])");
+            }
+            Thread.sleep(500);
+            knownPoints.set(seedGrid * seedGrid);
+            recorders.clear();
+
+            // Mérés
+            Sampler sampler = new Sampler();
+            ScheduledFuture<?> sampling = scheduler.scheduleAtFixedRate(sampler::sample, 1, 1, TimeUnit.SECONDS);
+            long periodMicros = (long) (1_000_000 / rate);
+            List<ScheduledFuture<?>> loops = new ArrayList<>();
+            for (SimulatedClient client : clients) {
+                long jitter = ThreadLocalRandom.current().nextLong(periodMicros);
+                loops.add(scheduler.scheduleAtFixedRate(client::tick, jitter, periodMicros, TimeUnit.MICROSECONDS));
+            }
+            Thread.sleep(durationSeconds * 1000L);
+            loops.forEach(f -> f.cancel(false));
+            // A még úton lévő válaszok bevárása
+            Thread.sleep(1000);
+            sampling.cancel(false);
+            first.send("setup", "Pause");
+
+            Report report = buildReport(clients, sampler);
+            String json = objectMapper.writer().with(SerializationFeature.INDENT_OUTPUT).writeValueAsString(report);
+            Path out = Path.of(reportPath);
+            if (out.getParent() != null) Files.createDirectories(out.getParent());
+            Files.writeString(out, json);
+            System.out.println("LOADTEST riport (" + out.toAbsolutePath() + "):\n" + json);
+        } finally {
+            for (SimulatedClient client : clients) client.disconnect();
+            scheduler.shutdownNow();
+            stompClient.stop();
+        }
+    }
+
+    private WebSocketStompClient createStompClient() {
+        // A teljes világ állapot egy frame-ben jön: a Tomcat kliens 8 KB-os alap pufferét és a STOMP limitet is emelni kell
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        container.setDefaultMaxTextMessageBufferSize(64 << 20);
+        container.setDefaultMaxBinaryMessageBufferSize(64 << 20);
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient(container));
+        stompClient.setInboundMessageSizeLimit(64 << 20);
+        stompClient.setMessageConverter(new CompositeMessageConverter(
+                List.of(new StringMessageConverter(), new JsonBytesConverter())));
+        return stompClient;
+    }
+
+    // A világ frame-ek application/json típusúak; a kliens nyers bájtként kapja (nincs Jackson parse a mérésben)
+    private static final class JsonBytesConverter extends ByteArrayMessageConverter {
+        JsonBytesConverter() {
+            addSupportedMimeTypes(MimeTypeUtils.APPLICATION_JSON);
+        }
+    }
+
+    // ==========================
+    // SZIMULÁLT KLIENS
+    // ==========================
+
+    private record Pending(String command, long sentAt) {}
+
+    private record AwaitingUpdate(String command, long version, long sentAt) {}
+
+    private final class SimulatedClient extends StompSessionHandlerAdapter {
+        final int index;
+        final String collection;
+        final WeightedMix mix;
+        // Válaszra váró parancsok (correlation id szerint), illetve a válasz után a világ verzióra várók
+        final Map<String, Pending> pending = new ConcurrentHashMap<>();
+        final Queue<AwaitingUpdate> awaiting = new ConcurrentLinkedQueue<>();
+        long lastSeenVersion;
+        volatile StompSession session;
+        int seq;
+
+        SimulatedClient(int index, WeightedMix mix) {
+            this.index = index;
+            this.collection = "lt" + index;
+            this.mix = mix;
+        }
+
+        void connect(WebSocketStompClient stompClient, String url) throws Exception {
+            session = stompClient.connectAsync(url, this).get(10, TimeUnit.SECONDS);
+            session.subscribe(WORLD_TOPIC, new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) { return byte[].class; }
+
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) { onWorldFrame(headers, (byte[]) payload); }
+            });
+            session.subscribe(REPLY_DESTINATION, new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) { return byte[].class; }
+
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) { onReply((byte[]) payload); }
+            });
+        }
+
+        void disconnect() {
+            StompSession s = session;
+            if (s != null && s.isConnected()) s.disconnect();
+        }
+
+        // Pipeline protokoll: {"id", "command"} -> válasz a saját sorra ugyanazzal az id-val
+        void send(String type, String command) throws Exception {
+            String id = index + "-" + (seq++);
+            pending.put(id, new Pending(type, System.nanoTime()));
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination(COMMAND_DESTINATION);
+            headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            session.send(headers, objectMapper.writeValueAsBytes(new CommandPipelineService.CommandRequest(id, command, null)));
+        }
+
+        void tick() {
+            try {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                String type = mix.next(rnd);
+                String command;
+                int n = Math.max(1, knownPoints.get());
+                switch (type) {
+                    case "AddPoint" -> command = String.format(Locale.ROOT, "AddPoint(%.3f, %.3f, %.3f)",
+                            rnd.nextDouble(-20, 20), rnd.nextDouble(0, 10), rnd.nextDouble(-20, 20));
+                    case "Connect" -> {
+                        int a = rnd.nextInt(n), b = (a + 1 + rnd.nextInt(Math.max(1, n - 1))) % n;
+                        command = "Connect(p" + a + ", p" + b + ", #88aaff, 1.0)";
+                    }
+                    case "CollectionMove" -> {
+                        double start = rnd.nextDouble(0, 50);
+                        command = String.format(Locale.ROOT, "AddClip(%s, MOVE, %.2f, %.2f, %s, %.2f)", collection,
+                                start, start + 1, "xyz".charAt(rnd.nextInt(3)), rnd.nextDouble(-1, 1));
+                    }
+                    case "Seek" -> command = String.format(Locale.ROOT, "Seek(%.2f)", rnd.nextDouble(0, 60));
+                    case "Move" -> command = String.format(Locale.ROOT, "Move(p%d, %.3f, %.3f, %.3f)", rnd.nextInt(n),
+                            rnd.nextDouble(-20, 20), rnd.nextDouble(0, 10), rnd.nextDouble(-20, 20));
+                    default -> command = type; // Play, Pause, Undo... paraméter nélkül
+                }
+                send(type, command);
+                commandsSent.incrementAndGet();
+            } catch (Exception e) {
+                System.err.println("LOADTEST kliens " + index + " küldés hiba: " + e.getMessage());
+            }
+        }
+
+        // Válasz: a "reply" késleltetés itt zárul; a "update" akkor, amikor a válaszban kapott verziójú
+        // (vagy újabb) world update is megérkezett (a szerver a broadcastot a válaszok előtt küldi)
+        void onReply(byte[] payload) {
+            long now = System.nanoTime();
+            try {
+                CommandPipelineService.CommandReply reply =
+                        objectMapper.readValue(payload, CommandPipelineService.CommandReply.class);
+                Pending p = reply.id() != null ? pending.remove(reply.id()) : null;
+                if (p == null || "setup".equals(p.command())) return;
+                LatencyRecorder r = recorder(p.command(), "reply");
+                r.record(now - p.sentAt());
+                if (!reply.ok()) r.failed();
+                else if ("AddPoint".equals(p.command())) knownPoints.incrementAndGet();
+                synchronized (this) {
+                    if (lastSeenVersion >= reply.worldVersion()) recorder(p.command(), "update").record(now - p.sentAt());
+                    else awaiting.add(new AwaitingUpdate(p.command(), reply.worldVersion(), p.sentAt()));
+                }
+            } catch (Exception e) {
+                System.err.println("LOADTEST kliens " + index + " válasz hiba: " + e.getMessage());
+            }
+        }
+
+        void onWorldFrame(StompHeaders headers, byte[] payload) {
+            long now = System.nanoTime();
+            framesReceived.incrementAndGet();
+            bytesReceived.addAndGet(payload.length);
+            String header = headers.getFirst(WorldStateService.VERSION_HEADER);
+            if (header == null) return;
+            long version = Long.parseLong(header);
+            synchronized (this) {
+                lastSeenVersion = Math.max(lastSeenVersion, version);
+                for (Iterator<AwaitingUpdate> it = awaiting.iterator(); it.hasNext(); ) {
+                    AwaitingUpdate a = it.next();
+                    if (a.version() <= lastSeenVersion) {
+                        recorder(a.command(), "update").record(now - a.sentAt());
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void handleTransportError(StompSession session, Throwable exception) {
+            System.err.println("LOADTEST kliens " + index + " kapcsolat hiba: " + exception.getMessage());
+        }
+    }
+
+    private LatencyRecorder recorder(String command, String kind) {
+        return recorders.computeIfAbsent(command + "/" + kind, k -> new LatencyRecorder(command, kind));
+    }
+
+    // ==========================
+    // MÉRÉS
+    // ==========================
+
+    private static final class LatencyRecorder {
+        final String command, kind;
+        long[] samples = new long[1024];
+        int count;
+        long failed, lost;
+
+        LatencyRecorder(String command, String kind) { this.command = command; this.kind = kind; }
+
+        synchronized void record(long nanos) {
+            if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+            samples[count++] = nanos;
+        }
+
+        synchronized void failed() { failed++; }
+
+        synchronized void lost() { lost++; }
+
+        synchronized Percentiles summarize() {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return new Percentiles(command, kind, count, failed, lost, pct(sorted, 0.50), pct(sorted, 0.90),
+                    pct(sorted, 0.99), count > 0 ? sorted[count - 1] / 1e6 : 0);
+        }
+
+        private static double pct(long[] sorted, double q) {
+            if (sorted.length == 0) return 0;
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(q * sorted.length) - 1)] / 1e6;
+        }
+    }
+
+    // Másodpercenkénti CPU minta (a folyamat egésze, tehát a szimulált kliensek is benne vannak)
+    private static final class Sampler {
+        final com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final int cpus = Runtime.getRuntime().availableProcessors();
+        final long startNanos = System.nanoTime();
+        final long startCpu = os.getProcessCpuTime();
+        final long startAlloc = threads.getTotalThreadAllocatedBytes();
+        final long[] startGc = gc();
+        long lastNanos = startNanos, lastCpu = startCpu;
+        double maxCpuPercent;
+
+        synchronized void sample() {
+            long now = System.nanoTime(), cpu = os.getProcessCpuTime();
+            double pct = 100.0 * (cpu - lastCpu) / ((now - lastNanos) * (double) cpus);
+            maxCpuPercent = Math.max(maxCpuPercent, pct);
+            lastNanos = now;
+            lastCpu = cpu;
+        }
+
+        static long[] gc() {
+            long count = 0, millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            return new long[]{count, millis};
+        }
+    }
+
+    private Report buildReport(List<SimulatedClient> clients, Sampler sampler) {
+        double seconds = (System.nanoTime() - sampler.startNanos) / 1e9;
+        double cpuAvg = 100.0 * (sampler.os.getProcessCpuTime() - sampler.startCpu) / (seconds * 1e9 * sampler.cpus);
+        double allocRate = (sampler.threads.getTotalThreadAllocatedBytes() - sampler.startAlloc) / seconds / 1e6;
+        long[] gc = Sampler.gc();
+
+        long serverSent = 0, coalesced = 0, dropped = 0;
+        for (OutboundSessionRegistry.SessionStats s : outboundSessionRegistry.summary().perSession()) {
+            serverSent += s.sentBytes();
+            coalesced += s.coalescedFrames();
+            dropped += s.droppedFrames();
+        }
+        // A mérés végéig választ nem kapott parancsok elveszettnek számítanak
+        for (SimulatedClient c : clients) {
+            c.pending.values().forEach(p -> recorder(p.command(), "reply").lost());
+            c.awaiting.forEach(a -> recorder(a.command(), "update").lost());
+        }
+        List<Percentiles> latency = new ArrayList<>();
+        recorders.values().forEach(r -> latency.add(r.summarize()));
+        latency.sort(Comparator.comparing(Percentiles::command).thenComparing(Percentiles::kind));
+
+        int connected = 0;
+        for (SimulatedClient c : clients) if (c.session != null && c.session.isConnected()) connected++;
+        WorldState world = worldStateService.getWorldState();
+        return new Report(clientCount, connected, seconds, rate, commandsSent.get(), commandsSent.get() / seconds,
+                latency, framesReceived.get(), bytesReceived.get() / seconds / 1e6, serverSent / seconds / 1e6,
+                coalesced, dropped, cpuAvg, sampler.maxCpuPercent, sampler.cpus, allocRate,
+                gc[0] - sampler.startGc[0], gc[1] - sampler.startGc[1],
+                world.points().size(), world.connections().size());
+    }
+
+    // ==========================
+    // PARANCS KEVERÉK
+    // ==========================
+
+    // "AddPoint:40,Connect:25,..." -> súlyozott véletlen választás
+    private static final class WeightedMix {
+        final String[] names;
+        final int[] cumulative;
+
+        WeightedMix(String spec) {
+            List<String> n = new ArrayList<>();
+            List<Integer> w = new ArrayList<>();
+            for (String part : spec.split(",")) {
+                String[] kv = part.trim().split(":");
+                if (kv[0].isBlank()) continue;
+                int weight = kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1;
+                if (weight <= 0) continue;
+                n.add(kv[0].trim());
+                w.add(weight);
+            }
+            if (n.isEmpty()) throw new IllegalArgumentException("Empty loadtest.mix");
+            names = n.toArray(new String[0]);
+            cumulative = new int[w.size()];
+            int sum = 0;
+            for (int i = 0; i < w.size(); i++) cumulative[i] = sum += w.get(i);
+        }
+
+        String next(ThreadLocalRandom rnd) {
+            int r = rnd.nextInt(cumulative[cumulative.length - 1]);
+            for (int i = 0; i < cumulative.length; i++) if (r < cumulative[i]) return names[i];
+            return names[names.length - 1];
+        }
+    }
+}
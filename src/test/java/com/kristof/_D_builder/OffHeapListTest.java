@@ -0,0 +1,131 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapListTest {
+
+    private static Point3D point(int id) {
+        return new Point3D(id, id, 2.0 * id, -id, "#abcdef");
+    }
+
+    private static OffHeapList<Point3D> filled(int n) {
+        OffHeapList<Point3D> list = new OffHeapList<>(OffHeapCodecs.POINTS);
+        for (int i = 0; i < n; i++) list.add(point(i));
+        return list;
+    }
+
+    @Test
+    void growsAcrossChunks() {
+        int n = 3 * OffHeapList.CHUNK + 17;
+        OffHeapList<Point3D> list = filled(n);
+        assertEquals(n, list.size());
+        for (int i : new int[]{0, OffHeapList.CHUNK - 1, OffHeapList.CHUNK, n - 1}) {
+            assertEquals(point(i), list.get(i));
+            assertEquals(i, list.getInt(i, OffHeapCodecs.POINT_ID));
+        }
+        assertEquals("#abcdef", list.get(n - 1).color());
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(n));
+    }
+
+    @Test
+    void removeIfCompactsAcrossChunks() {
+        int n = 2 * OffHeapList.CHUNK + 5;
+        OffHeapList<Point3D> list = filled(n);
+        assertTrue(list.removeIf(p -> p.id() % 2 == 0));
+        assertEquals(n / 2, list.size());
+        for (int i = 0; i < list.size(); i++) assertEquals(2 * i + 1, list.get(i).id());
+        assertFalse(list.removeIf(p -> p.id() < 0));
+    }
+
+    @Test
+    void insertAndRemoveShiftEntries() {
+        OffHeapList<Point3D> list = filled(OffHeapList.CHUNK + 1);
+        list.add(1, point(-5));
+        assertEquals(-5, list.get(1).id());
+        assertEquals(OffHeapList.CHUNK, list.get(OffHeapList.CHUNK + 1).id());
+        assertEquals(point(-5), list.remove(1));
+        assertEquals(1, list.get(1).id());
+    }
+
+    @Test
+    void frozenCopyIsIsolatedFromLaterWrites() {
+        OffHeapList<Point3D> list = filled(OffHeapList.CHUNK + 10);
+        List<Point3D> frozen = list.freeze();
+
+        list.set(3, new Point3D(3, 9, 9, 9, "#000000"));
+        list.putDoubles(OffHeapList.CHUNK + 1, OffHeapCodecs.POINT_XYZ, 7, 8, 9);
+        list.add(point(5000));
+
+        assertEquals(point(3), frozen.get(3));
+        assertEquals(point(OffHeapList.CHUNK + 1), frozen.get(OffHeapList.CHUNK + 1));
+        assertEquals(OffHeapList.CHUNK + 10, frozen.size());
+        assertEquals(9, list.get(3).x());
+        assertEquals(8, list.get(OffHeapList.CHUNK + 1).y());
+        assertThrows(UnsupportedOperationException.class, () -> frozen.set(0, point(1)));
+    }
+
+    @Test
+    void thawRestoresFrozenCopyAndStaysCopyOnWrite() {
+        OffHeapList<Point3D> list = filled(OffHeapList.CHUNK * 2);
+        List<Point3D> frozen = list.freeze();
+        list.clear();
+        list.add(point(42));
+
+        list.clear();
+        list.addAll(frozen);
+        assertEquals(frozen.size(), list.size());
+        assertEquals(point(OffHeapList.CHUNK + 3), list.get(OffHeapList.CHUNK + 3));
+
+        // A visszatöltött lista írása nem hat vissza a másolatra
+        list.set(0, point(-1));
+        assertEquals(point(0), frozen.get(0));
+        assertEquals(point(-1), list.get(0));
+    }
+
+    @Test
+    void readersNeverSeeTornRecordsDuringWrites() throws Exception {
+        OffHeapList<Point3D> list = new OffHeapList<>(OffHeapCodecs.POINTS);
+        for (int i = 0; i < OffHeapList.CHUNK + 100; i++) list.add(new Point3D(i, i, i, i, "#abcdef"));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            Thread t = new Thread(() -> {
+                while (running.get()) {
+                    int n = list.size();
+                    for (int i = 0; i < n; i += 37) {
+                        Point3D p;
+                        try {
+                            p = list.get(i);
+                        } catch (IndexOutOfBoundsException e) {
+                            continue; // közben rövidült
+                        }
+                        // Az író mindig x = y = z értékkel ír: eltérés = félkész (torn) olvasás
+                        if (p.x() != p.y() || p.y() != p.z()) {
+                            failure.compareAndSet(null, "torn " + p);
+                        }
+                    }
+                }
+            });
+            readers.add(t);
+            t.start();
+        }
+        for (int round = 0; round < 200_000; round++) {
+            int index = round % list.size();
+            double v = round;
+            list.putDoubles(index, OffHeapCodecs.POINT_XYZ, v, v, v);
+            if (round % 1_000 == 0) list.freeze();
+            if (round % 25_000 == 0) list.add(new Point3D(1_000_000 + round, v, v, v, "#abcdef"));
+        }
+        running.set(false);
+        for (Thread t : readers) t.join();
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,34 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaletteTest {
+
+    @Test
+    void colorsAreNormalised() {
+        assertEquals("#aabbcc", Palette.normalizeColor(" #AABBCC "));
+        assertEquals("#aabbcc", Palette.normalizeColor("#abc"));
+        assertEquals("red", Palette.normalizeColor("Red"));
+        assertNull(Palette.normalizeColor(null));
+
+        int index = Palette.COLORS.intern("#FF8000");
+        assertEquals(index, Palette.COLORS.intern("#ff8000"));
+        assertEquals(Palette.COLORS.intern("#ff8800"), Palette.COLORS.intern("#F80"));
+        assertEquals("#ff8000", Palette.COLORS.get(index));
+        assertEquals(Palette.COLORS.intern("blue"), Palette.COLORS.intern("BLUE"));
+        assertEquals(Palette.NONE, Palette.COLORS.intern(null));
+    }
+
+    @Test
+    void pickerColorsDoNotFillTheTable() {
+        // Több különböző #rrggbb szín, mint a tábla korlátja
+        for (int rgb = 0; rgb < 100_000; rgb++) {
+            String color = String.format("#%06X", rgb * 167);
+            int index = Palette.COLORS.intern(color);
+            assertEquals(color.toLowerCase(), Palette.COLORS.get(index));
+        }
+        assertEquals("#000000", new Point3D(0, 0, 0, 0, "#000").color());
+    }
+}
@@ -0,0 +1,66 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProjectChunkerTest {
+
+    private static WorldStateService.TimelineClip clip(int target, double start) {
+        return new WorldStateService.TimelineClip("", target, "MOVE", start, start + 1, 0, 0, 0, 1, 1, 1);
+    }
+
+    private static WorldState world(List<Face> faces, List<WorldStateService.TimelineClip> clips) {
+        List<Point3D> points = new ArrayList<>();
+        for (int i = 0; i < 10_000; i += 10) points.add(new Point3D(i, i, 0, 0, "red"));
+        return new WorldState(points, List.of(), faces, Map.of(), 0, false, clips);
+    }
+
+    private static Set<String> hashes(String kind, List<ProjectChunker.Chunk> chunks) {
+        Set<String> result = new HashSet<>();
+        for (ProjectChunker.Chunk c : chunks) if (c.ref().kind().equals(kind)) result.add(c.ref().hash());
+        return result;
+    }
+
+    @Test
+    void insertingAtTheFrontChangesOnlyOneFaceAndClipChunk() {
+        List<Face> faces = new ArrayList<>();
+        List<WorldStateService.TimelineClip> clips = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            faces.add(new Face(List.of(i * 3, i * 3 + 1, i * 3 + 2), "gray"));
+            clips.add(clip(i * 3, i));
+        }
+        List<ProjectChunker.Chunk> before = ProjectChunker.split(world(faces, clips));
+
+        faces.add(0, new Face(List.of(8000, 8001, 8002), "gray"));
+        clips.add(0, clip(8000, 0));
+        List<ProjectChunker.Chunk> after = ProjectChunker.split(world(faces, clips));
+
+        for (String kind : List.of(ProjectChunker.FACES, ProjectChunker.CLIPS)) {
+            Set<String> changed = new HashSet<>(hashes(kind, after));
+            changed.removeAll(hashes(kind, before));
+            assertEquals(1, changed.size(), kind);
+        }
+    }
+
+    @Test
+    void assembleKeepsTheOrderOfClipsOnTheSameTarget() {
+        List<WorldStateService.TimelineClip> clips = List.of(clip(9000, 0), clip(5, 0), clip(9000, 2), clip(5, 1));
+        List<ProjectChunker.Chunk> chunks = ProjectChunker.split(world(List.of(new Face(List.of(), "gray")), clips));
+        Map<String, byte[]> raw = new HashMap<>();
+        for (ProjectChunker.Chunk c : chunks) raw.put(c.ref().hash(), c.raw());
+        WorldState back = ProjectChunker.assemble(chunks.stream().map(ProjectChunker.Chunk::ref).toList(), raw::get, 0);
+
+        assertEquals(1000, back.points().size());
+        assertEquals(1, back.faces().size());
+        assertEquals(List.of(0.0, 1.0), back.clips().stream().filter(c -> c.targetId == 5).map(c -> c.startTime).toList());
+        assertEquals(List.of(0.0, 2.0), back.clips().stream().filter(c -> c.targetId == 9000).map(c -> c.startTime).toList());
+    }
+}
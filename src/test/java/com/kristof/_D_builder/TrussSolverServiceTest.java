@@ -0,0 +1,97 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrussSolverServiceTest {
+
+    private final SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> true);
+    private final WorldStateService world = new WorldStateService(template, new PricingService(), new ViewSubscriptionService(template));
+    private final TrussSolverService solver = new TrussSolverService(world, template);
+
+    private static final double P = 10_000; // N
+    // Standard Acélrúd (#ffffff), thickness 1 -> 0.02 m átmérő
+    private static final double EA = 210e9 * Math.PI * 0.02 * 0.02 / 4;
+
+    private static double force(TrussSolverService.TrussResult result, int a, int b) {
+        for (TrussSolverService.MemberResult m : result.memberResults()) {
+            if ((m.fromId() == a && m.toId() == b) || (m.fromId() == b && m.toId() == a)) return m.force();
+        }
+        throw new AssertionError("No member " + a + "-" + b);
+    }
+
+    // 0 (csukló) ---- 1 (görgő), 2 felül középen, lefelé P teherrel: statikailag határozott háromszög
+    private void triangle() {
+        world.addPoint(0, 0, 0, "red");
+        world.addPoint(2, 0, 0, "red");
+        world.addPoint(1, 1, 0, "red");
+        world.addConnection(0, 2, "#ffffff", 1);
+        world.addConnection(1, 2, "#ffffff", 1);
+        world.addConnection(0, 1, "#ffffff", 1);
+        solver.addLoads(IdSet.of(List.of(2)), 0, -P, 0);
+    }
+
+    @Test
+    void threeBarTrussMatchesHandCalculation() {
+        triangle();
+        solver.addSupports(IdSet.of(List.of(0)), "xyz");
+        solver.addSupports(IdSet.of(List.of(1)), "yz");
+
+        TrussSolverService.TrussResult result = solver.analyzeNow();
+        assertTrue(result.converged(), result.message());
+        assertEquals(3, result.members());
+
+        // Ferde rudak: nyomás P / (2 sin 45°); alsó öv: húzás P / (2 tan 45°)
+        double diagonal = -P / (2 * Math.sin(Math.PI / 4));
+        assertEquals(diagonal, force(result, 0, 2), 1e-3 * P);
+        assertEquals(diagonal, force(result, 1, 2), 1e-3 * P);
+        assertEquals(P / 2, force(result, 0, 1), 1e-3 * P);
+
+        // A görgő vízszintes elmozdulása az alsó öv megnyúlása: N L / EA
+        TrussSolverService.NodeResult roller = result.displacements().stream().filter(d -> d.id() == 1).findFirst().orElseThrow();
+        assertEquals(P / 2 * 2 / EA, roller.dx(), 1e-3 * P / EA);
+    }
+
+    @Test
+    void twoBarTrussBetweenTwoPins() {
+        world.addPoint(0, 0, 0, "red");
+        world.addPoint(3, 0, 0, "red");
+        world.addPoint(3, 4, 0, "red");
+        world.addConnection(0, 2, "#ffffff", 1);
+        world.addConnection(1, 2, "#ffffff", 1);
+        solver.addSupports(IdSet.of(List.of(0, 1)), "pinned");
+        solver.addLoads(IdSet.of(List.of(2)), P, 0, 0);
+
+        TrussSolverService.TrussResult result = solver.analyzeNow();
+        assertTrue(result.converged(), result.message());
+        // A függőleges rúd nem vehet fel vízszintes erőt: az egészet a 3-4-5-ös ferde rúd viszi (húzás 5/3 P),
+        // a függőleges rúd a függőleges komponenst adja vissza (nyomás 4/3 P)
+        assertEquals(5.0 / 3 * P, force(result, 0, 2), 1e-3 * P);
+        assertEquals(-4.0 / 3 * P, force(result, 1, 2), 1e-3 * P);
+    }
+
+    @Test
+    void unsupportedModelIsNotSolved() {
+        triangle();
+
+        TrussSolverService.TrussResult result = solver.analyzeNow();
+        assertFalse(result.converged());
+        assertTrue(result.message().contains("No supports"), result.message());
+        assertTrue(result.memberResults().isEmpty());
+        assertSame(result, solver.getLastResult());
+    }
+
+    @Test
+    void modelWithoutMembersIsReported() {
+        world.addPoint(0, 0, 0, "red");
+        solver.addSupports(IdSet.of(List.of(0)), "xyz");
+
+        TrussSolverService.TrussResult result = solver.analyzeNow();
+        assertEquals(0, result.members());
+        assertTrue(result.message().contains("No members"), result.message());
+    }
+}
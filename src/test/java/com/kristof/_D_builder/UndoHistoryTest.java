@@ -0,0 +1,116 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Felhasználónkénti undo / redo és a verzió bélyegek a WorldStateService-en keresztül
+class UndoHistoryTest {
+
+    private final SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> true);
+    private final WorldStateService world = new WorldStateService(template, new PricingService(), new ViewSubscriptionService(template));
+
+    private <T> T as(String user, WorldStateService.BatchBody<T> body) throws Exception {
+        return world.runAs(user, body);
+    }
+
+    @Test
+    void undoRevertsOnlyTheEditorsOwnStep() throws Exception {
+        as("a", () -> { world.addPoint(0, 0, 0, "red"); return null; });
+        as("b", () -> { world.addPoint(1, 0, 0, "red"); return null; });
+
+        assertEquals("Undo successful.", as("a", world::undo));
+        assertNull(world.getPoint(0));
+        assertNotNull(world.getPoint(1));
+        assertEquals("Nothing to undo.", as("a", world::undo));
+
+        assertEquals("Redo successful.", as("a", world::redo));
+        assertNotNull(world.getPoint(0));
+        assertEquals(2, world.getWorldState().points().size());
+    }
+
+    @Test
+    void undoSkipsWhatOthersChangedSince() throws Exception {
+        world.addPoint(0, 0, 0, "red");
+        world.addPoint(1, 0, 0, "red");
+        as("a", () -> world.movePointUser(1, 5, 0, 0));
+        as("a", () -> world.movePointUser(0, 5, 0, 0));
+        as("b", () -> world.movePointUser(0, 9, 0, 0));
+
+        String result = as("a", world::undo);
+        assertTrue(result.startsWith("Undo partially applied"), result);
+        assertTrue(result.contains("p0"), result);
+        assertEquals(9, world.getPoint(0).x());
+
+        // A következő saját lépés (p1) már érintetlen
+        assertEquals("Undo successful.", as("a", world::undo));
+        assertEquals(1, world.getPoint(1).x());
+        assertEquals(9, world.getPoint(0).x());
+    }
+
+    @Test
+    void projectLoadIsUndoneOnlyByTheLoader() throws Exception {
+        as("a", () -> { world.addPoint(0, 0, 0, "red"); return null; });
+        WorldState loaded = new WorldState(List.of(new Point3D(7, 1, 2, 3, "blue")), List.of(),
+                List.of(), Map.of(), 0, false, List.of());
+        // Mint a project-io szálon (ProjectJobService.submitLoad): a kérő neve átadva
+        Thread io = new Thread(() -> world.restoreStateFromDb(loaded, "loader"));
+        io.start();
+        io.join();
+        assertNotNull(world.getPoint(7));
+
+        assertEquals("Nothing to undo.", world.undo());
+        assertEquals("Nothing to undo.", as("b", world::undo));
+        assertEquals("Undo successful.", as("loader", world::undo));
+        assertNull(world.getPoint(7));
+        assertNotNull(world.getPoint(0));
+    }
+
+    @Test
+    void editorIsConfinedToTheCommandThread() throws Exception {
+        AtomicReference<String> seenElsewhere = new AtomicReference<>("unset");
+        as("a", () -> {
+            assertEquals("a", world.currentEditor());
+            Thread other = new Thread(() -> seenElsewhere.set(world.currentEditor()));
+            other.start();
+            other.join();
+            return null;
+        });
+        assertNull(seenElsewhere.get());
+        assertNull(world.currentEditor());
+    }
+
+    @Test
+    void deleteAndClearDropEntityStamps() throws Exception {
+        as("a", () -> { world.addPoint(0, 0, 0, "red"); world.addPoint(1, 0, 0, "red"); return null; });
+        long stamped = world.getEntityVersion(0);
+        assertTrue(stamped > 0);
+
+        // Visszagörgetett törlés: a bélyeg is visszaáll
+        assertThrows(IllegalStateException.class, () -> as("a", () -> world.runBatch(() -> {
+            world.deletePoint(0);
+            throw new IllegalStateException("rollback");
+        })));
+        assertEquals(stamped, world.getEntityVersion(0));
+
+        as("a", () -> world.deletePoint(0));
+        assertEquals(0, world.getEntityVersion(0));
+        assertTrue(world.getEntityVersion(1) > 0);
+
+        as("b", () -> { world.clear(); return null; });
+        assertEquals(0, world.getEntityVersion(1));
+
+        // A Clear után újra kiosztott ID nem örököl régi bélyeget: a feltételes parancs nem ütközik
+        long base = world.getVersion();
+        as("b", () -> { world.addPoint(0, 0, 0, "red"); return null; });
+        WorldStateService.ConditionalResult<Boolean> moved = as("a", () -> world.runIfUnchanged(world.getVersion(), false,
+                () -> world.movePointUser(0, 1, 1, 1)));
+        assertTrue(moved.applied(), String.valueOf(moved.conflicts()));
+        assertTrue(base < world.getVersion());
+    }
+}
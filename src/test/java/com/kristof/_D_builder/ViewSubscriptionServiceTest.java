@@ -0,0 +1,72 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ViewSubscriptionServiceTest {
+
+    private final List<Message<?>> sent = Collections.synchronizedList(new ArrayList<>());
+    private final SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+    private final ViewSubscriptionService views = new ViewSubscriptionService(template);
+
+    private static WorldState world() {
+        List<Point3D> points = new ArrayList<>();
+        for (int i = 0; i < 6; i++) points.add(new Point3D(i, i, 0, 0, "red"));
+        List<Connection> connections = List.of(new Connection(0, 1, "white", 0.1, "Steel", 10),
+                new Connection(1, 4, "white", 0.1, "Steel", 10));
+        List<Face> faces = List.of(new Face(List.of(0, 1, 2), "gray"), new Face(List.of(2, 3, 4), "gray"));
+        return new WorldState(points, connections, faces, Map.of("c", List.of(4, 2, 0, 1)), 0, false, List.of());
+    }
+
+    private static long version(Message<?> m) {
+        return ((Number) m.getHeaders().get(WorldStateService.VERSION_HEADER)).longValue();
+    }
+
+    @Test
+    void filtersByCollectionAndBox() {
+        WorldState filtered = ViewSubscriptionService.filter(world(),
+                new ViewFilter(new double[]{0, -1, -1, 3, 1, 1}, "c", 0));
+        assertEquals(List.of(0, 1, 2), filtered.points().stream().map(Point3D::id).toList());
+        assertEquals(1, filtered.connections().size());
+        assertEquals(1, filtered.faces().size());
+        assertEquals(Map.of("c", List.of(2, 0, 1)), filtered.collections());
+        assertTrue(ViewSubscriptionService.filter(world(), new ViewFilter(null, "nincs", 0)).points().isEmpty());
+    }
+
+    @Test
+    void identicalFiltersShareOneResult() {
+        views.register("s1", "a", new ViewFilter(new double[]{0, -1, -1, 3, 1, 1}, null, 1));
+        views.register("s2", "b", new ViewFilter(new double[]{0, -1, -1, 3, 1, 1}, " ", 1));
+        views.register("s3", "c", new ViewFilter(null, "c", 2));
+        views.publishNow(new WorldStateService.VersionedState(5, world()));
+        assertEquals(3, sent.size());
+        assertEquals(2, sent.stream().map(Message::getPayload).distinct().count());
+        assertEquals(1, sent.stream().filter(m -> ((WorldState) m.getPayload()).connections().isEmpty()).count());
+
+        // Régebbi (vagy ugyanaz a) verzió már nem megy ki újra
+        views.publishNow(new WorldStateService.VersionedState(4, world()));
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    void burstsAreCoalescedToTheLatestVersion() throws Exception {
+        views.register("s1", "a", new ViewFilter(null, null, 0));
+        for (long v = 1; v <= 200; v++) views.publish(world(), v);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline
+                && (sent.isEmpty() || version(sent.get(sent.size() - 1)) != 200)) {
+            Thread.sleep(5);
+        }
+        views.shutdown();
+        assertEquals(200, version(sent.get(sent.size() - 1)));
+        for (int i = 1; i < sent.size(); i++) assertTrue(version(sent.get(i - 1)) < version(sent.get(i)));
+    }
+}
@@ -0,0 +1,74 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorldDiffTest {
+
+    private static WorldState world(List<Point3D> points, List<Connection> connections, List<Face> faces,
+                                    Map<String, List<Integer>> collections, List<WorldStateService.TimelineClip> clips) {
+        return new WorldState(points, connections, faces, collections, 0, false, clips);
+    }
+
+    private static Point3D p(int id, double x) {
+        return new Point3D(id, x, 0, 0, "red");
+    }
+
+    @Test
+    void sharedSnapshotsHaveNoDifference() {
+        List<Point3D> points = List.of(p(0, 0), p(1, 1));
+        WorldState state = world(points, List.of(), List.of(), Map.of("c", List.of(0)), List.of());
+        assertTrue(WorldDiff.between(state, world(points, List.of(), List.of(), state.collections(), List.of())).isEmpty());
+    }
+
+    @Test
+    void pointsAreMergedById() {
+        WorldState from = world(List.of(p(0, 0), p(1, 1), p(2, 2)), List.of(), List.of(), Map.of(), List.of());
+        WorldState to = world(List.of(p(0, 0), p(2, 5), p(3, 3)), List.of(), List.of(), Map.of(), List.of());
+        List<WorldDiff.PointChange> changes = WorldDiff.between(from, to).points;
+        assertEquals(List.of(
+                new WorldDiff.PointChange(1, p(1, 1), null),
+                new WorldDiff.PointChange(2, p(2, 2), p(2, 5)),
+                new WorldDiff.PointChange(3, null, p(3, 3))), changes);
+    }
+
+    @Test
+    void unsortedPointsFallBackToIdLookup() {
+        WorldState from = world(List.of(p(5, 0), p(1, 1)), List.of(), List.of(), Map.of(), List.of());
+        WorldState to = world(List.of(p(1, 1), p(5, 9)), List.of(), List.of(), Map.of(), List.of());
+        assertEquals(List.of(new WorldDiff.PointChange(5, p(5, 0), p(5, 9))), WorldDiff.between(from, to).points);
+    }
+
+    @Test
+    void connectionsAndFacesAreComparedAsSets() {
+        Connection a = new Connection(0, 1, "white", 1, "Steel", 10), b = new Connection(1, 2, "white", 1, "Steel", 10),
+                c = new Connection(2, 3, "white", 1, "Steel", 10);
+        Face f = new Face(List.of(0, 1, 2), "gray"), g = new Face(List.of(1, 2, 3), "gray");
+        WorldDiff d = WorldDiff.between(world(List.of(), List.of(a, b), List.of(f), Map.of(), List.of()),
+                world(List.of(), List.of(a, c), List.of(f, g), Map.of(), List.of()));
+        assertEquals(List.of(b), d.connectionsOnlyInFrom);
+        assertEquals(List.of(c), d.connectionsOnlyInTo);
+        assertEquals(List.of(), d.facesOnlyInFrom);
+        assertEquals(List.of(g), d.facesOnlyInTo);
+    }
+
+    @Test
+    void collectionsAndClipsChange() {
+        WorldStateService.TimelineClip kept = new WorldStateService.TimelineClip("", 0, "MOVE", 0, 1, 0, 0, 0, 1, 1, 1);
+        WorldStateService.TimelineClip old = new WorldStateService.TimelineClip("", 0, "MOVE", 1, 2, 0, 0, 0, 1, 1, 1);
+        WorldStateService.TimelineClip edited = old.copy();
+        edited.endTime = 3;
+        WorldDiff d = WorldDiff.between(
+                world(List.of(), List.of(), List.of(), Map.of("a", List.of(1), "b", List.of(2)), List.of(kept, old)),
+                world(List.of(), List.of(), List.of(), Map.of("a", List.of(1, 2), "c", List.of(3)), List.of(kept, edited)));
+        assertEquals(List.of(
+                new WorldDiff.CollectionChange("a", List.of(1), List.of(1, 2)),
+                new WorldDiff.CollectionChange("b", List.of(2), null),
+                new WorldDiff.CollectionChange("c", null, List.of(3))), d.collections);
+        assertEquals(List.of(new WorldDiff.ClipChange(old.id, old, edited)), d.clips);
+    }
+}
@@ -0,0 +1,134 @@
+package com.kristof._D_builder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorldIndexTest {
+
+    private static WorldState world(List<Point3D> points, List<Connection> connections, List<Face> faces,
+                                    Map<String, List<Integer>> collections, List<WorldStateService.TimelineClip> clips) {
+        return new WorldState(points, connections, faces, collections, 0, false, clips);
+    }
+
+    private static List<Point3D> grid(int n) {
+        List<Point3D> points = new ArrayList<>();
+        for (int i = 0; i < n; i++) points.add(new Point3D(i, i, 0, 0, i % 3 == 0 ? "red" : "blue"));
+        return points;
+    }
+
+    private static WorldStateService.TimelineClip clip(int target, double start, double end) {
+        return new WorldStateService.TimelineClip("", target, "MOVE", start, end, 0, 0, 0, 1, 1, 1);
+    }
+
+    @Test
+    void filtersPointsByColorAndCollection() {
+        WorldIndex idx = new WorldIndex(1, world(grid(10), List.of(), List.of(), Map.of("c", List.of(9, 3, 4, 42)), List.of()));
+        assertArrayEquals(new int[]{0, 3, 6, 9}, idx.pointsWithColor("red"));
+        assertArrayEquals(new int[0], idx.pointsWithColor("green"));
+        assertArrayEquals(new int[]{3, 4, 9}, idx.pointsInCollection("c"));
+        assertArrayEquals(new int[]{3, 9}, WorldIndex.intersect(idx.pointsWithColor("red"), idx.pointsInCollection("c")));
+    }
+
+    @Test
+    void filtersConnectionsByMaterialAndLength() {
+        List<Connection> connections = List.of(
+                new Connection(0, 1, "white", 0.1, "Steel", 10),
+                new Connection(0, 2, "white", 0.1, "Wood", 5),
+                new Connection(0, 3, "white", 0.1, "Steel", 10),
+                new Connection(0, 99, "white", 0.1, "Steel", 10)); // hiányzó végpont
+        WorldIndex idx = new WorldIndex(1, world(grid(4), connections, List.of(), Map.of(), List.of()));
+        assertArrayEquals(new int[]{0, 2, 3}, idx.connectionsWithMaterial("Steel"));
+        assertArrayEquals(new int[]{1, 2}, idx.connectionsWithLength(2.0, 3.0));
+        assertArrayEquals(new int[]{0}, idx.connectionsWithLength(null, 1.0));
+        assertArrayEquals(new int[0], idx.connectionsWithLength(3.0, 2.0));
+        assertTrue(Double.isNaN(idx.connectionLength(connections.get(3))));
+    }
+
+    @Test
+    void findsFacesOfAPoint() {
+        List<Face> faces = List.of(new Face(List.of(0, 1, 2), "gray"), new Face(List.of(1, 2, 3, 1), "gray"),
+                new Face(List.of(3, 4, 5), "gray"));
+        WorldIndex idx = new WorldIndex(1, world(grid(6), List.of(), faces, Map.of(), List.of()));
+        assertArrayEquals(new int[]{0, 1}, idx.facesWithPoint(1));
+        assertArrayEquals(new int[]{1, 2}, idx.facesWithPoint(3));
+        assertArrayEquals(new int[0], idx.facesWithPoint(77));
+    }
+
+    @Test
+    void activeClipsMatchALinearScan() {
+        Random random = new Random(7);
+        List<WorldStateService.TimelineClip> clips = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            double start = random.nextDouble() * 60;
+            clips.add(clip(i % 10, start, start + random.nextDouble() * (i % 50 == 0 ? 40 : 2)));
+        }
+        WorldIndex idx = new WorldIndex(1, world(grid(10), List.of(), List.of(), Map.of(), clips));
+        for (int k = 0; k <= 700; k++) {
+            double time = k / 10.0;
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < clips.size(); i++) {
+                if (clips.get(i).startTime <= time && clips.get(i).endTime >= time) expected.add(i);
+            }
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), idx.clipsActiveAt(time), "t=" + time);
+        }
+        assertArrayEquals(new int[0], new WorldIndex(1, world(grid(1), List.of(), List.of(), Map.of(), List.of())).clipsActiveAt(1));
+    }
+
+    @Test
+    void moveKeepsPostingListsButRebuildsLengths() {
+        List<Point3D> points = grid(6);
+        List<Connection> connections = List.of(new Connection(0, 5, "white", 0.1, "Steel", 10));
+        List<Face> faces = List.of(new Face(List.of(0, 1, 2), "gray"));
+        List<WorldStateService.TimelineClip> clips = List.of(clip(0, 0, 10));
+        WorldIndex first = new WorldIndex(1, world(points, connections, faces, Map.of(), clips));
+        int[] red = first.pointsWithColor("red");
+        int[] steel = first.connectionsWithMaterial("Steel");
+        assertArrayEquals(new int[]{0}, first.connectionsWithLength(4.5, 5.5));
+        first.facesWithPoint(0);
+        first.clipsActiveAt(1);
+
+        // Lejátszás: csak a pozíciók változnak (új rekordok, azonos ID / szín)
+        List<Point3D> moved = new ArrayList<>();
+        for (Point3D p : points) moved.add(new Point3D(p.id(), p.x() * 2, p.y(), p.z(), p.colorIndex()));
+        WorldIndex second = first.next(2, world(moved, connections, faces, Map.of(), clips));
+        assertEquals(2, second.version);
+        assertSame(red, second.pointsWithColor("red"));
+        assertSame(steel, second.connectionsWithMaterial("Steel"));
+        assertArrayEquals(new int[0], second.connectionsWithLength(4.5, 5.5));
+        assertArrayEquals(new int[]{0}, second.connectionsWithLength(9.5, 10.5));
+        assertArrayEquals(new int[]{0}, second.facesWithPoint(2));
+        assertArrayEquals(new int[]{0}, second.clipsActiveAt(1));
+    }
+
+    @Test
+    void structuralChangesAreReindexed() {
+        List<Point3D> points = grid(6);
+        WorldIndex first = new WorldIndex(1, world(points, List.of(), List.of(new Face(List.of(4, 5), "gray")), Map.of(), List.of(clip(0, 0, 1))));
+        assertArrayEquals(new int[]{0, 3}, first.pointsWithColor("red"));
+        assertArrayEquals(new int[]{0}, first.facesWithPoint(5));
+        first.clipsActiveAt(0.5);
+
+        // Átszínezés: a szín index újraépül, a pozíció tábla marad
+        List<Point3D> recolored = new ArrayList<>(points);
+        recolored.set(1, new Point3D(1, 1, 0, 0, "red"));
+        WorldIndex second = first.next(2, world(recolored, List.of(), List.of(new Face(List.of(4, 5), "gray")), Map.of(), List.of(clip(0, 2, 3))));
+        assertArrayEquals(new int[]{0, 1, 3}, second.pointsWithColor("red"));
+        assertArrayEquals(new int[0], second.clipsActiveAt(0.5));
+        assertArrayEquals(new int[]{0}, second.clipsActiveAt(2.5));
+
+        // Törlés: a pozíciók eltolódnak
+        List<Point3D> deleted = new ArrayList<>(recolored);
+        deleted.remove(0);
+        WorldIndex third = second.next(3, world(deleted, List.of(), List.of(new Face(List.of(4, 5), "gray")), Map.of(), List.of()));
+        assertArrayEquals(new int[]{0, 2}, third.pointsWithColor("red"));
+        assertEquals(3, third.pointPosition(4));
+        assertArrayEquals(new int[]{0}, third.facesWithPoint(5));
+        assertEquals(-1, third.pointPosition(0));
+    }
+}
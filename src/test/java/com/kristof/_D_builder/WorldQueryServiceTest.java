@@ -0,0 +1,57 @@
+package com.kristof._D_builder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorldQueryServiceTest {
+
+    private final SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> true);
+    private final WorldStateService world = new WorldStateService(template, new PricingService(), new ViewSubscriptionService(template));
+    private final WorldQueryService queries = new WorldQueryService(world, template, new ObjectMapper(), 1000, 100000, 2);
+
+    private static WorldQuery page(int offset, Long version) {
+        return new WorldQuery(null, "points", null, null, null, null, null, null, null, offset, 2, List.of("id", "x"), version);
+    }
+
+    private String text(WorldQueryService.Page page) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        queries.write(page, out, 0);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void pinnedPagingSurvivesLaterVersions() throws Exception {
+        for (int i = 0; i < 4; i++) world.addPoint(i, 0, 0, "red");
+        WorldQueryService.Page first = queries.query(page(0, null));
+        assertEquals(4, first.total());
+        assertEquals(2, first.nextOffset());
+
+        // A világ közben változik (pl. lejátszás): a második lap a saját verzióján marad
+        world.runBatch(() -> world.updatePoint(3, 30, 0, 0));
+        assertNotEquals(first.version(), world.getVersion());
+        WorldQueryService.Page second = queries.query(page(2, first.version()));
+        assertEquals(first.version(), second.version());
+        assertEquals("{\"id\":2,\"x\":2.0}\n{\"id\":3,\"x\":3.0}\n", text(second));
+        assertTrue(text(queries.query(page(2, null))).contains("\"x\":30.0"));
+    }
+
+    @Test
+    void evictedVersionIsAConflict() throws Exception {
+        world.addPoint(0, 0, 0, "red");
+        long old = queries.query(page(0, null)).version();
+        for (int i = 1; i <= 3; i++) {
+            double x = i;
+            world.runBatch(() -> world.updatePoint(0, x, 0, 0));
+            queries.query(page(0, null));
+        }
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> queries.query(page(0, old)));
+        assertTrue(e.getMessage().contains("no longer available"));
+    }
+}